@@ -1,28 +1,58 @@
 package io.contentos.android.sdk;
 
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.contentos.android.sdk.rpc.BalancedChannel;
+import io.contentos.android.sdk.rpc.RetryingInterceptor;
+import io.grpc.ManagedChannel;
 
 public class Network {
-    private final String host;
+    private final List<String> hosts;
     private final int port;
     private final String name;
 
-    private Network(String host, int port, String name) {
-        this.host = host;
+    private Network(List<String> hosts, int port, String name) {
+        this.hosts = Collections.unmodifiableList(new ArrayList<>(hosts));
         this.port = port;
         this.name = name;
     }
 
+    /**
+     * Create a network of multiple nodes.
+     * @param name      chain name
+     * @param port      server port of nodes
+     * @param hosts     server hosts of nodes
+     * @return the network.
+     */
+    public static Network of(String name, int port, String... hosts) {
+        if (hosts.length == 0) {
+            throw new IllegalArgumentException("no hosts");
+        }
+        return new Network(Arrays.asList(hosts), port, name);
+    }
+
+    /**
+     * Create a wallet connected to all nodes of the network.
+     * <p>Calls are balanced between nodes by latency, and fail over to other nodes.
+     * See {@link BalancedChannel}. If there are several nodes, slow queries are also hedged, see
+     * {@link RetryingInterceptor}; failed queries are then not retried on top of the failover.</p>
+     * @return the wallet.
+     */
     public Wallet wallet() {
-        return new Wallet(this.host, this.port, this.name, false);
+        List<ManagedChannel> channels = new ArrayList<>(hosts.size());
+        for (String host : hosts) {
+            channels.add(Wallet.channelBuilder(host, port, false).build());
+        }
+        RetryingInterceptor retrying = new RetryingInterceptor(new RetryingInterceptor.Policy().setHedging(hosts.size() > 1));
+        return new Wallet(new BalancedChannel(channels), this.name, retrying);
     }
 
     private static final String[] mainNodes = {
             "grpc.contentos.io",
     };
 
-    public static final Network Main = new Network(
-            mainNodes[new Random().nextInt(mainNodes.length)],
-            8888,
-            "main");
+    public static final Network Main = of("main", 8888, mainNodes);
 }
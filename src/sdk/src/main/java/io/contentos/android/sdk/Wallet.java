@@ -1,7 +1,9 @@
 package io.contentos.android.sdk;
 
 import java.io.File;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.zip.CRC32;
 
 import io.contentos.android.sdk.crypto.Key;
@@ -10,6 +12,10 @@ import io.contentos.android.sdk.keystore.KeyStore;
 import io.contentos.android.sdk.keystore.KeystoreAPI;
 import io.contentos.android.sdk.prototype.Type;
 import io.contentos.android.sdk.rpc.ApiServiceGrpc;
+import io.contentos.android.sdk.rpc.AsyncRpcClient;
+import io.contentos.android.sdk.rpc.CoalescingInterceptor;
+import io.contentos.android.sdk.rpc.ResponseCache;
+import io.contentos.android.sdk.rpc.RetryingInterceptor;
 import io.contentos.android.sdk.rpc.RpcClient;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
@@ -17,7 +23,11 @@ import io.grpc.ManagedChannelBuilder;
 public final class Wallet extends RpcClient implements KeystoreAPI {
 
     private ManagedChannel channel;
-    private KeyStore keyStore;
+    private final RetryingInterceptor retrying;
+    private final ResponseCache responseCache;
+    private final CoalescingInterceptor coalescing;
+    // replaced under lock, but read without locking.
+    private volatile KeyStore keyStore;
 
     /**
      * Wallet constructor.
@@ -26,8 +36,31 @@ public final class Wallet extends RpcClient implements KeystoreAPI {
      * @param secure        use TLS or not
      */
     public Wallet(String serverHost, int serverPort, String chainName, boolean secure) {
-        super(ApiServiceGrpc.newBlockingStub(channelBuilder(serverHost, serverPort, secure).build()), chainName);
-        channel = (ManagedChannel) service.getChannel();
+        this(channelBuilder(serverHost, serverPort, secure).build(), chainName);
+    }
+
+    /**
+     * Wallet constructor.
+     * <p>Queries are retried with the default {@link RetryingInterceptor.Policy}, and
+     * irreversible blocks and transactions are cached in memory by a {@link ResponseCache}.
+     * Identical concurrent queries share one call, see {@link CoalescingInterceptor}.</p>
+     * @param channel   the channel to server, owned by the wallet from now on
+     */
+    public Wallet(ManagedChannel channel, String chainName) {
+        this(channel, chainName, new RetryingInterceptor());
+    }
+
+    Wallet(ManagedChannel channel, String chainName, RetryingInterceptor retrying) {
+        this(channel, chainName, retrying, new ResponseCache(), new CoalescingInterceptor());
+    }
+
+    private Wallet(ManagedChannel channel, String chainName, RetryingInterceptor retrying, ResponseCache responseCache, CoalescingInterceptor coalescing) {
+        // the cache is called first, so that cached responses skip coalescing and retries.
+        super(ApiServiceGrpc.newBlockingStub(channel).withInterceptors(retrying, coalescing, responseCache), chainName);
+        this.channel = channel;
+        this.retrying = retrying;
+        this.responseCache = responseCache;
+        this.coalescing = coalescing;
     }
 
     /**
@@ -39,7 +72,7 @@ public final class Wallet extends RpcClient implements KeystoreAPI {
         this(serverHost, serverPort, chainName, false);
     }
 
-    private static ManagedChannelBuilder channelBuilder(String serverHost, int serverPort, boolean secure) {
+    static ManagedChannelBuilder channelBuilder(String serverHost, int serverPort, boolean secure) {
         ManagedChannelBuilder cb = ManagedChannelBuilder.forAddress(serverHost, serverPort)
                 .userAgent("");
         if (!secure) {
@@ -48,6 +81,30 @@ public final class Wallet extends RpcClient implements KeystoreAPI {
         return cb;
     }
 
+    /**
+     * Get the interceptor retrying queries of this wallet, e.g. to set policies of specific methods.
+     * @return the retrying interceptor.
+     */
+    public RetryingInterceptor getRetryingInterceptor() {
+        return retrying;
+    }
+
+    /**
+     * Get the cache of immutable responses of this wallet, e.g. to open its persistent tier.
+     * @return the response cache.
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Get the interceptor sharing calls between identical concurrent queries of this wallet.
+     * @return the coalescing interceptor.
+     */
+    public CoalescingInterceptor getCoalescingInterceptor() {
+        return coalescing;
+    }
+
     /**
      * Close the wallet.
      */
@@ -57,6 +114,12 @@ public final class Wallet extends RpcClient implements KeystoreAPI {
         } catch (Exception e) {
             e.printStackTrace();
         }
+        synchronized (this) {
+            if (keyStore != null) {
+                keyStore.close();
+                keyStore = null;
+            }
+        }
     }
 
     /**
@@ -64,8 +127,22 @@ public final class Wallet extends RpcClient implements KeystoreAPI {
      * @param file      keystore file
      * @param password  password for keystore encryption/decryption
      */
-    public synchronized void openKeyStore(File file, String password) {
-        keyStore = KeyStore.openOrCreate(file, password);
+    public void openKeyStore(File file, String password) {
+        openKeyStore(file, password, new KeyStore.Options());
+    }
+
+    /**
+     * Load accounts and their keys from specific keystore file.
+     * @param file      keystore file
+     * @param password  password for keystore encryption/decryption
+     * @param options   keystore options, e.g. write-behind mode
+     */
+    public synchronized void openKeyStore(File file, String password, KeyStore.Options options) {
+        KeyStore ks = KeyStore.openOrCreate(file, password, options);
+        if (keyStore != null) {
+            keyStore.close();
+        }
+        keyStore = ks;
     }
 
     /**
@@ -74,16 +151,34 @@ public final class Wallet extends RpcClient implements KeystoreAPI {
      * @return RPC client.
      */
     public RpcClient account(String name) {
-        return new RpcClient(service, getKey(name), chainName);
+        return new RpcClient(service, getKey(name), chainName, chainStateCache);
+    }
+
+    /**
+     * Create an asynchronous RPC client sharing the connection of this wallet.
+     * @return asynchronous RPC client.
+     */
+    public AsyncRpcClient async() {
+        return new AsyncRpcClient(ApiServiceGrpc.newFutureStub(channel).withInterceptors(retrying, coalescing, responseCache), null, chainName, chainStateCache);
+    }
+
+    /**
+     * Create an asynchronous RPC client in behalf of specific account.
+     * @param name name of account
+     * @return asynchronous RPC client.
+     */
+    public AsyncRpcClient asyncAccount(String name) {
+        return new AsyncRpcClient(ApiServiceGrpc.newFutureStub(channel).withInterceptors(retrying, coalescing, responseCache), getKey(name), chainName, chainStateCache);
     }
 
     //
     // KeyStoreAPI implementation
     //
 
-    public synchronized String getKey(String account) {
-        if (keyStore != null) {
-            return keyStore.getKey(account);
+    public String getKey(String account) {
+        KeyStore ks = keyStore;
+        if (ks != null) {
+            return ks.getKey(account);
         }
         return null;
     }
@@ -109,10 +204,56 @@ public final class Wallet extends RpcClient implements KeystoreAPI {
         keyStore.removeKey(account);
     }
 
-    public synchronized List<String> getAccounts() {
+    public List<String> getAccounts() {
+        KeyStore ks = keyStore;
+        if (ks == null) {
+            throw new RuntimeException("no open keystore");
+        }
+        return ks.getAccounts();
+    }
+
+    public String getPublicKey(String account) {
+        KeyStore ks = keyStore;
+        if (ks == null) {
+            throw new RuntimeException("no open keystore");
+        }
+        return ks.getPublicKey(account);
+    }
+
+    public String getAccountByPublicKey(String wifPublicKey) {
+        KeyStore ks = keyStore;
+        if (ks == null) {
+            throw new RuntimeException("no open keystore");
+        }
+        return ks.getAccountByPublicKey(wifPublicKey);
+    }
+
+    public Map<String, String> getKeys() {
+        KeyStore ks = keyStore;
+        if (ks == null) {
+            throw new RuntimeException("no open keystore");
+        }
+        return ks.getKeys();
+    }
+
+    public synchronized void addKeys(Map<String, String> wifPrivateKeys) {
+        if (keyStore == null) {
+            throw new RuntimeException("no open keystore");
+        }
+        keyStore.addKeys(wifPrivateKeys);
+    }
+
+    public synchronized void addKeysByMnemonic(Map<String, String> mnemonics) {
+        if (keyStore == null) {
+            throw new RuntimeException("no open keystore");
+        }
+        keyStore.addKeysByMnemonic(mnemonics);
+    }
+
+    public synchronized void removeKeys(Collection<String> accounts) {
         if (keyStore == null) {
             throw new RuntimeException("no open keystore");
         }
-        return keyStore.getAccounts();
+        keyStore.removeKeys(accounts);
     }
 }
@@ -0,0 +1,117 @@
+package io.contentos.android.sdk.crypto;
+
+import io.contentos.android.sdk.encoding.WIF;
+import io.contentos.android.sdk.prototype.Type;
+
+/**
+ * Immutable private key.
+ * <p>Its WIF string and public key are computed only once.</p>
+ */
+public final class PrivateKey {
+
+    private final Type.private_key_type key;
+    private String wif;
+    private PublicKey publicKey;
+
+    private PrivateKey(Type.private_key_type key, String wif) {
+        if (key == null) {
+            throw new NullPointerException("null private key");
+        }
+        this.key = key;
+        this.wif = wif;
+    }
+
+    /**
+     * Create a private key from its protobuf representation.
+     * @param key the private key
+     * @return the private key.
+     */
+    public static PrivateKey of(Type.private_key_type key) {
+        return new PrivateKey(key, null);
+    }
+
+    /**
+     * Create a private key from its WIF string.
+     * @param wif private key in WIF encoding
+     * @return the private key.
+     */
+    public static PrivateKey fromWIF(String wif) {
+        return new PrivateKey(WIF.toPrivateKey(wif), wif);
+    }
+
+    /**
+     * Generate a new private key.
+     * @return the private key.
+     */
+    public static PrivateKey generate() {
+        return of(Key.generate());
+    }
+
+    /**
+     * Derive a private key from mnemonic.
+     * @param mnemonic  a 24-word mnemonic string
+     * @return the private key.
+     */
+    public static PrivateKey fromMnemonic(String mnemonic) {
+        return of(Key.generateFromMnemonic(mnemonic));
+    }
+
+    /**
+     * Get the protobuf representation.
+     * @return the private key.
+     */
+    public Type.private_key_type toProto() {
+        return key;
+    }
+
+    /**
+     * Get the WIF string.
+     * @return private key in WIF encoding.
+     */
+    public String toWIF() {
+        String s = wif;
+        if (s == null) {
+            s = WIF.fromPrivateKey(key);
+            wif = s;
+        }
+        return s;
+    }
+
+    /**
+     * Get the public key.
+     * @return public key of this private key.
+     */
+    public PublicKey publicKey() {
+        PublicKey p = publicKey;
+        if (p == null) {
+            p = PublicKey.of(Key.publicKeyOf(key));
+            publicKey = p;
+        }
+        return p;
+    }
+
+    /**
+     * Generate a public-key-recoverable signature of given message.
+     * @param message the message bytes to be signed
+     * @return bytes of signature.
+     */
+    public byte[] sign(byte[] message) {
+        return Key.signMessage(message, key);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PrivateKey)) {
+            return false;
+        }
+        return key.getData().equals(((PrivateKey) o).key.getData());
+    }
+
+    @Override
+    public int hashCode() {
+        return key.getData().hashCode();
+    }
+}
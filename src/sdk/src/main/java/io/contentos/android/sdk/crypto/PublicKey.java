@@ -0,0 +1,108 @@
+package io.contentos.android.sdk.crypto;
+
+import io.contentos.android.sdk.encoding.WIF;
+import io.contentos.android.sdk.prototype.Type;
+
+/**
+ * Immutable public key.
+ * <p>Its WIF string and hash code are computed only once, which makes it a cheap key for hash
+ * maps and sets.</p>
+ */
+public final class PublicKey {
+
+    private final Type.public_key_type key;
+    private String wif;
+    private int hash;
+
+    private PublicKey(Type.public_key_type key, String wif) {
+        if (key == null) {
+            throw new NullPointerException("null public key");
+        }
+        this.key = key;
+        this.wif = wif;
+    }
+
+    /**
+     * Create a public key from its protobuf representation.
+     * @param key the public key
+     * @return the public key.
+     */
+    public static PublicKey of(Type.public_key_type key) {
+        return new PublicKey(key, null);
+    }
+
+    /**
+     * Create a public key from its WIF string.
+     * @param wif public key in WIF encoding
+     * @return the public key.
+     */
+    public static PublicKey fromWIF(String wif) {
+        return new PublicKey(WIF.toPublicKey(wif), wif);
+    }
+
+    /**
+     * Get the protobuf representation.
+     * @return the public key.
+     */
+    public Type.public_key_type toProto() {
+        return key;
+    }
+
+    /**
+     * Get the compressed curve point bytes.
+     * @return bytes of public key.
+     */
+    public byte[] toByteArray() {
+        return key.getData().toByteArray();
+    }
+
+    /**
+     * Get the WIF string.
+     * @return public key in WIF encoding.
+     */
+    public String toWIF() {
+        String s = wif;
+        if (s == null) {
+            s = WIF.fromPublicKey(key);
+            wif = s;
+        }
+        return s;
+    }
+
+    /**
+     * ECDSA signature verification.
+     * @param signature the signature
+     * @param message   the message data
+     * @return true if signature verification passed, otherwise false.
+     */
+    public boolean verify(byte[] signature, byte[] message) {
+        return Key.verifyMessage(signature, message, key);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PublicKey)) {
+            return false;
+        }
+        PublicKey other = (PublicKey) o;
+        return hashCode() == other.hashCode() && key.getData().equals(other.key.getData());
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = key.getData().hashCode();
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return toWIF();
+    }
+}
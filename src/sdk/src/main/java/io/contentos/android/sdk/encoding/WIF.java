@@ -2,35 +2,85 @@ package io.contentos.android.sdk.encoding;
 
 import com.google.protobuf.ByteString;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.UnknownFormatConversionException;
+import java.util.concurrent.ConcurrentHashMap;
 import io.contentos.android.sdk.crypto.Hash;
 import io.contentos.android.sdk.prototype.Type;
 
 public class WIF {
     private static final String PUBLIC_KEY_PREFIX = "COS";
 
+    // maximum number of entries kept by each conversion cache.
+    private static final int CACHE_CAPACITY = 1024;
+
+    // WIF <-> binary conversions are pure functions, but each of them costs a base58 conversion
+    // and a double-SHA256. Results are cached in both directions.
+    private static final Cache<String, Type.public_key_type> publicKeyByWIF = new Cache<>(CACHE_CAPACITY);
+    private static final Cache<ByteString, String> wifByPublicKey = new Cache<>(CACHE_CAPACITY);
+    private static final Cache<String, Type.private_key_type> privateKeyByWIF = new Cache<>(CACHE_CAPACITY);
+    private static final Cache<ByteString, String> wifByPrivateKey = new Cache<>(CACHE_CAPACITY);
+
     public static String fromPublicKey(Type.public_key_type publicKey) {
-        return PUBLIC_KEY_PREFIX + fromByteArray(publicKey.getData().toByteArray(), false);
+        ByteString data = publicKey.getData();
+        String wif = wifByPublicKey.get(data);
+        if (wif == null) {
+            wif = PUBLIC_KEY_PREFIX + fromByteArray(data.toByteArray(), false);
+            wifByPublicKey.put(data, wif);
+            publicKeyByWIF.put(wif, publicKey);
+        }
+        return wif;
     }
 
     public static String fromPrivateKey(Type.private_key_type privateKey) {
-        return fromByteArray(privateKey.getData().toByteArray(), true);
+        ByteString data = privateKey.getData();
+        String wif = wifByPrivateKey.get(data);
+        if (wif == null) {
+            wif = fromByteArray(data.toByteArray(), true);
+            wifByPrivateKey.put(data, wif);
+            privateKeyByWIF.put(wif, privateKey);
+        }
+        return wif;
     }
 
     public static Type.public_key_type toPublicKey(String wif) {
-        if (!wif.startsWith(PUBLIC_KEY_PREFIX)) {
-            throw new UnknownFormatConversionException("WIF string without public key prefix");
+        Type.public_key_type publicKey = publicKeyByWIF.get(wif);
+        if (publicKey == null) {
+            if (!wif.startsWith(PUBLIC_KEY_PREFIX)) {
+                throw new UnknownFormatConversionException("WIF string without public key prefix");
+            }
+            publicKey = Type.public_key_type.newBuilder()
+                    .setData(ByteString.copyFrom(
+                            toByteArray(wif.substring(PUBLIC_KEY_PREFIX.length()), false))
+                    ).build();
+            publicKeyByWIF.put(wif, publicKey);
+            wifByPublicKey.put(publicKey.getData(), wif);
         }
-        return Type.public_key_type.newBuilder()
-                .setData(ByteString.copyFrom(
-                        toByteArray(wif.substring(PUBLIC_KEY_PREFIX.length()), false))
-                ).build();
+        return publicKey;
     }
 
     public static Type.private_key_type toPrivateKey(String wif) {
-        return Type.private_key_type.newBuilder()
-                .setData(ByteString.copyFrom(toByteArray(wif, true)))
-                .build();
+        Type.private_key_type privateKey = privateKeyByWIF.get(wif);
+        if (privateKey == null) {
+            privateKey = Type.private_key_type.newBuilder()
+                    .setData(ByteString.copyFrom(toByteArray(wif, true)))
+                    .build();
+            privateKeyByWIF.put(wif, privateKey);
+            wifByPrivateKey.put(privateKey.getData(), wif);
+        }
+        return privateKey;
+    }
+
+    /**
+     * Drop all cached conversion results.
+     * <p>Private keys stay in the caches until evicted, call this method to wipe them out earlier,
+     * e.g. after a keystore is closed.</p>
+     */
+    public static void clearCache() {
+        publicKeyByWIF.clear();
+        wifByPublicKey.clear();
+        privateKeyByWIF.clear();
+        wifByPrivateKey.clear();
     }
 
     private static String fromByteArray(byte[] data, Boolean addLeadingOne) {
@@ -73,4 +123,35 @@ public class WIF {
     private static byte[] hash(byte[] data) {
         return Hash.sha256(Hash.sha256(data));
     }
+
+    // a thread-safe map with bounded size. lookups take no lock, so that concurrent signers
+    // don't serialize on it. when full, an arbitrary entry is evicted rather than the eldest one.
+    private static class Cache<K, V> {
+        private final ConcurrentHashMap<K, V> map;
+        private final int capacity;
+
+        Cache(int capacity) {
+            this.map = new ConcurrentHashMap<>(capacity * 4 / 3 + 1);
+            this.capacity = capacity;
+        }
+
+        V get(K key) {
+            return map.get(key);
+        }
+
+        void put(K key, V value) {
+            if (map.size() >= capacity) {
+                Iterator<K> it = map.keySet().iterator();
+                if (it.hasNext()) {
+                    it.next();
+                    it.remove();
+                }
+            }
+            map.put(key, value);
+        }
+
+        void clear() {
+            map.clear();
+        }
+    }
 }
@@ -1,41 +1,98 @@
 package io.contentos.android.sdk.encoding;
 
-import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
 import java.util.zip.Deflater;
-import java.util.zip.Inflater;
 
+/**
+ * Zlib compression helpers.
+ * <p>All methods borrow a pooled {@link ZlibCodec}, use {@link ZlibCodec} directly for
+ * streaming compression.</p>
+ */
 public class Zlib {
 
+    //
+    // Preset dictionary for contract ABIs.
+    // It's made of the vocabulary shared by cosio ABI files, in both compact and pretty-printed
+    // JSON. Most frequent strings come last, so that they're cheapest to reference.
+    //
+    private static final byte[] ABI_DICTIONARY = (
+            "\"ricardian_contract\":\"\",\"error_messages\":[],\"abi_extensions\":[],\"variants\":[]," +
+            "\"new_type_name\":\"\",\"types\":[],\"secondary\":[],\"primary\":\"\"," +
+            "\"type\":\"bool\"},{\"name\":\"\",\"type\":\"int64\"},{\"name\":\"\",\"type\":\"int32\"}," +
+            "{\"name\":\"\",\"type\":\"uint8\"},{\"name\":\"\",\"type\":\"uint16\"},{\"name\":\"\",\"type\":\"uint32\"}," +
+            "{\"name\":\"\",\"type\":\"uint64\"},{\"name\":\"\",\"type\":\"string\"},{\"name\":\"\",\"type\":\"name\"}]}," +
+            "\n    {\n      \"name\": \"\",\n      \"type\": \"\",\n      \"primary\": \"\",\n      \"secondary\": []\n    }" +
+            "\n  ],\n  \"tables\": [\n  ],\n  \"actions\": [\n    {\n      \"name\": \"\",\n      \"type\": \"\"\n    }" +
+            "\n    {\n      \"name\": \"\",\n      \"base\": \"\",\n      \"fields\": [\n        {\n          \"name\": \"\",\n          \"type\": \"string\"\n        }" +
+            "{\n  \"version\": \"cosio::abi/1.0\",\n  \"types\": [],\n  \"structs\": [\n" +
+            "\"tables\":[{\"name\":\"\",\"type\":\"\",\"primary\":\"\",\"secondary\":[]}]," +
+            "\"actions\":[{\"name\":\"\",\"type\":\"\"}]," +
+            "{\"version\":\"cosio::abi/1.0\",\"types\":[],\"structs\":[" +
+            "{\"name\":\"\",\"base\":\"\",\"fields\":[{\"name\":\"\",\"type\":\"string\"},{\"name\":\"\",\"type\":\"uint64\"}]}"
+    ).getBytes(Charset.forName("UTF-8"));
+
+    /**
+     * Get the preset dictionary for contract ABI compression.
+     * <p>Block chain nodes decompress contract ABIs without any dictionary, so this dictionary
+     * must not be used for data sent in transactions. It's meant for ABIs stored or exchanged
+     * off-chain, e.g. local ABI caches.</p>
+     * @return a copy of the dictionary.
+     */
+    public static byte[] abiDictionary() {
+        return ABI_DICTIONARY.clone();
+    }
+
     public static byte[] compress(byte[] plain) {
-        Deflater compressor = new Deflater();
-        compressor.setInput(plain);
-        compressor.finish();
-
-        byte[] buffer = new byte[4096];
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        while (!compressor.finished()) {
-            int n = compressor.deflate(buffer);
-            output.write(buffer, 0, n);
+        return compress(plain, Deflater.DEFAULT_COMPRESSION, null);
+    }
+
+    /**
+     * Compress data.
+     * @param plain         the plain data
+     * @param level         compression level, see {@link ZlibCodec#setLevel}
+     * @param dictionary    the preset dictionary, or null for no dictionary
+     * @return compressed data.
+     */
+    public static byte[] compress(byte[] plain, int level, byte[] dictionary) {
+        ZlibCodec codec = ZlibCodec.obtain();
+        try {
+            return codec.setLevel(level).setDictionary(dictionary).compress(plain, 0, plain.length);
+        } finally {
+            codec.close();
         }
-        return output.toByteArray();
     }
 
     public static byte[] decompress(byte[] compressed) {
-        Inflater decompressor = new Inflater();
-        decompressor.setInput(compressed);
-
-        byte[] buffer = new byte[4096];
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        while (!decompressor.finished()) {
-            try {
-                int n = decompressor.inflate(buffer);
-                output.write(buffer, 0, n);
-            } catch (Exception e) {
-                return null;
-            }
+        return decompress(compressed, 0);
+    }
+
+    /**
+     * Decompress data.
+     * @param compressed    the compressed data
+     * @param expectedSize  the expected size of plain data, or 0 if unknown
+     * @return plain data, or null if decompression failed.
+     */
+    public static byte[] decompress(byte[] compressed, int expectedSize) {
+        return decompress(compressed, expectedSize, null);
+    }
+
+    /**
+     * Decompress data.
+     * @param compressed    the compressed data
+     * @param expectedSize  the expected size of plain data, or 0 if unknown
+     * @param dictionary    the preset dictionary used by compression, or null for no dictionary
+     * @return plain data, or null if decompression failed.
+     */
+    public static byte[] decompress(byte[] compressed, int expectedSize, byte[] dictionary) {
+        ZlibCodec codec = ZlibCodec.obtain();
+        try {
+            return codec.setDictionary(dictionary).decompress(compressed, 0, compressed.length, expectedSize);
+        } catch (Exception e) {
+            return null;
+        } finally {
+            codec.close();
         }
-        return output.toByteArray();
     }
 
     public static byte[] compressString(String s) {
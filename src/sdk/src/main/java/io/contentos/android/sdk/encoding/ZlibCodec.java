@@ -0,0 +1,491 @@
+package io.contentos.android.sdk.encoding;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Reusable zlib compressor and decompressor.
+ *
+ * <p>A codec owns a native {@link Deflater} and {@link Inflater}, which are expensive to create
+ * and hold native memory until {@link Deflater#end()}/{@link Inflater#end()} is called. Codecs
+ * are therefore pooled. Borrow one by {@link #obtain()} and always hand it back by {@link #close()},
+ * <pre>
+ *     ZlibCodec codec = ZlibCodec.obtain();
+ *     try {
+ *         codec.compress(input, output);
+ *     } finally {
+ *         codec.close();
+ *     }
+ * </pre>
+ * A codec is not thread-safe, it must be used by one thread at a time.
+ *
+ * <p>Compression level, strategy and preset dictionary can be configured per use, e.g.
+ * <pre>
+ *     codec.setLevel(Deflater.BEST_COMPRESSION).setSkipIncompressible(true).compress(...);
+ * </pre>
+ * Settings are restored to defaults when the codec is handed back to the pool.</p>
+ */
+public final class ZlibCodec implements Closeable {
+
+    private static final int BUFFER_SIZE = 16384;
+
+    // maximum number of idle codecs kept by the pool.
+    private static final int MAX_POOLED = 4;
+
+    // size of the leading sample used to test compressibility.
+    private static final int PROBE_SIZE = BUFFER_SIZE;
+
+    // data are considered incompressible if the sample shrinks less than this ratio.
+    private static final double INCOMPRESSIBLE_RATIO = 0.97;
+
+    private static final ConcurrentLinkedQueue<ZlibCodec> pool = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    private Deflater deflater;
+    private Inflater inflater;
+    private byte[] inputBuffer;
+    private byte[] outputBuffer;
+    private boolean inUse;
+
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private int strategy = Deflater.DEFAULT_STRATEGY;
+    private byte[] dictionary;
+    private boolean skipIncompressible;
+
+    private ZlibCodec() {
+    }
+
+    /**
+     * Borrow a codec from the pool, or create a new one if the pool is empty.
+     * @return the codec.
+     */
+    public static ZlibCodec obtain() {
+        ZlibCodec codec = pool.poll();
+        if (codec != null) {
+            pooled.decrementAndGet();
+        } else {
+            codec = new ZlibCodec();
+        }
+        codec.inUse = true;
+        return codec;
+    }
+
+    /**
+     * Release native resources of all idle codecs in the pool.
+     */
+    public static void clearPool() {
+        ZlibCodec codec;
+        while ((codec = pool.poll()) != null) {
+            pooled.decrementAndGet();
+            codec.end();
+        }
+    }
+
+    /**
+     * Set the compression level.
+     * @param level compression level, from {@link Deflater#NO_COMPRESSION} to {@link Deflater#BEST_COMPRESSION},
+     *              or {@link Deflater#DEFAULT_COMPRESSION}
+     * @return {@code this}
+     */
+    public ZlibCodec setLevel(int level) {
+        checkInUse();
+        if ((level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("invalid compression level " + level);
+        }
+        this.level = level;
+        return this;
+    }
+
+    /**
+     * Set the compression strategy.
+     * @param strategy one of {@link Deflater#DEFAULT_STRATEGY}, {@link Deflater#FILTERED} and {@link Deflater#HUFFMAN_ONLY}
+     * @return {@code this}
+     */
+    public ZlibCodec setStrategy(int strategy) {
+        checkInUse();
+        if (strategy != Deflater.DEFAULT_STRATEGY && strategy != Deflater.FILTERED && strategy != Deflater.HUFFMAN_ONLY) {
+            throw new IllegalArgumentException("invalid compression strategy " + strategy);
+        }
+        this.strategy = strategy;
+        return this;
+    }
+
+    /**
+     * Set the preset dictionary for both compression and decompression.
+     * <p>Data compressed with a dictionary can only be decompressed with the same dictionary.</p>
+     * @param dictionary the dictionary, or null for no dictionary
+     * @return {@code this}
+     */
+    public ZlibCodec setDictionary(byte[] dictionary) {
+        checkInUse();
+        this.dictionary = dictionary;
+        return this;
+    }
+
+    /**
+     * Enable or disable the skip path for incompressible data.
+     * <p>If enabled, a leading sample is compressed at the fastest level first. Data are stored
+     * without compression if the sample doesn't shrink, which saves CPU on already compressed or
+     * random data. Output is always a valid zlib stream.</p>
+     * @param skip enable or disable
+     * @return {@code this}
+     */
+    public ZlibCodec setSkipIncompressible(boolean skip) {
+        checkInUse();
+        this.skipIncompressible = skip;
+        return this;
+    }
+
+    /**
+     * Hand this codec back to the pool. The codec must not be used any more.
+     * If the pool is full, native resources are released immediately.
+     */
+    @Override
+    public void close() {
+        if (!inUse) {
+            return;
+        }
+        inUse = false;
+        level = Deflater.DEFAULT_COMPRESSION;
+        strategy = Deflater.DEFAULT_STRATEGY;
+        dictionary = null;
+        skipIncompressible = false;
+        if (deflater != null) {
+            deflater.reset();
+        }
+        if (inflater != null) {
+            inflater.reset();
+        }
+        if (pooled.incrementAndGet() <= MAX_POOLED) {
+            pool.offer(this);
+        } else {
+            pooled.decrementAndGet();
+            end();
+        }
+    }
+
+    /**
+     * Compress data.
+     * <p>The output buffer is presized to the zlib worst-case bound, so that no intermediate
+     * copies are made during compression.</p>
+     * @param data      the plain data
+     * @param offset    offset of plain data
+     * @param length    size of plain data
+     * @return compressed data.
+     */
+    public byte[] compress(byte[] data, int offset, int length) {
+        Deflater d = deflater(effectiveLevel(data, offset, length, length));
+        d.setInput(data, offset, length);
+        d.finish();
+        byte[] output = new byte[compressBound(length)];
+        int size = 0;
+        while (!d.finished()) {
+            if (size == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            size += d.deflate(output, size, output.length - size);
+        }
+        return size == output.length ? output : Arrays.copyOf(output, size);
+    }
+
+    /**
+     * Compress remaining bytes of a buffer.
+     * The buffer's position is advanced to its limit.
+     * @param data the plain data
+     * @return compressed data.
+     */
+    public byte[] compress(ByteBuffer data) {
+        if (data.hasArray()) {
+            byte[] r = compress(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            data.position(data.limit());
+            return r;
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream(compressBound(data.remaining()));
+        try {
+            compress(data, output);
+        } catch (IOException e) {
+            // writing to a memory stream never fails.
+            throw new RuntimeException(e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Compress remaining bytes of a buffer and write results to a stream.
+     * The buffer's position is advanced to its limit. Direct buffers, e.g. memory-mapped files,
+     * are read in small chunks, so they're never entirely copied into heap.
+     * @param data      the plain data
+     * @param output    the output stream
+     * @return number of compressed bytes written.
+     * @throws IOException if writing failed.
+     */
+    public long compress(ByteBuffer data, OutputStream output) throws IOException {
+        if (data.hasArray()) {
+            byte[] array = data.array();
+            int offset = data.arrayOffset() + data.position();
+            int length = data.remaining();
+            Deflater d = deflater(effectiveLevel(array, offset, length, length));
+            // input is fed in the same chunks as other sources, since stored blocks depend on them.
+            for (int i = 0; i < length; i += BUFFER_SIZE) {
+                d.setInput(array, offset + i, Math.min(BUFFER_SIZE, length - i));
+                drain(d, output);
+            }
+            data.position(data.limit());
+            return finish(d, output);
+        }
+        byte[] in = inputBuffer();
+        int sampleSize = Math.min(in.length, data.remaining());
+        data.duplicate().get(in, 0, sampleSize);
+        Deflater d = deflater(effectiveLevel(in, 0, sampleSize, data.remaining()));
+        while (data.hasRemaining()) {
+            int n = Math.min(in.length, data.remaining());
+            data.get(in, 0, n);
+            d.setInput(in, 0, n);
+            drain(d, output);
+        }
+        return finish(d, output);
+    }
+
+    /**
+     * Compress all bytes from a stream and write results to another stream.
+     * Neither of the streams is closed. Results are the same as compressing a buffer of the same
+     * bytes with {@link #compress(ByteBuffer, OutputStream)}.
+     * @param input     the input stream of plain data
+     * @param output    the output stream
+     * @return number of compressed bytes written.
+     * @throws IOException if reading or writing failed.
+     */
+    public long compress(InputStream input, OutputStream output) throws IOException {
+        byte[] in = inputBuffer();
+        int n = readFully(input, in);
+        // a full buffer means there may be more data, exact size doesn't matter.
+        Deflater d = deflater(effectiveLevel(in, 0, n, n < in.length ? n : Long.MAX_VALUE));
+        while (n > 0) {
+            d.setInput(in, 0, n);
+            drain(d, output);
+            n = readFully(input, in);
+        }
+        return finish(d, output);
+    }
+
+    // fill the buffer unless the stream ends, so that chunks don't depend on how the stream reads.
+    private static int readFully(InputStream input, byte[] buffer) throws IOException {
+        int n = 0;
+        while (n < buffer.length) {
+            int r = input.read(buffer, n, buffer.length - n);
+            if (r < 0) {
+                break;
+            }
+            n += r;
+        }
+        return n;
+    }
+
+    /**
+     * Decompress data.
+     * @param data          the compressed data
+     * @param offset        offset of compressed data
+     * @param length        size of compressed data
+     * @param expectedSize  the expected size of plain data, or 0 if unknown. output buffer is
+     *                      presized to it, and only grown if plain data turns out larger.
+     * @return plain data.
+     * @throws DataFormatException if data is not a valid zlib stream.
+     */
+    public byte[] decompress(byte[] data, int offset, int length, int expectedSize) throws DataFormatException {
+        Inflater inf = inflater();
+        inf.setInput(data, offset, length);
+        byte[] output = new byte[expectedSize > 0 ? expectedSize : Math.max(64, length * 4)];
+        byte[] probe = null;
+        int size = 0;
+        while (!inf.finished()) {
+            if (size == output.length) {
+                // the end of stream may still have to be read, grow only if there's more data.
+                if (probe == null) {
+                    probe = new byte[1];
+                }
+                int n = inf.inflate(probe);
+                if (n == 0) {
+                    if (inf.needsDictionary()) {
+                        setInflaterDictionary(inf);
+                    } else if (inf.needsInput() && !inf.finished()) {
+                        throw new DataFormatException("incomplete zlib stream");
+                    }
+                    continue;
+                }
+                output = Arrays.copyOf(output, output.length * 2);
+                output[size++] = probe[0];
+                continue;
+            }
+            int n = inf.inflate(output, size, output.length - size);
+            if (n == 0 && !inf.finished()) {
+                if (inf.needsDictionary()) {
+                    setInflaterDictionary(inf);
+                } else if (inf.needsInput()) {
+                    throw new DataFormatException("incomplete zlib stream");
+                }
+            }
+            size += n;
+        }
+        return size == output.length ? output : Arrays.copyOf(output, size);
+    }
+
+    /**
+     * Decompress all bytes from a stream and write results to another stream.
+     * Neither of the streams is closed.
+     * @param input     the input stream of compressed data
+     * @param output    the output stream
+     * @return number of plain bytes written.
+     * @throws IOException if reading or writing failed, or the input is not a valid zlib stream.
+     */
+    public long decompress(InputStream input, OutputStream output) throws IOException {
+        Inflater inf = inflater();
+        byte[] in = inputBuffer();
+        byte[] out = outputBuffer();
+        try {
+            while (!inf.finished()) {
+                int n = inf.inflate(out);
+                if (n > 0) {
+                    output.write(out, 0, n);
+                } else if (inf.finished()) {
+                    break;
+                } else if (inf.needsInput()) {
+                    int r = input.read(in);
+                    if (r < 0) {
+                        throw new EOFException("unexpected end of zlib stream");
+                    }
+                    inf.setInput(in, 0, r);
+                } else if (inf.needsDictionary()) {
+                    setInflaterDictionary(inf);
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+        return inf.getBytesWritten();
+    }
+
+    // the worst-case compressed size of given plain data size, same as zlib's compressBound().
+    static int compressBound(int size) {
+        return size + (size >>> 12) + (size >>> 14) + (size >>> 25) + 13;
+    }
+
+    private void drain(Deflater d, OutputStream output) throws IOException {
+        byte[] out = outputBuffer();
+        while (!d.needsInput()) {
+            int n = d.deflate(out);
+            if (n > 0) {
+                output.write(out, 0, n);
+            }
+        }
+    }
+
+    private long finish(Deflater d, OutputStream output) throws IOException {
+        byte[] out = outputBuffer();
+        d.finish();
+        while (!d.finished()) {
+            int n = d.deflate(out);
+            if (n > 0) {
+                output.write(out, 0, n);
+            }
+        }
+        return d.getBytesWritten();
+    }
+
+    private Deflater deflater(int level) {
+        checkInUse();
+        if (deflater == null) {
+            deflater = new Deflater(level);
+        } else {
+            deflater.reset();
+            deflater.setLevel(level);
+        }
+        deflater.setStrategy(strategy);
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        return deflater;
+    }
+
+    // the compression level to use for data of given total size, starting with given sample.
+    private int effectiveLevel(byte[] sample, int offset, int length, long totalSize) {
+        // probing payloads smaller than a sample costs as much as compressing them. a stream filling
+        // a sample may be larger, so payloads of exactly a sample are probed too.
+        if (!skipIncompressible || level == Deflater.NO_COMPRESSION || totalSize < PROBE_SIZE) {
+            return level;
+        }
+        int sampleSize = Math.min(length, PROBE_SIZE);
+        Deflater d = deflater(Deflater.BEST_SPEED);
+        d.setInput(sample, offset, sampleSize);
+        d.finish();
+        byte[] out = outputBuffer();
+        while (!d.finished()) {
+            d.deflate(out);
+        }
+        return d.getBytesWritten() >= sampleSize * INCOMPRESSIBLE_RATIO ? Deflater.NO_COMPRESSION : level;
+    }
+
+    private void setInflaterDictionary(Inflater inf) throws DataFormatException {
+        if (dictionary == null) {
+            throw new DataFormatException("preset dictionary required");
+        }
+        try {
+            inf.setDictionary(dictionary);
+        } catch (IllegalArgumentException e) {
+            throw new DataFormatException("preset dictionary mismatched");
+        }
+    }
+
+    private Inflater inflater() {
+        checkInUse();
+        if (inflater == null) {
+            inflater = new Inflater();
+        } else {
+            inflater.reset();
+        }
+        return inflater;
+    }
+
+    private byte[] inputBuffer() {
+        if (inputBuffer == null) {
+            inputBuffer = new byte[BUFFER_SIZE];
+        }
+        return inputBuffer;
+    }
+
+    private byte[] outputBuffer() {
+        if (outputBuffer == null) {
+            outputBuffer = new byte[BUFFER_SIZE];
+        }
+        return outputBuffer;
+    }
+
+    private void checkInUse() {
+        if (!inUse) {
+            throw new IllegalStateException("codec already closed");
+        }
+    }
+
+    private void end() {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+        inputBuffer = null;
+        outputBuffer = null;
+    }
+}
@@ -2,32 +2,144 @@ package io.contentos.android.sdk.keystore;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
-import javax.crypto.CipherOutputStream;
 import javax.crypto.SealedObject;
 import javax.crypto.spec.SecretKeySpec;
 
 import io.contentos.android.sdk.crypto.Hash;
 import io.contentos.android.sdk.crypto.Key;
+import io.contentos.android.sdk.crypto.PrivateKey;
+import io.contentos.android.sdk.crypto.PublicKey;
 import io.contentos.android.sdk.encoding.WIF;
 import io.contentos.android.sdk.prototype.Type;
 
+/**
+ * Encrypted keystore file.
+ *
+ * <p>Keys are stored in individually encrypted entries indexed by account names, plus an
+ * append-only log of later changes, see {@link KeyStoreFile}. Opening a keystore decrypts the
+ * index only, and a lookup decrypts a single entry. Every mutation costs one small write
+ * regardless of the number of keys. The log is merged into the entries in background once it
+ * grows large.</p>
+ *
+ * <p>Reads take no locks, they are served from an immutable view of keys, which is replaced as a
+ * whole by mutations. Mutations are serialized.</p>
+ *
+ * <p>By default, a mutation is written to file before it returns. In write-behind mode (see
+ * {@link Options#setWriteBehind}), mutations take effect in memory immediately, and a background
+ * thread writes all mutations made within a short delay by a single flush. Call {@link #flush()}
+ * to write pending mutations at once, and {@link #close()} to flush and release the file. If a
+ * background write fails, mutations throw until a flush succeeds.</p>
+ *
+ * <p>A failed background compaction leaves the log valid, so mutations go on. It's counted (see
+ * {@link #compactionFailures()}), and retried once the log grows further.</p>
+ *
+ * <p>Keystore files created by earlier versions of SDK are converted on open. Their keys which
+ * aren't valid WIF private keys are kept as they are, without public keys, and reported by
+ * {@link #getInvalidLegacyAccounts()}.</p>
+ */
 public class KeyStore implements KeystoreAPI {
-    private static final String CRYPTO_ALGORITHM = "AES";
-    private static final String CRYPTO_TRANSFORM = "AES/ECB/PKCS5Padding";
+    private static final String LEGACY_CRYPTO_ALGORITHM = "AES";
+    private static final String LEGACY_CRYPTO_TRANSFORM = "AES/ECB/PKCS5Padding";
 
-    private HashMap<String, String> keys = new HashMap<>();
+    /**
+     * How hard a keystore tries to make written mutations survive failures.
+     */
+    public enum Durability {
+        /**
+         * Every write is forced to storage device. Written mutations survive power failures.
+         */
+        SYNC,
 
-    private String password;
-    private File file;
+        /**
+         * Writes are handed over to operating system without waiting for storage device.
+         * Written mutations survive app crashes, but may get lost on power failures.
+         */
+        NO_SYNC,
+    }
+
+    /**
+     * Keystore options.
+     */
+    public static final class Options {
+        private long writeBehindDelayMillis;
+        private Durability durability = Durability.SYNC;
+
+        /**
+         * Enable or disable write-behind mode.
+         * @param delay max delay of writes, or 0 to disable write-behind mode
+         * @param unit  time unit of delay
+         * @return this options.
+         */
+        public Options setWriteBehind(long delay, TimeUnit unit) {
+            if (delay < 0) {
+                throw new IllegalArgumentException("negative write-behind delay");
+            }
+            this.writeBehindDelayMillis = unit.toMillis(delay);
+            return this;
+        }
+
+        /**
+         * Set durability of writes, default is {@link Durability#SYNC}.
+         * @param durability the durability
+         * @return this options.
+         */
+        public Options setDurability(Durability durability) {
+            if (durability == null) {
+                throw new IllegalArgumentException("null durability");
+            }
+            this.durability = durability;
+            return this;
+        }
+    }
+
+    // a shared background thread for delayed writes and log compactions of all keystores.
+    private static final ScheduledExecutorService background = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "keystore-writer");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final long writeBehindDelayMillis;
+    private final boolean fsync;
+
+    // serializes flushes and compaction finishes. it's taken before the monitor of this object if
+    // both are needed. In write-behind mode, flushes write with this lock held but the monitor
+    // released, so that mutations don't wait for disk. In sync mode, mutations append to file with
+    // the monitor held only, which serializes them with compaction finishes holding both.
+    private final Object ioLock = new Object();
+
+    // reads go to store without locking, see KeyStoreFile.View.
+    private volatile KeyStoreFile store;
+    private boolean closed;
+    private boolean flushScheduled;
+    private boolean compactionScheduled;
+    private Exception writeError;
+    private long compactionFailures;
+    private final List<String> invalidLegacyAccounts = new ArrayList<>();
 
     /**
      * Open an existing or create a new keystore.
@@ -36,93 +148,449 @@ public class KeyStore implements KeystoreAPI {
      * @return the keystore instance.
      */
     public static KeyStore openOrCreate(File file, String password) {
-        KeyStore keyStore = new KeyStore(file, password);
-        if (!file.exists()) {
-            keyStore.save();
-        } else {
-            keyStore.load();
+        return openOrCreate(file, password, new Options());
+    }
+
+    /**
+     * Open an existing or create a new keystore.
+     * @param file      the keystore file
+     * @param password  password of keystore
+     * @param options   keystore options
+     * @return the keystore instance.
+     */
+    public static KeyStore openOrCreate(File file, String password, Options options) {
+        KeyStore keyStore = new KeyStore(options);
+        try {
+            // the password is only used here to derive the key, it's never kept.
+            if (!file.exists() || file.length() == 0) {
+                keyStore.store = KeyStoreFile.create(file, password, Collections.<KeyStoreFile.Mutation>emptyList());
+            } else if (KeyStoreFile.isKeyStoreFile(file)) {
+                keyStore.store = KeyStoreFile.open(file, password);
+            } else {
+                keyStore.store = KeyStoreFile.create(file, password, legacyPuts(loadLegacy(file, password), keyStore.invalidLegacyAccounts));
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
         }
         return keyStore;
     }
 
-    private KeyStore(File file, String password) {
-        this.file = file;
-        this.password = password;
+    private KeyStore(Options options) {
+        this.writeBehindDelayMillis = options.writeBehindDelayMillis;
+        this.fsync = options.durability == Durability.SYNC;
+    }
+
+    /**
+     * Write pending mutations to file. It's only needed in write-behind mode.
+     * <p>Mutations failing to be written stay pending, so that flush can be retried. A successful
+     * flush also clears the error of a failed background write.</p>
+     */
+    public void flush() {
+        synchronized (ioLock) {
+            List<KeyStoreFile.Mutation> mutations;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                flushScheduled = false;
+                mutations = store.takeStaged();
+            }
+            try {
+                store.write(mutations, fsync);
+            } catch (IOException e) {
+                synchronized (this) {
+                    store.restage(mutations);
+                    writeError = e;
+                }
+                throw new RuntimeException(e);
+            }
+            synchronized (this) {
+                writeError = null;
+            }
+        }
+    }
+
+    /**
+     * Rewrite the keystore file with all keys in indexed entries and an empty log, e.g. before
+     * the file is backed up. Pending mutations of write-behind mode are written as well.
+     * <p>It's done in background automatically when the log grows large, calling this method
+     * is never required.</p>
+     */
+    public void compact() {
+        Future<?> future = background.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                // compactions begin and end within tasks of the background thread, so none is in progress.
+                KeyStoreFile.Compaction compaction;
+                synchronized (KeyStore.this) {
+                    if (closed) {
+                        throw new IllegalStateException("keystore closed");
+                    }
+                    compaction = store.beginCompaction();
+                }
+                compact(compaction);
+                return null;
+            }
+        });
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Get accounts of a converted keystore file of an earlier SDK version whose keys aren't valid
+     * WIF private keys. Their keys are kept as they are, but can't be found by public keys.
+     * <p>Only the open converting the file reports them.</p>
+     * @return account names, empty if none or if the file wasn't converted by this open.
+     */
+    public List<String> getInvalidLegacyAccounts() {
+        return Collections.unmodifiableList(invalidLegacyAccounts);
+    }
+
+    /**
+     * Get the number of background compactions which failed.
+     * @return number of failed compactions.
+     */
+    public synchronized long compactionFailures() {
+        return compactionFailures;
+    }
+
+    /**
+     * Flush pending mutations and close the keystore file. The keystore must not be used any more.
+     */
+    public void close() {
+        synchronized (ioLock) {
+            RuntimeException error = null;
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                error = e;
+            }
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    store.close();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
     }
 
     //
     // KeyStoreAPI implementation
     //
 
-    public synchronized String getKey(String account) {
-        return keys.get(account);
+    public String getKey(String account) {
+        try {
+            return store.get(account);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
     }
 
-    public synchronized void addKey(String account, String wifPrivateKey) {
-        keys.put(account, wifPrivateKey);
-        save();
+    public void addKey(String account, String wifPrivateKey) {
+        // public key derivation is slow, do it without holding the lock.
+        KeyStoreFile.Mutation put = put(account, wifPrivateKey);
+        synchronized (this) {
+            apply(Collections.singletonList(put));
+        }
     }
 
-    public synchronized void addKeyByMnemonic(String account, String mnemonic) {
+    public void addKeyByMnemonic(String account, String mnemonic) {
+        // key derivation is slow, do it without holding the lock.
         Type.private_key_type privateKey = Key.generateFromMnemonic(mnemonic);
-        String wifPrivateKey = WIF.fromPrivateKey(privateKey);
-        keys.put(account, wifPrivateKey);
-        save();
+        addKey(account, WIF.fromPrivateKey(privateKey));
     }
 
     public synchronized void removeKey(String account) {
-        keys.remove(account);
-        save();
+        if (store.contains(account)) {
+            apply(Collections.singletonList(new KeyStoreFile.Mutation(account, null, null)));
+        }
+    }
+
+    public List<String> getAccounts() {
+        return store.accounts();
+    }
+
+    public String getPublicKey(String account) {
+        PublicKey publicKey = store.getPublicKey(account);
+        return publicKey != null ? publicKey.toWIF() : null;
     }
 
-    public synchronized List<String> getAccounts() {
-        return new ArrayList<>(keys.keySet());
+    public String getAccountByPublicKey(String wifPublicKey) {
+        return store.getAccount(PublicKey.fromWIF(wifPublicKey));
     }
 
-    // load from keystore file
-    private void load() {
+    public Map<String, String> getKeys() {
+        KeyStoreFile.View view = store.view();
+        Map<String, String> keys = new HashMap<>();
         try {
-            SecretKeySpec sks = new SecretKeySpec(Hash.sha256(password.getBytes()), CRYPTO_ALGORITHM);
-            Cipher cipher = Cipher.getInstance(CRYPTO_TRANSFORM);
-            cipher.init(Cipher.DECRYPT_MODE, sks);
+            for (String account : store.accounts(view)) {
+                keys.put(account, store.get(view, account));
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return keys;
+    }
 
-            FileInputStream fInput = new FileInputStream(file);
-            CipherInputStream cIn = new CipherInputStream(fInput, cipher);
-            ObjectInputStream objIn = new ObjectInputStream(cIn);
+    public void addKeys(Map<String, String> wifPrivateKeys) {
+        // public key derivation is slow, do it without holding the lock.
+        List<KeyStoreFile.Mutation> mutations = puts(wifPrivateKeys);
+        synchronized (this) {
+            apply(mutations);
+        }
+    }
 
-            SealedObject so = (SealedObject) objIn.readObject();
-            this.keys = (HashMap<String, String>) so.getObject(cipher);
+    public void addKeysByMnemonic(Map<String, String> mnemonics) {
+        // key derivation is slow, do it without holding the lock.
+        addKeys(deriveKeys(mnemonics));
+    }
 
-            objIn.close();
-            cIn.close();
-            fInput.close();
+    public synchronized void removeKeys(Collection<String> accounts) {
+        List<KeyStoreFile.Mutation> mutations = new ArrayList<>(accounts.size());
+        for (String account : accounts) {
+            if (store.contains(account)) {
+                mutations.add(new KeyStoreFile.Mutation(account, null, null));
+            }
+        }
+        apply(mutations);
+    }
 
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+    /**
+     * Derive private keys from mnemonics in parallel, using all CPU cores.
+     * @param mnemonics map of {account: 24-word mnemonic string}
+     * @return map of {account: private key in WIF encoding}.
+     */
+    static Map<String, String> deriveKeys(Map<String, String> mnemonics) {
+        return convert(mnemonics, 2, new Conversion<String>() {
+            @Override
+            public String convert(String mnemonic) {
+                return WIF.fromPrivateKey(Key.generateFromMnemonic(mnemonic));
+            }
+        });
+    }
+
+    // make a put mutation, which also validates the private key.
+    private static KeyStoreFile.Mutation put(String account, String wifPrivateKey) {
+        return new KeyStoreFile.Mutation(account, wifPrivateKey, PrivateKey.fromWIF(wifPrivateKey).publicKey());
+    }
+
+    // make put mutations, deriving public keys in parallel.
+    private static List<KeyStoreFile.Mutation> puts(Map<String, String> wifPrivateKeys) {
+        Map<String, PublicKey> publicKeys = convert(wifPrivateKeys, 64, new Conversion<PublicKey>() {
+            @Override
+            public PublicKey convert(String wif) {
+                return PrivateKey.fromWIF(wif).publicKey();
+            }
+        });
+        List<KeyStoreFile.Mutation> mutations = new ArrayList<>(wifPrivateKeys.size());
+        for (Map.Entry<String, String> e : wifPrivateKeys.entrySet()) {
+            mutations.add(new KeyStoreFile.Mutation(e.getKey(), e.getValue(), publicKeys.get(e.getKey())));
         }
+        return mutations;
     }
 
-    // save to keystore file
-    private void save() {
-        try {
-            SecretKeySpec sks = new SecretKeySpec(Hash.sha256(password.getBytes()), CRYPTO_ALGORITHM);
-            Cipher cipher = Cipher.getInstance(CRYPTO_TRANSFORM);
-            cipher.init(Cipher.ENCRYPT_MODE, sks);
+    // make put mutations of a legacy keystore, keeping invalid keys without public keys.
+    private static List<KeyStoreFile.Mutation> legacyPuts(Map<String, String> wifPrivateKeys, List<String> invalid) {
+        Map<String, PublicKey> publicKeys = convert(wifPrivateKeys, 64, new Conversion<PublicKey>() {
+            @Override
+            public PublicKey convert(String wif) {
+                try {
+                    return PrivateKey.fromWIF(wif).publicKey();
+                } catch (RuntimeException e) {
+                    return null;
+                }
+            }
+        });
+        List<KeyStoreFile.Mutation> mutations = new ArrayList<>(wifPrivateKeys.size());
+        for (Map.Entry<String, String> e : wifPrivateKeys.entrySet()) {
+            if (e.getKey() == null || e.getValue() == null) {
+                continue;
+            }
+            PublicKey publicKey = publicKeys.get(e.getKey());
+            if (publicKey == null) {
+                invalid.add(e.getKey());
+            }
+            mutations.add(new KeyStoreFile.Mutation(e.getKey(), e.getValue(), publicKey));
+        }
+        Collections.sort(invalid);
+        return mutations;
+    }
 
-            SealedObject so = new SealedObject(this.keys, cipher);
+    private interface Conversion<T> {
+        T convert(String value);
+    }
 
-            file.createNewFile();
-            FileOutputStream fout = new FileOutputStream(file, false);
-            CipherOutputStream cOut = new CipherOutputStream(fout, cipher);
-            ObjectOutputStream objOut = new ObjectOutputStream(cOut);
-            objOut.writeObject(so);
+    // convert values of a map, using all CPU cores if there are at least minParallel distinct values.
+    // each distinct value is converted only once, e.g. a key shared by many accounts.
+    private static <T> Map<String, T> convert(Map<String, String> values, int minParallel, final Conversion<T> conversion) {
+        final List<String> entries = new ArrayList<>(new LinkedHashSet<>(values.values()));
+        final Object[] results = new Object[entries.size()];
+        final int threads = Math.min(entries.size(), Runtime.getRuntime().availableProcessors());
+        if (entries.size() < minParallel || threads <= 1) {
+            for (int i = 0; i < entries.size(); i++) {
+                results[i] = conversion.convert(entries.get(i));
+            }
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> futures = new ArrayList<>(threads);
+                for (int t = 0; t < threads; t++) {
+                    final int first = t;
+                    futures.add(pool.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            for (int i = first; i < entries.size(); i += threads) {
+                                results[i] = conversion.convert(entries.get(i));
+                            }
+                        }
+                    }));
+                }
+                for (Future<?> f : futures) {
+                    f.get();
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        Map<String, T> byValue = new HashMap<>(entries.size() * 4 / 3 + 1);
+        for (int i = 0; i < entries.size(); i++) {
+            @SuppressWarnings("unchecked")
+            T result = (T) results[i];
+            byValue.put(entries.get(i), result);
+        }
+        Map<String, T> converted = new LinkedHashMap<>();
+        for (Map.Entry<String, String> e : values.entrySet()) {
+            converted.put(e.getKey(), byValue.get(e.getValue()));
+        }
+        return converted;
+    }
+
+    // persist a batch of mutations and apply them to memory
+    private void apply(List<KeyStoreFile.Mutation> mutations) {
+        if (closed) {
+            throw new IllegalStateException("keystore closed");
+        }
+        checkWriteError();
+        if (mutations.isEmpty()) {
+            return;
+        }
+        if (writeBehindDelayMillis > 0) {
+            store.stage(mutations);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                background.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            flush();
+                        } catch (RuntimeException e) {
+                            // kept in writeError, reported to callers by following mutations.
+                        }
+                    }
+                }, writeBehindDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        } else {
+            try {
+                store.append(mutations, fsync);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+        if (!compactionScheduled && store.needsCompaction()) {
+            compactionScheduled = true;
+            background.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // begun here rather than by the mutation, so that it can't overlap another one.
+                    KeyStoreFile.Compaction compaction;
+                    synchronized (KeyStore.this) {
+                        compactionScheduled = false;
+                        if (closed || !store.needsCompaction()) {
+                            return;
+                        }
+                        compaction = store.beginCompaction();
+                    }
+                    try {
+                        compact(compaction);
+                    } catch (IOException | RuntimeException e) {
+                        // the log stays valid, and the compaction is retried later.
+                        synchronized (KeyStore.this) {
+                            compactionFailures++;
+                        }
+                    }
+                }
+            });
+        }
+    }
 
-            objOut.close();
-            cOut.close();
-            fout.close();
+    // merge the log into base segment.
+    private void compact(KeyStoreFile.Compaction compaction) throws IOException {
+        boolean done = false;
+        try {
+            store.writeSnapshot(compaction);
+            synchronized (ioLock) {
+                synchronized (this) {
+                    if (!closed) {
+                        store.finishCompaction(compaction);
+                        done = true;
+                    }
+                }
+            }
+        } finally {
+            if (!done) {
+                synchronized (this) {
+                    store.abortCompaction(compaction);
+                }
+            }
+        }
+    }
 
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+    // a failed background write makes mutations fail until a flush succeeds, so that callers
+    // learn the file can't be written.
+    private void checkWriteError() {
+        if (writeError != null) {
+            throw new RuntimeException("keystore write failed", writeError);
         }
     }
+
+    // load from keystore file of SDK 1.0 format
+    @SuppressWarnings("unchecked")
+    private static HashMap<String, String> loadLegacy(File file, String password) throws Exception {
+        SecretKeySpec sks = new SecretKeySpec(Hash.sha256(password.getBytes()), LEGACY_CRYPTO_ALGORITHM);
+        Cipher cipher = Cipher.getInstance(LEGACY_CRYPTO_TRANSFORM);
+        cipher.init(Cipher.DECRYPT_MODE, sks);
+
+        FileInputStream fInput = new FileInputStream(file);
+        CipherInputStream cIn = new CipherInputStream(fInput, cipher);
+        ObjectInputStream objIn = new ObjectInputStream(cIn);
+
+        SealedObject so = (SealedObject) objIn.readObject();
+        HashMap<String, String> keys = (HashMap<String, String>) so.getObject(cipher);
+
+        objIn.close();
+        cIn.close();
+        fInput.close();
+        return keys;
+    }
 }
@@ -0,0 +1,1058 @@
+package io.contentos.android.sdk.keystore;
+
+import com.google.protobuf.ByteString;
+
+import org.spongycastle.crypto.InvalidCipherTextException;
+import org.spongycastle.crypto.PBEParametersGenerator;
+import org.spongycastle.crypto.digests.SHA256Digest;
+import org.spongycastle.crypto.generators.PKCS5S2ParametersGenerator;
+import org.spongycastle.crypto.params.KeyParameter;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.contentos.android.sdk.crypto.PublicKey;
+import io.contentos.android.sdk.prototype.Type;
+
+/**
+ * Encrypted keystore file made of an indexed base segment and an append-only log.
+ *
+ * <p>File layout,
+ * <pre>
+ *     header | check record | index record | entry | entry | ... | log record | log record | ...
+ * </pre>
+ * The header is made of magic bytes "COSK", a version byte and parameters of the key derivation
+ * function, which is PBKDF2-HMAC-SHA256 with a random salt. The key is derived once on open and
+ * kept by {@link RecordCipher} until the file is closed. The header is authenticated along with
+ * every record. Records are a 4-byte big-endian length followed by an AES-GCM sealed payload (see
+ * {@link RecordCipher}). The check record seals a constant, it tells a wrong password from a
+ * damaged file. The index record seals the sorted account names and the location of their
+ * entries. Entries have no length prefix, each of them seals a single WIF private key and is
+ * authenticated together with its account name.</p>
+ *
+ * <p>Opening a file decrypts the index only. The entries are memory-mapped and decrypted one by
+ * one on lookups, so neither open time nor heap usage depends on the size of private keys.</p>
+ *
+ * <p>Changes are appended to the log. A log record seals its sequence number, an operation (put
+ * or remove), an account name and, for puts, a WIF private key. The log is replayed on open and
+ * kept in memory as an overlay of the base segment. Compaction merges the base segment and the
+ * log into a temporary file and atomically renames it over the keystore file. Entries not changed
+ * by the log are copied as-is, without decryption.</p>
+ *
+ * <p>Keys in memory are published as an immutable {@link View}. Reads never take locks, while
+ * mutations, writes and compactions must be serialized by the caller.</p>
+ *
+ * <p>A crash during an append leaves a partial record at the end of file. It's discarded on next
+ * open. Any other damage is reported as an error.</p>
+ *
+ * <p>Public keys are stored along with account names in the index and in log records, so that
+ * they're never derived from private keys on open. Lookups by public key are served by hash
+ * indices in memory.</p>
+ */
+final class KeyStoreFile {
+    private static final byte[] MAGIC = {'C', 'O', 'S', 'K'};
+    private static final byte VERSION = 4;
+    private static final byte[] CHECK = "contentos keystore".getBytes();
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+
+    private static final byte KDF_PBKDF2_HMAC_SHA256 = 1;
+    private static final int KDF_ITERATIONS = 1 << 16;
+    private static final int KDF_MAX_ITERATIONS = 1 << 24;
+    private static final int KDF_SALT_SIZE = 16;
+    private static final int KEY_SIZE = 32;
+
+    // upper bound of a sane log record size.
+    private static final int MAX_RECORD_SIZE = 1 << 16;
+
+    // compaction isn't worth it unless the log has at least this number of records.
+    private static final int MIN_COMPACTION_RECORDS = 64;
+
+    /**
+     * A mutation of keystore.
+     */
+    static final class Mutation {
+        final String account;
+        final String wifPrivateKey;
+        final PublicKey publicKey;
+
+        /**
+         * @param account       name of account
+         * @param wifPrivateKey private key of account, or null for removal
+         * @param publicKey     public key of account, or null for removal or if unknown
+         */
+        Mutation(String account, String wifPrivateKey, PublicKey publicKey) {
+            this.account = account;
+            this.wifPrivateKey = wifPrivateKey;
+            this.publicKey = publicKey;
+        }
+
+        boolean isRemoval() {
+            return wifPrivateKey == null;
+        }
+    }
+
+    /**
+     * Immutable base segment, i.e. sorted accounts, their public keys and sealed entries.
+     */
+    static final class Segment {
+        static final Segment EMPTY = new Segment(new String[0], new int[1], new PublicKey[0], ByteBuffer.allocate(0));
+
+        private final String[] accounts;
+        private final int[] offsets;        // offsets[i] is the start of i-th entry, offsets[size] is the end of last one.
+        private final PublicKey[] publicKeys;
+        private final ByteBuffer entries;   // shared, only accessed through duplicates.
+
+        // {public key: indices of accounts}, usually a single account per key.
+        private final HashMap<PublicKey, int[]> indicesByPublicKey;
+
+        private Segment(String[] accounts, int[] offsets, PublicKey[] publicKeys, ByteBuffer entries) {
+            this.accounts = accounts;
+            this.offsets = offsets;
+            this.publicKeys = publicKeys;
+            this.entries = entries;
+            this.indicesByPublicKey = new HashMap<>(publicKeys.length * 4 / 3 + 1);
+            for (int i = 0; i < publicKeys.length; i++) {
+                if (publicKeys[i] == null) {
+                    continue;
+                }
+                int[] indices = indicesByPublicKey.get(publicKeys[i]);
+                if (indices == null) {
+                    indices = new int[]{i};
+                } else {
+                    indices = Arrays.copyOf(indices, indices.length + 1);
+                    indices[indices.length - 1] = i;
+                }
+                indicesByPublicKey.put(publicKeys[i], indices);
+            }
+        }
+
+        int size() {
+            return accounts.length;
+        }
+
+        String account(int index) {
+            return accounts[index];
+        }
+
+        PublicKey publicKey(int index) {
+            return publicKeys[index];
+        }
+
+        /**
+         * Find an account by binary search.
+         * @param account name of account
+         * @return index of the account, or a negative value if not found.
+         */
+        int indexOf(String account) {
+            return Arrays.binarySearch(accounts, account);
+        }
+
+        byte[] sealedEntry(int index) {
+            ByteBuffer buf = entries.duplicate();
+            buf.position(offsets[index]);
+            byte[] sealed = new byte[offsets[index + 1] - offsets[index]];
+            buf.get(sealed);
+            return sealed;
+        }
+    }
+
+    // a change of the overlay made by the view of a version, linked to the previous change of the same key.
+    private static final class Change<T> {
+        final int version;
+        final T value;
+        final Change<T> prev;
+
+        Change(int version, T value, Change<T> prev) {
+            this.version = version;
+            this.value = value;
+            this.prev = prev;
+        }
+
+        // the latest value as of a version.
+        static <T> T at(Change<T> c, int version) {
+            while (c != null && c.version > version) {
+                c = c.prev;
+            }
+            return c != null ? c.value : null;
+        }
+    }
+
+    // changes made by the log, shared by successive views of a base so that a mutation copies nothing.
+    // a view only sees changes up to its version. Only the latest view adds changes, older views
+    // applying mutations make a copy first. Changes are dropped with the base by compactions.
+    private static final class Overlay {
+        // mutations of accounts changed by the log.
+        final ConcurrentHashMap<String, Change<Mutation>> mutations = new ConcurrentHashMap<>();
+
+        // accounts put with a public key, to be checked against their current mutation.
+        final ConcurrentHashMap<PublicKey, Change<String>> accounts = new ConcurrentHashMap<>();
+
+        // version of the latest view, written by the serialized writers only.
+        int latest;
+    }
+
+    /**
+     * Immutable view of keys, i.e. a base segment and an overlay of changes made by the log.
+     * Readers use the current view without locking, writers replace it with a new one.
+     */
+    static final class View {
+        // its version is older than the one of its overlay, so that applying mutations makes a copy.
+        static final View EMPTY = new View(Segment.EMPTY, new Overlay(), -1, 0);
+
+        private final Segment base;
+
+        private final Overlay overlay;
+
+        // changes of the overlay seen by this view.
+        private final int version;
+
+        // number of live accounts.
+        private final int size;
+
+        private View(Segment base, Overlay overlay, int version, int size) {
+            this.base = base;
+            this.overlay = overlay;
+            this.version = version;
+            this.size = size;
+        }
+
+        // a view of base without changes.
+        static View of(Segment base, int size) {
+            return new View(base, new Overlay(), 0, size);
+        }
+
+        // the latest mutation of an account made by the log, null if unchanged.
+        Mutation mutation(String account) {
+            return Change.at(overlay.mutations.get(account), version);
+        }
+
+        // latest mutations of all accounts changed by the log, in order of account names.
+        TreeMap<String, Mutation> mutations() {
+            TreeMap<String, Mutation> mutations = new TreeMap<>();
+            for (Map.Entry<String, Change<Mutation>> e : overlay.mutations.entrySet()) {
+                Mutation m = Change.at(e.getValue(), version);
+                if (m != null) {
+                    mutations.put(e.getKey(), m);
+                }
+            }
+            return mutations;
+        }
+
+        boolean contains(String account) {
+            Mutation m = mutation(account);
+            if (m != null) {
+                return !m.isRemoval();
+            }
+            return base.indexOf(account) >= 0;
+        }
+
+        PublicKey publicKey(String account) {
+            Mutation m = mutation(account);
+            if (m != null) {
+                return m.publicKey;
+            }
+            int index = base.indexOf(account);
+            return index >= 0 ? base.publicKey(index) : null;
+        }
+
+        String accountOf(PublicKey publicKey) {
+            for (Change<String> c = overlay.accounts.get(publicKey); c != null; c = c.prev) {
+                if (c.version <= version) {
+                    Mutation m = mutation(c.value);
+                    if (m != null && publicKey.equals(m.publicKey)) {
+                        return c.value;
+                    }
+                }
+            }
+            int[] indices = base.indicesByPublicKey.get(publicKey);
+            if (indices != null) {
+                for (int index : indices) {
+                    // accounts changed by the log don't count.
+                    if (mutation(base.account(index)) == null) {
+                        return base.account(index);
+                    }
+                }
+            }
+            return null;
+        }
+
+        // make a new view with mutations applied, adding them to the overlay shared with this view.
+        View apply(List<Mutation> mutations) {
+            Overlay o = overlay;
+            if (o.latest != version) {
+                o = new Overlay();
+                for (Mutation m : mutations().values()) {
+                    add(o, m, 0);
+                }
+            }
+            int next = version + 1;
+            int nextSize = size;
+            for (Mutation m : mutations) {
+                Mutation prev = Change.at(o.mutations.get(m.account), next);
+                boolean existed = prev != null ? !prev.isRemoval() : base.indexOf(m.account) >= 0;
+                add(o, m, next);
+                if (m.isRemoval()) {
+                    if (existed) {
+                        nextSize--;
+                    }
+                } else if (!existed) {
+                    nextSize++;
+                }
+            }
+            o.latest = next;
+            return new View(base, o, next, nextSize);
+        }
+
+        private static void add(Overlay o, Mutation m, int version) {
+            o.mutations.put(m.account, new Change<>(version, m, o.mutations.get(m.account)));
+            if (m.publicKey != null) {
+                Change<String> c = o.accounts.get(m.publicKey);
+                if (c == null || !c.value.equals(m.account)) {
+                    o.accounts.put(m.publicKey, new Change<>(version, m.account, c));
+                }
+            }
+        }
+    }
+
+    /**
+     * State of a compaction in progress.
+     */
+    static final class Compaction {
+        private final View view;
+        private File tmp;
+        private String[] accounts;
+        private int[] offsets;
+        private PublicKey[] publicKeys;
+        private long entriesStart;
+
+        private Compaction(View view) {
+            this.view = view;
+        }
+    }
+
+    private final File file;
+    private final RecordCipher cipher;
+    private final byte[] header;
+    private FileOutputStream output;
+
+    // current keys, replaced as a whole on changes.
+    private volatile View view = View.EMPTY;
+
+    // sequence number of next log record written to file.
+    private long sequence;
+
+    // number of log records, including staged ones.
+    private long logRecords;
+
+    // mutations applied to memory but not written yet.
+    private List<Mutation> staged = new ArrayList<>();
+
+    // mutations appended since a compaction started, null if no compaction in progress.
+    private List<Mutation> sinceCompaction;
+
+    // log records needed before a compaction is tried again after a failed one.
+    private long retryCompactionAt;
+
+    // a failed write couldn't be removed, the end of file is unknown.
+    private boolean truncateFailed;
+
+    private KeyStoreFile(File file, RecordCipher cipher, byte[] header) {
+        this.file = file;
+        this.cipher = cipher;
+        this.header = header;
+    }
+
+    /**
+     * Check if a file is in this format.
+     * @param file the file
+     * @return true if the file starts with our magic bytes.
+     * @throws IOException if reading failed.
+     */
+    static boolean isKeyStoreFile(File file) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            new DataInputStream(in).readFully(magic);
+            return Arrays.equals(magic, MAGIC);
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Create a keystore file with given keys, replacing the existing file if any.
+     * @param file      the file
+     * @param password  password of keystore
+     * @param keys      keys to put
+     * @return the keystore file ready for appending.
+     * @throws IOException if writing failed.
+     */
+    static KeyStoreFile create(File file, String password, List<Mutation> keys) throws IOException {
+        byte[] salt = new byte[KDF_SALT_SIZE];
+        new SecureRandom().nextBytes(salt);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(KDF_PBKDF2_HMAC_SHA256);
+        out.writeInt(KDF_ITERATIONS);
+        out.write(salt);
+        out.flush();
+
+        KeyStoreFile f = new KeyStoreFile(file, newCipher(password, salt, KDF_ITERATIONS), bytes.toByteArray());
+        Compaction c = new Compaction(View.EMPTY.apply(keys));
+        f.writeSnapshot(c);
+        f.sinceCompaction = Collections.emptyList();
+        f.finishCompaction(c);
+        return f;
+    }
+
+    /**
+     * Open a keystore file, read its index and replay its log.
+     * @param file      the file
+     * @param password  password of keystore
+     * @return the keystore file ready for appending.
+     * @throws IOException if reading failed or the file is damaged.
+     * @throws InvalidCipherTextException if the password is wrong.
+     */
+    static KeyStoreFile open(File file, String password) throws IOException, InvalidCipherTextException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        KeyStoreFile f;
+        long logStart;
+        byte[] log;
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            raf.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("not a keystore file");
+            }
+            if (raf.readByte() != VERSION) {
+                throw new IOException("unsupported keystore file version");
+            }
+            if (raf.readByte() != KDF_PBKDF2_HMAC_SHA256) {
+                throw new IOException("unsupported key derivation function");
+            }
+            int iterations = raf.readInt();
+            if (iterations <= 0 || iterations > KDF_MAX_ITERATIONS) {
+                throw new IOException("keystore file damaged");
+            }
+            byte[] salt = new byte[KDF_SALT_SIZE];
+            raf.readFully(salt);
+            RecordCipher cipher = newCipher(password, salt, iterations);
+            byte[] header = new byte[(int) raf.getFilePointer()];
+            raf.seek(0);
+            raf.readFully(header);
+            f = new KeyStoreFile(file, cipher, header);
+
+            // wrong password fails here.
+            byte[] check = cipher.open(f.readRecord(raf), header);
+            if (!Arrays.equals(check, CHECK)) {
+                throw new IOException("keystore file damaged");
+            }
+            logStart = f.readSegment(raf);
+            log = new byte[(int) (raf.length() - logStart)];
+            raf.seek(logStart);
+            raf.readFully(log);
+        } catch (EOFException e) {
+            throw new IOException("keystore file damaged");
+        } finally {
+            raf.close();
+        }
+        f.replay(log, logStart);
+        f.logRecords = f.sequence;
+        f.output = new FileOutputStream(file, true);
+        return f;
+    }
+
+    /**
+     * Get current keys. Changes made after this call are not visible in the returned view.
+     * <p>This method and the reading methods below can be called without locking.</p>
+     * @return the view.
+     */
+    View view() {
+        return view;
+    }
+
+    /**
+     * Get the private key of an account, decrypting its entry if needed.
+     * @param view    the view to read
+     * @param account name of account
+     * @return private key in WIF, or null if not found.
+     * @throws IOException if the entry is damaged.
+     */
+    String get(View view, String account) throws IOException {
+        Mutation m = view.mutation(account);
+        if (m != null) {
+            return m.wifPrivateKey;
+        }
+        int index = view.base.indexOf(account);
+        if (index < 0) {
+            return null;
+        }
+        try {
+            return new String(cipher.open(view.base.sealedEntry(index), entryAad(account)), UTF8);
+        } catch (InvalidCipherTextException e) {
+            throw new IOException("keystore file damaged");
+        }
+    }
+
+    /**
+     * Get the private key of an account from current keys.
+     * @param account name of account
+     * @return private key in WIF, or null if not found.
+     * @throws IOException if the entry is damaged.
+     */
+    String get(String account) throws IOException {
+        return get(view, account);
+    }
+
+    /**
+     * Check if an account exists.
+     * @param account name of account
+     * @return true if found.
+     */
+    boolean contains(String account) {
+        return view.contains(account);
+    }
+
+    /**
+     * Get public key of an account.
+     * @param account name of account
+     * @return the public key, or null if not found.
+     */
+    PublicKey getPublicKey(String account) {
+        return view.publicKey(account);
+    }
+
+    /**
+     * Find an account by its public key.
+     * @param publicKey the public key
+     * @return name of account, or null if not found. If several accounts share the key, any of them.
+     */
+    String getAccount(PublicKey publicKey) {
+        return view.accountOf(publicKey);
+    }
+
+    /**
+     * Get number of accounts.
+     * @return number of accounts.
+     */
+    int size() {
+        return view.size;
+    }
+
+    /**
+     * Get names of all accounts.
+     * @param view the view to read
+     * @return list of account names.
+     */
+    List<String> accounts(View view) {
+        List<String> accounts = new ArrayList<>(view.size);
+        for (int i = 0; i < view.base.size(); i++) {
+            if (view.mutation(view.base.account(i)) == null) {
+                accounts.add(view.base.account(i));
+            }
+        }
+        for (Mutation m : view.mutations().values()) {
+            if (!m.isRemoval()) {
+                accounts.add(m.account);
+            }
+        }
+        return accounts;
+    }
+
+    /**
+     * Get names of all accounts.
+     * @return list of account names.
+     */
+    List<String> accounts() {
+        return accounts(view);
+    }
+
+    /**
+     * Append a batch of mutations and flush them to disk by a single write.
+     * The mutations take effect only if writing succeeded.
+     * @param mutations the mutations
+     * @param fsync     force the write to storage device
+     * @throws IOException if writing failed.
+     */
+    void append(List<Mutation> mutations, boolean fsync) throws IOException {
+        write(mutations, fsync);
+        view = view.apply(mutations);
+        logRecords += mutations.size();
+        if (sinceCompaction != null) {
+            sinceCompaction.addAll(mutations);
+        }
+    }
+
+    /**
+     * Apply a batch of mutations to memory, and queue them for a later {@link #write}.
+     * @param mutations the mutations
+     */
+    void stage(List<Mutation> mutations) {
+        view = view.apply(mutations);
+        staged.addAll(mutations);
+        logRecords += mutations.size();
+        if (sinceCompaction != null) {
+            sinceCompaction.addAll(mutations);
+        }
+    }
+
+    /**
+     * Take all mutations queued by {@link #stage}.
+     * @return the mutations in order.
+     */
+    List<Mutation> takeStaged() {
+        List<Mutation> mutations = staged;
+        staged = new ArrayList<>();
+        return mutations;
+    }
+
+    /**
+     * Put back mutations taken by {@link #takeStaged} but not written, before those staged since.
+     * @param mutations the mutations
+     */
+    void restage(List<Mutation> mutations) {
+        mutations.addAll(staged);
+        staged = mutations;
+    }
+
+    /**
+     * Write log records of mutations by a single write, without applying them to memory.
+     * <p>This method only touches the output file, it can run concurrently with mutations as long
+     * as calls of it and {@link #finishCompaction} are serialized.</p>
+     * <p>A failed write is removed from the file, so that it can be retried.</p>
+     * @param mutations the mutations
+     * @param fsync     force the write to storage device
+     * @throws IOException if writing failed.
+     */
+    void write(List<Mutation> mutations, boolean fsync) throws IOException {
+        if (mutations.isEmpty()) {
+            return;
+        }
+        if (truncateFailed) {
+            throw new IOException("keystore file damaged by a failed write");
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(mutations.size() * 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        long seq = sequence;
+        for (Mutation m : mutations) {
+            writeRecord(out, encode(m, seq++));
+        }
+        out.flush();
+        long length = output.getChannel().size();
+        try {
+            output.write(bytes.toByteArray());
+            if (fsync) {
+                output.getFD().sync();
+            }
+        } catch (IOException e) {
+            // records appended later must not follow a partial one.
+            try {
+                output.getChannel().truncate(length);
+            } catch (IOException te) {
+                truncateFailed = true;
+            }
+            throw e;
+        }
+        sequence = seq;
+    }
+
+    /**
+     * Check if compaction is needed.
+     * @return true if compaction is needed.
+     */
+    boolean needsCompaction() {
+        return sinceCompaction == null && logRecords >= MIN_COMPACTION_RECORDS && logRecords >= view.base.size() / 4
+                && logRecords >= retryCompactionAt;
+    }
+
+    /**
+     * Start a compaction. From now on, mutations are tracked until {@link #finishCompaction}.
+     * @return the compaction state, which should be passed to {@link #writeSnapshot}.
+     * @throws IllegalStateException if another compaction is in progress.
+     */
+    Compaction beginCompaction() {
+        if (sinceCompaction != null) {
+            throw new IllegalStateException("compaction in progress");
+        }
+        sinceCompaction = new ArrayList<>();
+        return new Compaction(view);
+    }
+
+    /**
+     * Write the base segment and the log as of {@link #beginCompaction} into a temporary file,
+     * which will replace this file by {@link #finishCompaction}.
+     * <p>This method doesn't touch the state of this object, it can be called without locking.</p>
+     * @param c the compaction
+     * @throws IOException if writing failed.
+     */
+    void writeSnapshot(Compaction c) throws IOException {
+        // merge base accounts and the overlay, both are sorted.
+        // an entry is either copied from base (puts[i] == null) or sealed from the overlay.
+        Segment base = c.view.base;
+        TreeMap<String, Mutation> overlay = c.view.mutations();
+        int capacity = base.size() + overlay.size();
+        List<String> accounts = new ArrayList<>(capacity);
+        List<Mutation> puts = new ArrayList<>(capacity);
+        int[] fromBase = new int[capacity];
+        Iterator<Mutation> it = overlay.values().iterator();
+        Mutation next = it.hasNext() ? it.next() : null;
+        int i = 0;
+        while (i < base.size() || next != null) {
+            int cmp = next == null ? -1 : i >= base.size() ? 1 : base.account(i).compareTo(next.account);
+            if (cmp < 0) {
+                fromBase[accounts.size()] = i;
+                accounts.add(base.account(i++));
+                puts.add(null);
+            } else {
+                if (cmp == 0) {
+                    i++;
+                }
+                if (!next.isRemoval()) {
+                    accounts.add(next.account);
+                    puts.add(next);
+                }
+                next = it.hasNext() ? it.next() : null;
+            }
+        }
+
+        // entry sizes are known before encryption, so is the index.
+        int[] offsets = new int[accounts.size() + 1];
+        PublicKey[] publicKeys = new PublicKey[accounts.size()];
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream(accounts.size() * 56 + 8);
+        DataOutputStream index = new DataOutputStream(indexBytes);
+        index.writeInt(accounts.size());
+        for (int j = 0; j < accounts.size(); j++) {
+            Mutation put = puts.get(j);
+            int entrySize = put != null ?
+                    put.wifPrivateKey.getBytes(UTF8).length + RecordCipher.OVERHEAD :
+                    base.offsets[fromBase[j] + 1] - base.offsets[fromBase[j]];
+            offsets[j + 1] = offsets[j] + entrySize;
+            publicKeys[j] = put != null ? put.publicKey : base.publicKey(fromBase[j]);
+            index.writeUTF(accounts.get(j));
+            index.writeInt(entrySize);
+            writePublicKey(index, publicKeys[j]);
+        }
+        index.flush();
+
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream fout = new FileOutputStream(tmp, false);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fout, 65536));
+            out.write(header);
+            writeRecord(out, cipher.seal(CHECK, header));
+            writeRecord(out, cipher.seal(indexBytes.toByteArray(), header));
+            c.entriesStart = out.size();
+            for (int j = 0; j < accounts.size(); j++) {
+                Mutation put = puts.get(j);
+                out.write(put != null ?
+                        cipher.seal(put.wifPrivateKey.getBytes(UTF8), entryAad(put.account)) :
+                        base.sealedEntry(fromBase[j]));
+            }
+            out.flush();
+            fout.getFD().sync();
+        } finally {
+            fout.close();
+        }
+        c.tmp = tmp;
+        c.accounts = accounts.toArray(new String[accounts.size()]);
+        c.offsets = offsets;
+        c.publicKeys = publicKeys;
+    }
+
+    /**
+     * Finish a compaction by appending mutations made since {@link #beginCompaction} to the
+     * temporary file and renaming it over this file. Staged mutations are written as well.
+     * @param c the compaction
+     * @throws IOException if writing failed.
+     */
+    void finishCompaction(Compaction c) throws IOException {
+        List<Mutation> mutations = sinceCompaction;
+        sinceCompaction = null;
+
+        FileOutputStream fout = new FileOutputStream(c.tmp, true);
+        try {
+            DataOutputStream out = new DataOutputStream(fout);
+            long seq = 0;
+            for (Mutation m : mutations) {
+                writeRecord(out, encode(m, seq++));
+            }
+            out.flush();
+            fout.getFD().sync();
+        } finally {
+            fout.close();
+        }
+        if (!c.tmp.renameTo(file)) {
+            c.tmp.delete();
+            throw new IOException("failed to replace keystore file");
+        }
+        c.tmp = null;
+        if (output != null) {
+            output.close();
+        }
+
+        Segment base = new Segment(c.accounts, c.offsets, c.publicKeys, map(file, c.entriesStart, c.offsets[c.accounts.length]));
+        view = View.of(base, base.size()).apply(mutations);
+        sequence = mutations.size();
+        logRecords = sequence;
+        retryCompactionAt = 0;
+        staged.clear();
+        truncateFailed = false;
+        output = new FileOutputStream(file, true);
+    }
+
+    /**
+     * Abort a compaction. Another one isn't needed until the log grows by the minimum number of
+     * records of a compaction.
+     * @param c the compaction
+     */
+    void abortCompaction(Compaction c) {
+        sinceCompaction = null;
+        retryCompactionAt = logRecords + MIN_COMPACTION_RECORDS;
+        if (c.tmp != null) {
+            c.tmp.delete();
+        }
+    }
+
+    /**
+     * Close the file.
+     * @throws IOException if closing failed.
+     */
+    void close() throws IOException {
+        view = View.EMPTY;
+        output.close();
+    }
+
+    // read the index and map the entries, returns the position where the log starts.
+    private long readSegment(RandomAccessFile raf) throws IOException, InvalidCipherTextException {
+        DataInputStream index = new DataInputStream(new ByteArrayInputStream(cipher.open(readRecord(raf), header)));
+        int count = index.readInt();
+        if (count < 0) {
+            throw new IOException("keystore file damaged");
+        }
+        String[] accounts = new String[count];
+        int[] offsets = new int[count + 1];
+        PublicKey[] publicKeys = new PublicKey[count];
+        for (int i = 0; i < count; i++) {
+            accounts[i] = index.readUTF();
+            int entrySize = index.readInt();
+            if (entrySize < RecordCipher.OVERHEAD || offsets[i] + entrySize < 0) {
+                throw new IOException("keystore file damaged");
+            }
+            offsets[i + 1] = offsets[i] + entrySize;
+            publicKeys[i] = readPublicKey(index);
+        }
+        long entriesStart = raf.getFilePointer();
+        if (entriesStart + offsets[count] > raf.length()) {
+            throw new IOException("keystore file damaged");
+        }
+        Segment base = new Segment(accounts, offsets, publicKeys, map(file, entriesStart, offsets[count]));
+        view = View.of(base, count);
+        return entriesStart + offsets[count];
+    }
+
+    // replay log records, truncating a partial record at the end.
+    private void replay(byte[] log, long logStart) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(log);
+        List<Mutation> mutations = new ArrayList<>();
+        while (buf.hasRemaining()) {
+            int start = buf.position();
+            if (buf.remaining() < 4) {
+                // an append interrupted while writing the length.
+                truncate(file, logStart + start);
+                break;
+            }
+            int size = buf.getInt();
+            if (size <= 0 || size > MAX_RECORD_SIZE) {
+                throw new IOException("keystore file damaged");
+            }
+            if (size > buf.remaining()) {
+                // an append interrupted while writing the record, unless records follow.
+                if (containsRecord(log, buf.position())) {
+                    throw new IOException("keystore file damaged");
+                }
+                truncate(file, logStart + start);
+                break;
+            }
+            Mutation m;
+            try {
+                m = decode(cipher.open(log, buf.position(), size, header));
+            } catch (InvalidCipherTextException e) {
+                m = null;
+            }
+            if (m == null) {
+                if (size < buf.remaining()) {
+                    // a bad record followed by other records is not caused by an interrupted append.
+                    throw new IOException("keystore file damaged");
+                }
+                // the last record, whose space was allocated but not written.
+                truncate(file, logStart + start);
+                break;
+            }
+            buf.position(buf.position() + size);
+            mutations.add(m);
+        }
+        view = view.apply(mutations);
+    }
+
+    // check if a valid record starts anywhere from a position of the log.
+    private boolean containsRecord(byte[] log, int from) {
+        ByteBuffer buf = ByteBuffer.wrap(log);
+        for (int pos = from; pos + 4 < log.length; pos++) {
+            int size = buf.getInt(pos);
+            if (size <= 0 || size > MAX_RECORD_SIZE || size > log.length - pos - 4) {
+                continue;
+            }
+            try {
+                cipher.open(log, pos + 4, size, header);
+                return true;
+            } catch (InvalidCipherTextException e) {
+                // not a record
+            }
+        }
+        return false;
+    }
+
+    private byte[] readRecord(RandomAccessFile raf) throws IOException {
+        int size = raf.readInt();
+        if (size < 0 || size > raf.length() - raf.getFilePointer()) {
+            throw new IOException("keystore file damaged");
+        }
+        byte[] record = new byte[size];
+        raf.readFully(record);
+        return record;
+    }
+
+    private byte[] encode(Mutation m, long seq) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(seq);
+        out.writeByte(m.isRemoval() ? OP_REMOVE : OP_PUT);
+        out.writeUTF(m.account);
+        if (!m.isRemoval()) {
+            out.writeUTF(m.wifPrivateKey);
+            writePublicKey(out, m.publicKey);
+        }
+        out.flush();
+        return cipher.seal(bytes.toByteArray(), header);
+    }
+
+    // decode a log record, returns null if it's not the next one in sequence.
+    private Mutation decode(byte[] plain) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(plain));
+        if (in.readLong() != sequence) {
+            return null;
+        }
+        byte op = in.readByte();
+        String account = in.readUTF();
+        String wif = null;
+        PublicKey publicKey = null;
+        if (op == OP_PUT) {
+            wif = in.readUTF();
+            publicKey = readPublicKey(in);
+        } else if (op != OP_REMOVE) {
+            return null;
+        }
+        sequence++;
+        return new Mutation(account, wif, publicKey);
+    }
+
+    private static void writePublicKey(DataOutputStream out, PublicKey publicKey) throws IOException {
+        byte[] data = publicKey != null ? publicKey.toByteArray() : new byte[0];
+        out.writeByte(data.length);
+        out.write(data);
+    }
+
+    // returns null if the public key is unknown.
+    private static PublicKey readPublicKey(DataInputStream in) throws IOException {
+        byte[] data = new byte[in.readUnsignedByte()];
+        if (data.length == 0) {
+            return null;
+        }
+        in.readFully(data);
+        return PublicKey.of(Type.public_key_type.newBuilder().setData(ByteString.copyFrom(data)).build());
+    }
+
+    // entries are bound to their account names, so that they can't be swapped.
+    private byte[] entryAad(String account) {
+        byte[] name = account.getBytes(UTF8);
+        byte[] aad = Arrays.copyOf(header, header.length + name.length);
+        System.arraycopy(name, 0, aad, header.length, name.length);
+        return aad;
+    }
+
+    // derive the key from password, it's slow by design.
+    private static RecordCipher newCipher(String password, byte[] salt, int iterations) {
+        char[] chars = password.toCharArray();
+        byte[] bytes = PBEParametersGenerator.PKCS5PasswordToUTF8Bytes(chars);
+        byte[] key = null;
+        try {
+            PKCS5S2ParametersGenerator generator = new PKCS5S2ParametersGenerator(new SHA256Digest());
+            generator.init(bytes, salt, iterations);
+            key = ((KeyParameter) generator.generateDerivedParameters(KEY_SIZE * 8)).getKey();
+            return new RecordCipher(key);
+        } finally {
+            // don't leave copies of password and key in memory.
+            Arrays.fill(chars, '\0');
+            Arrays.fill(bytes, (byte) 0);
+            if (key != null) {
+                Arrays.fill(key, (byte) 0);
+            }
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, byte[] sealed) throws IOException {
+        out.writeInt(sealed.length);
+        out.write(sealed);
+    }
+
+    private static ByteBuffer map(File file, long position, int size) throws IOException {
+        if (size == 0) {
+            return ByteBuffer.allocate(0);
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // the mapping stays valid after the channel is closed.
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, position, size);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void truncate(File file, long size) throws IOException {
+        RandomAccessFile f = new RandomAccessFile(file, "rw");
+        try {
+            f.setLength(size);
+        } finally {
+            f.close();
+        }
+    }
+}
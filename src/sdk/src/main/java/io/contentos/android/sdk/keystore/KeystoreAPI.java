@@ -1,6 +1,8 @@
 package io.contentos.android.sdk.keystore;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface KeystoreAPI {
     /**
@@ -35,4 +37,43 @@ public interface KeystoreAPI {
      * @return set of account names.
      */
     List<String> getAccounts();
+
+    /**
+     * Get public key of specific account.
+     * @param account name of account
+     * @return public key in WIF encoding, or null if account not found.
+     */
+    String getPublicKey(String account);
+
+    /**
+     * Find the account of a public key.
+     * @param wifPublicKey public key in WIF encoding
+     * @return name of account, or null if not found. If several accounts share the key, any of them.
+     */
+    String getAccountByPublicKey(String wifPublicKey);
+
+    /**
+     * Get all accounts and their private keys.
+     * @return map of {account: private key in WIF encoding}.
+     */
+    Map<String, String> getKeys();
+
+    /**
+     * Add a batch of accounts and their private keys into keystore, which is saved only once.
+     * @param wifPrivateKeys map of {account: private key in WIF encoding}
+     */
+    void addKeys(Map<String, String> wifPrivateKeys);
+
+    /**
+     * Add a batch of accounts and their mnemonics into keystore, which is saved only once.
+     * Private keys are derived in parallel.
+     * @param mnemonics map of {account: 24-word mnemonic string}
+     */
+    void addKeysByMnemonic(Map<String, String> mnemonics);
+
+    /**
+     * Remove a batch of accounts and their private keys from keystore, which is saved only once.
+     * @param accounts names of accounts
+     */
+    void removeKeys(Collection<String> accounts);
 }
@@ -0,0 +1,107 @@
+package io.contentos.android.sdk.keystore;
+
+import org.spongycastle.crypto.InvalidCipherTextException;
+import org.spongycastle.crypto.engines.AESEngine;
+import org.spongycastle.crypto.modes.GCMBlockCipher;
+import org.spongycastle.crypto.params.AEADParameters;
+import org.spongycastle.crypto.params.KeyParameter;
+
+import java.security.SecureRandom;
+
+/**
+ * Authenticated encryption of keystore records using AES-GCM.
+ *
+ * <p>A sealed record is a random 12-byte nonce followed by the ciphertext and a 16-byte
+ * authentication tag. Spongy Castle is used instead of the platform cipher provider, because
+ * AES-GCM isn't available on all supported Android versions.</p>
+ *
+ * <p>The AES key schedule and GCM multiplication tables are computed once per thread and reused
+ * for all records, only the nonce changes between records.</p>
+ */
+final class RecordCipher {
+    static final int NONCE_SIZE = 12;
+    static final int TAG_SIZE = 16;
+    static final int OVERHEAD = NONCE_SIZE + TAG_SIZE;
+
+    private final KeyParameter key;
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadLocal<GCMBlockCipher> ciphers = new ThreadLocal<>();
+
+    /**
+     * @param key AES key, copied by this constructor
+     */
+    RecordCipher(byte[] key) {
+        this.key = new KeyParameter(key);
+    }
+
+    // get a GCM cipher of current thread initialized with given nonce.
+    private GCMBlockCipher cipher(boolean forEncryption, byte[] nonce, byte[] aad) {
+        GCMBlockCipher gcm = ciphers.get();
+        if (gcm == null) {
+            gcm = new GCMBlockCipher(new AESEngine());
+            gcm.init(forEncryption, new AEADParameters(key, TAG_SIZE * 8, nonce, aad));
+            ciphers.set(gcm);
+        } else {
+            // a null key reuses the expanded key of last initialization.
+            gcm.init(forEncryption, new AEADParameters(null, TAG_SIZE * 8, nonce, aad));
+        }
+        return gcm;
+    }
+
+    /**
+     * Encrypt and authenticate a record.
+     * @param plain     plain data
+     * @param aad       additional data to authenticate, not included in the output
+     * @return the sealed record.
+     */
+    byte[] seal(byte[] plain, byte[] aad) {
+        byte[] sealed = new byte[NONCE_SIZE + plain.length + TAG_SIZE];
+        byte[] nonce = new byte[NONCE_SIZE];
+        random.nextBytes(nonce);
+        System.arraycopy(nonce, 0, sealed, 0, NONCE_SIZE);
+
+        GCMBlockCipher gcm = cipher(true, nonce, aad);
+        int n = gcm.processBytes(plain, 0, plain.length, sealed, NONCE_SIZE);
+        try {
+            gcm.doFinal(sealed, NONCE_SIZE + n);
+        } catch (InvalidCipherTextException e) {
+            // never happens in encryption mode.
+            throw new IllegalStateException(e);
+        }
+        return sealed;
+    }
+
+    /**
+     * Authenticate and decrypt a sealed record.
+     * @param sealed    the sealed record
+     * @param aad       additional data to authenticate
+     * @return plain data.
+     * @throws InvalidCipherTextException if authentication failed.
+     */
+    byte[] open(byte[] sealed, byte[] aad) throws InvalidCipherTextException {
+        return open(sealed, 0, sealed.length, aad);
+    }
+
+    /**
+     * Authenticate and decrypt a sealed record.
+     * @param sealed    buffer containing the sealed record
+     * @param offset    offset of the sealed record
+     * @param length    size of the sealed record
+     * @param aad       additional data to authenticate
+     * @return plain data.
+     * @throws InvalidCipherTextException if authentication failed.
+     */
+    byte[] open(byte[] sealed, int offset, int length, byte[] aad) throws InvalidCipherTextException {
+        if (length < OVERHEAD) {
+            throw new InvalidCipherTextException("sealed record too short");
+        }
+        byte[] nonce = new byte[NONCE_SIZE];
+        System.arraycopy(sealed, offset, nonce, 0, NONCE_SIZE);
+
+        GCMBlockCipher gcm = cipher(false, nonce, aad);
+        byte[] plain = new byte[length - OVERHEAD];
+        int n = gcm.processBytes(sealed, offset + NONCE_SIZE, length - NONCE_SIZE, plain, 0);
+        gcm.doFinal(plain, n);
+        return plain;
+    }
+}
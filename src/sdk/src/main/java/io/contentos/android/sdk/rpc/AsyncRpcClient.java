@@ -0,0 +1,792 @@
+package io.contentos.android.sdk.rpc;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+
+import java.util.zip.CRC32;
+
+import io.contentos.android.sdk.crypto.PublicKey;
+import io.contentos.android.sdk.prototype.MultiId;
+import io.contentos.android.sdk.prototype.Transaction.signed_transaction;
+import io.contentos.android.sdk.prototype.Type;
+import io.contentos.android.sdk.rpc.Grpc.*;
+import io.contentos.android.sdk.prototype.MultiId.*;
+import io.grpc.Status;
+
+import static io.contentos.android.sdk.rpc.FutureHelper.getUnchecked;
+import static io.contentos.android.sdk.rpc.RpcClient.accountName;
+import static io.contentos.android.sdk.rpc.RpcClient.maxAccountName;
+import static io.contentos.android.sdk.rpc.RpcClient.minAccountName;
+import static io.contentos.android.sdk.rpc.RpcClient.timeStamp;
+
+/**
+ * The asynchronous RPC Client.
+ * <p>It has the same methods as {@link RpcClient}, but they return immediately with a
+ * {@link ListenableFuture} of the response instead of blocking the calling thread for a network
+ * round-trip. Requests are multiplexed on the gRPC channel, one thread can have hundreds of them
+ * in flight,
+ * <pre>
+ *     Futures.addCallback(client.getAccountByName("alice"), new FutureCallback&lt;AccountResponse&gt;() {
+ *         public void onSuccess(AccountResponse account) { ... }
+ *         public void onFailure(Throwable t) { ... }
+ *     }, executor);
+ * </pre>
+ * Callbacks registered with {@link MoreExecutors#directExecutor()} run on gRPC network threads,
+ * they must not block.
+ * </p>
+ *
+ * <p>Transactions are built, signed and sent in the same way as {@link RpcClient}, e.g.
+ * {@link #transfer} returns a future of the broadcastTrx response. Pages returned by page queries
+ * should be turned with {@link RpcResultPages#nextPageAsync()} and its siblings.</p>
+ */
+public class AsyncRpcClient extends Operation.BaseResultFilter<Transaction, Transaction, ListenableFuture<BroadcastTrxResponse>> {
+
+    protected ApiServiceGrpc.ApiServiceFutureStub service;
+    protected String signingKey;
+    protected int chainId;
+    protected String chainName;
+    protected ChainStateCache chainStateCache;
+
+    /**
+     * Create an instance of asynchronous RPC client.
+     * @param service           the gRPC service
+     * @param signingKey        the signing private key for transactions
+     * @param chainStateCache   the chain state cache for transaction preparation
+     */
+    public AsyncRpcClient(ApiServiceGrpc.ApiServiceFutureStub service, String signingKey, String chainName, ChainStateCache chainStateCache) {
+        super(new Transaction.Factory());
+        this.service = service;
+        this.signingKey = signingKey;
+        CRC32 crc = new CRC32();
+        crc.update(chainName.getBytes());
+        this.chainId = (int)crc.getValue();
+        this.chainName = chainName;
+        this.chainStateCache = chainStateCache;
+    }
+
+    /**
+     * Create an instance of asynchronous RPC client.
+     * @param service       the gRPC service
+     * @param signingKey    the signing private key for transactions
+     */
+    public AsyncRpcClient(ApiServiceGrpc.ApiServiceFutureStub service, String signingKey, String chainName) {
+        this(service, signingKey, chainName, new ChainStateCache(service.getChannel()));
+    }
+
+    /**
+     * Create an instance of asynchronous RPC client.
+     * @param service the gRPC service
+     */
+    public AsyncRpcClient(ApiServiceGrpc.ApiServiceFutureStub service, String chainName) {
+        this(service, null, chainName);
+    }
+
+    /**
+     * Override method of {@link Operation.BaseResultFilter#filterResult} to sign and broadcast a transaction.
+     * @param trx the transaction to sign and broadcast
+     * @return future of response of broadcastTrx API
+     */
+    @Override
+    protected ListenableFuture<BroadcastTrxResponse> filterResult(Transaction trx) {
+        return Futures.transform(signAndBroadcastTrx(trx, true), new Function<BroadcastTrxResponse, BroadcastTrxResponse>() {
+            @Override
+            public BroadcastTrxResponse apply(BroadcastTrxResponse response) {
+                if (!response.hasInvoice()) {
+                    throw Status.UNKNOWN.withDescription("No invoice").asRuntimeException();
+                }
+                if (response.getInvoice().getStatus() == 500) {
+                    throw Status.UNKNOWN.withDescription(response.getInvoice().getErrorInfo()).asRuntimeException();
+                }
+                return response;
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Query a smart contract's database table.
+     * @param owner     name of contract owner account
+     * @param contract  name of contract
+     * @param table     name of table
+     * @param field     name of record field to query
+     * @param begin     query value in JSON
+     * @param count     maximum number of returned records
+     * @param reverse   result order, if set, in descending order, otherwise ascending order.
+     * @return future of query result.
+     */
+    public ListenableFuture<TableContentResponse> queryTableContent(String owner, String contract, String table, String field, String begin, int count, boolean reverse) {
+        return service.queryTableContent(
+                GetTableContentRequest.newBuilder()
+                        .setOwner(owner)
+                        .setContract(contract)
+                        .setTable(table)
+                        .setField(field)
+                        .setBegin(begin)
+                        .setCount(count)
+                        .setReverse(reverse)
+                        .build()
+        );
+    }
+
+    /**
+     * Get account information of given account name.
+     * @param accountName account name
+     * @return future of account information.
+     */
+    public ListenableFuture<AccountResponse> getAccountByName(String accountName) {
+        return service.getAccountByName(
+                GetAccountByNameRequest.newBuilder()
+                        .setAccountName(accountName(accountName))
+                        .build()
+        );
+    }
+
+    /**
+     * Get follower list of specific account.
+     * @param accountName   the account being followed
+     * @param pageSize      maximum items in a page
+     * @return follower list in ascending order of follow-ship creation time.
+     */
+    public RpcResultPages<GetFollowerListByNameResponse, follower_created_order, follower_created_order> getFollowerListByName(String accountName, int pageSize) {
+        return new PageQueries.FollowerListByName(accountName, pageSize) {
+            @Override
+            protected ListenableFuture<GetFollowerListByNameResponse> requestAsync(follower_created_order start, follower_created_order end, int count, follower_created_order last) {
+                return service.getFollowerListByName(requestOf(start, end, count, last));
+            }
+
+            @Override
+            protected GetFollowerListByNameResponse request(follower_created_order start, follower_created_order end, int count, follower_created_order last) {
+                return getUnchecked(requestAsync(start, end, count, last));
+            }
+        };
+    }
+
+    /**
+     * Get followee list of specific account
+     * @param accountName  the follower account
+     * @param pageSize     maximum items in a page
+     * @return list of accounts followed by the account, in ascending order of follow-ship creation time.
+     */
+    public RpcResultPages<GetFollowingListByNameResponse, following_created_order, following_created_order> getFollowingListByName(String accountName, int pageSize) {
+        return new PageQueries.FollowingListByName(accountName, pageSize) {
+            @Override
+            protected ListenableFuture<GetFollowingListByNameResponse> requestAsync(following_created_order start, following_created_order end, int count, following_created_order last) {
+                return service.getFollowingListByName(requestOf(start, end, count, last));
+            }
+
+            @Override
+            protected GetFollowingListByNameResponse request(following_created_order start, following_created_order end, int count, following_created_order last) {
+                return getUnchecked(requestAsync(start, end, count, last));
+            }
+        };
+    }
+
+    /**
+     * Get number of followers and followees of specific account.
+     * @param accountName the account
+     * @return future of response containing the counts.
+     */
+    public ListenableFuture<GetFollowCountByNameResponse> getFollowCountByName(String accountName) {
+        return service.getFollowCountByName(
+                GetFollowCountByNameRequest.newBuilder()
+                        .setAccountName(accountName(accountName))
+                        .build()
+        );
+    }
+
+    /**
+     * Get block producers.
+     * @return future of list of block producers in ascending order of account names.
+     */
+    public ListenableFuture<GetBlockProducerListResponse> getBlockProducerList() {
+        return service.getBlockProducerList(
+                GetBlockProducerListRequest.newBuilder()
+                        .setLimit(1000000)
+                        .build()
+        );
+    }
+
+    /**
+     * Get posts created in specific time range.
+     * @param startTimestamp    lower bound of time range, in UTC seconds
+     * @param endTimeStamp      upper bound of time range, in UTC seconds
+     * @param count             maximum returned items
+     * @return future of list of posts in descending order of creation time.
+     */
+    public ListenableFuture<GetPostListByCreatedResponse> getPostListByCreated(int startTimestamp, int endTimeStamp, int count) {
+        return service.getPostListByCreated(
+                GetPostListByCreatedRequest.newBuilder()
+                        .setStart(post_created_order.newBuilder()
+                                .setCreated(timeStamp(endTimeStamp)))
+                        .setEnd(post_created_order.newBuilder()
+                                .setCreated(timeStamp(startTimestamp)))
+                        .setLimit(count)
+                        .build()
+        );
+    }
+
+    /**
+     * Get comments of specific post in a time range.
+     * @param parentId          post id of the article being commented
+     * @param startTimestamp    lower bound of time range, in UTC seconds
+     * @param endTimeStamp      upper bound of time range, in UTC seconds
+     * @param count             maximum returned items
+     * @return future of list of comments in descending order of creation time.
+     */
+    public ListenableFuture<GetReplyListByPostIdResponse> getReplyListByPostId(long parentId, int startTimestamp, int endTimeStamp, int count) {
+        return service.getReplyListByPostId(
+                GetReplyListByPostIdRequest.newBuilder()
+                        .setStart(reply_created_order.newBuilder()
+                                .setParentId(parentId)
+                                .setCreated(timeStamp(endTimeStamp)))
+                        .setEnd(reply_created_order.newBuilder()
+                                .setParentId(parentId)
+                                .setCreated(timeStamp(startTimestamp)))
+                        .setLimit(count)
+                        .build()
+        );
+    }
+
+    /**
+     * Get block chain state.
+     * @return future of the state.
+     */
+    public ListenableFuture<GetChainStateResponse> getChainState() {
+        return service.getChainState(
+                NonParamsRequest.getDefaultInstance()
+        );
+    }
+
+    /**
+     * Broadcast a signed transaction.
+     * @param trx           the signed transaction to broadcast
+     * @param waitResult    wait until the transaction processing finished.
+     * @return future of processing result of transaction.
+     */
+    public ListenableFuture<BroadcastTrxResponse> broadcastTrx(signed_transaction trx, boolean waitResult) {
+        return service.broadcastTrx(
+                BroadcastTrxRequest.newBuilder()
+                        .setOnlyDeliver(!waitResult)
+                        .setTransaction(trx)
+                        .build()
+        );
+    }
+
+    /**
+     * Sign a transaction and broadcast it.
+     * <p>Reference block and expiration time of the transaction are set based on {@link #chainStateCache}.</p>
+     * @param trx           the transaction
+     * @param waitResult    wait until the transaction processing finished.
+     * @return future of processing result of transaction.
+     */
+    public ListenableFuture<BroadcastTrxResponse> signAndBroadcastTrx(final Transaction trx, final boolean waitResult) {
+        return signAndBroadcastTrx(trx, waitResult, 0);
+    }
+
+    // sign and broadcast a transaction expiring some seconds earlier than usual, which tells apart
+    // transactions of the same operations.
+    ListenableFuture<BroadcastTrxResponse> signAndBroadcastTrx(final Transaction trx, final boolean waitResult, final int earlierSeconds) {
+        final String key = this.signingKey;
+        if (key == null || key.length() == 0) {
+            return Futures.immediateFailedFuture(new RuntimeException("signing key not found"));
+        }
+        return Futures.transformAsync(chainStateCache.prepareAsync(trx), new AsyncFunction<Transaction, BroadcastTrxResponse>() {
+            @Override
+            public ListenableFuture<BroadcastTrxResponse> apply(Transaction prepared) {
+                if (earlierSeconds != 0) {
+                    prepared.setExpiration(prepared.getExpiration() - earlierSeconds);
+                }
+                return broadcastTrx(prepared.sign(key, chainId), waitResult);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Get blocks.
+     * @param startBlockNum minimal block number, inclusive
+     * @param endBlockNum   maximum block number, inclusive
+     * @param count maximum number of returned blocks
+     * @return future of block list in ascending order of block number.
+     */
+    public ListenableFuture<GetBlockListResponse> getBlockList(long startBlockNum, long endBlockNum, int count) {
+        return service.getBlockList(
+                GetBlockListRequest.newBuilder()
+                        .setStart(startBlockNum)
+                        .setEnd(endBlockNum)
+                        .setLimit(count)
+                        .build()
+        );
+    }
+
+    /**
+     * Get a block.
+     * @param blockNum the block number.
+     * @return future of the block.
+     */
+    public ListenableFuture<GetSignedBlockResponse> getSignedBlock(long blockNum) {
+        return service.getSignedBlock(
+                GetSignedBlockRequest.newBuilder()
+                        .setStart(blockNum)
+                        .build()
+        );
+    }
+
+    /**
+     * Get accounts whose balance is within a specific range.
+     * @param minBalance    minimal balance, exclusive
+     * @param maxBalance    maximum balance, inclusive
+     * @param pageSize      maximum items in a page
+     * @return account list in descending order of balance.
+     */
+    public RpcResultPages<GetAccountListResponse, Type.coin, AccountInfo> getAccountListByBalance(long minBalance, long maxBalance, int pageSize) {
+        return new PageQueries.AccountListByBalance(minBalance, maxBalance, pageSize) {
+            @Override
+            protected ListenableFuture<GetAccountListResponse> requestAsync(Type.coin start, Type.coin end, int count, AccountInfo last) {
+                return service.getAccountListByBalance(requestOf(start, end, count, last));
+            }
+
+            @Override
+            protected GetAccountListResponse request(Type.coin start, Type.coin end, int count, AccountInfo last) {
+                return getUnchecked(requestAsync(start, end, count, last));
+            }
+        };
+    }
+
+    /**
+     * Get daily stats of transactions.
+     * @param pageSize  maximum items in a page
+     * @return the stats.
+     */
+    public RpcResultPages<GetDailyTotalTrxResponse, Type.time_point_sec, DailyTotalTrx> getDailyTotalTrxInfo(int pageSize) {
+        return new PageQueries.DailyTotalTrxInfo(pageSize) {
+            @Override
+            protected ListenableFuture<GetDailyTotalTrxResponse> requestAsync(Type.time_point_sec start, Type.time_point_sec end, int count, DailyTotalTrx last) {
+                return service.getDailyTotalTrxInfo(requestOf(start, end, count, last));
+            }
+
+            @Override
+            protected GetDailyTotalTrxResponse request(Type.time_point_sec start, Type.time_point_sec end, int count, DailyTotalTrx last) {
+                return getUnchecked(requestAsync(start, end, count, last));
+            }
+        };
+    }
+
+    /**
+     * Get transaction information.
+     * @param trxId the transaction id
+     * @return future of transaction information.
+     */
+    public ListenableFuture<GetTrxInfoByIdResponse> getTrxInfoById(byte[] trxId) {
+        return service.getTrxInfoById(
+                GetTrxInfoByIdRequest.newBuilder()
+                        .setTrxId(Type.sha256.newBuilder().setHash(ByteString.copyFrom(trxId)))
+                        .build()
+        );
+    }
+
+    /**
+     * Get transactions created in a specific time range.
+     * @param startTimestamp    minimal time stamp, in UTC seconds, exclusive
+     * @param endTimeStamp      maximum time stamp, in UTC seconds, inclusive
+     * @param pageSize          maximum items in a page
+     * @return transactions in descending order of creation time.
+     */
+    public RpcResultPages<GetTrxListByTimeResponse, Type.time_point_sec, TrxInfo> getTrxListByTime(int startTimestamp, int endTimeStamp, int pageSize) {
+        return new PageQueries.TrxListByTime(startTimestamp, endTimeStamp, pageSize) {
+            @Override
+            protected ListenableFuture<GetTrxListByTimeResponse> requestAsync(Type.time_point_sec start, Type.time_point_sec end, int count, TrxInfo last) {
+                return service.getTrxListByTime(requestOf(start, end, count, last));
+            }
+
+            @Override
+            protected GetTrxListByTimeResponse request(Type.time_point_sec start, Type.time_point_sec end, int count, TrxInfo last) {
+                return getUnchecked(requestAsync(start, end, count, last));
+            }
+        };
+    }
+
+    /**
+     * Get posts created in specific time range.
+     * @param startTimestamp    minimal time stamp, in UTC seconds, exclusive
+     * @param endTimeStamp      maximum time stamp, in UTC seconds, inclusive
+     * @param pageSize          maximum items in a page
+     * @return post list in descending order of creation time.
+     */
+    public RpcResultPages<GetPostListByCreateTimeResponse, Type.time_point_sec, PostResponse> getPostListByCreateTime(int startTimestamp, int endTimeStamp, int pageSize) {
+        return new PageQueries.PostListByCreateTime(startTimestamp, endTimeStamp, pageSize) {
+            @Override
+            protected ListenableFuture<GetPostListByCreateTimeResponse> requestAsync(Type.time_point_sec start, Type.time_point_sec end, int count, PostResponse last) {
+                return service.getPostListByCreateTime(requestOf(start, end, count, last));
+            }
+
+            @Override
+            protected GetPostListByCreateTimeResponse request(Type.time_point_sec start, Type.time_point_sec end, int count, PostResponse last) {
+                return getUnchecked(requestAsync(start, end, count, last));
+            }
+        };
+    }
+
+    /**
+     * Get recent posts of specific author
+     * @param author    the author
+     * @param pageSize  maximum items in a page
+     * @return post list in descending order of creation time.
+     */
+    public RpcResultPages<GetPostListByCreateTimeResponse, user_post_create_order, PostResponse> getPostListByName(String author, int pageSize) {
+        return new PageQueries.PostListByName(author, pageSize) {
+            @Override
+            protected ListenableFuture<GetPostListByCreateTimeResponse> requestAsync(user_post_create_order start, user_post_create_order end, int count, PostResponse last) {
+                return service.getPostListByName(requestOf(start, end, count, last));
+            }
+
+            @Override
+            protected GetPostListByCreateTimeResponse request(user_post_create_order start, user_post_create_order end, int count, PostResponse last) {
+                return getUnchecked(requestAsync(start, end, count, last));
+            }
+        };
+    }
+
+    /**
+     * Get hourly transaction stats.
+     * @return future of the stats.
+     */
+    public ListenableFuture<TrxStatByHourResponse> trxStatByHour() {
+        return service.trxStatByHour(
+                TrxStatByHourRequest.newBuilder()
+                        .setHours(24)
+                        .build()
+        );
+    }
+
+    /**
+     * Get transactions signed by specific account in specific time range.
+     * @param name              account name
+     * @param startTimestamp    minimal time stamp, in UTC seconds, exclusive
+     * @param endTimeStamp      maximum time stamp, in UTC seconds, inclusive
+     * @param pageSize          maximum items in a page
+     * @return transaction list in descending order of creation time.
+     */
+    public RpcResultPages<GetUserTrxListByTimeResponse, Type.time_point_sec, TrxInfo> getUserTrxListByTime(String name, int startTimestamp, int endTimeStamp, int pageSize) {
+        return new PageQueries.UserTrxListByTime(name, startTimestamp, endTimeStamp, pageSize) {
+            @Override
+            protected ListenableFuture<GetUserTrxListByTimeResponse> requestAsync(Type.time_point_sec start, Type.time_point_sec end, int count, TrxInfo last) {
+                return service.getUserTrxListByTime(requestOf(start, end, count, last));
+            }
+
+            @Override
+            protected GetUserTrxListByTimeResponse request(Type.time_point_sec start, Type.time_point_sec end, int count, TrxInfo last) {
+                return getUnchecked(requestAsync(start, end, count, last));
+            }
+        };
+    }
+
+    /**
+     * Get post information.
+     * @param postId  post id
+     * @return future of post information.
+     */
+    public ListenableFuture<GetPostInfoByIdResponse> getPostInfoById(long postId) {
+        return service.getPostInfoById(
+                GetPostInfoByIdRequest.newBuilder()
+                        .setPostId(postId)
+                        .setReplyListLimit(100)
+                        .setVoterListLimit(100)
+                        .build()
+        );
+    }
+
+    /**
+     * Get smart contract information.
+     * @param owner     contract owner account
+     * @param contract  contract name
+     * @return future of contract information.
+     */
+    public ListenableFuture<GetContractInfoResponse> getContractInfo(String owner, String contract) {
+        return service.getContractInfo(
+                GetContractInfoRequest.newBuilder()
+                        .setOwner(accountName(owner))
+                        .setContractName(contract)
+                        .setFetchAbi(true)
+                        .setFetchCode(true)
+                        .build()
+        );
+    }
+
+    /**
+     * Check if specific transaction is in an irreversible block.
+     * @param trxId  transaction id
+     * @return future of checking result.
+     */
+    public ListenableFuture<GetBlkIsIrreversibleByTxIdResponse> getBlkIsIrreversibleByTxId(byte[] trxId) {
+        return service.getBlkIsIrreversibleByTxId(
+                GetBlkIsIrreversibleByTxIdRequest.newBuilder()
+                        .setTrxId(Type.sha256.newBuilder().setHash(
+                                ByteString.copyFrom(trxId)
+                        ))
+                        .build()
+        );
+    }
+
+    /**
+     * Get accounts created in specific time range.
+     * @param startTimestamp    minimal time stamp, in UTC seconds, exclusive
+     * @param endTimeStamp      maximum time stamp, in UTC seconds, inclusive
+     * @param pageSize          maximum items in a page
+     * @return account list in descending order of creation time.
+     */
+    public RpcResultPages<GetAccountListResponse, Type.time_point_sec, AccountInfo> getAccountListByCreTime(int startTimestamp, int endTimeStamp, int pageSize) {
+        return new PageQueries.AccountListByCreTime(startTimestamp, endTimeStamp, pageSize) {
+            @Override
+            protected ListenableFuture<GetAccountListResponse> requestAsync(Type.time_point_sec start, Type.time_point_sec end, int count, AccountInfo last) {
+                return service.getAccountListByCreTime(requestOf(start, end, count, last));
+            }
+
+            @Override
+            protected GetAccountListResponse request(Type.time_point_sec start, Type.time_point_sec end, int count, AccountInfo last) {
+                return getUnchecked(requestAsync(start, end, count, last));
+            }
+        };
+    }
+
+    /**
+     * Get stats of specific dAPP.
+     * @param dapp      name of dAPP
+     * @param days      how many days to stats
+     * @return future of stats information.
+     */
+    public ListenableFuture<GetDailyStatsResponse> getDailyStats(String dapp, int days) {
+        return service.getDailyStats(
+                GetDailyStatsRequest.newBuilder()
+                        .setDapp(dapp)
+                        .setDays(days)
+                        .build()
+        );
+    }
+
+    /**
+     * Get smart contracts created in specific time range.
+     * @param startTimestamp    minimal time stamp, in UTC seconds, exclusive
+     * @param endTimeStamp      maximum time stamp, in UTC seconds, inclusive
+     * @param pageSize          maximum items in a page
+     * @return contract list in descending order of creation time.
+     */
+    public RpcResultPages<GetContractListResponse, Type.time_point_sec, ContractInfo> getContractListByTime(int startTimestamp, int endTimeStamp, int pageSize) {
+        return new PageQueries.ContractListByTime(startTimestamp, endTimeStamp, pageSize) {
+            @Override
+            protected ListenableFuture<GetContractListResponse> requestAsync(Type.time_point_sec start, Type.time_point_sec end, int count, ContractInfo last) {
+                return service.getContractListByTime(requestOf(start, end, count, last));
+            }
+
+            @Override
+            protected GetContractListResponse request(Type.time_point_sec start, Type.time_point_sec end, int count, ContractInfo last) {
+                return getUnchecked(requestAsync(start, end, count, last));
+            }
+        };
+    }
+
+    /**
+     * Get block producers with votes in specific range.
+     * @param startVest     minimal vote, in vestings, exclusive
+     * @param endVest       maximum vote, in vestings, inclusive
+     * @param pageSize      maximum items in a page
+     * @return block producer list in descending order of votes.
+     */
+    public RpcResultPages<GetBlockProducerListResponse, Type.vest, BlockProducerResponse> getBlockProducerListByVoteCount(long startVest, long endVest, int pageSize) {
+        return new PageQueries.BlockProducerListByVoteCount(startVest, endVest, pageSize) {
+            @Override
+            protected ListenableFuture<GetBlockProducerListResponse> requestAsync(Type.vest start, Type.vest end, int count,BlockProducerResponse last) {
+                return service.getBlockProducerListByVoteCount(requestOf(start, end, count, last));
+            }
+
+            @Override
+            protected GetBlockProducerListResponse request(Type.vest start, Type.vest end, int count,BlockProducerResponse last) {
+                return getUnchecked(requestAsync(start, end, count, last));
+            }
+        };
+    }
+
+    /**
+     * Get posts with rewards in a specific range.
+     * @param startVest     minimal reward, in vestings, exclusive
+     * @param endVest       maximum reward, in vestings, inclusive
+     * @param pageSize      maximum items in a page
+     * @return post list in descending order of rewards.
+     */
+    public RpcResultPages<GetPostListByVestResponse, Type.vest, PostResponse> getPostListByVest(long startVest, long endVest, int pageSize) {
+        return new PageQueries.PostListByVest(startVest, endVest, pageSize) {
+            @Override
+            protected ListenableFuture<GetPostListByVestResponse> requestAsync(Type.vest start, Type.vest end, int count, PostResponse last) {
+                return service.getPostListByVest(requestOf(start, end, count, last));
+            }
+
+            @Override
+            protected GetPostListByVestResponse request(Type.vest start, Type.vest end, int count, PostResponse last) {
+                return getUnchecked(requestAsync(start, end, count, last));
+            }
+        };
+    }
+
+    /**
+     * Estimate the net & cpu usage of given transaction.
+     * @param trx   the signed transaction
+     * @return future of estimation result
+     */
+    public ListenableFuture<EsimateResponse> estimateStamina(signed_transaction trx) {
+        return service.estimateStamina(
+                EsimateRequest.newBuilder()
+                        .setTransaction(trx)
+                        .build()
+        );
+    }
+
+    /**
+     * Get peer list of server node.
+     * @return future of peer list of server node.
+     */
+    public ListenableFuture<GetNodeNeighboursResponse> getNodeNeighbours() {
+        return service.getNodeNeighbours(
+                NonParamsRequest.getDefaultInstance()
+        );
+    }
+
+    /**
+     * Get software version of server node.
+     * @return future of software version of server node.
+     */
+    public ListenableFuture<GetNodeRunningVersionResponse> getNodeRunningVersion() {
+        return service.getNodeRunningVersion(
+                NonParamsRequest.getDefaultInstance()
+        );
+    }
+
+    /**
+     * Get list of stakers of given account.
+     * @param account   the account name
+     * @param count     max number of stakers
+     * @return future of list of stakers
+     */
+    public ListenableFuture<GetMyStakerListByNameResponse> getMyStakers(String account, int count) {
+        MultiId.stake_record_reverse start = MultiId.stake_record_reverse.newBuilder()
+                .setTo(accountName(account))
+                .setFrom(minAccountName)
+                .build();
+        MultiId.stake_record_reverse end = MultiId.stake_record_reverse.newBuilder()
+                .setTo(accountName(account))
+                .setFrom(maxAccountName)
+                .build();
+        return service.getMyStakers(
+                GetMyStakerListByNameRequest.newBuilder()
+                        .setLimit(count)
+                        .setStart(start)
+                        .setEnd(end)
+                        .build()
+        );
+    }
+
+    /**
+     * Get list of stakes of given account.
+     * @param account   the account name
+     * @param count     max number of stakes
+     * @return future of list of stakes
+     */
+    public ListenableFuture<GetMyStakeListByNameResponse> getMyStakes(String account, int count) {
+        MultiId.stake_record start = MultiId.stake_record.newBuilder()
+                .setFrom(accountName(account))
+                .setTo(minAccountName)
+                .build();
+        MultiId.stake_record end = MultiId.stake_record.newBuilder()
+                .setFrom(accountName(account))
+                .setTo(maxAccountName)
+                .build();
+        return service.getMyStakes(
+                GetMyStakeListByNameRequest.newBuilder()
+                        .setLimit(count)
+                        .setStart(start)
+                        .setEnd(end)
+                        .build()
+        );
+    }
+
+    /**
+     * Get accounts whose vest is within a specific range.
+     * @param minVest    minimal vest, exclusive
+     * @param maxVest    maximum vest, inclusive
+     * @param pageSize   maximum items in a page
+     * @return account list in descending order of vest.
+     */
+    public RpcResultPages<GetAccountListResponse, Type.vest, AccountInfo> getAccountListByVest(long minVest, long maxVest, int pageSize) {
+        return new PageQueries.AccountListByVest(minVest, maxVest, pageSize) {
+            @Override
+            protected ListenableFuture<GetAccountListResponse> requestAsync(Type.vest start, Type.vest end, int count, AccountInfo last) {
+                return service.getAccountListByVest(requestOf(start, end, count, last));
+            }
+
+            @Override
+            protected GetAccountListResponse request(Type.vest start, Type.vest end, int count, AccountInfo last) {
+                return getUnchecked(requestAsync(start, end, count, last));
+            }
+        };
+    }
+
+    /**
+     * Get account information of given public key.
+     * @param pubKeyWIF  public key in WIF encoding
+     * @return future of the account information.
+     */
+    public ListenableFuture<AccountResponse> getAccountByPubKey(String pubKeyWIF) {
+        return service.getAccountByPubKey(GetAccountByPubKeyRequest.newBuilder().setPublicKey(pubKeyWIF).build());
+    }
+
+    /**
+     * Get account information of given public key.
+     * @param publicKey  the public key
+     * @return future of the account information.
+     */
+    public ListenableFuture<AccountResponse> getAccountByPubKey(PublicKey publicKey) {
+        return getAccountByPubKey(publicKey.toWIF());
+    }
+
+    /**
+     * Get block producer information based on its name.
+     * @param name  account name of block producer
+     * @return future of block producer information
+     */
+    public ListenableFuture<BlockProducerResponse> getBlockProducerByName(String name) {
+        return service.getBlockProducerByName(
+                GetBlockProducerByNameRequest.newBuilder()
+                        .setBpName(accountName(name))
+                        .build()
+        );
+    }
+
+    /**
+     * Get block BFT information.
+     * @param blockNum  block number
+     * @return future of block BFT information.
+     */
+    public ListenableFuture<GetBlockBFTInfoByNumResponse> getBlockBFTInfoByNum(long blockNum) {
+        return service.getBlockBFTInfoByNum(
+                GetBlockBFTInfoByNumRequest.newBuilder()
+                        .setBlockNum(blockNum)
+                        .build()
+        );
+    }
+
+    /**
+     * Get record from any app table.
+     * @param table     name of table
+     * @param keyJson   json encoded string of primary key
+     * @return future of table record matching the given key.
+     */
+    public ListenableFuture<GetAppTableRecordResponse> getAppTableRecord(String table, String keyJson) {
+        return service.getAppTableRecord(
+                GetAppTableRecordRequest.newBuilder()
+                        .setTableName(table)
+                        .setKey(keyJson)
+                        .build()
+        );
+    }
+}
@@ -0,0 +1,400 @@
+package io.contentos.android.sdk.rpc;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.contentos.android.sdk.rpc.Grpc.GetChainStateResponse;
+import io.contentos.android.sdk.rpc.Grpc.NonParamsRequest;
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * A channel spreading calls over a number of chain nodes.
+ *
+ * <p>Latency of all nodes is probed in parallel when the channel is created and regularly after.
+ * Each call goes to the healthy node with the lowest latency, weighted by its calls in flight.
+ * A node failing several times in a row is skipped for a while (its circuit breaker opens), and a
+ * call failing to reach a node is sent to another one transparently.</p>
+ *
+ * <p>Transactions are always sent to the same node as long as it's healthy, and queries shortly
+ * after a transaction go to that node too, so that they see the transaction's effects.</p>
+ */
+public final class BalancedChannel extends ManagedChannel {
+
+    // consecutive failures opening the circuit breaker of a node
+    private static final int failureThreshold = 3;
+    // how long an open breaker skips its node, doubled on each failed trial
+    private static final long minOpenNanos = TimeUnit.SECONDS.toNanos(1);
+    private static final long maxOpenNanos = TimeUnit.SECONDS.toNanos(30);
+    private static final long probeIntervalNanos = TimeUnit.SECONDS.toNanos(30);
+    private static final long probeTimeoutMillis = 5000;
+    // queries within this time after a transaction go to the transaction's node
+    private static final long readYourWritesNanos = TimeUnit.SECONDS.toNanos(3);
+    // weight of the latest sample in latency average
+    private static final double latencyDecay = 0.3;
+
+    // a chain node and its health
+    private static final class Node {
+        final ManagedChannel channel;
+        final AtomicInteger inFlight = new AtomicInteger();
+        // guarded by this
+        double latency = -1;
+        int failures;
+        long openUntil;
+        long openNanos;
+        boolean trial;
+
+        Node(ManagedChannel channel) {
+            this.channel = channel;
+        }
+
+        synchronized boolean available(long now) {
+            return failures < failureThreshold || (!trial && now - openUntil >= 0);
+        }
+
+        synchronized double score() {
+            // nodes never measured come last
+            double l = latency < 0 ? Double.MAX_VALUE / 1024 : latency;
+            return l * (inFlight.get() + 1);
+        }
+
+        synchronized void onAttempt(long now) {
+            if (failures >= failureThreshold && now - openUntil >= 0) {
+                trial = true;
+            }
+        }
+
+        synchronized void onSuccess(long latencyNanos, boolean reset) {
+            latency = latency < 0 || reset ? latencyNanos : latency + latencyDecay * (latencyNanos - latency);
+            failures = 0;
+            openNanos = 0;
+            trial = false;
+        }
+
+        synchronized void onFailure(long now) {
+            failures++;
+            trial = false;
+            if (failures >= failureThreshold) {
+                openNanos = openNanos == 0 ? minOpenNanos : Math.min(openNanos * 2, maxOpenNanos);
+                openUntil = now + openNanos;
+            }
+        }
+    }
+
+    private final List<Node> nodes;
+    private final Set<String> writeMethods;
+    private volatile long lastProbe;
+    private volatile Node writeNode;
+    private volatile long lastWrite;
+
+    /**
+     * Create a channel over the given nodes.
+     * @param channels channels of chain nodes, owned by this channel from now on
+     */
+    public BalancedChannel(List<ManagedChannel> channels) {
+        if (channels.isEmpty()) {
+            throw new IllegalArgumentException("no nodes");
+        }
+        List<Node> list = new ArrayList<>(channels.size());
+        for (ManagedChannel c : channels) {
+            list.add(new Node(c));
+        }
+        // nodes not measured yet are picked in random order.
+        Collections.shuffle(list);
+        this.nodes = Collections.unmodifiableList(list);
+        this.writeMethods = Collections.singleton(ApiServiceGrpc.getBroadcastTrxMethod().getFullMethodName());
+        lastProbe = System.nanoTime();
+        for (Node node : nodes) {
+            probe(node, true);
+        }
+    }
+
+    // measure latency of all nodes in parallel.
+    private void probe(long now) {
+        lastProbe = now;
+        for (Node node : nodes) {
+            probe(node, false);
+        }
+    }
+
+    // measure latency of a node. a probe replaces the latency average, so that nodes getting no
+    // calls are measured again. the first probe includes connection setup, so another one follows.
+    private void probe(final Node node, final boolean first) {
+        final long start = System.nanoTime();
+        Futures.addCallback(
+                ApiServiceGrpc.newFutureStub(node.channel)
+                        .withDeadlineAfter(probeTimeoutMillis, TimeUnit.MILLISECONDS)
+                        .getChainState(NonParamsRequest.getDefaultInstance()),
+                new FutureCallback<GetChainStateResponse>() {
+                    @Override
+                    public void onSuccess(GetChainStateResponse result) {
+                        node.onSuccess(System.nanoTime() - start, !first);
+                        if (first) {
+                            probe(node, false);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        node.onFailure(System.nanoTime());
+                    }
+                }, MoreExecutors.directExecutor());
+    }
+
+    // whether calls failing to reach a node are sent to another one.
+    boolean failsOver() {
+        return nodes.size() > 1;
+    }
+
+    // choose a node for a call, null if all nodes are excluded.
+    private Node pick(String method, Set<Node> excluded) {
+        long now = System.nanoTime();
+        if (now - lastProbe >= probeIntervalNanos) {
+            probe(now);
+        }
+        boolean write = writeMethods.contains(method);
+        Node sticky = writeNode;
+        if (sticky != null && !excluded.contains(sticky) && sticky.available(now)
+                && (write || now - lastWrite < readYourWritesNanos)) {
+            if (write) {
+                lastWrite = now;
+            }
+            return sticky;
+        }
+        Node best = null, fallback = null;
+        double bestScore = 0;
+        for (Node node : nodes) {
+            if (excluded.contains(node)) {
+                continue;
+            }
+            if (node.available(now)) {
+                double score = node.score();
+                if (best == null || score < bestScore) {
+                    best = node;
+                    bestScore = score;
+                }
+            } else if (fallback == null) {
+                fallback = node;
+            }
+        }
+        // all breakers open, try anyway rather than failing.
+        Node node = best != null ? best : fallback;
+        if (write && node != null) {
+            writeNode = node;
+            lastWrite = now;
+        }
+        return node;
+    }
+
+    @Override
+    public <RequestT, ResponseT> ClientCall<RequestT, ResponseT> newCall(MethodDescriptor<RequestT, ResponseT> method, CallOptions callOptions) {
+        return new FailoverCall<>(method, callOptions);
+    }
+
+    @Override
+    public String authority() {
+        return nodes.get(0).channel.authority();
+    }
+
+    @Override
+    public ManagedChannel shutdown() {
+        for (Node node : nodes) {
+            node.channel.shutdown();
+        }
+        return this;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        for (Node node : nodes) {
+            if (!node.channel.isShutdown()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        for (Node node : nodes) {
+            if (!node.channel.isTerminated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public ManagedChannel shutdownNow() {
+        for (Node node : nodes) {
+            node.channel.shutdownNow();
+        }
+        return this;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Node node : nodes) {
+            if (!node.channel.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // unary call buffering its request, so that it can be sent again to another node.
+    private final class FailoverCall<RequestT, ResponseT> extends ClientCall<RequestT, ResponseT> {
+        private final MethodDescriptor<RequestT, ResponseT> method;
+        private final CallOptions callOptions;
+        private final Set<Node> tried = new HashSet<>();
+        private Listener<ResponseT> listener;
+        private Metadata headers;
+        private RequestT request;
+        private int requested;
+        // guarded by this
+        private ClientCall<RequestT, ResponseT> delegate;
+        private boolean cancelled;
+
+        FailoverCall(MethodDescriptor<RequestT, ResponseT> method, CallOptions callOptions) {
+            this.method = method;
+            this.callOptions = callOptions;
+        }
+
+        @Override
+        public void start(Listener<ResponseT> responseListener, Metadata headers) {
+            this.listener = responseListener;
+            this.headers = headers;
+        }
+
+        @Override
+        public void request(int numMessages) {
+            ClientCall<RequestT, ResponseT> d;
+            synchronized (this) {
+                requested += numMessages;
+                d = delegate;
+            }
+            if (d != null) {
+                d.request(numMessages);
+            }
+        }
+
+        @Override
+        public void sendMessage(RequestT message) {
+            request = message;
+        }
+
+        @Override
+        public void halfClose() {
+            attempt();
+        }
+
+        @Override
+        public void cancel(String message, Throwable cause) {
+            ClientCall<RequestT, ResponseT> d;
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                d = delegate;
+            }
+            if (d != null) {
+                d.cancel(message, cause);
+            } else if (listener != null) {
+                listener.onClose(Status.CANCELLED.withDescription(message).withCause(cause), new Metadata());
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            ClientCall<RequestT, ResponseT> d;
+            synchronized (this) {
+                d = delegate;
+            }
+            return d != null && d.isReady();
+        }
+
+        private void attempt() {
+            final Node node = pick(method.getFullMethodName(), tried);
+            if (node == null) {
+                listener.onClose(Status.UNAVAILABLE.withDescription("no available node"), new Metadata());
+                return;
+            }
+            tried.add(node);
+            ClientCall<RequestT, ResponseT> call = node.channel.newCall(method, callOptions);
+            int n;
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                delegate = call;
+                n = requested;
+            }
+            Metadata copy = new Metadata();
+            copy.merge(headers);
+            final long start = System.nanoTime();
+            node.onAttempt(start);
+            node.inFlight.incrementAndGet();
+            call.start(new Listener<ResponseT>() {
+                private boolean responded;
+
+                @Override
+                public void onHeaders(Metadata headers) {
+                    responded = true;
+                    listener.onHeaders(headers);
+                }
+
+                @Override
+                public void onMessage(ResponseT message) {
+                    responded = true;
+                    listener.onMessage(message);
+                }
+
+                @Override
+                public void onReady() {
+                    listener.onReady();
+                }
+
+                @Override
+                public void onClose(Status status, Metadata trailers) {
+                    node.inFlight.decrementAndGet();
+                    long now = System.nanoTime();
+                    Status.Code code = status.getCode();
+                    if (code == Status.Code.UNAVAILABLE || code == Status.Code.DEADLINE_EXCEEDED) {
+                        node.onFailure(now);
+                    } else {
+                        node.onSuccess(now - start, false);
+                    }
+                    boolean retry;
+                    synchronized (FailoverCall.this) {
+                        retry = code == Status.Code.UNAVAILABLE && !responded && !cancelled && tried.size() < nodes.size();
+                    }
+                    if (retry) {
+                        attempt();
+                    } else {
+                        listener.onClose(status, trailers);
+                    }
+                }
+            }, copy);
+            if (n > 0) {
+                call.request(n);
+            }
+            call.sendMessage(request);
+            call.halfClose();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package io.contentos.android.sdk.rpc;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import io.contentos.android.sdk.prototype.Transaction.operation;
+import io.contentos.android.sdk.prototype.Transaction.operation_receipt_with_info;
+import io.contentos.android.sdk.rpc.Grpc.BroadcastTrxResponse;
+import io.grpc.Status;
+
+/**
+ * Client packing operations into multi-operation transactions.
+ *
+ * <p>Operations are queued instead of being sent one transaction each. The queue is sent as a single
+ * transaction when it reaches a maximum number of operations or bytes, or when its oldest operation
+ * has waited for a maximum delay. It saves transactions and signatures for high-rate operations,
+ * e.g.
+ * <pre>
+ *     BatchingClient batcher = new BatchingClient(wallet.asyncAccount("alice"));
+ *     for (...) {
+ *         futures.add(batcher.vote("alice", postId));
+ *     }
+ * </pre>
+ * Each future succeeds with the result of its own operation. All operations are signed by the
+ * key of the given client, so there's one batching client per signer.</p>
+ *
+ * <p>A transaction succeeds or fails as a whole. If a batch fails, its operations are sent again
+ * one transaction each, so that a bad operation doesn't fail others.</p>
+ */
+public final class BatchingClient extends Operation.BaseResultFilter<operation, Operation.OperationCreator, ListenableFuture<operation_receipt_with_info>> {
+
+    /**
+     * Batching options.
+     */
+    public static final class Options {
+        private int maxOperations = 50;
+        private int maxBytes = 16 * 1024;
+        private long maxDelayMillis = 100;
+
+        /**
+         * Set the maximum number of operations in a transaction, 50 by default.
+         * @param maxOperations maximum number of operations
+         * @return {@code this}
+         */
+        public Options setMaxOperations(int maxOperations) {
+            if (maxOperations <= 0) {
+                throw new IllegalArgumentException("invalid maximum operations: " + maxOperations);
+            }
+            this.maxOperations = maxOperations;
+            return this;
+        }
+
+        /**
+         * Set the maximum serialized size of operations in a transaction, 16KB by default.
+         * <p>An operation larger than this is sent alone.</p>
+         * @param maxBytes maximum size in bytes
+         * @return {@code this}
+         */
+        public Options setMaxBytes(int maxBytes) {
+            if (maxBytes <= 0) {
+                throw new IllegalArgumentException("invalid maximum bytes: " + maxBytes);
+            }
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Set the maximum time an operation waits in queue, 100 milliseconds by default.
+         * @param delay maximum delay
+         * @param unit  time unit of delay
+         * @return {@code this}
+         */
+        public Options setMaxDelay(long delay, TimeUnit unit) {
+            if (delay < 0) {
+                throw new IllegalArgumentException("invalid maximum delay: " + delay);
+            }
+            this.maxDelayMillis = unit.toMillis(delay);
+            return this;
+        }
+    }
+
+    // shared by all batching clients, it only triggers delayed sends.
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "batching-timer");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    // queued operations and their results
+    private static final class Batch {
+        final List<operation> operations = new ArrayList<>();
+        final List<SettableFuture<operation_receipt_with_info>> results = new ArrayList<>();
+        int bytes;
+    }
+
+    private final AsyncRpcClient client;
+    private final int maxOperations;
+    private final int maxBytes;
+    private final long maxDelayMillis;
+
+    // guarded by this
+    private Batch batch = new Batch();
+
+    /**
+     * Create a batching client with default options.
+     * @param client the client providing connection, signing key and chain state
+     */
+    public BatchingClient(AsyncRpcClient client) {
+        this(client, new Options());
+    }
+
+    /**
+     * Create a batching client.
+     * @param client    the client providing connection, signing key and chain state
+     * @param options   batching options
+     */
+    public BatchingClient(AsyncRpcClient client, Options options) {
+        super(new Operation.OperationCreator.Factory());
+        this.client = client;
+        this.maxOperations = options.maxOperations;
+        this.maxBytes = options.maxBytes;
+        this.maxDelayMillis = options.maxDelayMillis;
+    }
+
+    /**
+     * Override method of {@link Operation.BaseResultFilter#filterResult} to queue an operation.
+     * @param op the operation
+     * @return future of the operation result.
+     */
+    @Override
+    protected ListenableFuture<operation_receipt_with_info> filterResult(operation op) {
+        SettableFuture<operation_receipt_with_info> result = SettableFuture.create();
+        int size = op.getSerializedSize();
+        List<Batch> full = new ArrayList<>(2);
+        synchronized (this) {
+            if (!batch.operations.isEmpty() && batch.bytes + size > maxBytes) {
+                full.add(takeBatch());
+            }
+            batch.operations.add(op);
+            batch.results.add(result);
+            batch.bytes += size;
+            if (batch.operations.size() >= maxOperations || batch.bytes >= maxBytes) {
+                full.add(takeBatch());
+            } else if (batch.operations.size() == 1) {
+                scheduleSend(batch);
+            }
+        }
+        for (Batch b : full) {
+            send(b, 0);
+        }
+        return result;
+    }
+
+    /**
+     * Send queued operations now.
+     */
+    public void flush() {
+        Batch b;
+        synchronized (this) {
+            if (batch.operations.isEmpty()) {
+                return;
+            }
+            b = takeBatch();
+        }
+        send(b, 0);
+    }
+
+    private Batch takeBatch() {
+        Batch b = batch;
+        batch = new Batch();
+        return b;
+    }
+
+    private void scheduleSend(final Batch b) {
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (BatchingClient.this) {
+                    // the batch may have been sent because it's full.
+                    if (batch != b) {
+                        return;
+                    }
+                    batch = new Batch();
+                }
+                send(b, 0);
+            }
+        }, maxDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // send a batch as a transaction expiring some seconds earlier than usual.
+    private void send(final Batch b, int earlierSeconds) {
+        final Transaction trx = new Transaction();
+        for (operation op : b.operations) {
+            trx.filterResult(op);
+        }
+        ListenableFuture<BroadcastTrxResponse> response;
+        try {
+            response = client.signAndBroadcastTrx(trx, true, earlierSeconds);
+        } catch (RuntimeException e) {
+            response = Futures.immediateFailedFuture(e);
+        }
+        Futures.addCallback(response, new FutureCallback<BroadcastTrxResponse>() {
+            @Override
+            public void onSuccess(BroadcastTrxResponse response) {
+                if (!response.hasInvoice()) {
+                    failAll(b, Status.UNKNOWN.withDescription("No invoice").asRuntimeException());
+                } else if (response.getInvoice().getStatus() == 500) {
+                    if (b.operations.size() > 1) {
+                        sendEach(b);
+                    } else {
+                        failAll(b, Status.UNKNOWN.withDescription(response.getInvoice().getErrorInfo()).asRuntimeException());
+                    }
+                } else {
+                    List<operation_receipt_with_info> opResults = response.getInvoice().getOpResultsList();
+                    for (int i = 0; i < b.results.size(); i++) {
+                        if (i < opResults.size()) {
+                            b.results.get(i).set(opResults.get(i));
+                        } else {
+                            b.results.get(i).set(operation_receipt_with_info.newBuilder()
+                                    .setStatus(response.getInvoice().getStatus())
+                                    .build());
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                failAll(b, t);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    // send operations of a failed batch one transaction each. Transactions of identical operations
+    // would have the same id and be rejected as duplicates, so each repeated one expires a second
+    // earlier than the one before.
+    private void sendEach(Batch b) {
+        for (int i = 0; i < b.operations.size(); i++) {
+            operation op = b.operations.get(i);
+            Batch single = new Batch();
+            single.operations.add(op);
+            single.results.add(b.results.get(i));
+            send(single, Collections.frequency(b.operations.subList(0, i), op));
+        }
+    }
+
+    private static void failAll(Batch b, Throwable t) {
+        for (SettableFuture<operation_receipt_with_info> result : b.results) {
+            result.setException(t);
+        }
+    }
+}
@@ -0,0 +1,1095 @@
+package io.contentos.android.sdk.rpc;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import io.contentos.android.sdk.prototype.Transaction.operation;
+import io.contentos.android.sdk.prototype.Transaction.signed_block;
+import io.contentos.android.sdk.prototype.Transaction.transaction_wrapper;
+import io.contentos.android.sdk.prototype.Type;
+import io.contentos.android.sdk.rpc.Grpc.TrxInfo;
+
+/**
+ * Local store of blocks serving history queries without a node.
+ *
+ * <p>Blocks are appended in order to segment files in a directory. A segment is named after its
+ * first block number, and holds records made of a 4-byte big-endian length, a CRC32 of the rest,
+ * an 8-byte block number and the serialized block. A new segment is started once the current one
+ * reaches the segment size (see {@link Options#setSegmentSize}).</p>
+ *
+ * <p>Indexes are kept in memory: block number to record location, transaction id to transaction,
+ * account to its transactions, and post id to the transaction creating the post. Lookups read a
+ * single record from disk. On a 64-bit VM, indexes take about 12 bytes per block, 120 bytes per
+ * transaction for its id in a hash map of boxed values, 8 bytes more for each account it names,
+ * and 70 bytes per post: about 140MB for a million transfers.</p>
+ *
+ * <p>Indexes are saved to an index file by {@link #flush()} and {@link #close()}, so that only
+ * blocks appended after the last save are scanned on open. A save appends the indexes of blocks
+ * appended since the last one to the file, and the file is only rewritten in full once appended
+ * indexes outgrow the rest of it. Without a valid index file, all segments are scanned.</p>
+ *
+ * <p>The store is a {@link BlockSync.Listener}, so that a sync feeds it incrementally. Blocks
+ * already stored are skipped, and a resumed sync can be started after {@link #lastBlock()}.
+ * Rollbacks truncate the store. Appends aren't synced to disk until {@link #flush()} or
+ * {@link #close()}. A crash leaves a partial record at the end of last segment, it's discarded on
+ * next open together with anything after it.</p>
+ *
+ * <p>Lookups are thread-safe and run in parallel. Appends and truncations are serialized.</p>
+ */
+public final class BlockStore implements BlockSync.Listener, Closeable {
+
+    private static final String SUFFIX = ".seg";
+    private static final String INDEX_FILE = "index";
+    private static final int INDEX_VERSION = 2;
+    // length, crc and block number
+    private static final int RECORD_HEADER_SIZE = 16;
+    // upper bound of a sane record size.
+    private static final int MAX_RECORD_SIZE = 64 << 20;
+    // a transaction is referred to as (block number << TRX_BITS | index in block).
+    private static final int TRX_BITS = 20;
+    // a record location is (segment index << OFFSET_BITS | offset in segment).
+    private static final int OFFSET_BITS = 40;
+
+    /**
+     * Block store options.
+     */
+    public static final class Options {
+        private long segmentSize = 64 << 20;
+
+        /**
+         * Set the size reached by a segment before a new one is started, 64MB by default.
+         * @param bytes segment size in bytes
+         * @return {@code this}
+         */
+        public Options setSegmentSize(long bytes) {
+            if (bytes <= 0 || bytes >= 1L << OFFSET_BITS) {
+                throw new IllegalArgumentException("invalid segment size: " + bytes);
+            }
+            this.segmentSize = bytes;
+            return this;
+        }
+    }
+
+    // a segment file
+    private static final class Segment {
+        final long firstBlock;
+        final File file;
+        final FileChannel channel;
+        long size;
+
+        Segment(long firstBlock, File file) throws IOException {
+            this.firstBlock = firstBlock;
+            this.file = file;
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+            this.size = channel.size();
+        }
+    }
+
+    // a section of the index file: its length, its content and the CRC32 of the content.
+    private static final class Section {
+        private final RandomAccessFile file;
+        private final long start;
+        private final CheckedOutputStream checked;
+        final DataOutputStream out;
+
+        // start a section at the current position of the file.
+        Section(RandomAccessFile file) throws IOException {
+            this.file = file;
+            this.start = file.getFilePointer();
+            file.writeLong(0);
+            this.checked = new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(file.getChannel()), 1 << 16), new CRC32());
+            this.out = new DataOutputStream(checked);
+        }
+
+        // write the length and CRC of the section, and return the end of it.
+        long finish() throws IOException {
+            out.flush();
+            long end = file.getFilePointer();
+            file.writeLong(checked.getChecksum().getValue());
+            file.seek(start);
+            file.writeLong(end - start - 8);
+            return end + 8;
+        }
+    }
+
+    // growable list of transaction references, in ascending order
+    private static final class Refs {
+        long[] items = new long[4];
+        int size;
+
+        void add(long ref) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = ref;
+        }
+    }
+
+    private final File dir;
+    private final long segmentSize;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // guarded by lock
+    private final List<Segment> segments = new ArrayList<>();
+    private long first = -1;
+    private int count;
+    private long[] locations = new long[1024];
+    private int[] times = new int[1024];
+    private final Map<ByteString, Long> trxById = new HashMap<>();
+    private final Map<String, Refs> trxByAccount = new HashMap<>();
+    private final Map<Long, Long> trxByPost = new HashMap<>();
+    // number of blocks covered by the index file
+    private int indexedCount;
+    // size of the index file, and of its first section holding indexes in full
+    private long indexSize;
+    private long indexBaseSize;
+    private boolean closed;
+
+    /**
+     * Open a block store with default options, creating it if needed.
+     * @param dir directory of segment files
+     * @throws IOException if segments can't be read
+     */
+    public BlockStore(File dir) throws IOException {
+        this(dir, new Options());
+    }
+
+    /**
+     * Open a block store, creating it if needed.
+     * @param dir       directory of segment files
+     * @param options   store options
+     * @throws IOException if segments can't be read
+     */
+    public BlockStore(File dir, Options options) throws IOException {
+        this.dir = dir;
+        this.segmentSize = options.segmentSize;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("failed to create directory " + dir);
+        }
+        load();
+    }
+
+    /**
+     * Get the number of the first block stored.
+     * @return first block number, or -1 if empty.
+     */
+    public long firstBlock() {
+        lock.readLock().lock();
+        try {
+            return first;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the number of the last block stored.
+     * @return last block number, or -1 if empty.
+     */
+    public long lastBlock() {
+        lock.readLock().lock();
+        try {
+            return first < 0 ? -1 : first + count - 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get a stored block.
+     * @param blockNum block number
+     * @return the block, or null if not stored.
+     * @throws IOException if the block can't be read
+     */
+    public signed_block getBlock(long blockNum) throws IOException {
+        lock.readLock().lock();
+        try {
+            return contains(blockNum) ? readBlock(blockNum) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get transaction information.
+     * <p>Block id and irreversibility of the returned information aren't filled.</p>
+     * @param trxId the transaction id
+     * @return transaction information, or null if not stored.
+     * @throws IOException if the block can't be read
+     */
+    public TrxInfo getTrxInfoById(byte[] trxId) throws IOException {
+        lock.readLock().lock();
+        try {
+            Long ref = trxById.get(ByteString.copyFrom(trxId));
+            return ref == null ? null : trxInfo(readBlock(ref >>> TRX_BITS), ref);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get transactions of specific account in specific time range.
+     * <p>Transactions of an account are the ones with an operation naming the account, e.g. both
+     * the sender and the receiver of a transfer.</p>
+     * @param name              account name
+     * @param startTimestamp    minimal time stamp, in UTC seconds, exclusive
+     * @param endTimeStamp      maximum time stamp, in UTC seconds, inclusive
+     * @param limit             maximum number of transactions
+     * @return transaction list in descending order of creation time.
+     * @throws IOException if a block can't be read
+     */
+    public List<TrxInfo> getUserTrxListByTime(String name, int startTimestamp, int endTimeStamp, int limit) throws IOException {
+        List<TrxInfo> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Refs refs = trxByAccount.get(name);
+            if (refs == null) {
+                return result;
+            }
+            // the first transaction after endTimeStamp, blocks are in time order.
+            int lo = 0, hi = refs.size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (timeOf(refs.items[mid]) <= endTimeStamp) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            signed_block block = null;
+            long blockNum = -1;
+            for (int i = lo - 1; i >= 0 && result.size() < limit; i--) {
+                long ref = refs.items[i];
+                if (timeOf(ref) <= startTimestamp) {
+                    break;
+                }
+                if (ref >>> TRX_BITS != blockNum) {
+                    blockNum = ref >>> TRX_BITS;
+                    block = readBlock(blockNum);
+                }
+                result.add(trxInfo(block, ref));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get information of the transaction creating a post or a reply.
+     * @param postId post id
+     * @return transaction information, or null if not stored.
+     * @throws IOException if the block can't be read
+     */
+    public TrxInfo getPostTrxInfo(long postId) throws IOException {
+        lock.readLock().lock();
+        try {
+            Long ref = trxByPost.get(postId);
+            return ref == null ? null : trxInfo(readBlock(ref >>> TRX_BITS), ref);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Append a block.
+     * <p>The block must follow the last one stored, unless the store is empty. A block already
+     * stored is skipped, or replaces the stored one and all blocks after it if they differ.</p>
+     * @param blockNum  block number
+     * @param block     the block
+     * @throws IOException if the block can't be written
+     */
+    public void append(long blockNum, signed_block block) throws IOException {
+        byte[] data = block.toByteArray();
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            if (contains(blockNum)) {
+                if (Arrays.equals(readRecord(blockNum), data)) {
+                    return;
+                }
+                truncateLocked(blockNum);
+            }
+            if (first >= 0 && blockNum != first + count) {
+                throw new IllegalArgumentException("block " + blockNum + " doesn't follow block " + (first + count - 1));
+            }
+            Segment seg = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (seg == null || seg.size >= segmentSize) {
+                if (seg != null) {
+                    // only the last segment is synced by flush(), so sync a full one before moving on.
+                    seg.channel.force(false);
+                }
+                seg = new Segment(blockNum, new File(dir, fileName(blockNum)));
+                segments.add(seg);
+            }
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + data.length);
+            record.putInt(data.length + RECORD_HEADER_SIZE - 4);
+            record.putInt(0);
+            record.putLong(blockNum);
+            record.put(data);
+            record.putInt(4, crc(record.array(), 8, record.capacity() - 8));
+            record.flip();
+            long offset = seg.size;
+            while (record.hasRemaining()) {
+                seg.channel.write(record, offset + record.position());
+            }
+            seg.size = offset + record.capacity();
+            if (first < 0) {
+                first = blockNum;
+            }
+            index(blockNum, block, (long) (segments.size() - 1) << OFFSET_BITS | offset);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a block and all blocks after it.
+     * @param blockNum the first block to remove
+     * @throws IOException if segments can't be truncated
+     */
+    public void truncate(long blockNum) throws IOException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            truncateLocked(blockNum);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Write appended blocks to disk, and save indexes if blocks were appended since last save.
+     * @throws IOException if segments can't be synced or indexes can't be saved
+     */
+    public void flush() throws IOException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            if (!segments.isEmpty()) {
+                segments.get(segments.size() - 1).channel.force(false);
+            }
+            if (count != indexedCount) {
+                saveIndex();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Flush and close the store.
+     * @throws IOException if segments can't be synced
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            try {
+                flush();
+            } finally {
+                closed = true;
+                for (Segment seg : segments) {
+                    seg.channel.close();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onBlock(long blockNum, signed_block block) {
+        try {
+            append(blockNum, block);
+        } catch (IOException e) {
+            throw new RuntimeException("failed to store block " + blockNum, e);
+        }
+    }
+
+    @Override
+    public void onRollback(long blockNum) {
+        try {
+            truncate(blockNum);
+        } catch (IOException e) {
+            throw new RuntimeException("failed to truncate at block " + blockNum, e);
+        }
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        // failed queries are retried by the sync, the store has nothing to do.
+    }
+
+    // open segments in order, and index their blocks after the saved indexes.
+    private void load() throws IOException {
+        String[] names = dir.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SUFFIX) && name.length() == 20 + SUFFIX.length();
+            }
+        });
+        Arrays.sort(names);
+        long[][] indexedSegments = loadIndex(names);
+        boolean damaged = false;
+        for (String name : names) {
+            File file = new File(dir, name);
+            long firstBlock;
+            try {
+                firstBlock = Long.parseLong(name.substring(0, 20));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (segments.size() < indexedSegments.length) {
+                // covered by saved indexes, only the records after them are scanned.
+                Segment seg = new Segment(firstBlock, file);
+                segments.add(seg);
+                if (segments.size() < indexedSegments.length) {
+                    continue;
+                }
+                long start = indexedSegments[indexedSegments.length - 1][1];
+                long valid = scan(seg, segments.size() - 1, start);
+                if (valid < seg.size) {
+                    seg.channel.truncate(valid);
+                    seg.size = valid;
+                    damaged = true;
+                }
+                continue;
+            }
+            if (damaged || (first >= 0 && firstBlock != first + count)) {
+                // anything after a damaged record is discarded.
+                damaged = true;
+                if (!file.delete()) {
+                    throw new IOException("failed to delete " + file);
+                }
+                continue;
+            }
+            Segment seg = new Segment(firstBlock, file);
+            segments.add(seg);
+            long valid = scan(seg, segments.size() - 1, 0);
+            if (valid < seg.size) {
+                seg.channel.truncate(valid);
+                seg.size = valid;
+                damaged = true;
+            }
+            if (seg.size == 0) {
+                seg.channel.close();
+                segments.remove(segments.size() - 1);
+                if (!file.delete()) {
+                    throw new IOException("failed to delete " + file);
+                }
+            }
+        }
+    }
+
+    // index records of a segment from an offset on, and return the end of the last valid one.
+    private long scan(Segment seg, int segIndex, long start) throws IOException {
+        FileInputStream file = new FileInputStream(seg.file);
+        file.getChannel().position(start);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(file, 1 << 16));
+        long offset = start;
+        try {
+            while (offset < seg.size) {
+                int length = in.readInt();
+                if (length < RECORD_HEADER_SIZE - 4 || length > MAX_RECORD_SIZE || offset + 4 + length > seg.size) {
+                    break;
+                }
+                byte[] body = new byte[length];
+                in.readFully(body);
+                if (crc(body, 4, length - 4) != ByteBuffer.wrap(body).getInt(0)) {
+                    break;
+                }
+                long blockNum = ByteBuffer.wrap(body).getLong(4);
+                long expected = first < 0 ? seg.firstBlock : first + count;
+                if (blockNum != expected) {
+                    break;
+                }
+                signed_block block;
+                try {
+                    block = signed_block.parseFrom(Arrays.copyOfRange(body, 12, length));
+                } catch (InvalidProtocolBufferException e) {
+                    break;
+                }
+                if (first < 0) {
+                    first = blockNum;
+                }
+                index(blockNum, block, (long) segIndex << OFFSET_BITS | offset);
+                offset += 4 + length;
+            }
+        } catch (EOFException e) {
+            // partial record
+        } finally {
+            in.close();
+        }
+        return offset;
+    }
+
+    // read the index file if it matches segments, and return (first block, size) of the segments it covers.
+    private long[][] loadIndex(String[] names) throws IOException {
+        File file = new File(dir, INDEX_FILE);
+        if (!file.exists()) {
+            return new long[0][];
+        }
+        long limit = file.length();
+        long[][] indexed = null;
+        DataInputStream raw = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        try {
+            if (raw.readInt() == INDEX_VERSION) {
+                long end = 4 + 8 + readLength(raw, limit) + 8;
+                CheckedInputStream checked = new CheckedInputStream(raw, new CRC32());
+                DataInputStream in = new DataInputStream(checked);
+                long[][] segs = new long[readSize(in, limit)][];
+                for (int i = 0; i < segs.length; i++) {
+                    segs[i] = new long[]{in.readLong(), in.readLong()};
+                }
+                first = in.readLong();
+                count = readSize(in, limit);
+                int lastCrc = in.readInt();
+                locations = new long[Math.max(count, 1024)];
+                times = new int[locations.length];
+                for (int i = 0; i < count; i++) {
+                    locations[i] = in.readLong();
+                    times[i] = in.readInt();
+                }
+                for (int i = readSize(in, limit); i > 0; i--) {
+                    byte[] id = new byte[in.readUnsignedShort()];
+                    in.readFully(id);
+                    trxById.put(ByteString.copyFrom(id), in.readLong());
+                }
+                for (int i = readSize(in, limit); i > 0; i--) {
+                    String account = in.readUTF();
+                    Refs refs = new Refs();
+                    refs.size = readSize(in, limit);
+                    refs.items = new long[Math.max(refs.size, 4)];
+                    for (int j = 0; j < refs.size; j++) {
+                        refs.items[j] = in.readLong();
+                    }
+                    trxByAccount.put(account, refs);
+                }
+                for (int i = readSize(in, limit); i > 0; i--) {
+                    trxByPost.put(in.readLong(), in.readLong());
+                }
+                long base = end;
+                if (raw.readLong() == checked.getChecksum().getValue()) {
+                    // sections appended by later saves, up to a partial one left by a crash.
+                    while (end + 16 <= limit) {
+                        long size = raw.readLong();
+                        if (size <= 0 || size > limit - end - 16) {
+                            break;
+                        }
+                        byte[] body = new byte[(int) size];
+                        raw.readFully(body);
+                        CRC32 crc = new CRC32();
+                        crc.update(body, 0, body.length);
+                        if (raw.readLong() != crc.getValue()) {
+                            break;
+                        }
+                        DataInputStream section = new DataInputStream(new ByteArrayInputStream(body));
+                        int fromSeg = section.readInt();
+                        if (fromSeg < 0 || fromSeg > segs.length) {
+                            throw new IOException("invalid segment " + fromSeg);
+                        }
+                        segs = Arrays.copyOf(segs, fromSeg + readSize(section, limit));
+                        for (int i = fromSeg; i < segs.length; i++) {
+                            segs[i] = new long[]{section.readLong(), section.readLong()};
+                        }
+                        lastCrc = section.readInt();
+                        for (int n = readSize(section, limit); n > 0; n--) {
+                            long blockNum = first + count;
+                            addBlock(section.readLong(), section.readInt());
+                            for (int i = 0, trxCount = readSize(section, limit); i < trxCount; i++) {
+                                long ref = blockNum << TRX_BITS | i;
+                                byte[] id = new byte[section.readUnsignedShort()];
+                                section.readFully(id);
+                                trxById.put(ByteString.copyFrom(id), ref);
+                                for (int j = readSize(section, limit); j > 0; j--) {
+                                    addRef(section.readUTF(), ref);
+                                }
+                                for (int j = readSize(section, limit); j > 0; j--) {
+                                    trxByPost.put(section.readLong(), ref);
+                                }
+                            }
+                        }
+                        end += 16 + size;
+                    }
+                    if (matches(segs, names, lastCrc)) {
+                        indexed = segs;
+                        indexSize = end;
+                        indexBaseSize = base;
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // damaged, all segments are scanned instead.
+        } finally {
+            raw.close();
+        }
+        if (indexed == null) {
+            first = -1;
+            count = 0;
+            locations = new long[1024];
+            times = new int[1024];
+            trxById.clear();
+            trxByAccount.clear();
+            trxByPost.clear();
+            if (!file.delete()) {
+                throw new IOException("failed to delete " + file);
+            }
+            return new long[0][];
+        }
+        indexedCount = count;
+        return indexed;
+    }
+
+    private static long readLength(DataInputStream in, long limit) throws IOException {
+        long length = in.readLong();
+        if (length <= 0 || length > limit) {
+            throw new IOException("invalid length " + length);
+        }
+        return length;
+    }
+
+    private static int readSize(DataInputStream in, long limit) throws IOException {
+        int size = in.readInt();
+        if (size < 0 || size > limit) {
+            throw new IOException("invalid size " + size);
+        }
+        return size;
+    }
+
+    // whether segments covered by saved indexes are there and unchanged, up to the last indexed record.
+    private boolean matches(long[][] segs, String[] names, int lastCrc) throws IOException {
+        if (count == 0 || segs.length == 0 || segs.length > names.length || segs[0][0] != first) {
+            return false;
+        }
+        for (int i = 0; i < segs.length; i++) {
+            long size = new File(dir, names[i]).length();
+            if (!names[i].equals(fileName(segs[i][0])) || size < segs[i][1] || (i < segs.length - 1 && size != segs[i][1])) {
+                return false;
+            }
+        }
+        long location = locations[count - 1];
+        if ((location >>> OFFSET_BITS) != segs.length - 1) {
+            return false;
+        }
+        RandomAccessFile last = new RandomAccessFile(new File(dir, names[segs.length - 1]), "r");
+        try {
+            last.seek(location & ((1L << OFFSET_BITS) - 1));
+            int length = last.readInt();
+            return last.getFilePointer() + length == segs[segs.length - 1][1]
+                    && last.readInt() == lastCrc
+                    && last.readLong() == first + count - 1;
+        } finally {
+            last.close();
+        }
+    }
+
+    // save indexes to the index file, by appending the ones of blocks indexed since last save, or
+    // by rewriting it once appended indexes outgrow the ones written in full.
+    private void saveIndex() throws IOException {
+        File file = new File(dir, INDEX_FILE);
+        if (count == 0) {
+            if (file.exists() && !file.delete()) {
+                throw new IOException("failed to delete " + file);
+            }
+            indexedCount = 0;
+            return;
+        }
+        if (indexedCount == 0 || indexSize - indexBaseSize > indexBaseSize) {
+            writeIndex(file);
+        } else {
+            appendIndex(file);
+        }
+        indexedCount = count;
+    }
+
+    // write all indexes to the index file, replacing it atomically.
+    private void writeIndex(File file) throws IOException {
+        File tmp = new File(dir, INDEX_FILE + ".tmp");
+        RandomAccessFile f = new RandomAccessFile(tmp, "rw");
+        long end;
+        try {
+            f.setLength(0);
+            f.writeInt(INDEX_VERSION);
+            Section section = new Section(f);
+            DataOutputStream out = section.out;
+            out.writeInt(segments.size());
+            for (Segment seg : segments) {
+                out.writeLong(seg.firstBlock);
+                out.writeLong(seg.size);
+            }
+            out.writeLong(first);
+            out.writeInt(count);
+            out.writeInt(recordHeader(first + count - 1).getInt(4));
+            for (int i = 0; i < count; i++) {
+                out.writeLong(locations[i]);
+                out.writeInt(times[i]);
+            }
+            out.writeInt(trxById.size());
+            for (Map.Entry<ByteString, Long> e : trxById.entrySet()) {
+                out.writeShort(e.getKey().size());
+                e.getKey().writeTo(out);
+                out.writeLong(e.getValue());
+            }
+            out.writeInt(trxByAccount.size());
+            for (Map.Entry<String, Refs> e : trxByAccount.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeInt(e.getValue().size);
+                for (int i = 0; i < e.getValue().size; i++) {
+                    out.writeLong(e.getValue().items[i]);
+                }
+            }
+            out.writeInt(trxByPost.size());
+            for (Map.Entry<Long, Long> e : trxByPost.entrySet()) {
+                out.writeLong(e.getKey());
+                out.writeLong(e.getValue());
+            }
+            end = section.finish();
+            f.getFD().sync();
+        } finally {
+            f.close();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("failed to rename " + tmp);
+        }
+        indexSize = end;
+        indexBaseSize = end;
+    }
+
+    // append indexes of blocks indexed since last save to the index file, read back from the blocks.
+    private void appendIndex(File file) throws IOException {
+        RandomAccessFile f = new RandomAccessFile(file, "rw");
+        long end;
+        try {
+            // a partial section left by a crash is overwritten.
+            f.setLength(indexSize);
+            f.seek(indexSize);
+            Section section = new Section(f);
+            DataOutputStream out = section.out;
+            // segments before the one of the first block appended are unchanged.
+            int fromSeg = (int) (locations[indexedCount] >>> OFFSET_BITS);
+            out.writeInt(fromSeg);
+            out.writeInt(segments.size() - fromSeg);
+            for (Segment seg : segments.subList(fromSeg, segments.size())) {
+                out.writeLong(seg.firstBlock);
+                out.writeLong(seg.size);
+            }
+            out.writeInt(recordHeader(first + count - 1).getInt(4));
+            out.writeInt(count - indexedCount);
+            List<Long> posts = new ArrayList<>();
+            for (int n = indexedCount; n < count; n++) {
+                signed_block block = readBlock(first + n);
+                out.writeLong(locations[n]);
+                out.writeInt(times[n]);
+                out.writeInt(block.getTransactionsCount());
+                for (transaction_wrapper wrap : block.getTransactionsList()) {
+                    byte[] id = Transaction.idOf(wrap.getSigTrx());
+                    out.writeShort(id.length);
+                    out.write(id);
+                    posts.clear();
+                    Set<String> accounts = accountsOf(wrap, posts);
+                    out.writeInt(accounts.size());
+                    for (String account : accounts) {
+                        out.writeUTF(account);
+                    }
+                    out.writeInt(posts.size());
+                    for (long post : posts) {
+                        out.writeLong(post);
+                    }
+                }
+            }
+            end = section.finish();
+            f.getFD().sync();
+        } finally {
+            f.close();
+        }
+        indexSize = end;
+    }
+
+    private void index(long blockNum, signed_block block, long location) {
+        addBlock(location, block.getSignedHeader().getHeader().getTimestamp().getUtcSeconds());
+        List<Long> posts = new ArrayList<>();
+        for (int i = 0; i < block.getTransactionsCount(); i++) {
+            long ref = blockNum << TRX_BITS | i;
+            transaction_wrapper wrap = block.getTransactions(i);
+            trxById.put(ByteString.copyFrom(Transaction.idOf(wrap.getSigTrx())), ref);
+            posts.clear();
+            for (String account : accountsOf(wrap, posts)) {
+                addRef(account, ref);
+            }
+            for (long post : posts) {
+                trxByPost.put(post, ref);
+            }
+        }
+    }
+
+    private void addBlock(long location, int time) {
+        if (count == locations.length) {
+            locations = Arrays.copyOf(locations, count * 2);
+            times = Arrays.copyOf(times, count * 2);
+        }
+        locations[count] = location;
+        times[count] = time;
+        count++;
+    }
+
+    private void addRef(String account, long ref) {
+        Refs refs = trxByAccount.get(account);
+        if (refs == null) {
+            refs = new Refs();
+            trxByAccount.put(account, refs);
+        }
+        refs.add(ref);
+    }
+
+    private void unindex(long blockNum, signed_block block) {
+        List<Long> posts = new ArrayList<>();
+        for (int i = block.getTransactionsCount() - 1; i >= 0; i--) {
+            long ref = blockNum << TRX_BITS | i;
+            transaction_wrapper wrap = block.getTransactions(i);
+            trxById.remove(ByteString.copyFrom(Transaction.idOf(wrap.getSigTrx())));
+            posts.clear();
+            for (String account : accountsOf(wrap, posts)) {
+                Refs refs = trxByAccount.get(account);
+                // transactions are removed from the last one, so the reference is the last one too.
+                if (refs != null && refs.size > 0 && refs.items[refs.size - 1] == ref) {
+                    refs.size--;
+                    if (refs.size == 0) {
+                        trxByAccount.remove(account);
+                    }
+                }
+            }
+            for (long post : posts) {
+                if (Long.valueOf(ref).equals(trxByPost.get(post))) {
+                    trxByPost.remove(post);
+                }
+            }
+        }
+    }
+
+    // accounts named by operations of a transaction, and ids of posts it creates.
+    private static Set<String> accountsOf(transaction_wrapper wrap, List<Long> posts) {
+        Set<String> accounts = new LinkedHashSet<>();
+        for (operation op : wrap.getSigTrx().getTrx().getOperationsList()) {
+            switch (op.getOpCase()) {
+                case OP1:
+                    addAccounts(accounts, op.getOp1().getCreator(), op.getOp1().getNewAccountName());
+                    break;
+                case OP2:
+                    addAccounts(accounts, op.getOp2().getFrom(), op.getOp2().getTo());
+                    break;
+                case OP3:
+                    addAccounts(accounts, op.getOp3().getOwner());
+                    break;
+                case OP4:
+                    addAccounts(accounts, op.getOp4().getOwner());
+                    break;
+                case OP5:
+                    addAccounts(accounts, op.getOp5().getVoter(), op.getOp5().getBlockProducer());
+                    break;
+                case OP6:
+                    addAccounts(accounts, op.getOp6().getOwner());
+                    posts.add(op.getOp6().getUuid());
+                    break;
+                case OP7:
+                    addAccounts(accounts, op.getOp7().getOwner());
+                    posts.add(op.getOp7().getUuid());
+                    break;
+                case OP8:
+                    addAccounts(accounts, op.getOp8().getAccount(), op.getOp8().getFAccount());
+                    break;
+                case OP9:
+                    addAccounts(accounts, op.getOp9().getVoter());
+                    break;
+                case OP10:
+                    addAccounts(accounts, op.getOp10().getFrom(), op.getOp10().getTo());
+                    break;
+                case OP13:
+                    addAccounts(accounts, op.getOp13().getOwner());
+                    break;
+                case OP14:
+                    addAccounts(accounts, op.getOp14().getCaller(), op.getOp14().getOwner());
+                    break;
+                case OP16:
+                    addAccounts(accounts, op.getOp16().getFrom());
+                    break;
+                case OP17:
+                    addAccounts(accounts, op.getOp17().getFrom(), op.getOp17().getTo());
+                    break;
+                case OP18:
+                    addAccounts(accounts, op.getOp18().getCreditor(), op.getOp18().getDebtor());
+                    break;
+                case OP19:
+                    addAccounts(accounts, op.getOp19().getOwner());
+                    break;
+                case OP20:
+                    addAccounts(accounts, op.getOp20().getOwner());
+                    break;
+                case OP21:
+                    addAccounts(accounts, op.getOp21().getAccount());
+                    break;
+                case OP22:
+                    addAccounts(accounts, op.getOp22().getAccount());
+                    break;
+                default:
+                    break;
+            }
+        }
+        return accounts;
+    }
+
+    private static void addAccounts(Set<String> accounts, Type.account_name... names) {
+        for (Type.account_name name : names) {
+            if (!name.getValue().isEmpty()) {
+                accounts.add(name.getValue());
+            }
+        }
+    }
+
+    private void truncateLocked(long blockNum) throws IOException {
+        if (first < 0 || blockNum > first + count - 1) {
+            return;
+        }
+        long from = Math.max(blockNum, first);
+        if (from - first < indexedCount) {
+            // saved indexes refer to removed blocks.
+            File file = new File(dir, INDEX_FILE);
+            if (file.exists() && !file.delete()) {
+                throw new IOException("failed to delete " + file);
+            }
+            indexedCount = 0;
+        }
+        for (long n = first + count - 1; n >= from; n--) {
+            unindex(n, readBlock(n));
+        }
+        long location = locations[(int) (from - first)];
+        int segIndex = (int) (location >>> OFFSET_BITS);
+        long offset = location & ((1L << OFFSET_BITS) - 1);
+        while (segments.size() > segIndex + 1) {
+            Segment seg = segments.remove(segments.size() - 1);
+            seg.channel.close();
+            if (!seg.file.delete()) {
+                throw new IOException("failed to delete " + seg.file);
+            }
+        }
+        Segment seg = segments.get(segIndex);
+        if (offset == 0) {
+            segments.remove(segIndex);
+            seg.channel.close();
+            if (!seg.file.delete()) {
+                throw new IOException("failed to delete " + seg.file);
+            }
+        } else {
+            seg.channel.truncate(offset);
+            seg.size = offset;
+        }
+        count = (int) (from - first);
+        if (count == 0) {
+            first = -1;
+        }
+    }
+
+    private boolean contains(long blockNum) {
+        return first >= 0 && blockNum >= first && blockNum < first + count;
+    }
+
+    private int timeOf(long ref) {
+        return times[(int) ((ref >>> TRX_BITS) - first)];
+    }
+
+    private signed_block readBlock(long blockNum) throws IOException {
+        return signed_block.parseFrom(readRecord(blockNum));
+    }
+
+    // serialized block of a stored block number
+    private byte[] readRecord(long blockNum) throws IOException {
+        ByteBuffer header = recordHeader(blockNum);
+        long location = locations[(int) (blockNum - first)];
+        Segment seg = segments.get((int) (location >>> OFFSET_BITS));
+        long offset = location & ((1L << OFFSET_BITS) - 1);
+        ByteBuffer data = ByteBuffer.allocate(header.getInt(0) - (RECORD_HEADER_SIZE - 4));
+        readFully(seg.channel, data, offset + RECORD_HEADER_SIZE);
+        return data.array();
+    }
+
+    // length, crc and block number of a stored block number
+    private ByteBuffer recordHeader(long blockNum) throws IOException {
+        checkOpen();
+        long location = locations[(int) (blockNum - first)];
+        Segment seg = segments.get((int) (location >>> OFFSET_BITS));
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(seg.channel, header, location & ((1L << OFFSET_BITS) - 1));
+        return header;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static TrxInfo trxInfo(signed_block block, long ref) {
+        transaction_wrapper wrap = block.getTransactions((int) (ref & ((1 << TRX_BITS) - 1)));
+        return TrxInfo.newBuilder()
+                .setTrxId(Type.sha256.newBuilder().setHash(ByteString.copyFrom(Transaction.idOf(wrap.getSigTrx()))))
+                .setBlockHeight(ref >>> TRX_BITS)
+                .setTrxWrap(wrap)
+                .setBlockTime(block.getSignedHeader().getHeader().getTimestamp())
+                .build();
+    }
+
+    private static int crc(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static String fileName(long firstBlock) {
+        String s = Long.toString(firstBlock);
+        StringBuilder sb = new StringBuilder(20 + SUFFIX.length());
+        for (int i = s.length(); i < 20; i++) {
+            sb.append('0');
+        }
+        return sb.append(s).append(SUFFIX).toString();
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("block store closed");
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package io.contentos.android.sdk.rpc;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.ByteString;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.contentos.android.sdk.crypto.Hash;
+import io.contentos.android.sdk.prototype.Transaction.signed_block;
+import io.contentos.android.sdk.rpc.Grpc.*;
+
+import static io.contentos.android.sdk.rpc.FutureHelper.getUnchecked;
+
+/**
+ * Follower of the chain delivering blocks in order.
+ *
+ * <p>Blocks are queried a window at a time: a number of them are in flight at once, and they are
+ * delivered to the listener strictly in order of block numbers as they arrive. The listener is
+ * called on the sync thread, so a slow listener stops further queries once the window is full.
+ * Catching up is then bound by bandwidth rather than by latency.</p>
+ *
+ * <p>By default, only irreversible blocks are delivered. Blocks above the last irreversible one
+ * can be delivered too (see {@link Options#setFollowReversible}). Their ids are checked regularly,
+ * and when the chain switched to another fork, the listener is told to roll back before blocks of
+ * the new fork are delivered. In that mode, a block not linked to the last irreversible block
+ * delivered is refused as well, since it comes from a node behind on a stale fork.</p>
+ *
+ * <p>The last irreversible block delivered can be saved in a checkpoint file, so that a sync
+ * resumes after it when started again. Blocks delivered but not saved yet are delivered again
+ * after a restart.</p>
+ */
+public final class BlockSync {
+
+    /**
+     * Receiver of blocks, called on the sync thread.
+     */
+    public interface Listener {
+        /**
+         * Receive the next block.
+         * @param blockNum  block number
+         * @param block     the block
+         */
+        void onBlock(long blockNum, signed_block block);
+
+        /**
+         * Forget reversible blocks which were replaced by another fork.
+         * <p>Blocks of the new fork are delivered afterwards, from {@code blockNum} on.</p>
+         * @param blockNum the first replaced block
+         */
+        void onRollback(long blockNum);
+
+        /**
+         * Get notified of an error.
+         * <p>Failed queries are retried after the poll interval. An exception thrown by the
+         * listener stops the sync.</p>
+         * @param error the error
+         */
+        void onError(Throwable error);
+    }
+
+    /**
+     * Block sync options.
+     */
+    public static final class Options {
+        private int window = 64;
+        private long pollIntervalMillis = 1000;
+        private boolean followReversible;
+        private File checkpointFile;
+        private int checkpointInterval = 1000;
+
+        /**
+         * Set the maximum number of blocks queried and not delivered yet, 64 by default.
+         * @param window maximum number of blocks
+         * @return {@code this}
+         */
+        public Options setWindow(int window) {
+            if (window <= 0) {
+                throw new IllegalArgumentException("invalid window: " + window);
+            }
+            this.window = window;
+            return this;
+        }
+
+        /**
+         * Set the interval of polling for new blocks once caught up, 1 second by default.
+         * @param interval  polling interval
+         * @param unit      time unit of interval
+         * @return {@code this}
+         */
+        public Options setPollInterval(long interval, TimeUnit unit) {
+            if (interval <= 0) {
+                throw new IllegalArgumentException("invalid poll interval: " + interval);
+            }
+            this.pollIntervalMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        /**
+         * Set whether reversible blocks are delivered too, false by default.
+         * @param followReversible deliver reversible blocks or not
+         * @return {@code this}
+         */
+        public Options setFollowReversible(boolean followReversible) {
+            this.followReversible = followReversible;
+            return this;
+        }
+
+        /**
+         * Set the file saving the last irreversible block delivered, none by default.
+         * @param file      checkpoint file
+         * @param interval  number of delivered blocks between saves, at least 1
+         * @return {@code this}
+         */
+        public Options setCheckpoint(File file, int interval) {
+            if (interval <= 0) {
+                throw new IllegalArgumentException("invalid checkpoint interval: " + interval);
+            }
+            this.checkpointFile = file;
+            this.checkpointInterval = interval;
+            return this;
+        }
+    }
+
+    // a reversible block delivered
+    private static final class Delivered {
+        final long blockNum;
+        final ByteString previous;
+        final ByteString id;
+
+        Delivered(long blockNum, ByteString previous, ByteString id) {
+            this.blockNum = blockNum;
+            this.previous = previous;
+            this.id = id;
+        }
+    }
+
+    private final AsyncRpcClient client;
+    private final Listener listener;
+    private final int window;
+    private final long pollIntervalMillis;
+    private final boolean followReversible;
+    private final File checkpointFile;
+    private final int checkpointInterval;
+
+    private Thread thread;
+    private volatile boolean running;
+    private volatile long lastDelivered;
+
+    // used by sync thread only
+    private long next;
+    private long lastIrreversible;
+    private long head;
+    private long checkpoint;
+    // id of the checkpoint block, null if unknown
+    private ByteString checkpointId;
+    private final ArrayDeque<Delivered> reversible = new ArrayDeque<>();
+
+    /**
+     * Create a block sync with default options.
+     * @param client    the client querying blocks
+     * @param listener  receiver of blocks
+     */
+    public BlockSync(AsyncRpcClient client, Listener listener) {
+        this(client, listener, new Options());
+    }
+
+    /**
+     * Create a block sync.
+     * @param client    the client querying blocks
+     * @param listener  receiver of blocks
+     * @param options   sync options
+     */
+    public BlockSync(AsyncRpcClient client, Listener listener, Options options) {
+        this.client = client;
+        this.listener = listener;
+        this.window = options.window;
+        this.pollIntervalMillis = options.pollIntervalMillis;
+        this.followReversible = options.followReversible;
+        this.checkpointFile = options.checkpointFile;
+        this.checkpointInterval = options.checkpointInterval;
+    }
+
+    /**
+     * Start syncing on a background thread.
+     * <p>If the checkpoint file exists, the sync resumes after the block it saved instead.</p>
+     * @param fromBlockNum the first block to deliver
+     */
+    public synchronized void start(long fromBlockNum) {
+        if (thread != null) {
+            throw new IllegalStateException("already started");
+        }
+        long saved = readCheckpoint();
+        next = Math.max(fromBlockNum, saved + 1);
+        checkpoint = next - 1;
+        checkpointId = null;
+        lastDelivered = next - 1;
+        lastIrreversible = 0;
+        reversible.clear();
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "block-sync");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop syncing, and save the checkpoint.
+     */
+    public void stop() {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            running = false;
+        }
+        if (t == null) {
+            return;
+        }
+        t.interrupt();
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        synchronized (this) {
+            if (thread == t) {
+                thread = null;
+            }
+        }
+    }
+
+    /**
+     * Get the number of the last block delivered.
+     * @return last block number delivered, or the block before the first one if none.
+     */
+    public long lastDelivered() {
+        return lastDelivered;
+    }
+
+    private void loop() {
+        try {
+            while (running) {
+                try {
+                    updateChainState();
+                    if (followReversible && checkFork()) {
+                        continue;
+                    }
+                    long target = followReversible ? head : lastIrreversible;
+                    if (next > target) {
+                        Thread.sleep(pollIntervalMillis);
+                        continue;
+                    }
+                    fetch(target);
+                } catch (ListenerException e) {
+                    running = false;
+                    listener.onError(e.getCause());
+                } catch (InterruptedException e) {
+                    running = false;
+                } catch (RuntimeException e) {
+                    if (!running) {
+                        break;
+                    }
+                    listener.onError(e);
+                    Thread.sleep(pollIntervalMillis);
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped while waiting
+        } finally {
+            saveCheckpoint();
+        }
+    }
+
+    private void updateChainState() {
+        ChainState state = getUnchecked(client.getChainState()).getState();
+        lastIrreversible = Math.max(lastIrreversible, state.getLastIrreversibleBlockNumber());
+        head = Math.max(state.getDgpo().getHeadBlockNumber(), lastIrreversible);
+        // blocks becoming irreversible can't be rolled back any more.
+        while (!reversible.isEmpty() && reversible.peekFirst().blockNum <= lastIrreversible) {
+            Delivered d = reversible.pollFirst();
+            checkpoint = d.blockNum;
+            checkpointId = d.id;
+        }
+    }
+
+    // query blocks up to target with a sliding window, and deliver them in order.
+    private void fetch(long target) throws ListenerException {
+        ArrayDeque<ListenableFuture<GetSignedBlockResponse>> inFlight = new ArrayDeque<>();
+        long requested = next;
+        try {
+            while (running && next <= target) {
+                while (requested <= target && inFlight.size() < window) {
+                    inFlight.add(client.getSignedBlock(requested++));
+                }
+                GetSignedBlockResponse resp = getUnchecked(inFlight.peekFirst());
+                inFlight.pollFirst();
+                if (!resp.hasBlock()) {
+                    // not produced yet on the node answering, or pruned.
+                    throw new IllegalStateException("block " + next + " not found");
+                }
+                if (!deliver(next, resp.getBlock())) {
+                    return;
+                }
+                next++;
+            }
+        } finally {
+            for (ListenableFuture<GetSignedBlockResponse> f : inFlight) {
+                f.cancel(true);
+            }
+        }
+    }
+
+    // deliver a block, false if the chain switched to another fork.
+    private boolean deliver(long blockNum, signed_block block) throws ListenerException {
+        ByteString previous = block.getSignedHeader().getHeader().getPrevious().getHash();
+        ByteString id = idOf(blockNum, block);
+        Delivered last = reversible.peekLast();
+        if (last != null) {
+            if (last.blockNum == blockNum - 1 && !last.id.equals(previous)) {
+                rollback(last.blockNum);
+                return false;
+            }
+        } else if (followReversible && checkpointId != null && checkpoint == blockNum - 1 && !checkpointId.equals(previous)) {
+            // irreversible blocks delivered can't be rolled back, the node answering is behind on a stale fork.
+            // only checked along with forks, since it relies on block ids computed here as well.
+            throw new IllegalStateException("block " + blockNum + " not linked to irreversible block " + checkpoint);
+        }
+        if (blockNum > lastIrreversible) {
+            reversible.addLast(new Delivered(blockNum, previous, id));
+        }
+        try {
+            listener.onBlock(blockNum, block);
+        } catch (RuntimeException e) {
+            throw new ListenerException(e);
+        }
+        lastDelivered = blockNum;
+        if (blockNum <= lastIrreversible) {
+            checkpoint = blockNum;
+            checkpointId = id;
+            if (checkpointFile != null && blockNum % checkpointInterval == 0) {
+                saveCheckpoint();
+            }
+        }
+        return true;
+    }
+
+    // compare ids of reversible blocks delivered with current ones, and roll back on mismatch.
+    private boolean checkFork() throws ListenerException {
+        if (reversible.isEmpty()) {
+            return false;
+        }
+        long from = reversible.peekFirst().blockNum;
+        long to = reversible.peekLast().blockNum;
+        GetBlockListResponse list = getUnchecked(client.getBlockList(from, to, (int) (to - from + 1)));
+        Map<Long, ByteString> ids = new HashMap<>();
+        for (BlockInfo b : list.getBlocksList()) {
+            ids.put(b.getBlockHeight(), b.getBlockId().getHash());
+        }
+        ByteString prevId = null;
+        for (Delivered d : reversible) {
+            ByteString id = ids.get(d.blockNum);
+            // a block gone, or not linked to the block delivered before it.
+            if (id == null || !d.id.equals(id) || (prevId != null && !prevId.equals(d.previous))) {
+                rollback(d.blockNum);
+                return true;
+            }
+            prevId = id;
+        }
+        return false;
+    }
+
+    private void rollback(long blockNum) throws ListenerException {
+        Iterator<Delivered> it = reversible.descendingIterator();
+        while (it.hasNext() && it.next().blockNum >= blockNum) {
+            it.remove();
+        }
+        next = blockNum;
+        lastDelivered = blockNum - 1;
+        try {
+            listener.onRollback(blockNum);
+        } catch (RuntimeException e) {
+            throw new ListenerException(e);
+        }
+    }
+
+    private long readCheckpoint() {
+        if (checkpointFile == null || !checkpointFile.exists()) {
+            return -1;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(checkpointFile), "UTF-8"));
+            try {
+                return Long.parseLong(reader.readLine().trim());
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException("invalid checkpoint file " + checkpointFile, e);
+        }
+    }
+
+    private void saveCheckpoint() {
+        if (checkpointFile == null) {
+            return;
+        }
+        File tmp = new File(checkpointFile.getPath() + ".tmp");
+        try {
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(Long.toString(checkpoint).getBytes("UTF-8"));
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(checkpointFile)) {
+                throw new IOException("failed to rename " + tmp);
+            }
+        } catch (IOException e) {
+            listener.onError(e);
+        }
+    }
+
+    /**
+     * Compute the id of a block, which is the SHA256 hash of its header with the first 8 bytes
+     * replaced by the block number in little endian.
+     * @param blockNum  block number
+     * @param block     the block
+     * @return the block id.
+     */
+    public static ByteString idOf(long blockNum, signed_block block) {
+        byte[] id = Hash.sha256(block.getSignedHeader().getHeader().toByteArray());
+        for (int i = 0; i < 8; i++) {
+            id[i] = (byte) (blockNum >>> (8 * i));
+        }
+        return ByteString.copyFrom(id);
+    }
+
+    // an exception thrown by the listener
+    private static final class ListenerException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        ListenerException(RuntimeException cause) {
+            super(cause);
+        }
+    }
+}
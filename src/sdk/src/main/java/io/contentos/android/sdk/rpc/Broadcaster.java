@@ -0,0 +1,348 @@
+package io.contentos.android.sdk.rpc;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.contentos.android.sdk.prototype.Transaction.signed_transaction;
+import io.contentos.android.sdk.rpc.Grpc.*;
+import io.grpc.Status;
+
+/**
+ * High-throughput transaction sender.
+ *
+ * <p>Transactions are sent without waiting for their processing, and up to a maximum number of
+ * them are kept in flight. Their results are collected in background by polling transaction
+ * information with ids computed locally. When the maximum is reached, {@link #submit} blocks until
+ * a transaction in flight completes.</p>
+ *
+ * <p>Like {@link AsyncRpcClient}, it implements {@link Operation.BaseResultFilter}, e.g.
+ * <pre>
+ *     Broadcaster broadcaster = new Broadcaster(wallet.asyncAccount("alice"));
+ *     for (...) {
+ *         futures.add(broadcaster.transfer("alice", receiver, amount, ""));
+ *     }
+ * </pre>
+ * Each future succeeds with the transaction information once the transaction was included in a
+ * block (or became irreversible, see {@link Options#setWaitIrreversible}), and fails if the
+ * transaction was rejected, failed or expired.</p>
+ */
+public final class Broadcaster extends Operation.BaseResultFilter<Transaction, Transaction, ListenableFuture<TrxInfo>> {
+
+    /**
+     * Broadcaster options.
+     */
+    public static final class Options {
+        private int maxInFlight = 64;
+        private long pollIntervalMillis = 1000;
+        private boolean waitIrreversible;
+
+        /**
+         * Set the maximum number of transactions in flight, 64 by default.
+         * @param maxInFlight maximum number of transactions sent and not completed yet
+         * @return {@code this}
+         */
+        public Options setMaxInFlight(int maxInFlight) {
+            if (maxInFlight <= 0) {
+                throw new IllegalArgumentException("invalid maximum in flight: " + maxInFlight);
+            }
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * Set the interval of transaction result polling, 1 second by default.
+         * @param interval  polling interval
+         * @param unit      time unit of interval
+         * @return {@code this}
+         */
+        public Options setPollInterval(long interval, TimeUnit unit) {
+            if (interval <= 0) {
+                throw new IllegalArgumentException("invalid poll interval: " + interval);
+            }
+            this.pollIntervalMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        /**
+         * Set whether transactions complete only after their blocks became irreversible.
+         * @param waitIrreversible wait for irreversibility or not, false by default
+         * @return {@code this}
+         */
+        public Options setWaitIrreversible(boolean waitIrreversible) {
+            this.waitIrreversible = waitIrreversible;
+            return this;
+        }
+    }
+
+    // seconds after expiration before a missing transaction is given up.
+    private static final int expirationGrace = 10;
+
+    // shared by all broadcasters, it only schedules polling rounds.
+    private static final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "broadcaster-poller");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    // a transaction in flight
+    private static final class Pending {
+        final byte[] id;
+        final int expiration;
+        final SettableFuture<TrxInfo> result = SettableFuture.create();
+        final AtomicBoolean released = new AtomicBoolean();
+        volatile TrxInfo info;
+
+        Pending(signed_transaction trx) {
+            this.id = Transaction.idOf(trx);
+            this.expiration = trx.getTrx().getExpiration().getUtcSeconds();
+        }
+    }
+
+    private final AsyncRpcClient client;
+    private final int maxInFlight;
+    private final long pollIntervalMillis;
+    private final boolean waitIrreversible;
+    private final Semaphore permits;
+
+    // transactions delivered and waiting for results, guarded by this.
+    private final Set<Pending> delivered = new LinkedHashSet<>();
+    private boolean polling;
+
+    /**
+     * Create a broadcaster with default options.
+     * @param client the client providing connection, signing key and chain state
+     */
+    public Broadcaster(AsyncRpcClient client) {
+        this(client, new Options());
+    }
+
+    /**
+     * Create a broadcaster.
+     * @param client    the client providing connection, signing key and chain state
+     * @param options   broadcaster options
+     */
+    public Broadcaster(AsyncRpcClient client, Options options) {
+        super(new Transaction.Factory());
+        this.client = client;
+        this.maxInFlight = options.maxInFlight;
+        this.pollIntervalMillis = options.pollIntervalMillis;
+        this.waitIrreversible = options.waitIrreversible;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Override method of {@link Operation.BaseResultFilter#filterResult} to submit a transaction.
+     * @param trx the transaction to sign and send
+     * @return future of the transaction information.
+     */
+    @Override
+    protected ListenableFuture<TrxInfo> filterResult(Transaction trx) {
+        return submit(trx);
+    }
+
+    /**
+     * Sign and send a transaction.
+     * <p>It blocks if the maximum number of transactions are in flight.</p>
+     * @param trx the transaction
+     * @return future of the transaction information.
+     */
+    public ListenableFuture<TrxInfo> submit(Transaction trx) {
+        String key = client.signingKey;
+        if (key == null || key.length() == 0) {
+            return Futures.immediateFailedFuture(new RuntimeException("signing key not found"));
+        }
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Futures.immediateFailedFuture(e);
+        }
+        final Pending p;
+        final signed_transaction signed;
+        try {
+            signed = client.chainStateCache.prepare(trx).sign(key, client.chainId);
+            p = new Pending(signed);
+        } catch (RuntimeException e) {
+            permits.release();
+            return Futures.immediateFailedFuture(e);
+        }
+        // results are set after releasing the permit, this listener only catches cancellations.
+        p.result.addListener(new Runnable() {
+            @Override
+            public void run() {
+                release(p);
+            }
+        }, MoreExecutors.directExecutor());
+
+        Futures.addCallback(client.broadcastTrx(signed, false), new FutureCallback<BroadcastTrxResponse>() {
+            @Override
+            public void onSuccess(BroadcastTrxResponse response) {
+                if (response.hasInvoice() && response.getInvoice().getStatus() == 500) {
+                    fail(p, Status.UNKNOWN.withDescription(response.getInvoice().getErrorInfo()).asRuntimeException());
+                } else {
+                    track(p);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                fail(p, t);
+            }
+        }, MoreExecutors.directExecutor());
+        return p.result;
+    }
+
+    /**
+     * Get the number of transactions in flight.
+     * @return number of transactions sent and not completed yet.
+     */
+    public int inFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    private synchronized void track(Pending p) {
+        delivered.add(p);
+        if (!polling) {
+            polling = true;
+            schedulePoll();
+        }
+    }
+
+    private void schedulePoll() {
+        poller.schedule(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // query results of all delivered transactions at once, and schedule next round when all answered.
+    private void poll() {
+        final List<Pending> round = new ArrayList<>();
+        synchronized (this) {
+            for (Iterator<Pending> it = delivered.iterator(); it.hasNext(); ) {
+                Pending p = it.next();
+                if (p.result.isDone()) {
+                    // cancelled by caller
+                    it.remove();
+                } else {
+                    round.add(p);
+                }
+            }
+        }
+        if (round.isEmpty()) {
+            finishPoll();
+            return;
+        }
+        final int chainTime = (int) ((System.currentTimeMillis() + client.chainStateCache.clockOffsetMillis()) / 1000);
+        final AtomicInteger remaining = new AtomicInteger(round.size());
+        Runnable answered = new Runnable() {
+            @Override
+            public void run() {
+                if (remaining.decrementAndGet() == 0) {
+                    finishPoll();
+                }
+            }
+        };
+        for (final Pending p : round) {
+            ListenableFuture<?> f;
+            if (p.info == null) {
+                f = queryInfo(p, chainTime);
+            } else {
+                f = Futures.transformAsync(client.getBlkIsIrreversibleByTxId(p.id), new AsyncFunction<GetBlkIsIrreversibleByTxIdResponse, Void>() {
+                    @Override
+                    public ListenableFuture<Void> apply(GetBlkIsIrreversibleByTxIdResponse response) {
+                        if (response.getResult()) {
+                            complete(p, p.info.toBuilder().setBlkIsIrreversible(true).build());
+                        } else if (chainTime > p.expiration + expirationGrace) {
+                            // its block may have been forked out, and it can't be included again once expired.
+                            return queryInfo(p, chainTime);
+                        }
+                        return Futures.immediateFuture(null);
+                    }
+                }, MoreExecutors.directExecutor());
+            }
+            // failed queries are retried in next round.
+            f.addListener(answered, MoreExecutors.directExecutor());
+        }
+    }
+
+    private ListenableFuture<Void> queryInfo(final Pending p, final int chainTime) {
+        return Futures.transform(client.getTrxInfoById(p.id), new Function<GetTrxInfoByIdResponse, Void>() {
+            @Override
+            public Void apply(GetTrxInfoByIdResponse response) {
+                onTrxInfo(p, response, chainTime);
+                return null;
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private synchronized void finishPoll() {
+        if (delivered.isEmpty()) {
+            polling = false;
+        } else {
+            schedulePoll();
+        }
+    }
+
+    private void onTrxInfo(Pending p, GetTrxInfoByIdResponse response, int chainTime) {
+        TrxInfo info = response.getInfo();
+        if (!response.hasInfo() || info.getTrxId().getHash().isEmpty()) {
+            if (chainTime > p.expiration + expirationGrace) {
+                fail(p, new RuntimeException("transaction expired"));
+            }
+            return;
+        }
+        if (info.getTrxWrap().getReceipt().getStatus() == 500) {
+            fail(p, Status.UNKNOWN.withDescription("transaction failed").asRuntimeException());
+        } else if (!waitIrreversible || info.getBlkIsIrreversible()) {
+            complete(p, info);
+        } else {
+            p.info = info;
+        }
+    }
+
+    private void complete(Pending p, TrxInfo info) {
+        synchronized (this) {
+            delivered.remove(p);
+        }
+        release(p);
+        p.result.set(info);
+    }
+
+    private void fail(Pending p, Throwable t) {
+        synchronized (this) {
+            delivered.remove(p);
+        }
+        release(p);
+        p.result.setException(t);
+    }
+
+    private void release(Pending p) {
+        if (p.released.compareAndSet(false, true)) {
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package io.contentos.android.sdk.rpc;
+
+import com.google.common.base.Function;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.concurrent.TimeUnit;
+
+import io.contentos.android.sdk.prototype.Type;
+import io.contentos.android.sdk.rpc.Grpc.GetChainStateResponse;
+import io.contentos.android.sdk.rpc.Grpc.NonParamsRequest;
+import io.grpc.Channel;
+
+/**
+ * Thread-safe cache of block chain properties for transaction preparation.
+ *
+ * <p>A transaction refers to a recent block, which stays valid for 2048 blocks, so the chain state
+ * doesn't have to be queried for every transaction. The cache keeps the head block for a time to
+ * live, and refreshes it in background once half of that time has passed. Expiration time of
+ * transactions is based on the chain's clock, which is tracked as an offset to the local clock.</p>
+ *
+ * <p>An instance is usually shared by all RPC clients of a connection.</p>
+ */
+public final class ChainStateCache {
+
+    /**
+     * Default time to live of cached chain state, in milliseconds.
+     */
+    public static final long defaultTimeToLive = 60000;
+
+    // the head block must stay far inside the reference window of 2048 blocks.
+    private static final long maxTimeToLive = 600000;
+
+    // immutable snapshot of chain state
+    private static final class State {
+        final Type.dynamic_properties props;
+        final long fetchedNanos;
+        final long chainMillis;
+        final long clockOffset;
+
+        State(Type.dynamic_properties props, long fetchedNanos) {
+            this.props = props;
+            this.fetchedNanos = fetchedNanos;
+            this.chainMillis = props.getTime().getUtcSeconds() * 1000L;
+            this.clockOffset = chainMillis - System.currentTimeMillis();
+        }
+
+        // estimated chain time at the given ticker reading, in UTC seconds.
+        int chainTime(long nowNanos) {
+            return (int) ((chainMillis + (nowNanos - fetchedNanos) / 1000000) / 1000);
+        }
+    }
+
+    private final ApiServiceGrpc.ApiServiceFutureStub service;
+    private final long timeToLiveNanos;
+    private final Ticker ticker;
+    private volatile State state;
+    private ListenableFuture<State> refreshing;
+
+    /**
+     * Create a chain state cache with default time to live.
+     * @param channel the gRPC channel
+     */
+    public ChainStateCache(Channel channel) {
+        this(channel, defaultTimeToLive, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create a chain state cache.
+     * @param channel       the gRPC channel
+     * @param timeToLive    time to live of cached state, at most 10 minutes
+     * @param unit          time unit of timeToLive
+     */
+    public ChainStateCache(Channel channel, long timeToLive, TimeUnit unit) {
+        this(channel, timeToLive, unit, Ticker.systemTicker());
+    }
+
+    /**
+     * Create a chain state cache with a time source, e.g. a fake one in tests.
+     * @param channel       the gRPC channel
+     * @param timeToLive    time to live of cached state, at most 10 minutes
+     * @param unit          time unit of timeToLive
+     * @param ticker        time source for ages of cached state and the chain's clock
+     */
+    public ChainStateCache(Channel channel, long timeToLive, TimeUnit unit, Ticker ticker) {
+        long millis = unit.toMillis(timeToLive);
+        if (millis <= 0 || millis > maxTimeToLive) {
+            throw new IllegalArgumentException("invalid time to live: " + millis + "ms");
+        }
+        this.service = ApiServiceGrpc.newFutureStub(channel);
+        this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        this.ticker = ticker;
+    }
+
+    /**
+     * Get the cached block chain properties, querying them if necessary.
+     * @return the properties.
+     */
+    public Type.dynamic_properties getDynamicGlobalProps() {
+        return FutureHelper.getUnchecked(current()).props;
+    }
+
+    /**
+     * Get the cached block chain properties asynchronously.
+     * @return future of the properties.
+     */
+    public ListenableFuture<Type.dynamic_properties> getDynamicGlobalPropsAsync() {
+        return Futures.transform(current(), new Function<State, Type.dynamic_properties>() {
+            @Override
+            public Type.dynamic_properties apply(State s) {
+                return s.props;
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Get the difference between the chain's clock and the local clock.
+     * @return chain time minus local time in milliseconds, 0 if the chain state was never queried.
+     */
+    public long clockOffsetMillis() {
+        State s = state;
+        return s != null ? s.clockOffset : 0;
+    }
+
+    /**
+     * Set reference block and expiration time of a transaction, querying chain state if necessary.
+     * @param trx the transaction
+     * @return {@code trx}
+     */
+    public Transaction prepare(Transaction trx) {
+        return prepare(trx, FutureHelper.getUnchecked(current()));
+    }
+
+    /**
+     * Set reference block and expiration time of a transaction asynchronously.
+     * @param trx the transaction
+     * @return future of {@code trx}.
+     */
+    public ListenableFuture<Transaction> prepareAsync(final Transaction trx) {
+        return Futures.transform(current(), new Function<State, Transaction>() {
+            @Override
+            public Transaction apply(State s) {
+                return prepare(trx, s);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Drop the cached state, e.g. after a transaction was rejected because of its reference block.
+     */
+    public void invalidate() {
+        state = null;
+    }
+
+    private Transaction prepare(Transaction trx, State s) {
+        trx.setRefBlock(s.props.getHeadBlockId().getHash().toByteArray());
+        trx.setExpiration(s.chainTime(ticker.read()) + Transaction.defaultExpiration);
+        return trx;
+    }
+
+    private ListenableFuture<State> current() {
+        State s = state;
+        if (s != null) {
+            long age = ticker.read() - s.fetchedNanos;
+            if (age < timeToLiveNanos) {
+                if (age >= timeToLiveNanos / 2) {
+                    // refresh in background, failures are retried by later calls.
+                    refresh();
+                }
+                return Futures.immediateFuture(s);
+            }
+        }
+        return refresh();
+    }
+
+    // query the chain state, at most one query is in flight.
+    private synchronized ListenableFuture<State> refresh() {
+        if (refreshing != null) {
+            return refreshing;
+        }
+        final ListenableFuture<State> future = Futures.transform(
+                service.getChainState(NonParamsRequest.getDefaultInstance()),
+                new Function<GetChainStateResponse, State>() {
+                    @Override
+                    public State apply(GetChainStateResponse response) {
+                        State s = new State(response.getState().getDgpo(), ticker.read());
+                        state = s;
+                        return s;
+                    }
+                }, MoreExecutors.directExecutor());
+        refreshing = future;
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ChainStateCache.this) {
+                    if (refreshing == future) {
+                        refreshing = null;
+                    }
+                }
+            }
+        }, MoreExecutors.directExecutor());
+        return future;
+    }
+}
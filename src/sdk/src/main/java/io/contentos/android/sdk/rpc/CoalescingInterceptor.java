@@ -0,0 +1,218 @@
+package io.contentos.android.sdk.rpc;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.MessageLite;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * Interceptor sharing one call between identical concurrent queries.
+ *
+ * <p>A query identical to another one in flight, i.e. same method and same serialized request,
+ * is not sent again but waits for the response of the call in flight. It's common when several
+ * views or threads ask for the same account or chain state at the same time.</p>
+ *
+ * <p>The shared call has the deadline of the first query. It's cancelled only when all queries
+ * sharing it were cancelled. Transactions are never shared.</p>
+ */
+public final class CoalescingInterceptor implements ClientInterceptor {
+
+    // methods with side effects
+    private static final String broadcastTrxMethod = ApiServiceGrpc.getBroadcastTrxMethod().getFullMethodName();
+
+    // a call in flight and the queries waiting for it
+    private static final class Flight<RespT> {
+        final List<Participant<RespT>> participants = new ArrayList<>();
+        ClientCall<?, RespT> call;
+        Metadata headers;
+        RespT response;
+    }
+
+    // a query waiting for a shared call
+    private static final class Participant<RespT> {
+        final ClientCall.Listener<RespT> listener;
+        final Executor executor;
+
+        Participant(ClientCall.Listener<RespT> listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor != null ? executor : MoreExecutors.directExecutor();
+        }
+
+        void deliver(final Metadata headers, final RespT response, final Status status, final Metadata trailers) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (headers != null) {
+                        listener.onHeaders(headers);
+                    }
+                    if (response != null) {
+                        listener.onMessage(response);
+                    }
+                    listener.onClose(status, trailers);
+                }
+            });
+        }
+    }
+
+    // guarded by itself
+    private final Map<ByteString, Flight<?>> flights = new HashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Get the number of queries which shared a call in flight.
+     * @return number of coalesced queries.
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of queries sent to the server.
+     * @return number of calls sent.
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        if (method.getType() != MethodDescriptor.MethodType.UNARY || method.getFullMethodName().equals(broadcastTrxMethod)) {
+            return next.newCall(method, callOptions);
+        }
+        return new CoalescingCall<>(method, callOptions, next);
+    }
+
+    private final class CoalescingCall<ReqT, RespT> extends ClientCall<ReqT, RespT> {
+        private final MethodDescriptor<ReqT, RespT> method;
+        private final CallOptions callOptions;
+        private final Channel next;
+        private Participant<RespT> participant;
+        private Metadata headers;
+        private ReqT request;
+        private ByteString key;
+        private Flight<RespT> flight;
+
+        CoalescingCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+            this.method = method;
+            this.callOptions = callOptions;
+            this.next = next;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            this.participant = new Participant<>(responseListener, callOptions.getExecutor());
+            this.headers = headers;
+        }
+
+        @Override
+        public void request(int numMessages) {
+            // the shared call requests its response itself.
+        }
+
+        @Override
+        public void sendMessage(ReqT message) {
+            request = message;
+        }
+
+        @Override
+        public void halfClose() {
+            key = ByteString.copyFromUtf8(method.getFullMethodName()).concat(((MessageLite) request).toByteString());
+            final Flight<RespT> f;
+            boolean leader = false;
+            synchronized (flights) {
+                @SuppressWarnings("unchecked")
+                Flight<RespT> existing = (Flight<RespT>) flights.get(key);
+                if (existing == null) {
+                    existing = new Flight<>();
+                    // callbacks of the shared call must not depend on the executor of one query.
+                    existing.call = next.newCall(method, callOptions.withExecutor(MoreExecutors.directExecutor()));
+                    flights.put(key, existing);
+                    leader = true;
+                }
+                f = existing;
+                f.participants.add(participant);
+                flight = f;
+            }
+            if (!leader) {
+                hits.incrementAndGet();
+                return;
+            }
+            misses.incrementAndGet();
+            @SuppressWarnings("unchecked")
+            ClientCall<ReqT, RespT> call = (ClientCall<ReqT, RespT>) f.call;
+            call.start(new Listener<RespT>() {
+                @Override
+                public void onHeaders(Metadata headers) {
+                    f.headers = headers;
+                }
+
+                @Override
+                public void onMessage(RespT message) {
+                    f.response = message;
+                }
+
+                @Override
+                public void onClose(Status status, Metadata trailers) {
+                    List<Participant<RespT>> waiting;
+                    synchronized (flights) {
+                        if (flights.get(key) == f) {
+                            flights.remove(key);
+                        }
+                        waiting = new ArrayList<>(f.participants);
+                        f.participants.clear();
+                    }
+                    for (Participant<RespT> p : waiting) {
+                        p.deliver(f.headers, f.response, status, trailers);
+                    }
+                }
+            }, headers);
+            call.request(2);
+            call.sendMessage(request);
+            call.halfClose();
+        }
+
+        @Override
+        public void cancel(String message, Throwable cause) {
+            if (participant == null) {
+                return;
+            }
+            boolean last = false;
+            synchronized (flights) {
+                if (flight != null) {
+                    if (!flight.participants.remove(participant)) {
+                        // already completed
+                        return;
+                    }
+                    last = flight.participants.isEmpty();
+                    if (last && flights.get(key) == flight) {
+                        flights.remove(key);
+                    }
+                }
+            }
+            if (last) {
+                flight.call.cancel(message, cause);
+            }
+            participant.deliver(null, null, Status.CANCELLED.withDescription(message).withCause(cause), new Metadata());
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package io.contentos.android.sdk.rpc;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Helpers for blocking on futures of asynchronous queries.
+ */
+final class FutureHelper {
+
+    private FutureHelper() {
+    }
+
+    /**
+     * Wait for a future, rethrowing its failure as unchecked exception.
+     * <p>A {@link RuntimeException}, e.g. gRPC status, is thrown as-is. Other failures and
+     * interruptions are wrapped in {@link RuntimeException}.</p>
+     * @param future    the future
+     * @param <T>       type of result
+     * @return the result.
+     */
+    static <T> T getUnchecked(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -2,15 +2,21 @@ package io.contentos.android.sdk.rpc;
 
 import com.google.protobuf.ByteString;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.zip.Deflater;
 
 
 import io.contentos.android.sdk.crypto.Hash;
-import io.contentos.android.sdk.encoding.Zlib;
+import io.contentos.android.sdk.encoding.ZlibCodec;
 import io.contentos.android.sdk.prototype.Transaction.operation;
 import io.contentos.android.sdk.prototype.Type;
 import io.contentos.android.sdk.prototype.Operation.*;
@@ -149,6 +155,34 @@ public class Operation {
          */
         Result contractDeploy(String owner, String contract, String abi, byte[] code, boolean upgradable, String url, String desc);
 
+        /**
+         * Process an operation of smart contract deployment, reading ABI and code from files.
+         * Files are memory-mapped and compressed on the fly, they're never entirely loaded into heap.
+         * @param owner      name of account owning the contract
+         * @param contract   name of contract
+         * @param abi        file of contract ABI
+         * @param code       file of contract code
+         * @param upgradable is this contract upgradable or not
+         * @param url        url related to this contract
+         * @param desc       description about this contract
+         * @return processing result
+         */
+        Result contractDeploy(String owner, String contract, File abi, File code, boolean upgradable, String url, String desc);
+
+        /**
+         * Process an operation of smart contract deployment, reading ABI and code from streams.
+         * Streams are compressed on the fly and are not closed.
+         * @param owner      name of account owning the contract
+         * @param contract   name of contract
+         * @param abi        stream of contract ABI in UTF-8
+         * @param code       stream of contract code
+         * @param upgradable is this contract upgradable or not
+         * @param url        url related to this contract
+         * @param desc       description about this contract
+         * @return processing result
+         */
+        Result contractDeploy(String owner, String contract, InputStream abi, InputStream code, boolean upgradable, String url, String desc);
+
         /**
          * Process an operation of smart contract calling.
          * @param caller    name of caller account
@@ -296,6 +330,14 @@ public class Operation {
             return filterResult(upstreamFactory.newInstance().contractDeploy(owner, contract, abi, code, upgradable, url, desc));
         }
 
+        public DstType contractDeploy(String owner, String contract, File abi, File code, boolean upgradable, String url, String desc){
+            return filterResult(upstreamFactory.newInstance().contractDeploy(owner, contract, abi, code, upgradable, url, desc));
+        }
+
+        public DstType contractDeploy(String owner, String contract, InputStream abi, InputStream code, boolean upgradable, String url, String desc){
+            return filterResult(upstreamFactory.newInstance().contractDeploy(owner, contract, abi, code, upgradable, url, desc));
+        }
+
         public DstType contractApply(String caller, String owner, String contract, String method, String params, long coins){
             return filterResult(upstreamFactory.newInstance().contractApply(caller, owner, contract, method, params, coins));
         }
@@ -473,12 +515,39 @@ public class Operation {
         }
 
         public operation contractDeploy(String owner, String contract, String abi, byte[] code, boolean upgradable, String url, String desc) {
+            try {
+                return contractDeploy(owner, contract,
+                        compress(ByteBuffer.wrap(abi.getBytes("UTF-8"))),
+                        compress(ByteBuffer.wrap(code)),
+                        upgradable, url, desc);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        public operation contractDeploy(String owner, String contract, File abi, File code, boolean upgradable, String url, String desc) {
+            try {
+                return contractDeploy(owner, contract, compress(abi), compress(code), upgradable, url, desc);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        public operation contractDeploy(String owner, String contract, InputStream abi, InputStream code, boolean upgradable, String url, String desc) {
+            try {
+                return contractDeploy(owner, contract, compress(abi), compress(code), upgradable, url, desc);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private operation contractDeploy(String owner, String contract, ByteString compressedAbi, ByteString compressedCode, boolean upgradable, String url, String desc) {
             return operation.newBuilder().setOp13(
                     contract_deploy_operation.newBuilder()
                             .setOwner(Type.account_name.newBuilder().setValue(owner))
                             .setContract(contract)
-                            .setAbi(ByteString.copyFrom(Zlib.compressString(abi)))
-                            .setCode(ByteString.copyFrom(Zlib.compress(code)))
+                            .setAbi(compressedAbi)
+                            .setCode(compressedCode)
                             .setUpgradeable(upgradable)
                             .setUrl(url)
                             .setDescribe(desc)
@@ -540,6 +609,55 @@ public class Operation {
             ).build();
         }
 
+        //
+        // Compressed data are drained from the codec's output buffer into a ByteString.Output, whose
+        // chunks become the final ByteString. The compressed bytes are never held in a single array.
+        //
+        // Every byte of a transaction costs stamina, so payloads are compressed at the best level.
+        // The level never depends on the payload size, which isn't known for streams, so that a
+        // contract gives the same bytes whether it's deployed from memory, a file or a stream.
+        // Incompressible payloads, e.g. code sections full of packed data, are detected and stored
+        // as is.
+        //
+
+        private static ByteString compress(ByteBuffer data) throws IOException {
+            int size = data.remaining();
+            ByteString.Output output = ByteString.newOutput(compressionBufferSize(size));
+            ZlibCodec codec = ZlibCodec.obtain();
+            try {
+                codec.setLevel(Deflater.BEST_COMPRESSION).setSkipIncompressible(true).compress(data, output);
+            } finally {
+                codec.close();
+            }
+            return output.toByteString();
+        }
+
+        private static ByteString compress(InputStream data) throws IOException {
+            // available() is only a hint of the stream size, good enough for sizing the output.
+            ByteString.Output output = ByteString.newOutput(compressionBufferSize(data.available()));
+            ZlibCodec codec = ZlibCodec.obtain();
+            try {
+                codec.setLevel(Deflater.BEST_COMPRESSION).setSkipIncompressible(true).compress(data, output);
+            } finally {
+                codec.close();
+            }
+            return output.toByteString();
+        }
+
+        private static ByteString compress(File file) throws IOException {
+            FileInputStream input = new FileInputStream(file);
+            try {
+                FileChannel channel = input.getChannel();
+                return compress(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            } finally {
+                input.close();
+            }
+        }
+
+        private static int compressionBufferSize(long plainSize) {
+            return (int) Math.max(256, Math.min(plainSize / 2, 1 << 16));
+        }
+
         private static long postId(long parentId, String author, String title, String content) {
             byte[] digest = Hash.sha256(
                     String.format(Locale.US, "COS_SDK|%d|%s|%s|%s|%d",
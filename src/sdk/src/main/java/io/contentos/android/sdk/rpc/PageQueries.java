@@ -0,0 +1,485 @@
+package io.contentos.android.sdk.rpc;
+
+import io.contentos.android.sdk.prototype.Type;
+import io.contentos.android.sdk.rpc.Grpc.*;
+import io.contentos.android.sdk.prototype.MultiId.*;
+
+import static io.contentos.android.sdk.rpc.RpcClient.accountName;
+import static io.contentos.android.sdk.rpc.RpcClient.maxTimeStamp;
+import static io.contentos.android.sdk.rpc.RpcClient.minTimeStamp;
+import static io.contentos.android.sdk.rpc.RpcClient.timeStamp;
+
+/**
+ * Page queries shared by {@link RpcClient} and {@link AsyncRpcClient}.
+ * <p>Each of them defines the query range, the request of a page and how to continue after the
+ * last item of a page. Clients only send the requests, see {@link RpcResultPages#request} and
+ * {@link RpcResultPages#requestAsync}.</p>
+ */
+final class PageQueries {
+
+    private PageQueries() {
+    }
+
+    /**
+     * Pages of {@link RpcClient#getFollowerListByName} and {@link AsyncRpcClient#getFollowerListByName}.
+     */
+    abstract static class FollowerListByName extends RpcResultPages<GetFollowerListByNameResponse, follower_created_order, follower_created_order> {
+        FollowerListByName(String accountName, int pageSize) {
+            super(order(accountName, minTimeStamp), order(accountName, maxTimeStamp), pageSize);
+        }
+
+        final GetFollowerListByNameRequest requestOf(follower_created_order start, follower_created_order end, int count, follower_created_order last) {
+            GetFollowerListByNameRequest.Builder b = GetFollowerListByNameRequest.newBuilder();
+            b.setStart(start).setEnd(end).setLimit(count);
+            if (last != null) {
+                b.setLastOrder(last);
+            }
+            return b.build();
+        }
+
+        @Override
+        protected follower_created_order getLastItem(GetFollowerListByNameResponse resp) {
+            return isEmptyResponse(resp)? null : resp.getFollowerList(resp.getFollowerListCount() - 1).getCreateOrder();
+        }
+
+        @Override
+        protected follower_created_order keyOfValue(follower_created_order value) {
+            return value;
+        }
+
+        @Override
+        public boolean isEmptyResponse(GetFollowerListByNameResponse resp) {
+            return resp == null || resp.getFollowerListCount() == 0;
+        }
+
+        private static follower_created_order order(String accountName, Type.time_point_sec time) {
+            return follower_created_order.newBuilder()
+                    .setAccount(accountName(accountName))
+                    .setFollower(accountName(""))
+                    .setCreatedTime(time)
+                    .build();
+        }
+    }
+
+    /**
+     * Pages of {@link RpcClient#getFollowingListByName} and {@link AsyncRpcClient#getFollowingListByName}.
+     */
+    abstract static class FollowingListByName extends RpcResultPages<GetFollowingListByNameResponse, following_created_order, following_created_order> {
+        FollowingListByName(String accountName, int pageSize) {
+            super(order(accountName, minTimeStamp), order(accountName, maxTimeStamp), pageSize);
+        }
+
+        final GetFollowingListByNameRequest requestOf(following_created_order start, following_created_order end, int count, following_created_order last) {
+            GetFollowingListByNameRequest.Builder b = GetFollowingListByNameRequest.newBuilder();
+            b.setStart(start).setEnd(end).setLimit(count);
+            if (last != null) {
+                b.setLastOrder(last);
+            }
+            return b.build();
+        }
+
+        @Override
+        protected following_created_order getLastItem(GetFollowingListByNameResponse resp) {
+            return isEmptyResponse(resp)? null : resp.getFollowingList(resp.getFollowingListCount() - 1).getCreateOrder();
+        }
+
+        @Override
+        protected following_created_order keyOfValue(following_created_order value) {
+            return value;
+        }
+
+        @Override
+        public boolean isEmptyResponse(GetFollowingListByNameResponse resp) {
+            return resp == null || resp.getFollowingListCount() == 0;
+        }
+
+        private static following_created_order order(String accountName, Type.time_point_sec time) {
+            return following_created_order.newBuilder()
+                    .setAccount(accountName(accountName))
+                    .setCreatedTime(time)
+                    .build();
+        }
+    }
+
+    /**
+     * Pages of {@link RpcClient#getAccountListByBalance} and {@link AsyncRpcClient#getAccountListByBalance}.
+     */
+    abstract static class AccountListByBalance extends RpcResultPages<GetAccountListResponse, Type.coin, AccountInfo> {
+        AccountListByBalance(long minBalance, long maxBalance, int pageSize) {
+            super(Type.coin.newBuilder().setValue(maxBalance).build(), Type.coin.newBuilder().setValue(minBalance).build(), pageSize);
+        }
+
+        final GetAccountListByBalanceRequest requestOf(Type.coin start, Type.coin end, int count, AccountInfo last) {
+            GetAccountListByBalanceRequest.Builder b = GetAccountListByBalanceRequest.newBuilder();
+            b.setStart(start).setEnd(end).setLimit(count);
+            if (last != null) {
+                b.setLastAccount(last);
+            }
+            return b.build();
+        }
+
+        @Override
+        protected AccountInfo getLastItem(GetAccountListResponse resp) {
+            return isEmptyResponse(resp)? null : resp.getList(resp.getListCount() - 1).getInfo();
+        }
+
+        @Override
+        protected Type.coin keyOfValue(AccountInfo value) {
+            return value.getCoin();
+        }
+
+        @Override
+        public boolean isEmptyResponse(GetAccountListResponse resp) {
+            return resp == null || resp.getListCount() == 0;
+        }
+    }
+
+    /**
+     * Pages of {@link RpcClient#getDailyTotalTrxInfo} and {@link AsyncRpcClient#getDailyTotalTrxInfo}.
+     */
+    abstract static class DailyTotalTrxInfo extends RpcResultPages<GetDailyTotalTrxResponse, Type.time_point_sec, DailyTotalTrx> {
+        DailyTotalTrxInfo(int pageSize) {
+            super(null, null, pageSize);
+        }
+
+        final GetDailyTotalTrxRequest requestOf(Type.time_point_sec start, Type.time_point_sec end, int count, DailyTotalTrx last) {
+            GetDailyTotalTrxRequest.Builder b = GetDailyTotalTrxRequest.newBuilder();
+            b.setLimit(count);
+            if (start != null) {
+                b.setStart(start);
+            }
+            if (end != null) {
+                b.setEnd(end);
+            }
+            if (last != null) {
+                b.setLastInfo(last);
+            }
+            return b.build();
+        }
+
+        @Override
+        protected DailyTotalTrx getLastItem(GetDailyTotalTrxResponse resp) {
+            return isEmptyResponse(resp)? null : resp.getList(resp.getListCount() - 1);
+        }
+
+        @Override
+        protected Type.time_point_sec keyOfValue(DailyTotalTrx value) {
+            return value.getDate();
+        }
+
+        @Override
+        public boolean isEmptyResponse(GetDailyTotalTrxResponse resp) {
+            return resp == null || resp.getListCount() == 0;
+        }
+    }
+
+    /**
+     * Pages of {@link RpcClient#getTrxListByTime} and {@link AsyncRpcClient#getTrxListByTime}.
+     */
+    abstract static class TrxListByTime extends RpcResultPages<GetTrxListByTimeResponse, Type.time_point_sec, TrxInfo> {
+        TrxListByTime(int startTimestamp, int endTimeStamp, int pageSize) {
+            super(timeStamp(endTimeStamp), timeStamp(startTimestamp), pageSize);
+        }
+
+        final GetTrxListByTimeRequest requestOf(Type.time_point_sec start, Type.time_point_sec end, int count, TrxInfo last) {
+            GetTrxListByTimeRequest.Builder b = GetTrxListByTimeRequest.newBuilder();
+            b.setStart(start).setEnd(end).setLimit(count);
+            if (last != null) {
+                b.setLastInfo(last);
+            }
+            return b.build();
+        }
+
+        @Override
+        protected TrxInfo getLastItem(GetTrxListByTimeResponse resp) {
+            return isEmptyResponse(resp)? null : resp.getList(resp.getListCount() - 1);
+        }
+
+        @Override
+        protected Type.time_point_sec keyOfValue(TrxInfo value) {
+            return value.getBlockTime();
+        }
+
+        @Override
+        public boolean isEmptyResponse(GetTrxListByTimeResponse resp) {
+            return resp == null || resp.getListCount() == 0;
+        }
+    }
+
+    /**
+     * Pages of {@link RpcClient#getPostListByCreateTime} and {@link AsyncRpcClient#getPostListByCreateTime}.
+     */
+    abstract static class PostListByCreateTime extends RpcResultPages<GetPostListByCreateTimeResponse, Type.time_point_sec, PostResponse> {
+        PostListByCreateTime(int startTimestamp, int endTimeStamp, int pageSize) {
+            super(timeStamp(endTimeStamp), timeStamp(startTimestamp), pageSize);
+        }
+
+        final GetPostListByCreateTimeRequest requestOf(Type.time_point_sec start, Type.time_point_sec end, int count, PostResponse last) {
+            GetPostListByCreateTimeRequest.Builder b = GetPostListByCreateTimeRequest.newBuilder();
+            b.setStart(start).setEnd(end).setLimit(count);
+            if (last != null) {
+                b.setLastPost(last);
+            }
+            return b.build();
+        }
+
+        @Override
+        protected PostResponse getLastItem(GetPostListByCreateTimeResponse resp) {
+            return isEmptyResponse(resp)? null : resp.getPostedList(resp.getPostedListCount() - 1);
+        }
+
+        @Override
+        protected Type.time_point_sec keyOfValue(PostResponse value) {
+            return value.getCreated();
+        }
+
+        @Override
+        public boolean isEmptyResponse(GetPostListByCreateTimeResponse resp) {
+            return resp == null || resp.getPostedListCount() == 0;
+        }
+    }
+
+    /**
+     * Pages of {@link RpcClient#getPostListByName} and {@link AsyncRpcClient#getPostListByName}.
+     */
+    abstract static class PostListByName extends RpcResultPages<GetPostListByCreateTimeResponse, user_post_create_order, PostResponse> {
+        private final String author;
+
+        PostListByName(String author, int pageSize) {
+            super(order(author, maxTimeStamp), order(author, minTimeStamp), pageSize);
+            this.author = author;
+        }
+
+        final GetPostListByNameRequest requestOf(user_post_create_order start, user_post_create_order end, int count, PostResponse last) {
+            GetPostListByNameRequest.Builder b = GetPostListByNameRequest.newBuilder();
+            b.setStart(start).setEnd(end).setLimit(count);
+            if (last != null) {
+                b.setLastPost(last);
+            }
+            return b.build();
+        }
+
+        @Override
+        protected PostResponse getLastItem(GetPostListByCreateTimeResponse resp) {
+            return isEmptyResponse(resp)? null : resp.getPostedList(resp.getPostedListCount() - 1);
+        }
+
+        @Override
+        protected user_post_create_order keyOfValue(PostResponse value) {
+            return order(author, value.getCreated());
+        }
+
+        @Override
+        public boolean isEmptyResponse(GetPostListByCreateTimeResponse resp) {
+            return resp == null || resp.getPostedListCount() == 0;
+        }
+
+        private static user_post_create_order order(String author, Type.time_point_sec time) {
+            return user_post_create_order.newBuilder()
+                    .setAuthor(accountName(author))
+                    .setCreate(time)
+                    .build();
+        }
+    }
+
+    /**
+     * Pages of {@link RpcClient#getUserTrxListByTime} and {@link AsyncRpcClient#getUserTrxListByTime}.
+     */
+    abstract static class UserTrxListByTime extends RpcResultPages<GetUserTrxListByTimeResponse, Type.time_point_sec, TrxInfo> {
+        private final String name;
+
+        UserTrxListByTime(String name, int startTimestamp, int endTimeStamp, int pageSize) {
+            super(timeStamp(endTimeStamp), timeStamp(startTimestamp), pageSize);
+            this.name = name;
+        }
+
+        final GetUserTrxListByTimeRequest requestOf(Type.time_point_sec start, Type.time_point_sec end, int count, TrxInfo last) {
+            GetUserTrxListByTimeRequest.Builder b = GetUserTrxListByTimeRequest.newBuilder();
+            b.setName(accountName(name)).setStart(start).setEnd(end).setLimit(count);
+            if (last != null) {
+                b.setLastTrx(last);
+            }
+            return b.build();
+        }
+
+        @Override
+        protected TrxInfo getLastItem(GetUserTrxListByTimeResponse resp) {
+            return isEmptyResponse(resp)? null : resp.getTrxList(resp.getTrxListCount() - 1);
+        }
+
+        @Override
+        protected Type.time_point_sec keyOfValue(TrxInfo value) {
+            return value.getBlockTime();
+        }
+
+        @Override
+        public boolean isEmptyResponse(GetUserTrxListByTimeResponse resp) {
+            return resp == null || resp.getTrxListCount() == 0;
+        }
+    }
+
+    /**
+     * Pages of {@link RpcClient#getAccountListByCreTime} and {@link AsyncRpcClient#getAccountListByCreTime}.
+     */
+    abstract static class AccountListByCreTime extends RpcResultPages<GetAccountListResponse, Type.time_point_sec, AccountInfo> {
+        AccountListByCreTime(int startTimestamp, int endTimeStamp, int pageSize) {
+            super(timeStamp(endTimeStamp), timeStamp(startTimestamp), pageSize);
+        }
+
+        final GetAccountListByCreTimeRequest requestOf(Type.time_point_sec start, Type.time_point_sec end, int count, AccountInfo last) {
+            GetAccountListByCreTimeRequest.Builder b = GetAccountListByCreTimeRequest.newBuilder();
+            b.setStart(start).setEnd(end).setLimit(count);
+            if (last != null) {
+                b.setLastAccount(last);
+            }
+            return b.build();
+        }
+
+        @Override
+        protected AccountInfo getLastItem(GetAccountListResponse resp) {
+            return isEmptyResponse(resp)? null : resp.getList(resp.getListCount() - 1).getInfo();
+        }
+
+        @Override
+        protected Type.time_point_sec keyOfValue(AccountInfo value) {
+            return value.getCreatedTime();
+        }
+
+        @Override
+        public boolean isEmptyResponse(GetAccountListResponse resp) {
+            return resp == null || resp.getListCount() == 0;
+        }
+    }
+
+    /**
+     * Pages of {@link RpcClient#getContractListByTime} and {@link AsyncRpcClient#getContractListByTime}.
+     */
+    abstract static class ContractListByTime extends RpcResultPages<GetContractListResponse, Type.time_point_sec, ContractInfo> {
+        ContractListByTime(int startTimestamp, int endTimeStamp, int pageSize) {
+            super(timeStamp(endTimeStamp), timeStamp(startTimestamp), pageSize);
+        }
+
+        final GetContractListByTimeRequest requestOf(Type.time_point_sec start, Type.time_point_sec end, int count, ContractInfo last) {
+            GetContractListByTimeRequest.Builder b = GetContractListByTimeRequest.newBuilder();
+            b.setStart(start).setEnd(end).setLimit(count);
+            if (last != null) {
+                b.setLastContract(last);
+            }
+            return b.build();
+        }
+
+        @Override
+        protected ContractInfo getLastItem(GetContractListResponse resp) {
+            return isEmptyResponse(resp)? null : resp.getContractList(resp.getContractListCount() - 1);
+        }
+
+        @Override
+        protected Type.time_point_sec keyOfValue(ContractInfo value) {
+            return value.getCreateTime();
+        }
+
+        @Override
+        public boolean isEmptyResponse(GetContractListResponse resp) {
+            return resp == null || resp.getContractListCount() == 0;
+        }
+    }
+
+    /**
+     * Pages of {@link RpcClient#getBlockProducerListByVoteCount} and {@link AsyncRpcClient#getBlockProducerListByVoteCount}.
+     */
+    abstract static class BlockProducerListByVoteCount extends RpcResultPages<GetBlockProducerListResponse, Type.vest, BlockProducerResponse> {
+        BlockProducerListByVoteCount(long startVest, long endVest, int pageSize) {
+            super(Type.vest.newBuilder().setValue(endVest).build(), Type.vest.newBuilder().setValue(startVest).build(), pageSize);
+        }
+
+        final GetBlockProducerListByVoteCountRequest requestOf(Type.vest start, Type.vest end, int count,BlockProducerResponse last) {
+            GetBlockProducerListByVoteCountRequest.Builder b = GetBlockProducerListByVoteCountRequest.newBuilder();
+            b.setStart(start).setEnd(end).setLimit(count);
+            if (last != null) {
+                b.setLastBlockProducer(last);
+            }
+            return b.build();
+        }
+
+        @Override
+        protected BlockProducerResponse getLastItem(GetBlockProducerListResponse resp) {
+            return isEmptyResponse(resp)? null : resp.getBlockProducerList(resp.getBlockProducerListCount() - 1);
+        }
+
+        @Override
+        protected Type.vest keyOfValue(BlockProducerResponse value) {
+            return value.getBpVest().getVoteVest();
+        }
+
+        @Override
+        public boolean isEmptyResponse(GetBlockProducerListResponse resp) {
+            return resp == null || resp.getBlockProducerListCount() == 0;
+        }
+    }
+
+    /**
+     * Pages of {@link RpcClient#getPostListByVest} and {@link AsyncRpcClient#getPostListByVest}.
+     */
+    abstract static class PostListByVest extends RpcResultPages<GetPostListByVestResponse, Type.vest, PostResponse> {
+        PostListByVest(long startVest, long endVest, int pageSize) {
+            super(Type.vest.newBuilder().setValue(endVest).build(), Type.vest.newBuilder().setValue(startVest).build(), pageSize);
+        }
+
+        final GetPostListByVestRequest requestOf(Type.vest start, Type.vest end, int count, PostResponse last) {
+            GetPostListByVestRequest.Builder b = GetPostListByVestRequest.newBuilder();
+            b.setStart(start).setEnd(end).setLimit(count);
+            if (last != null) {
+                b.setLastPost(last);
+            }
+            return b.build();
+        }
+
+        @Override
+        protected PostResponse getLastItem(GetPostListByVestResponse resp) {
+            return isEmptyResponse(resp)? null : resp.getPostList(resp.getPostListCount() - 1);
+        }
+
+        @Override
+        protected Type.vest keyOfValue(PostResponse value) {
+            return value.getRewards();
+        }
+
+        @Override
+        public boolean isEmptyResponse(GetPostListByVestResponse resp) {
+            return resp == null || resp.getPostListCount() == 0;
+        }
+    }
+
+    /**
+     * Pages of {@link RpcClient#getAccountListByVest} and {@link AsyncRpcClient#getAccountListByVest}.
+     */
+    abstract static class AccountListByVest extends RpcResultPages<GetAccountListResponse, Type.vest, AccountInfo> {
+        AccountListByVest(long minVest, long maxVest, int pageSize) {
+            super(Type.vest.newBuilder().setValue(maxVest).build(), Type.vest.newBuilder().setValue(minVest).build(), pageSize);
+        }
+
+        final GetAccountListByVestRequest requestOf(Type.vest start, Type.vest end, int count, AccountInfo last) {
+            GetAccountListByVestRequest.Builder b = GetAccountListByVestRequest.newBuilder();
+            b.setStart(start).setEnd(end).setLimit(count);
+            if (last != null) {
+                b.setLastAccount(last);
+            }
+            return b.build();
+        }
+
+        @Override
+        protected AccountInfo getLastItem(GetAccountListResponse resp) {
+            return isEmptyResponse(resp)? null : resp.getList(resp.getListCount() - 1).getInfo();
+        }
+
+        @Override
+        protected Type.vest keyOfValue(AccountInfo value) {
+            return value.getVest();
+        }
+
+        @Override
+        public boolean isEmptyResponse(GetAccountListResponse resp) {
+            return resp == null || resp.getListCount() == 0;
+        }
+    }
+}
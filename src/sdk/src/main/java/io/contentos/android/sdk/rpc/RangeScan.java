@@ -0,0 +1,175 @@
+package io.contentos.android.sdk.rpc;
+
+import com.google.common.base.Function;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Scan of a listing split into key ranges queried in parallel.
+ *
+ * <p>Listings by balance, vest or time are queried one page after another, since each query starts
+ * after the last item of the previous page. A range scan cuts the key range into partitions, each
+ * one listed by its own {@link RpcResultPages} at the same time, and returns the items of all
+ * partitions in order, e.g.
+ * <pre>
+ *     RangeScan&lt;GetAccountListResponse, AccountResponse&gt; scan = new RangeScan&lt;&gt;(0, maxBalance, 8,
+ *         new RangeScan.Lister&lt;GetAccountListResponse&gt;() {
+ *             public RpcResultPages&lt;GetAccountListResponse, ?, ?&gt; list(long min, long max) {
+ *                 return client.getAccountListByBalance(min, max, 100);
+ *             }
+ *         },
+ *         new Function&lt;GetAccountListResponse, List&lt;AccountResponse&gt;&gt;() {
+ *             public List&lt;AccountResponse&gt; apply(GetAccountListResponse resp) {
+ *                 return resp.getListList();
+ *             }
+ *         });
+ *     for (AccountResponse account : scan) {
+ *         ...
+ *     }
+ * </pre></p>
+ *
+ * <p>Like the listings, ranges exclude their minimum and include their maximum, and items come in
+ * descending order of keys. Partitions are of equal key ranges, so skewed keys make partitions of
+ * unequal sizes. A partition is queried ahead of consumption up to a number of pages, which bounds
+ * both memory and parallelism, see {@link #setPrefetchPages}.</p>
+ *
+ * @param <ResponseType>    type of RPC response
+ * @param <T>               type of items
+ */
+public final class RangeScan<ResponseType, T> implements Iterable<T> {
+
+    /**
+     * Listing of a key range.
+     * @param <ResponseType> type of RPC response
+     */
+    public interface Lister<ResponseType> {
+        /**
+         * Create result pages of a key range.
+         * @param min   minimal key, exclusive
+         * @param max   maximum key, inclusive
+         * @return result pages of the range in descending order of keys.
+         */
+        RpcResultPages<ResponseType, ?, ?> list(long min, long max);
+    }
+
+    private static final int defaultPrefetchPages = 16;
+
+    private final long min;
+    private final long max;
+    private final int partitions;
+    private final Lister<ResponseType> lister;
+    private final Function<? super ResponseType, ? extends List<T>> itemsOfPage;
+    private int prefetchPages = defaultPrefetchPages;
+
+    /**
+     * Create a range scan.
+     * @param min           minimal key, exclusive
+     * @param max           maximum key, inclusive
+     * @param partitions    number of ranges queried in parallel
+     * @param lister        listing of a key range
+     * @param itemsOfPage   function returning items of a page
+     */
+    public RangeScan(long min, long max, int partitions, Lister<ResponseType> lister, Function<? super ResponseType, ? extends List<T>> itemsOfPage) {
+        if (max < min) {
+            throw new IllegalArgumentException("invalid range: " + min + ", " + max);
+        }
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("invalid partitions: " + partitions);
+        }
+        this.min = min;
+        this.max = max;
+        this.partitions = partitions;
+        this.lister = lister;
+        this.itemsOfPage = itemsOfPage;
+    }
+
+    /**
+     * Set the maximum number of pages of a partition queried ahead of consumption, 16 by default.
+     * <p>A scan is fully parallel if partitions have no more pages than this.</p>
+     * @param prefetchPages maximum pages queried ahead
+     * @return {@code this}
+     */
+    public RangeScan<ResponseType, T> setPrefetchPages(int prefetchPages) {
+        if (prefetchPages <= 0) {
+            throw new IllegalArgumentException("invalid prefetch pages: " + prefetchPages);
+        }
+        this.prefetchPages = prefetchPages;
+        return this;
+    }
+
+    /**
+     * Split a key range into partitions of equal sizes.
+     * @param min           minimal key, exclusive
+     * @param max           maximum key, inclusive
+     * @param partitions    maximum number of partitions
+     * @return bounds of partitions in descending order, from max to min. Partition i is the range
+     * from bound i+1, exclusive, to bound i, inclusive.
+     */
+    public static long[] split(long min, long max, int partitions) {
+        long size = max - min;
+        // ranges over half of all longs overflow, they're split as if they were smaller.
+        if (size < 0) {
+            size = Long.MAX_VALUE;
+        }
+        int n = (int) Math.max(1, Math.min(partitions, size));
+        long[] bounds = new long[n + 1];
+        long step = size / n;
+        for (int i = 0; i < n; i++) {
+            bounds[i] = max - step * i;
+        }
+        bounds[n] = min;
+        return bounds;
+    }
+
+    /**
+     * Start querying all partitions, and iterate their items.
+     * @return iterator of items in descending order of keys.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        long[] bounds = split(min, max, partitions);
+        List<Iterator<T>> parts = new ArrayList<>(bounds.length - 1);
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            parts.add(lister.list(bounds[i + 1], bounds[i]).items(itemsOfPage, prefetchPages).iterator());
+        }
+        return new ConcatIterator<>(parts);
+    }
+
+    // items of partitions one after another
+    private static final class ConcatIterator<T> implements Iterator<T> {
+        private final Iterator<Iterator<T>> parts;
+        private Iterator<T> current = Collections.<T>emptyList().iterator();
+
+        ConcatIterator(List<Iterator<T>> parts) {
+            this.parts = parts.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (!parts.hasNext()) {
+                    return false;
+                }
+                current = parts.next();
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
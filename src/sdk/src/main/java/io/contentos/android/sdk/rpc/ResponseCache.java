@@ -0,0 +1,511 @@
+package io.contentos.android.sdk.rpc;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.MessageLite;
+
+import org.spongycastle.util.encoders.Hex;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.contentos.android.sdk.crypto.Hash;
+import io.contentos.android.sdk.rpc.Grpc.*;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * Interceptor caching responses which never change.
+ *
+ * <p>Blocks and transactions below the last irreversible block are final, so responses of
+ * {@code getSignedBlock}, {@code getBlockList}, {@code getBlockBFTInfoByNum} and
+ * {@code getTrxInfoById} about them are cached in memory, the least recently used ones being
+ * evicted beyond a maximum size in bytes. Responses about reversible blocks are never cached.</p>
+ *
+ * <p>The last irreversible block is learned from chain state responses going through the cache,
+ * and queried when a call is about a newer block, at most once per second.</p>
+ *
+ * <p>Optionally, cached responses are also written to files of a directory, see
+ * {@link #openPersistentTier}, so that they survive restarts.</p>
+ */
+public final class ResponseCache implements ClientInterceptor {
+
+    /**
+     * Default maximum size of cached responses in memory, in bytes.
+     */
+    public static final long defaultMaxBytes = 4 * 1024 * 1024;
+
+    // estimated memory cost of an entry besides its key and response
+    private static final int entryOverhead = 64;
+    private static final long refreshIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+
+    // shared by all caches, it writes files of persistent tiers.
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "response-cache-writer");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private static final class Entry {
+        final Object response;
+        final int bytes;
+
+        Entry(Object response, int bytes) {
+            this.response = response;
+            this.bytes = bytes;
+        }
+    }
+
+    private final long maxBytes;
+    // guarded by this
+    private final LinkedHashMap<ByteString, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private volatile DiskTier disk;
+    private volatile long lastIrreversible;
+    private final AtomicLong lastRefresh = new AtomicLong(System.nanoTime() - refreshIntervalNanos);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+
+    /**
+     * Create a cache of default maximum size.
+     */
+    public ResponseCache() {
+        this(defaultMaxBytes);
+    }
+
+    /**
+     * Create a cache.
+     * @param maxBytes maximum size of cached responses in memory, in bytes
+     */
+    public ResponseCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("invalid maximum bytes: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Keep cached responses in files of a directory too.
+     * <p>Responses evicted from memory are read back from files. Files are written in background,
+     * and the least recently used ones are deleted beyond a maximum total size.</p>
+     * @param directory the directory, created if missing
+     * @param maxBytes  maximum total size of files, in bytes
+     */
+    public void openPersistentTier(File directory, long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("invalid maximum bytes: " + maxBytes);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new RuntimeException("cannot create directory " + directory);
+        }
+        disk = new DiskTier(directory, maxBytes, writeFailures);
+    }
+
+    /**
+     * Get the number of calls answered from cache.
+     * @return number of cache hits.
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of cacheable calls sent to the server.
+     * @return number of cache misses.
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * Get the number of responses failed to be written to the persistent tier, e.g. because the
+     * disk is full. Such responses are still cached in memory.
+     * @return number of failed writes.
+     */
+    public long writeFailures() {
+        return writeFailures.get();
+    }
+
+    /**
+     * Remove all cached responses from memory.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(final MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, final Channel next) {
+        final String name = method.getFullMethodName();
+        ClientCall<ReqT, RespT> call = next.newCall(method, callOptions);
+        if (name.equals(ApiServiceGrpc.getGetChainStateMethod().getFullMethodName())) {
+            return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(call) {
+                @Override
+                public void start(Listener<RespT> responseListener, Metadata headers) {
+                    super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(responseListener) {
+                        @Override
+                        public void onMessage(RespT message) {
+                            onChainState((GetChainStateResponse) message);
+                            super.onMessage(message);
+                        }
+                    }, headers);
+                }
+            };
+        }
+        if (!isCacheable(name)) {
+            return call;
+        }
+        return new CachingCall<>(method, call, next);
+    }
+
+    private static boolean isCacheable(String method) {
+        return method.equals(ApiServiceGrpc.getGetSignedBlockMethod().getFullMethodName())
+                || method.equals(ApiServiceGrpc.getGetBlockListMethod().getFullMethodName())
+                || method.equals(ApiServiceGrpc.getGetBlockBFTInfoByNumMethod().getFullMethodName())
+                || method.equals(ApiServiceGrpc.getGetTrxInfoByIdMethod().getFullMethodName());
+    }
+
+    private void onChainState(GetChainStateResponse response) {
+        long lib = response.getState().getLastIrreversibleBlockNumber();
+        synchronized (this) {
+            if (lib > lastIrreversible) {
+                lastIrreversible = lib;
+            }
+        }
+    }
+
+    // query chain state if a block newer than the last irreversible one is asked for.
+    private void checkIrreversible(long blockNum, Channel channel) {
+        if (blockNum <= lastIrreversible) {
+            return;
+        }
+        long now = System.nanoTime();
+        long last = lastRefresh.get();
+        if (now - last < refreshIntervalNanos || !lastRefresh.compareAndSet(last, now)) {
+            return;
+        }
+        Futures.addCallback(
+                ApiServiceGrpc.newFutureStub(channel).getChainState(NonParamsRequest.getDefaultInstance()),
+                new FutureCallback<GetChainStateResponse>() {
+                    @Override
+                    public void onSuccess(GetChainStateResponse result) {
+                        onChainState(result);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        // not cached until next try
+                    }
+                }, MoreExecutors.directExecutor());
+    }
+
+    // block number a request is about, for the biggest one of a range.
+    private static long blockNumOf(Object request) {
+        if (request instanceof GetSignedBlockRequest) {
+            return ((GetSignedBlockRequest) request).getStart();
+        } else if (request instanceof GetBlockListRequest) {
+            return ((GetBlockListRequest) request).getEnd();
+        } else if (request instanceof GetBlockBFTInfoByNumRequest) {
+            return ((GetBlockBFTInfoByNumRequest) request).getBlockNum();
+        }
+        return 0;
+    }
+
+    // check if a response is final.
+    private boolean isImmutable(Object request, Object response) {
+        long lib = lastIrreversible;
+        if (response instanceof GetTrxInfoByIdResponse) {
+            GetTrxInfoByIdResponse r = (GetTrxInfoByIdResponse) response;
+            return r.hasInfo() && (r.getInfo().getBlkIsIrreversible()
+                    || (r.getInfo().getBlockHeight() > 0 && r.getInfo().getBlockHeight() <= lib));
+        }
+        if (blockNumOf(request) > lib) {
+            return false;
+        }
+        if (response instanceof GetSignedBlockResponse) {
+            return ((GetSignedBlockResponse) response).hasBlock();
+        } else if (response instanceof GetBlockListResponse) {
+            GetBlockListRequest r = (GetBlockListRequest) request;
+            List<BlockInfo> blocks = ((GetBlockListResponse) response).getBlocksList();
+            // a node lagging behind answers with fewer blocks, or none.
+            if (blocks.isEmpty()
+                    || (blocks.size() < r.getLimit() && blocks.get(blocks.size() - 1).getBlockHeight() != r.getEnd())) {
+                return false;
+            }
+            for (BlockInfo b : blocks) {
+                if (b.getBlockHeight() > lib) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (response instanceof GetBlockBFTInfoByNumResponse) {
+            return !((GetBlockBFTInfoByNumResponse) response).getSignature().isEmpty();
+        }
+        return false;
+    }
+
+    private static ByteString keyOf(String method, Object request) {
+        return ByteString.copyFromUtf8(method).concat(((MessageLite) request).toByteString());
+    }
+
+    private synchronized Object getFromMemory(ByteString key) {
+        Entry e = entries.get(key);
+        return e != null ? e.response : null;
+    }
+
+    private synchronized void putInMemory(ByteString key, Object response, int size) {
+        Entry e = new Entry(response, key.size() + size + entryOverhead);
+        if (e.bytes > maxBytes) {
+            return;
+        }
+        Entry old = entries.put(key, e);
+        bytes += e.bytes - (old != null ? old.bytes : 0);
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().bytes;
+            it.remove();
+        }
+    }
+
+    private <ReqT, RespT> RespT get(MethodDescriptor<ReqT, RespT> method, ByteString key) {
+        @SuppressWarnings("unchecked")
+        RespT response = (RespT) getFromMemory(key);
+        if (response != null) {
+            return response;
+        }
+        DiskTier d = disk;
+        if (d != null) {
+            byte[] data = d.get(key);
+            if (data != null) {
+                try {
+                    response = method.parseResponse(new ByteArrayInputStream(data));
+                    putInMemory(key, response, data.length);
+                } catch (RuntimeException e) {
+                    // a broken file is a miss.
+                    response = null;
+                }
+            }
+        }
+        return response;
+    }
+
+    private void put(ByteString key, Object response) {
+        byte[] data = ((MessageLite) response).toByteArray();
+        putInMemory(key, response, data.length);
+        DiskTier d = disk;
+        if (d != null) {
+            d.put(key, data);
+        }
+    }
+
+    // cacheable call, answered from cache if possible.
+    private final class CachingCall<ReqT, RespT> extends ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT> {
+        private final MethodDescriptor<ReqT, RespT> method;
+        private final Channel channel;
+        private Listener<RespT> listener;
+        private Metadata headers;
+        private ReqT request;
+        private boolean delegated;
+
+        CachingCall(MethodDescriptor<ReqT, RespT> method, ClientCall<ReqT, RespT> call, Channel channel) {
+            super(call);
+            this.method = method;
+            this.channel = channel;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            this.listener = responseListener;
+            this.headers = headers;
+        }
+
+        @Override
+        public void request(int numMessages) {
+            // requested once the cache missed.
+        }
+
+        @Override
+        public void sendMessage(ReqT message) {
+            request = message;
+        }
+
+        @Override
+        public void halfClose() {
+            final ByteString key = keyOf(method.getFullMethodName(), request);
+            RespT cached = get(method, key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                listener.onHeaders(new Metadata());
+                listener.onMessage(cached);
+                listener.onClose(Status.OK, new Metadata());
+                return;
+            }
+            misses.incrementAndGet();
+            checkIrreversible(blockNumOf(request), channel);
+            delegated = true;
+            delegate().start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(listener) {
+                @Override
+                public void onMessage(RespT message) {
+                    if (isImmutable(request, message)) {
+                        put(key, message);
+                    }
+                    super.onMessage(message);
+                }
+            }, headers);
+            delegate().request(2);
+            delegate().sendMessage(request);
+            delegate().halfClose();
+        }
+
+        @Override
+        public void cancel(String message, Throwable cause) {
+            if (delegated) {
+                super.cancel(message, cause);
+            }
+        }
+    }
+
+    // cached responses in files, one file per response named by hash of its key.
+    private static final class DiskTier {
+        private final File directory;
+        private final long maxBytes;
+        private final AtomicLong writeFailures;
+        // file names and sizes in access order, guarded by this
+        private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+
+        DiskTier(File directory, long maxBytes, AtomicLong writeFailures) {
+            this.directory = directory;
+            this.maxBytes = maxBytes;
+            this.writeFailures = writeFailures;
+            File[] list = directory.listFiles();
+            if (list == null) {
+                return;
+            }
+            Arrays.sort(list, new Comparator<File>() {
+                @Override
+                public int compare(File a, File b) {
+                    long d = a.lastModified() - b.lastModified();
+                    return d < 0 ? -1 : d > 0 ? 1 : 0;
+                }
+            });
+            for (File f : list) {
+                if (f.getName().endsWith(".tmp")) {
+                    f.delete();
+                } else if (f.isFile()) {
+                    files.put(f.getName(), f.length());
+                    bytes += f.length();
+                }
+            }
+        }
+
+        private static String nameOf(ByteString key) {
+            return Hex.toHexString(Hash.sha256(key.toByteArray()));
+        }
+
+        byte[] get(ByteString key) {
+            String name = nameOf(key);
+            Long size;
+            synchronized (this) {
+                size = files.get(name);
+            }
+            if (size == null) {
+                return null;
+            }
+            try {
+                InputStream in = new FileInputStream(new File(directory, name));
+                try {
+                    byte[] data = new byte[(int) (long) size];
+                    int n = 0;
+                    while (n < data.length) {
+                        int r = in.read(data, n, data.length - n);
+                        if (r < 0) {
+                            return null;
+                        }
+                        n += r;
+                    }
+                    return data;
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        void put(ByteString key, final byte[] data) {
+            final String name = nameOf(key);
+            synchronized (this) {
+                if (files.containsKey(name) || data.length > maxBytes) {
+                    return;
+                }
+            }
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        write(name, data);
+                    } catch (IOException e) {
+                        // the response is only cached in memory.
+                        writeFailures.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        private void write(String name, byte[] data) throws IOException {
+            File file = new File(directory, name);
+            File tmp = new File(directory, name + ".tmp");
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(data);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("failed to rename " + tmp);
+            }
+            synchronized (this) {
+                Long old = files.put(name, (long) data.length);
+                bytes += data.length - (old != null ? old : 0);
+                Iterator<Map.Entry<String, Long>> it = files.entrySet().iterator();
+                while (bytes > maxBytes && it.hasNext()) {
+                    Map.Entry<String, Long> e = it.next();
+                    new File(directory, e.getKey()).delete();
+                    bytes -= e.getValue();
+                    it.remove();
+                }
+            }
+        }
+    }
+}
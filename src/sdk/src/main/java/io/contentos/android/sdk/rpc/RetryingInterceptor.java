@@ -0,0 +1,407 @@
+package io.contentos.android.sdk.rpc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.Deadline;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * Interceptor giving read-only calls a deadline, retries and hedging.
+ *
+ * <p>Queries are idempotent, so a call can be sent again when it fails to reach a node, after a
+ * jittered exponential backoff. Calls over a {@link BalancedChannel} of several nodes aren't
+ * retried, since the channel already sends a call failing to reach a node to each other node in
+ * turn; retrying on top of that would make up to {@code maxAttempts} times as many attempts as
+ * there are nodes. With hedging, a call not answered after the 95th percentile of
+ * its method's recent latency is sent once more, and the first answer wins. The second request
+ * usually goes to another node when the channel is a {@link BalancedChannel}, since nodes are
+ * weighted by their calls in flight. Hedging costs about 5% more requests, but cuts the tail
+ * latency caused by a slow node or a lost packet. It's off by default, since a hedged request
+ * sent to the same node only adds load to it.</p>
+ *
+ * <p>Each method can have its own {@link Policy}. Transactions are never sent more than once, they
+ * pass through unchanged.</p>
+ */
+public final class RetryingInterceptor implements ClientInterceptor {
+
+    /**
+     * Deadline, retry and hedging policy of a method.
+     */
+    public static final class Policy {
+        private long deadlineMillis = 10000;
+        private int maxAttempts = 3;
+        private long initialBackoffMillis = 100;
+        private long maxBackoffMillis = 2000;
+        private boolean hedging;
+        private long minHedgingDelayMillis = 50;
+
+        /**
+         * Set the deadline of a call including all its attempts, 10 seconds by default.
+         * <p>A shorter deadline set by the caller takes precedence.</p>
+         * @param deadline  deadline
+         * @param unit      time unit of deadline
+         * @return {@code this}
+         */
+        public Policy setDeadline(long deadline, TimeUnit unit) {
+            if (deadline <= 0) {
+                throw new IllegalArgumentException("invalid deadline: " + deadline);
+            }
+            this.deadlineMillis = unit.toMillis(deadline);
+            return this;
+        }
+
+        /**
+         * Set the maximum number of attempts of a call, including hedged ones, 3 by default.
+         * <p>Over a {@link BalancedChannel} of several nodes, it only bounds hedging: failed calls
+         * aren't retried, the channel fails over to other nodes instead.</p>
+         * @param maxAttempts maximum number of attempts, 1 for no retry
+         * @return {@code this}
+         */
+        public Policy setMaxAttempts(int maxAttempts) {
+            if (maxAttempts <= 0) {
+                throw new IllegalArgumentException("invalid maximum attempts: " + maxAttempts);
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Set the backoff before retries, 100 milliseconds doubled up to 2 seconds by default.
+         * <p>The actual delay is random between zero and the backoff, so that clients failing
+         * together don't retry together.</p>
+         * @param initial   backoff before the first retry
+         * @param max       maximum backoff
+         * @param unit      time unit of initial and max
+         * @return {@code this}
+         */
+        public Policy setBackoff(long initial, long max, TimeUnit unit) {
+            if (initial <= 0 || max < initial) {
+                throw new IllegalArgumentException("invalid backoff: " + initial + ", " + max);
+            }
+            this.initialBackoffMillis = unit.toMillis(initial);
+            this.maxBackoffMillis = unit.toMillis(max);
+            return this;
+        }
+
+        /**
+         * Set whether slow calls are hedged, false by default.
+         * <p>Hedging only helps if the channel spreads calls over several nodes, e.g. a
+         * {@link BalancedChannel}. A call is hedged at most once.</p>
+         * @param hedging hedge or not
+         * @return {@code this}
+         */
+        public Policy setHedging(boolean hedging) {
+            this.hedging = hedging;
+            return this;
+        }
+
+        /**
+         * Set the minimum delay before hedging a call, 50 milliseconds by default.
+         * <p>It's the delay used until enough latency of the method was observed.</p>
+         * @param delay minimum hedging delay
+         * @param unit  time unit of delay
+         * @return {@code this}
+         */
+        public Policy setMinHedgingDelay(long delay, TimeUnit unit) {
+            if (delay < 0) {
+                throw new IllegalArgumentException("invalid hedging delay: " + delay);
+            }
+            this.minHedgingDelayMillis = unit.toMillis(delay);
+            return this;
+        }
+    }
+
+    // shared by all interceptors, it only starts retries and hedged attempts.
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "retrying-timer");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private static final Random random = new Random();
+
+    // methods not safe to send twice
+    private static final Set<String> writeMethods = Collections.singleton(
+            ApiServiceGrpc.getBroadcastTrxMethod().getFullMethodName());
+
+    // recent latency of a method, measured from the first attempt of calls.
+    private static final class Latency {
+        // samples needed before the percentile is trusted
+        static final int minSamples = 20;
+
+        private final long[] samples = new long[128];
+        private int count;
+        private int next;
+
+        synchronized void add(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        // 95th percentile in milliseconds, -1 if not enough samples.
+        synchronized long p95Millis() {
+            if (count < minSamples) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return TimeUnit.NANOSECONDS.toMillis(sorted[(count * 95 - 1) / 100]);
+        }
+    }
+
+    private final Policy defaultPolicy;
+    private final ConcurrentHashMap<String, Policy> policies = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Latency> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * Create an interceptor with the default policy for all read-only methods.
+     */
+    public RetryingInterceptor() {
+        this(new Policy());
+    }
+
+    /**
+     * Create an interceptor.
+     * @param defaultPolicy policy of read-only methods without their own
+     */
+    public RetryingInterceptor(Policy defaultPolicy) {
+        this.defaultPolicy = defaultPolicy;
+    }
+
+    /**
+     * Set the policy of a method.
+     * @param method    the method, e.g. {@code ApiServiceGrpc.getGetSignedBlockMethod()}
+     * @param policy    policy of the method
+     * @return {@code this}
+     */
+    public RetryingInterceptor setPolicy(MethodDescriptor<?, ?> method, Policy policy) {
+        if (writeMethods.contains(method.getFullMethodName())) {
+            throw new IllegalArgumentException("not a read-only method: " + method.getFullMethodName());
+        }
+        policies.put(method.getFullMethodName(), policy);
+        return this;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        String name = method.getFullMethodName();
+        if (method.getType() != MethodDescriptor.MethodType.UNARY || writeMethods.contains(name)) {
+            return next.newCall(method, callOptions);
+        }
+        Policy policy = policies.get(name);
+        if (policy == null) {
+            policy = defaultPolicy;
+        }
+        Latency latency = latencies.get(name);
+        if (latency == null) {
+            latencies.putIfAbsent(name, new Latency());
+            latency = latencies.get(name);
+        }
+        Deadline deadline = Deadline.after(policy.deadlineMillis, TimeUnit.MILLISECONDS);
+        if (callOptions.getDeadline() != null && callOptions.getDeadline().isBefore(deadline)) {
+            deadline = callOptions.getDeadline();
+        }
+        boolean retry = !(next instanceof BalancedChannel) || !((BalancedChannel) next).failsOver();
+        return new RetryingCall<>(next, method, callOptions.withDeadline(deadline), policy, latency, retry);
+    }
+
+    // unary call buffering its request and response, so that attempts can race.
+    private static final class RetryingCall<ReqT, RespT> extends ClientCall<ReqT, RespT> {
+        private final Channel next;
+        private final MethodDescriptor<ReqT, RespT> method;
+        private final CallOptions callOptions;
+        private final Policy policy;
+        private final Latency latency;
+        // false if the channel already fails over
+        private final boolean retry;
+        private Listener<RespT> listener;
+        private Metadata headers;
+        private ReqT request;
+        private long startNanos;
+        // guarded by this
+        private final List<ClientCall<ReqT, RespT>> active = new ArrayList<>();
+        private int attempts;
+        private boolean committed;
+
+        RetryingCall(Channel next, MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Policy policy, Latency latency, boolean retry) {
+            this.next = next;
+            this.method = method;
+            this.callOptions = callOptions;
+            this.policy = policy;
+            this.latency = latency;
+            this.retry = retry;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            this.listener = responseListener;
+            this.headers = headers;
+        }
+
+        @Override
+        public void request(int numMessages) {
+            // attempts request their response themselves.
+        }
+
+        @Override
+        public void sendMessage(ReqT message) {
+            request = message;
+        }
+
+        @Override
+        public void halfClose() {
+            startNanos = System.nanoTime();
+            attempt();
+            if (policy.hedging) {
+                hedge();
+            }
+        }
+
+        @Override
+        public void cancel(String message, Throwable cause) {
+            List<ClientCall<ReqT, RespT>> calls;
+            synchronized (this) {
+                if (committed) {
+                    return;
+                }
+                committed = true;
+                calls = new ArrayList<>(active);
+            }
+            for (ClientCall<ReqT, RespT> c : calls) {
+                c.cancel(message, cause);
+            }
+            if (listener != null) {
+                listener.onClose(Status.CANCELLED.withDescription(message).withCause(cause), new Metadata());
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        private void attempt() {
+            final ClientCall<ReqT, RespT> call = next.newCall(method, callOptions);
+            synchronized (this) {
+                if (committed) {
+                    return;
+                }
+                attempts++;
+                active.add(call);
+            }
+            Metadata copy = new Metadata();
+            copy.merge(headers);
+            call.start(new Listener<RespT>() {
+                private Metadata responseHeaders;
+                private RespT response;
+
+                @Override
+                public void onHeaders(Metadata headers) {
+                    responseHeaders = headers;
+                }
+
+                @Override
+                public void onMessage(RespT message) {
+                    response = message;
+                }
+
+                @Override
+                public void onClose(Status status, Metadata trailers) {
+                    onAttemptClosed(call, status, responseHeaders, response, trailers);
+                }
+            }, copy);
+            call.request(2);
+            call.sendMessage(request);
+            call.halfClose();
+        }
+
+        // send a second attempt if the first one is still pending after the hedging delay.
+        private void hedge() {
+            timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (RetryingCall.this) {
+                        // a retried call isn't hedged, its first attempt failed fast.
+                        if (committed || attempts != 1 || active.isEmpty() || attempts >= policy.maxAttempts) {
+                            return;
+                        }
+                    }
+                    attempt();
+                }
+            }, Math.max(latency.p95Millis(), policy.minHedgingDelayMillis), TimeUnit.MILLISECONDS);
+        }
+
+        private void onAttemptClosed(ClientCall<ReqT, RespT> call, Status status, Metadata responseHeaders, RespT response, Metadata trailers) {
+            long backoff = -1;
+            List<ClientCall<ReqT, RespT>> losers;
+            synchronized (this) {
+                active.remove(call);
+                if (committed) {
+                    return;
+                }
+                if (status.getCode() == Status.Code.UNAVAILABLE) {
+                    if (!active.isEmpty()) {
+                        // a hedged attempt is still running.
+                        return;
+                    }
+                    if (retry && attempts < policy.maxAttempts) {
+                        long cap = Math.min(policy.maxBackoffMillis, policy.initialBackoffMillis << Math.min(attempts - 1, 20));
+                        backoff = (long) (random.nextDouble() * cap);
+                        if (callOptions.getDeadline().timeRemaining(TimeUnit.MILLISECONDS) <= backoff) {
+                            backoff = -1;
+                        }
+                    }
+                }
+                if (backoff < 0) {
+                    committed = true;
+                    losers = new ArrayList<>(active);
+                } else {
+                    losers = Collections.emptyList();
+                }
+            }
+            if (backoff >= 0) {
+                timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        attempt();
+                    }
+                }, backoff, TimeUnit.MILLISECONDS);
+                return;
+            }
+            for (ClientCall<ReqT, RespT> c : losers) {
+                c.cancel("another attempt completed", null);
+            }
+            if (status.isOk()) {
+                // from the first attempt, so that hedged calls don't make the method look faster.
+                latency.add(System.nanoTime() - startNanos);
+            }
+            if (responseHeaders != null) {
+                listener.onHeaders(responseHeaders);
+            }
+            if (response != null) {
+                listener.onMessage(response);
+            }
+            listener.onClose(status, trailers);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.google.protobuf.ByteString;
 
 import java.util.zip.CRC32;
 
+import io.contentos.android.sdk.crypto.PublicKey;
 import io.contentos.android.sdk.prototype.MultiId;
 import io.contentos.android.sdk.prototype.Transaction.signed_transaction;
 import io.contentos.android.sdk.prototype.Type;
@@ -40,13 +41,15 @@ public class RpcClient extends Operation.BaseResultFilter<Transaction, Transacti
     protected String signingKey;
     protected int chainId;
     protected String chainName;
+    protected ChainStateCache chainStateCache;
 
     /**
      * Create an instance of RPC client.
-     * @param service       the gRPC service
-     * @param signingKey    the signing private key for transactions
+     * @param service           the gRPC service
+     * @param signingKey        the signing private key for transactions
+     * @param chainStateCache   the chain state cache for transaction preparation
      */
-    public RpcClient(ApiServiceGrpc.ApiServiceBlockingStub service, String signingKey, String chainName) {
+    public RpcClient(ApiServiceGrpc.ApiServiceBlockingStub service, String signingKey, String chainName, ChainStateCache chainStateCache) {
         super(new Transaction.Factory());
         this.service = service;
         this.signingKey = signingKey;
@@ -54,6 +57,16 @@ public class RpcClient extends Operation.BaseResultFilter<Transaction, Transacti
         crc.update(chainName.getBytes());
         this.chainId = (int)crc.getValue();
         this.chainName = chainName;
+        this.chainStateCache = chainStateCache;
+    }
+
+    /**
+     * Create an instance of RPC client.
+     * @param service       the gRPC service
+     * @param signingKey    the signing private key for transactions
+     */
+    public RpcClient(ApiServiceGrpc.ApiServiceBlockingStub service, String signingKey, String chainName) {
+        this(service, signingKey, chainName, new ChainStateCache(service.getChannel()));
     }
 
     /**
@@ -126,38 +139,10 @@ public class RpcClient extends Operation.BaseResultFilter<Transaction, Transacti
      * @return follower list in ascending order of follow-ship creation time.
      */
     public RpcResultPages<GetFollowerListByNameResponse, follower_created_order, follower_created_order> getFollowerListByName(String accountName, int pageSize) {
-        follower_created_order.Builder query = follower_created_order.newBuilder()
-                .setAccount(accountName(accountName))
-                .setFollower(accountName(""));
-
-        return new RpcResultPages<GetFollowerListByNameResponse, follower_created_order, follower_created_order>(
-                query.clone().setCreatedTime(minTimeStamp).build(),
-                query.clone().setCreatedTime(maxTimeStamp).build(),
-                pageSize)
-        {
+        return new PageQueries.FollowerListByName(accountName, pageSize) {
             @Override
             protected GetFollowerListByNameResponse request(follower_created_order start, follower_created_order end, int count, follower_created_order last) {
-                GetFollowerListByNameRequest.Builder b = GetFollowerListByNameRequest.newBuilder();
-                b.setStart(start).setEnd(end).setLimit(count);
-                if (last != null) {
-                    b.setLastOrder(last);
-                }
-                return service.getFollowerListByName(b.build());
-            }
-
-            @Override
-            protected follower_created_order getLastItem(GetFollowerListByNameResponse resp) {
-                return isEmptyResponse(resp)? null : resp.getFollowerList(resp.getFollowerListCount() - 1).getCreateOrder();
-            }
-
-            @Override
-            protected follower_created_order keyOfValue(follower_created_order value) {
-                return value;
-            }
-
-            @Override
-            public boolean isEmptyResponse(GetFollowerListByNameResponse resp) {
-                return resp == null || resp.getFollowerListCount() == 0;
+                return service.getFollowerListByName(requestOf(start, end, count, last));
             }
         };
     }
@@ -169,37 +154,10 @@ public class RpcClient extends Operation.BaseResultFilter<Transaction, Transacti
      * @return list of accounts followed by the account, in ascending order of follow-ship creation time.
      */
     public RpcResultPages<GetFollowingListByNameResponse, following_created_order, following_created_order> getFollowingListByName(String accountName, int pageSize) {
-        following_created_order.Builder query = following_created_order.newBuilder()
-                .setAccount(accountName(accountName));
-
-        return new RpcResultPages<GetFollowingListByNameResponse, following_created_order, following_created_order>(
-                query.clone().setCreatedTime(minTimeStamp).build(),
-                query.clone().setCreatedTime(maxTimeStamp).build(),
-                pageSize)
-        {
+        return new PageQueries.FollowingListByName(accountName, pageSize) {
             @Override
             protected GetFollowingListByNameResponse request(following_created_order start, following_created_order end, int count, following_created_order last) {
-                GetFollowingListByNameRequest.Builder b = GetFollowingListByNameRequest.newBuilder();
-                b.setStart(start).setEnd(end).setLimit(count);
-                if (last != null) {
-                    b.setLastOrder(last);
-                }
-                return service.getFollowingListByName(b.build());
-            }
-
-            @Override
-            protected following_created_order getLastItem(GetFollowingListByNameResponse resp) {
-                return isEmptyResponse(resp)? null : resp.getFollowingList(resp.getFollowingListCount() - 1).getCreateOrder();
-            }
-
-            @Override
-            protected following_created_order keyOfValue(following_created_order value) {
-                return value;
-            }
-
-            @Override
-            public boolean isEmptyResponse(GetFollowingListByNameResponse resp) {
-                return resp == null || resp.getFollowingListCount() == 0;
+                return service.getFollowingListByName(requestOf(start, end, count, last));
             }
         };
     }
@@ -297,16 +255,17 @@ public class RpcClient extends Operation.BaseResultFilter<Transaction, Transacti
 
     /**
      * Sign a transaction and broadcast it.
+     * <p>Reference block and expiration time of the transaction are set based on {@link #chainStateCache}.</p>
      * @param trx           the transaction
      * @param waitResult    wait until the transaction processing finished.
      * @return processing result of transaction.
      */
     public BroadcastTrxResponse signAndBroadcastTrx(Transaction trx, boolean waitResult) {
-        trx.setDynamicGlobalProps(getChainState().getState().getDgpo());
         String key = this.signingKey;
         if (key == null || key.length() == 0) {
             throw new RuntimeException("signing key not found");
         }
+        chainStateCache.prepare(trx);
         return broadcastTrx(trx.sign(key, this.chainId), waitResult);
     }
 
@@ -348,34 +307,10 @@ public class RpcClient extends Operation.BaseResultFilter<Transaction, Transacti
      * @return account list in descending order of balance.
      */
     public RpcResultPages<GetAccountListResponse, Type.coin, AccountInfo> getAccountListByBalance(long minBalance, long maxBalance, int pageSize) {
-        return new RpcResultPages<GetAccountListResponse, Type.coin, AccountInfo>(
-                Type.coin.newBuilder().setValue(maxBalance).build(),
-                Type.coin.newBuilder().setValue(minBalance).build(),
-                pageSize)
-        {
+        return new PageQueries.AccountListByBalance(minBalance, maxBalance, pageSize) {
             @Override
             protected GetAccountListResponse request(Type.coin start, Type.coin end, int count, AccountInfo last) {
-                GetAccountListByBalanceRequest.Builder b = GetAccountListByBalanceRequest.newBuilder();
-                b.setStart(start).setEnd(end).setLimit(count);
-                if (last != null) {
-                    b.setLastAccount(last);
-                }
-                return service.getAccountListByBalance(b.build());
-            }
-
-            @Override
-            protected AccountInfo getLastItem(GetAccountListResponse resp) {
-                return isEmptyResponse(resp)? null : resp.getList(resp.getListCount() - 1).getInfo();
-            }
-
-            @Override
-            protected Type.coin keyOfValue(AccountInfo value) {
-                return value.getCoin();
-            }
-
-            @Override
-            public boolean isEmptyResponse(GetAccountListResponse resp) {
-                return resp == null || resp.getListCount() == 0;
+                return service.getAccountListByBalance(requestOf(start, end, count, last));
             }
         };
     }
@@ -386,38 +321,10 @@ public class RpcClient extends Operation.BaseResultFilter<Transaction, Transacti
      * @return the stats.
      */
     public RpcResultPages<GetDailyTotalTrxResponse, Type.time_point_sec, DailyTotalTrx> getDailyTotalTrxInfo(int pageSize) {
-        return new RpcResultPages<GetDailyTotalTrxResponse, Type.time_point_sec, DailyTotalTrx>(
-                null, null, pageSize)
-        {
+        return new PageQueries.DailyTotalTrxInfo(pageSize) {
             @Override
             protected GetDailyTotalTrxResponse request(Type.time_point_sec start, Type.time_point_sec end, int count, DailyTotalTrx last) {
-                GetDailyTotalTrxRequest.Builder b = GetDailyTotalTrxRequest.newBuilder();
-                b.setLimit(count);
-                if (start != null) {
-                    b.setStart(start);
-                }
-                if (end != null) {
-                    b.setEnd(end);
-                }
-                if (last != null) {
-                    b.setLastInfo(last);
-                }
-                return service.getDailyTotalTrxInfo(b.build());
-            }
-
-            @Override
-            protected DailyTotalTrx getLastItem(GetDailyTotalTrxResponse resp) {
-                return isEmptyResponse(resp)? null : resp.getList(resp.getListCount() - 1);
-            }
-
-            @Override
-            protected Type.time_point_sec keyOfValue(DailyTotalTrx value) {
-                return value.getDate();
-            }
-
-            @Override
-            public boolean isEmptyResponse(GetDailyTotalTrxResponse resp) {
-                return resp == null || resp.getListCount() == 0;
+                return service.getDailyTotalTrxInfo(requestOf(start, end, count, last));
             }
         };
     }
@@ -443,34 +350,10 @@ public class RpcClient extends Operation.BaseResultFilter<Transaction, Transacti
      * @return transactions in descending order of creation time.
      */
     public RpcResultPages<GetTrxListByTimeResponse, Type.time_point_sec, TrxInfo> getTrxListByTime(int startTimestamp, int endTimeStamp, int pageSize) {
-        return new RpcResultPages<GetTrxListByTimeResponse, Type.time_point_sec, TrxInfo>(
-                timeStamp(endTimeStamp),
-                timeStamp(startTimestamp),
-                pageSize)
-        {
+        return new PageQueries.TrxListByTime(startTimestamp, endTimeStamp, pageSize) {
             @Override
             protected GetTrxListByTimeResponse request(Type.time_point_sec start, Type.time_point_sec end, int count, TrxInfo last) {
-                GetTrxListByTimeRequest.Builder b = GetTrxListByTimeRequest.newBuilder();
-                b.setStart(start).setEnd(end).setLimit(count);
-                if (last != null) {
-                    b.setLastInfo(last);
-                }
-                return service.getTrxListByTime(b.build());
-            }
-
-            @Override
-            protected TrxInfo getLastItem(GetTrxListByTimeResponse resp) {
-                return isEmptyResponse(resp)? null : resp.getList(resp.getListCount() - 1);
-            }
-
-            @Override
-            protected Type.time_point_sec keyOfValue(TrxInfo value) {
-                return value.getBlockTime();
-            }
-
-            @Override
-            public boolean isEmptyResponse(GetTrxListByTimeResponse resp) {
-                return resp == null || resp.getListCount() == 0;
+                return service.getTrxListByTime(requestOf(start, end, count, last));
             }
         };
     }
@@ -483,34 +366,10 @@ public class RpcClient extends Operation.BaseResultFilter<Transaction, Transacti
      * @return post list in descending order of creation time.
      */
     public RpcResultPages<GetPostListByCreateTimeResponse, Type.time_point_sec, PostResponse> getPostListByCreateTime(int startTimestamp, int endTimeStamp, int pageSize) {
-        return new RpcResultPages<GetPostListByCreateTimeResponse, Type.time_point_sec, PostResponse>(
-                timeStamp(endTimeStamp),
-                timeStamp(startTimestamp),
-                pageSize)
-        {
+        return new PageQueries.PostListByCreateTime(startTimestamp, endTimeStamp, pageSize) {
             @Override
             protected GetPostListByCreateTimeResponse request(Type.time_point_sec start, Type.time_point_sec end, int count, PostResponse last) {
-                GetPostListByCreateTimeRequest.Builder b = GetPostListByCreateTimeRequest.newBuilder();
-                b.setStart(start).setEnd(end).setLimit(count);
-                if (last != null) {
-                    b.setLastPost(last);
-                }
-                return service.getPostListByCreateTime(b.build());
-            }
-
-            @Override
-            protected PostResponse getLastItem(GetPostListByCreateTimeResponse resp) {
-                return isEmptyResponse(resp)? null : resp.getPostedList(resp.getPostedListCount() - 1);
-            }
-
-            @Override
-            protected Type.time_point_sec keyOfValue(PostResponse value) {
-                return value.getCreated();
-            }
-
-            @Override
-            public boolean isEmptyResponse(GetPostListByCreateTimeResponse resp) {
-                return resp == null || resp.getPostedListCount() == 0;
+                return service.getPostListByCreateTime(requestOf(start, end, count, last));
             }
         };
     }
@@ -521,41 +380,11 @@ public class RpcClient extends Operation.BaseResultFilter<Transaction, Transacti
      * @param pageSize  maximum items in a page
      * @return post list in descending order of creation time.
      */
-    public RpcResultPages<GetPostListByCreateTimeResponse, user_post_create_order, PostResponse> getPostListByName(final String author, int pageSize) {
-        user_post_create_order.Builder query = user_post_create_order.newBuilder();
-        query.setAuthor(accountName(author));
-
-        return new RpcResultPages<GetPostListByCreateTimeResponse, user_post_create_order, PostResponse>(
-                query.clone().setCreate(maxTimeStamp).build(),
-                query.clone().setCreate(minTimeStamp).build(),
-                pageSize)
-        {
+    public RpcResultPages<GetPostListByCreateTimeResponse, user_post_create_order, PostResponse> getPostListByName(String author, int pageSize) {
+        return new PageQueries.PostListByName(author, pageSize) {
             @Override
             protected GetPostListByCreateTimeResponse request(user_post_create_order start, user_post_create_order end, int count, PostResponse last) {
-                GetPostListByNameRequest.Builder b = GetPostListByNameRequest.newBuilder();
-                b.setStart(start).setEnd(end).setLimit(count);
-                if (last != null) {
-                    b.setLastPost(last);
-                }
-                return service.getPostListByName(b.build());
-            }
-
-            @Override
-            protected PostResponse getLastItem(GetPostListByCreateTimeResponse resp) {
-                return isEmptyResponse(resp)? null : resp.getPostedList(resp.getPostedListCount() - 1);
-            }
-
-            @Override
-            protected user_post_create_order keyOfValue(PostResponse value) {
-                user_post_create_order.Builder b = user_post_create_order.newBuilder();
-                b.setAuthor(accountName(author));
-                b.setCreate(value.getCreated());
-                return b.build();
-            }
-
-            @Override
-            public boolean isEmptyResponse(GetPostListByCreateTimeResponse resp) {
-                return resp == null || resp.getPostedListCount() == 0;
+                return service.getPostListByName(requestOf(start, end, count, last));
             }
         };
     }
@@ -580,35 +409,11 @@ public class RpcClient extends Operation.BaseResultFilter<Transaction, Transacti
      * @param pageSize          maximum items in a page
      * @return transaction list in descending order of creation time.
      */
-    public RpcResultPages<GetUserTrxListByTimeResponse, Type.time_point_sec, TrxInfo> getUserTrxListByTime(final String name, int startTimestamp, int endTimeStamp, int pageSize) {
-        return new RpcResultPages<GetUserTrxListByTimeResponse, Type.time_point_sec, TrxInfo>(
-                timeStamp(endTimeStamp),
-                timeStamp(startTimestamp),
-                pageSize)
-        {
+    public RpcResultPages<GetUserTrxListByTimeResponse, Type.time_point_sec, TrxInfo> getUserTrxListByTime(String name, int startTimestamp, int endTimeStamp, int pageSize) {
+        return new PageQueries.UserTrxListByTime(name, startTimestamp, endTimeStamp, pageSize) {
             @Override
             protected GetUserTrxListByTimeResponse request(Type.time_point_sec start, Type.time_point_sec end, int count, TrxInfo last) {
-                GetUserTrxListByTimeRequest.Builder b = GetUserTrxListByTimeRequest.newBuilder();
-                b.setName(accountName(name)).setStart(start).setEnd(end).setLimit(count);
-                if (last != null) {
-                    b.setLastTrx(last);
-                }
-                return service.getUserTrxListByTime(b.build());
-            }
-
-            @Override
-            protected TrxInfo getLastItem(GetUserTrxListByTimeResponse resp) {
-                return isEmptyResponse(resp)? null : resp.getTrxList(resp.getTrxListCount() - 1);
-            }
-
-            @Override
-            protected Type.time_point_sec keyOfValue(TrxInfo value) {
-                return value.getBlockTime();
-            }
-
-            @Override
-            public boolean isEmptyResponse(GetUserTrxListByTimeResponse resp) {
-                return resp == null || resp.getTrxListCount() == 0;
+                return service.getUserTrxListByTime(requestOf(start, end, count, last));
             }
         };
     }
@@ -668,34 +473,10 @@ public class RpcClient extends Operation.BaseResultFilter<Transaction, Transacti
      * @return account list in descending order of creation time.
      */
     public RpcResultPages<GetAccountListResponse, Type.time_point_sec, AccountInfo> getAccountListByCreTime(int startTimestamp, int endTimeStamp, int pageSize) {
-        return new RpcResultPages<GetAccountListResponse, Type.time_point_sec, AccountInfo>(
-                timeStamp(endTimeStamp),
-                timeStamp(startTimestamp),
-                pageSize)
-        {
+        return new PageQueries.AccountListByCreTime(startTimestamp, endTimeStamp, pageSize) {
             @Override
             protected GetAccountListResponse request(Type.time_point_sec start, Type.time_point_sec end, int count, AccountInfo last) {
-                GetAccountListByCreTimeRequest.Builder b = GetAccountListByCreTimeRequest.newBuilder();
-                b.setStart(start).setEnd(end).setLimit(count);
-                if (last != null) {
-                    b.setLastAccount(last);
-                }
-                return service.getAccountListByCreTime(b.build());
-            }
-
-            @Override
-            protected AccountInfo getLastItem(GetAccountListResponse resp) {
-                return isEmptyResponse(resp)? null : resp.getList(resp.getListCount() - 1).getInfo();
-            }
-
-            @Override
-            protected Type.time_point_sec keyOfValue(AccountInfo value) {
-                return value.getCreatedTime();
-            }
-
-            @Override
-            public boolean isEmptyResponse(GetAccountListResponse resp) {
-                return resp == null || resp.getListCount() == 0;
+                return service.getAccountListByCreTime(requestOf(start, end, count, last));
             }
         };
     }
@@ -723,34 +504,10 @@ public class RpcClient extends Operation.BaseResultFilter<Transaction, Transacti
      * @return contract list in descending order of creation time.
      */
     public RpcResultPages<GetContractListResponse, Type.time_point_sec, ContractInfo> getContractListByTime(int startTimestamp, int endTimeStamp, int pageSize) {
-        return new RpcResultPages<GetContractListResponse, Type.time_point_sec, ContractInfo>(
-                timeStamp(endTimeStamp),
-                timeStamp(startTimestamp),
-                pageSize
-        ) {
+        return new PageQueries.ContractListByTime(startTimestamp, endTimeStamp, pageSize) {
             @Override
             protected GetContractListResponse request(Type.time_point_sec start, Type.time_point_sec end, int count, ContractInfo last) {
-                GetContractListByTimeRequest.Builder b = GetContractListByTimeRequest.newBuilder();
-                b.setStart(start).setEnd(end).setLimit(count);
-                if (last != null) {
-                    b.setLastContract(last);
-                }
-                return service.getContractListByTime(b.build());
-            }
-
-            @Override
-            protected ContractInfo getLastItem(GetContractListResponse resp) {
-                return isEmptyResponse(resp)? null : resp.getContractList(resp.getContractListCount() - 1);
-            }
-
-            @Override
-            protected Type.time_point_sec keyOfValue(ContractInfo value) {
-                return value.getCreateTime();
-            }
-
-            @Override
-            public boolean isEmptyResponse(GetContractListResponse resp) {
-                return resp == null || resp.getContractListCount() == 0;
+                return service.getContractListByTime(requestOf(start, end, count, last));
             }
         };
     }
@@ -763,34 +520,10 @@ public class RpcClient extends Operation.BaseResultFilter<Transaction, Transacti
      * @return block producer list in descending order of votes.
      */
     public RpcResultPages<GetBlockProducerListResponse, Type.vest, BlockProducerResponse> getBlockProducerListByVoteCount(long startVest, long endVest, int pageSize) {
-        return new RpcResultPages<GetBlockProducerListResponse, Type.vest, BlockProducerResponse>(
-                Type.vest.newBuilder().setValue(endVest).build(),
-                Type.vest.newBuilder().setValue(startVest).build(),
-                pageSize
-        ) {
+        return new PageQueries.BlockProducerListByVoteCount(startVest, endVest, pageSize) {
             @Override
             protected GetBlockProducerListResponse request(Type.vest start, Type.vest end, int count,BlockProducerResponse last) {
-                GetBlockProducerListByVoteCountRequest.Builder b = GetBlockProducerListByVoteCountRequest.newBuilder();
-                b.setStart(start).setEnd(end).setLimit(count);
-                if (last != null) {
-                    b.setLastBlockProducer(last);
-                }
-                return service.getBlockProducerListByVoteCount(b.build());
-            }
-
-            @Override
-            protected BlockProducerResponse getLastItem(GetBlockProducerListResponse resp) {
-                return isEmptyResponse(resp)? null : resp.getBlockProducerList(resp.getBlockProducerListCount() - 1);
-            }
-
-            @Override
-            protected Type.vest keyOfValue(BlockProducerResponse value) {
-                return value.getBpVest().getVoteVest();
-            }
-
-            @Override
-            public boolean isEmptyResponse(GetBlockProducerListResponse resp) {
-                return resp == null || resp.getBlockProducerListCount() == 0;
+                return service.getBlockProducerListByVoteCount(requestOf(start, end, count, last));
             }
         };
     }
@@ -803,34 +536,10 @@ public class RpcClient extends Operation.BaseResultFilter<Transaction, Transacti
      * @return post list in descending order of rewards.
      */
     public RpcResultPages<GetPostListByVestResponse, Type.vest, PostResponse> getPostListByVest(long startVest, long endVest, int pageSize) {
-        return new RpcResultPages<GetPostListByVestResponse, Type.vest, PostResponse>(
-                Type.vest.newBuilder().setValue(endVest).build(),
-                Type.vest.newBuilder().setValue(startVest).build(),
-                pageSize
-        ) {
+        return new PageQueries.PostListByVest(startVest, endVest, pageSize) {
             @Override
             protected GetPostListByVestResponse request(Type.vest start, Type.vest end, int count, PostResponse last) {
-                GetPostListByVestRequest.Builder b = GetPostListByVestRequest.newBuilder();
-                b.setStart(start).setEnd(end).setLimit(count);
-                if (last != null) {
-                    b.setLastPost(last);
-                }
-                return service.getPostListByVest(b.build());
-            }
-
-            @Override
-            protected PostResponse getLastItem(GetPostListByVestResponse resp) {
-                return isEmptyResponse(resp)? null : resp.getPostList(resp.getPostListCount() - 1);
-            }
-
-            @Override
-            protected Type.vest keyOfValue(PostResponse value) {
-                return value.getRewards();
-            }
-
-            @Override
-            public boolean isEmptyResponse(GetPostListByVestResponse resp) {
-                return resp == null || resp.getPostListCount() == 0;
+                return service.getPostListByVest(requestOf(start, end, count, last));
             }
         };
     }
@@ -924,34 +633,10 @@ public class RpcClient extends Operation.BaseResultFilter<Transaction, Transacti
      * @return account list in descending order of vest.
      */
     public RpcResultPages<GetAccountListResponse, Type.vest, AccountInfo> getAccountListByVest(long minVest, long maxVest, int pageSize) {
-        return new RpcResultPages<GetAccountListResponse, Type.vest, AccountInfo>(
-                Type.vest.newBuilder().setValue(maxVest).build(),
-                Type.vest.newBuilder().setValue(minVest).build(),
-                pageSize)
-        {
+        return new PageQueries.AccountListByVest(minVest, maxVest, pageSize) {
             @Override
             protected GetAccountListResponse request(Type.vest start, Type.vest end, int count, AccountInfo last) {
-                GetAccountListByVestRequest.Builder b = GetAccountListByVestRequest.newBuilder();
-                b.setStart(start).setEnd(end).setLimit(count);
-                if (last != null) {
-                    b.setLastAccount(last);
-                }
-                return service.getAccountListByVest(b.build());
-            }
-
-            @Override
-            protected AccountInfo getLastItem(GetAccountListResponse resp) {
-                return isEmptyResponse(resp)? null : resp.getList(resp.getListCount() - 1).getInfo();
-            }
-
-            @Override
-            protected Type.vest keyOfValue(AccountInfo value) {
-                return value.getVest();
-            }
-
-            @Override
-            public boolean isEmptyResponse(GetAccountListResponse resp) {
-                return resp == null || resp.getListCount() == 0;
+                return service.getAccountListByVest(requestOf(start, end, count, last));
             }
         };
     }
@@ -965,6 +650,15 @@ public class RpcClient extends Operation.BaseResultFilter<Transaction, Transacti
         return service.getAccountByPubKey(GetAccountByPubKeyRequest.newBuilder().setPublicKey(pubKeyWIF).build());
     }
 
+    /**
+     * Get account information of given public key.
+     * @param publicKey  the public key
+     * @return the account information.
+     */
+    public AccountResponse getAccountByPubKey(PublicKey publicKey) {
+        return getAccountByPubKey(publicKey.toWIF());
+    }
+
     /**
      * Get block producer information based on its name.
      * @param name  account name of block producer
@@ -1011,17 +705,17 @@ public class RpcClient extends Operation.BaseResultFilter<Transaction, Transacti
     // Helpers for cleaner codes
     //
 
-    private static Type.time_point_sec timeStamp(int utcSeconds) {
+    static Type.time_point_sec timeStamp(int utcSeconds) {
         return Type.time_point_sec.newBuilder().setUtcSeconds(utcSeconds).build();
     }
 
-    private static Type.time_point_sec minTimeStamp = timeStamp(0);
-    private static Type.time_point_sec maxTimeStamp = timeStamp(Integer.MAX_VALUE);
+    static final Type.time_point_sec minTimeStamp = timeStamp(0);
+    static final Type.time_point_sec maxTimeStamp = timeStamp(Integer.MAX_VALUE);
 
-    private static Type.account_name accountName(String name) {
+    static Type.account_name accountName(String name) {
         return Type.account_name.newBuilder().setValue(name).build();
     }
 
-    private static Type.account_name minAccountName = accountName("");
-    private static Type.account_name maxAccountName = accountName("zzzzzzzzzzzzzzzzz");
+    static final Type.account_name minAccountName = accountName("");
+    static final Type.account_name maxAccountName = accountName("zzzzzzzzzzzzzzzzz");
 }
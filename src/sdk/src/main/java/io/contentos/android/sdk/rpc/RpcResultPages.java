@@ -1,9 +1,32 @@
 package io.contentos.android.sdk.rpc;
 
-import java.util.ArrayList;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Helper class for easy page queries.
+ * <p>Pages can be turned synchronously, e.g. {@link #nextPage()}, or asynchronously, e.g.
+ * {@link #nextPageAsync()}. Instances are not thread-safe, and an asynchronous page query should
+ * complete before the next one starts.</p>
+ * <p>All items of all pages can also be iterated, see {@link #items(Function, int)}. The iteration
+ * is independent of the current page.</p>
+ * <p>Query parameters of all visited pages are kept, so that any of them can be queried again.
+ * Long scans should keep fewer of them, see {@link #forwardOnly()} and {@link #keepCheckpoints}.</p>
  *
  * @param <ResponseType>    type of RPC response
  * @param <KeyType>         type of query keys
@@ -13,6 +36,18 @@ public abstract class RpcResultPages<ResponseType, KeyType, ValueType> {
 
     private static final int defaultPageSize = 30;
     private static final int maxPageSize = 100;
+    private static final int defaultPrefetchPages = 2;
+
+    // shared by all result pages, it runs synchronous page queries in background.
+    private static final ListeningExecutorService requester = MoreExecutors.listeningDecorator(
+            Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "pages-request");
+                    t.setDaemon(true);
+                    return t;
+                }
+            }));
 
     private static class PageParam<KeyType, ValueType> {
         KeyType start;
@@ -31,7 +66,11 @@ public abstract class RpcResultPages<ResponseType, KeyType, ValueType> {
     private KeyType end;
     private int pageSize;
     private int currentPage = -1;
-    private ArrayList<PageParam<KeyType, ValueType>> pageQueries = new ArrayList<>();
+    private final PageParam<KeyType, ValueType> first;
+    // query parameters of pages by index, the last one is the page after the last visited one.
+    private final TreeMap<Integer, PageParam<KeyType, ValueType>> pageQueries = new TreeMap<>();
+    // pages whose query parameters are kept: all if 1, every n-th if n, none but the next if 0.
+    private int checkpointInterval = 1;
 
     /**
      * Create an instance representing result pages.
@@ -47,7 +86,8 @@ public abstract class RpcResultPages<ResponseType, KeyType, ValueType> {
         }
         this.pageSize = pageSize;
         this.end = end;
-        pageQueries.add(new PageParam<KeyType, ValueType>(start, this.end, null, this.pageSize));
+        this.first = new PageParam<KeyType, ValueType>(start, this.end, null, this.pageSize);
+        pageQueries.put(0, first);
     }
 
     /**
@@ -59,6 +99,31 @@ public abstract class RpcResultPages<ResponseType, KeyType, ValueType> {
         this(start, end, defaultPageSize);
     }
 
+    /**
+     * Keep no history of visited pages, for long scans in constant memory.
+     * <p>Only {@link #nextPage()} works, other pages can't be queried any more.</p>
+     * @return {@code this}
+     */
+    public RpcResultPages<ResponseType, KeyType, ValueType> forwardOnly() {
+        return keepCheckpoints(0);
+    }
+
+    /**
+     * Keep the query of every n-th visited page only, instead of all of them.
+     * <p>A page in between is queried again from the closest checkpoint before it, i.e. up to
+     * {@code interval} queries. By default, the queries of all visited pages are kept.</p>
+     * @param interval  number of pages between checkpoints, 1 to keep all, 0 to keep none
+     * @return {@code this}
+     */
+    public RpcResultPages<ResponseType, KeyType, ValueType> keepCheckpoints(int interval) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("invalid checkpoint interval: " + interval);
+        }
+        checkpointInterval = interval;
+        prune(pageQueries.lastKey());
+        return this;
+    }
+
     /**
      * Get current page index (0-based).
      * @return current page index.
@@ -92,19 +157,95 @@ public abstract class RpcResultPages<ResponseType, KeyType, ValueType> {
      * </p>
      */
     public ResponseType toPage(int idx) {
-        if (idx < 0 || idx >= pageQueries.size()) {
+        Map.Entry<Integer, PageParam<KeyType, ValueType>> from = checkpointOf(idx);
+        if (from == null) {
             return null;
         }
-        PageParam<KeyType, ValueType> q = pageQueries.get(idx);
-        ResponseType resp = request(q.start, q.end, q.limit, q.last);
-        boolean emptyPage = isEmptyResponse(resp);
-        int count = pageQueries.size() - idx - 1;
-        for (int i = 0; i < count; i++) {
-            pageQueries.remove(pageQueries.size() - 1);
+        PageParam<KeyType, ValueType> q = from.getValue();
+        // pages between the checkpoint and idx are queried again.
+        for (int i = from.getKey(); i < idx; i++) {
+            q = nextQuery(request(q.start, q.end, q.limit, q.last));
+            if (q == null) {
+                return null;
+            }
+        }
+        return moveTo(idx, request(q.start, q.end, q.limit, q.last));
+    }
+
+    /**
+     * Asynchronously query the result of next page.
+     * @return future of response for next page.
+     */
+    public ListenableFuture<ResponseType> nextPageAsync() {
+        return toPageAsync(currentPage + 1);
+    }
+
+    /**
+     * Asynchronously query the result of previous page.
+     * @return future of response for previous page.
+     */
+    public ListenableFuture<ResponseType> prevPageAsync() {
+        return toPageAsync(currentPage - 1);
+    }
+
+    /**
+     * Asynchronously query the result of specified page.
+     * @param idx page index (0-based)
+     * @return future of response for the page, same as {@link #toPage(int)}.
+     */
+    public ListenableFuture<ResponseType> toPageAsync(final int idx) {
+        Map.Entry<Integer, PageParam<KeyType, ValueType>> from = checkpointOf(idx);
+        if (from == null) {
+            return Futures.immediateFuture(null);
+        }
+        return Futures.transform(queryFrom(from.getKey(), from.getValue(), idx), new Function<ResponseType, ResponseType>() {
+            @Override
+            public ResponseType apply(ResponseType resp) {
+                return resp == null ? null : moveTo(idx, resp);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    // query page idx starting from query q of page i, null if a page in between is empty.
+    private ListenableFuture<ResponseType> queryFrom(final int i, PageParam<KeyType, ValueType> q, final int idx) {
+        ListenableFuture<ResponseType> resp = requestAsync(q.start, q.end, q.limit, q.last);
+        if (i == idx) {
+            return resp;
+        }
+        return Futures.transformAsync(resp, new AsyncFunction<ResponseType, ResponseType>() {
+            @Override
+            public ListenableFuture<ResponseType> apply(ResponseType resp) {
+                PageParam<KeyType, ValueType> next = nextQuery(resp);
+                return next == null ? Futures.<ResponseType>immediateFuture(null) : queryFrom(i + 1, next, idx);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    // the closest kept page query at or before idx, null if idx can't be reached.
+    private Map.Entry<Integer, PageParam<KeyType, ValueType>> checkpointOf(int idx) {
+        if (idx < 0 || idx > pageQueries.lastKey()) {
+            return null;
+        }
+        return pageQueries.floorEntry(idx);
+    }
+
+    // query of the page after the given one, null if it's empty.
+    private PageParam<KeyType, ValueType> nextQuery(ResponseType resp) {
+        if (isEmptyResponse(resp)) {
+            return null;
         }
         ValueType lastValue = getLastItem(resp);
+        return new PageParam<>(keyOfValue(lastValue), this.end, lastValue, this.pageSize);
+    }
+
+    // update page queries with the response of page idx.
+    private ResponseType moveTo(int idx, ResponseType resp) {
+        boolean emptyPage = isEmptyResponse(resp);
+        pageQueries.tailMap(idx, false).clear();
+        ValueType lastValue = getLastItem(resp);
         KeyType lastKey = lastValue == null? null : keyOfValue(lastValue);
-        pageQueries.add(new PageParam<>(lastKey, this.end, lastValue, this.pageSize));
+        pageQueries.put(idx + 1, new PageParam<>(lastKey, this.end, lastValue, this.pageSize));
+        prune(idx + 1);
 
         if (!emptyPage) {
             currentPage = idx;
@@ -114,6 +255,130 @@ public abstract class RpcResultPages<ResponseType, KeyType, ValueType> {
         return resp;
     }
 
+    // drop page queries before the given page which aren't checkpoints.
+    private void prune(int next) {
+        Iterator<Integer> it = pageQueries.headMap(next, false).keySet().iterator();
+        while (it.hasNext()) {
+            int i = it.next();
+            if (checkpointInterval == 0 || i % checkpointInterval != 0) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Iterate all items of all pages, querying next pages in background with default depth.
+     * @param itemsOfPage   function returning items of a page, e.g. {@code resp.getListList()}
+     * @param <T>           type of items
+     * @return iterable items, each iteration querying pages from the first one.
+     */
+    public <T> Iterable<T> items(Function<? super ResponseType, ? extends List<T>> itemsOfPage) {
+        return items(itemsOfPage, defaultPrefetchPages);
+    }
+
+    /**
+     * Iterate all items of all pages, querying next pages in background.
+     * <p>Pages are queried as soon as an iterator is created. While the items of a page are
+     * consumed, up to {@code prefetchPages} next pages are queried, so that network latency
+     * overlaps with processing. Pages are still queried one after another, since each query
+     * starts after the last item of the previous page. An iterator must be used by one thread at
+     * a time, and its {@code next()} throws the error of a failed page query.</p>
+     * @param itemsOfPage   function returning items of a page, e.g. {@code resp.getListList()}
+     * @param prefetchPages maximum number of pages queried ahead of the consumed one
+     * @param <T>           type of items
+     * @return iterable items, each iteration querying pages from the first one.
+     */
+    public <T> Iterable<T> items(final Function<? super ResponseType, ? extends List<T>> itemsOfPage, final int prefetchPages) {
+        if (prefetchPages <= 0) {
+            throw new IllegalArgumentException("invalid prefetch pages: " + prefetchPages);
+        }
+        return new Iterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return new ItemIterator<>(first, itemsOfPage, prefetchPages);
+            }
+        };
+    }
+
+    // iterator over items of pages, keeping a number of page queries ahead.
+    private final class ItemIterator<T> implements Iterator<T> {
+        private final PageParam<KeyType, ValueType> first;
+        private final Function<? super ResponseType, ? extends List<T>> itemsOfPage;
+        private final int prefetchPages;
+        // pages queried, a null page means the end.
+        private final ArrayDeque<ListenableFuture<ResponseType>> pages = new ArrayDeque<>();
+        private ListenableFuture<ResponseType> tail;
+        private Iterator<T> current = Collections.<T>emptyList().iterator();
+        private boolean done;
+
+        ItemIterator(PageParam<KeyType, ValueType> first, Function<? super ResponseType, ? extends List<T>> itemsOfPage, int prefetchPages) {
+            this.first = first;
+            this.itemsOfPage = itemsOfPage;
+            this.prefetchPages = prefetchPages;
+            prefetch();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (done) {
+                    return false;
+                }
+                prefetch();
+                ResponseType resp = FutureHelper.getUnchecked(pages.poll());
+                if (resp == null || isEmptyResponse(resp)) {
+                    done = true;
+                    pages.clear();
+                    return false;
+                }
+                current = itemsOfPage.apply(resp).iterator();
+                prefetch();
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private void prefetch() {
+            while (pages.size() < prefetchPages) {
+                if (tail == null) {
+                    tail = query(first.start, first.last);
+                } else {
+                    tail = Futures.transformAsync(tail, new AsyncFunction<ResponseType, ResponseType>() {
+                        @Override
+                        public ListenableFuture<ResponseType> apply(ResponseType resp) {
+                            if (resp == null || isEmptyResponse(resp)) {
+                                return Futures.immediateFuture(null);
+                            }
+                            ValueType last = getLastItem(resp);
+                            return query(keyOfValue(last), last);
+                        }
+                    }, MoreExecutors.directExecutor());
+                }
+                pages.add(tail);
+            }
+        }
+
+        private ListenableFuture<ResponseType> query(KeyType start, ValueType last) {
+            try {
+                return requestAsync(start, first.end, first.limit, last);
+            } catch (RuntimeException e) {
+                return Futures.immediateFailedFuture(e);
+            }
+        }
+    }
+
     /**
      * RPC query.
      * @param start  lower bound of query range
@@ -124,6 +389,25 @@ public abstract class RpcResultPages<ResponseType, KeyType, ValueType> {
      */
     protected abstract ResponseType request(KeyType start, KeyType end, int count, ValueType last);
 
+    /**
+     * Asynchronous RPC query.
+     * <p>By default, it calls {@link #request} on a background thread. Subclasses having an
+     * asynchronous stub should override it.</p>
+     * @param start  lower bound of query range
+     * @param end    upper bound of query range
+     * @param count  maximum number of return items
+     * @param last   the last item returned by previous query
+     * @return future of the RPC response.
+     */
+    protected ListenableFuture<ResponseType> requestAsync(final KeyType start, final KeyType end, final int count, final ValueType last) {
+        return requester.submit(new Callable<ResponseType>() {
+            @Override
+            public ResponseType call() {
+                return request(start, end, count, last);
+            }
+        });
+    }
+
     /**
      * Fetch the last item of the given response.
      * @param resp the response
@@ -5,7 +5,9 @@ import com.google.protobuf.ByteString;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
+import io.contentos.android.sdk.crypto.Hash;
 import io.contentos.android.sdk.crypto.Key;
+import io.contentos.android.sdk.crypto.PrivateKey;
 import io.contentos.android.sdk.encoding.WIF;
 import io.contentos.android.sdk.prototype.Transaction.operation;
 import io.contentos.android.sdk.prototype.Transaction.transaction;
@@ -25,6 +27,9 @@ import io.contentos.android.sdk.prototype.Type;
  */
 public class Transaction extends Operation.BaseResultFilter<operation, Operation.OperationCreator, Transaction> {
 
+    // seconds from now to transaction expiration
+    static final int defaultExpiration = 30;
+
     private transaction.Builder trxBuilder = transaction.newBuilder();
 
     public Transaction() {
@@ -47,6 +52,11 @@ public class Transaction extends Operation.BaseResultFilter<operation, Operation
         return this;
     }
 
+    // the expiration time stamp in UTC seconds.
+    int getExpiration() {
+        return trxBuilder.getExpiration().getUtcSeconds();
+    }
+
     /**
      * Set the reference block information.
      * @param blockId   the reference block id
@@ -77,9 +87,8 @@ public class Transaction extends Operation.BaseResultFilter<operation, Operation
      * @see Transaction#setRefBlock
      */
     public Transaction setDynamicGlobalProps(Type.dynamic_properties props) {
-        final int expiration = 30;
         setRefBlock(props.getHeadBlockId().getHash().toByteArray());
-        setExpiration(props.getTime().getUtcSeconds() + expiration);
+        setExpiration(props.getTime().getUtcSeconds() + defaultExpiration);
         return this;
     }
 
@@ -114,6 +123,25 @@ public class Transaction extends Operation.BaseResultFilter<operation, Operation
         return sign(WIF.toPrivateKey(wifPrivateKey), chainId);
     }
 
+    /**
+     * Create a signed transaction.
+     * @param privateKey    signer's private key
+     * @param chainId       block chain network id
+     * @return a signed transaction.
+     */
+    public signed_transaction sign(PrivateKey privateKey, int chainId) {
+        return sign(privateKey.toProto(), chainId);
+    }
+
+    /**
+     * Compute the id of a signed transaction, which is the SHA256 hash of its serialized bytes.
+     * @param trx the signed transaction
+     * @return the transaction id.
+     */
+    public static byte[] idOf(signed_transaction trx) {
+        return Hash.sha256(trx.toByteArray());
+    }
+
 
     /**
      * Factory class of {@link Transaction}
@@ -0,0 +1,118 @@
+package io.contentos.android.sdk;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.contentos.android.sdk.crypto.Key;
+import io.contentos.android.sdk.encoding.WIF;
+import io.contentos.android.sdk.prototype.Transaction.signed_transaction;
+import io.contentos.android.sdk.prototype.Type;
+import io.contentos.android.sdk.rpc.ApiServiceGrpc;
+import io.contentos.android.sdk.rpc.AsyncRpcClient;
+import io.contentos.android.sdk.rpc.Grpc.*;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+
+public class AsyncRpcClientUnitTest {
+
+    private static final long delayMillis = 200;
+
+    @Test
+    public void inFlightRequests_areConcurrent() throws Exception {
+        FakeNode node = new FakeNode(delayMillis);
+        try {
+            AsyncRpcClient client = new AsyncRpcClient(ApiServiceGrpc.newFutureStub(node.channel()), "test");
+            int count = 500;
+            final CountDownLatch done = new CountDownLatch(count);
+            final AtomicInteger failures = new AtomicInteger();
+            List<ListenableFuture<AccountResponse>> futures = new ArrayList<>();
+
+            // all requests are sent from this thread without waiting for responses.
+            node.hold();
+            for (int i = 0; i < count; i++) {
+                ListenableFuture<AccountResponse> f = client.getAccountByName("user" + i);
+                Futures.addCallback(f, new FutureCallback<AccountResponse>() {
+                    @Override
+                    public void onSuccess(AccountResponse result) {
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        failures.incrementAndGet();
+                        done.countDown();
+                    }
+                }, MoreExecutors.directExecutor());
+                futures.add(f);
+            }
+            assertTrue(node.awaitInFlight(count, 10000));
+            assertEquals(count, done.getCount());
+            node.release();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+
+            assertEquals(0, failures.get());
+            assertEquals(count, node.maxInFlight.get());
+            for (int i = 0; i < count; i++) {
+                assertEquals("user" + i, futures.get(i).get().getInfo().getAccountName().getValue());
+            }
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void failures_arePropagated() throws Exception {
+        FakeNode node = new FakeNode(delayMillis);
+        try {
+            AsyncRpcClient client = new AsyncRpcClient(ApiServiceGrpc.newFutureStub(node.channel()), "test");
+            try {
+                client.getAccountByName("").get();
+                fail("error expected");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof StatusRuntimeException);
+                assertEquals(Status.Code.INVALID_ARGUMENT, ((StatusRuntimeException) e.getCause()).getStatus().getCode());
+            }
+
+            // no signing key
+            try {
+                client.transfer("alice", "bob", 1, "").get();
+                fail("error expected");
+            } catch (ExecutionException e) {
+                assertEquals("signing key not found", e.getCause().getMessage());
+            }
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void transactions_areSignedAndBroadcast() throws Exception {
+        FakeNode node = new FakeNode(delayMillis);
+        try {
+            Type.private_key_type key = Key.generate();
+            AsyncRpcClient client = new AsyncRpcClient(ApiServiceGrpc.newFutureStub(node.channel()), WIF.fromPrivateKey(key), "test");
+            BroadcastTrxResponse response = client.transfer("alice", "bob", 1, "memo").get(5, TimeUnit.SECONDS);
+            assertEquals(200, response.getInvoice().getStatus());
+
+            assertEquals(1, node.broadcasts.size());
+            signed_transaction trx = node.broadcasts.get(0);
+            assertEquals(1, trx.getTrx().getOperationsCount());
+            assertEquals("bob", trx.getTrx().getOperations(0).getOp2().getTo().getValue());
+            assertFalse(trx.getSignature().getSig().isEmpty());
+        } finally {
+            node.close();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package io.contentos.android.sdk;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import io.contentos.android.sdk.crypto.Key;
+import io.contentos.android.sdk.encoding.WIF;
+import io.contentos.android.sdk.rpc.ApiServiceGrpc;
+import io.contentos.android.sdk.rpc.BalancedChannel;
+import io.contentos.android.sdk.rpc.Grpc.GetAccountByNameRequest;
+import io.contentos.android.sdk.rpc.RpcClient;
+import io.contentos.android.sdk.prototype.Type;
+import io.grpc.ManagedChannel;
+import io.grpc.inprocess.InProcessChannelBuilder;
+
+public class BalancedChannelUnitTest {
+
+    private static ManagedChannel deadNode() {
+        return InProcessChannelBuilder.forName("no such node").build();
+    }
+
+    private static GetAccountByNameRequest account(String name) {
+        return GetAccountByNameRequest.newBuilder()
+                .setAccountName(Type.account_name.newBuilder().setValue(name))
+                .build();
+    }
+
+    @Test
+    public void calls_goToFastestNode() throws Exception {
+        FakeNode slow = new FakeNode(100), fast = new FakeNode(5);
+        BalancedChannel channel = new BalancedChannel(Arrays.asList(slow.channel(), deadNode(), fast.channel()));
+        try {
+            // wait for latency probes
+            Thread.sleep(300);
+            ApiServiceGrpc.ApiServiceBlockingStub stub = ApiServiceGrpc.newBlockingStub(channel);
+            for (int i = 0; i < 20; i++) {
+                assertEquals("user" + i, stub.getAccountByName(account("user" + i)).getInfo().getAccountName().getValue());
+            }
+            assertEquals(20, fast.accountCalls.get());
+            assertEquals(0, slow.accountCalls.get());
+        } finally {
+            channel.shutdownNow();
+            slow.close();
+            fast.close();
+        }
+    }
+
+    @Test
+    public void failedNodes_areSkipped() throws Exception {
+        FakeNode node = new FakeNode(0);
+        BalancedChannel channel = new BalancedChannel(Arrays.asList(deadNode(), deadNode(), node.channel()));
+        try {
+            // no latency known yet, dead nodes may be tried first.
+            ApiServiceGrpc.ApiServiceBlockingStub stub = ApiServiceGrpc.newBlockingStub(channel);
+            for (int i = 0; i < 20; i++) {
+                assertEquals("user" + i, stub.getAccountByName(account("user" + i)).getInfo().getAccountName().getValue());
+            }
+            assertEquals(20, node.accountCalls.get());
+        } finally {
+            channel.shutdownNow();
+            node.close();
+        }
+    }
+
+    @Test
+    public void transactions_stickToOneNode() throws Exception {
+        FakeNode a = new FakeNode(0), b = new FakeNode(0);
+        BalancedChannel channel = new BalancedChannel(Arrays.asList(a.channel(), b.channel()));
+        try {
+            Thread.sleep(100);
+            RpcClient client = new RpcClient(ApiServiceGrpc.newBlockingStub(channel), WIF.fromPrivateKey(Key.generate()), "test");
+            for (int i = 0; i < 10; i++) {
+                client.transfer("alice", "bob", i + 1, "");
+                client.getAccountByName("alice");
+            }
+            FakeNode writer = a.broadcasts.isEmpty() ? b : a;
+            assertEquals(10, writer.broadcasts.size());
+            // queries right after transactions read from the same node
+            assertEquals(10, writer.accountCalls.get());
+        } finally {
+            channel.shutdownNow();
+            a.close();
+            b.close();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package io.contentos.android.sdk;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import io.contentos.android.sdk.crypto.Key;
+import io.contentos.android.sdk.encoding.WIF;
+import io.contentos.android.sdk.prototype.Transaction.operation_receipt_with_info;
+import io.contentos.android.sdk.rpc.ApiServiceGrpc;
+import io.contentos.android.sdk.rpc.AsyncRpcClient;
+import io.contentos.android.sdk.rpc.BatchingClient;
+import io.grpc.StatusRuntimeException;
+
+public class BatchingClientUnitTest {
+
+    private static AsyncRpcClient client(FakeNode node) {
+        return new AsyncRpcClient(ApiServiceGrpc.newFutureStub(node.channel()), WIF.fromPrivateKey(Key.generate()), "test");
+    }
+
+    @Test
+    public void operations_areBatchedByCount() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            BatchingClient batcher = new BatchingClient(client(node), new BatchingClient.Options()
+                    .setMaxOperations(10)
+                    .setMaxDelay(10, TimeUnit.SECONDS));
+            List<ListenableFuture<operation_receipt_with_info>> futures = new ArrayList<>();
+            for (int i = 0; i < 25; i++) {
+                futures.add(batcher.vote("alice", i));
+            }
+            for (int i = 0; i < 20; i++) {
+                // the result of i-th operation in its transaction
+                assertEquals(i % 10, futures.get(i).get(2, TimeUnit.SECONDS).getGasUsage());
+            }
+            assertEquals(2, node.broadcasts.size());
+            assertFalse(futures.get(20).isDone());
+
+            batcher.flush();
+            for (int i = 20; i < 25; i++) {
+                assertEquals(i - 20, futures.get(i).get(2, TimeUnit.SECONDS).getGasUsage());
+            }
+            assertEquals(3, node.broadcasts.size());
+            assertEquals(5, node.broadcasts.get(2).getTrx().getOperationsCount());
+            assertEquals(24, node.broadcasts.get(2).getTrx().getOperations(4).getOp9().getIdx());
+            assertEquals(1, node.chainStateCalls.get());
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void operations_areBatchedByDelayAndSize() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            BatchingClient batcher = new BatchingClient(client(node), new BatchingClient.Options()
+                    .setMaxBytes(300)
+                    .setMaxDelay(100, TimeUnit.MILLISECONDS));
+            ListenableFuture<operation_receipt_with_info> f1 = batcher.follow("alice", "bob", false);
+            ListenableFuture<operation_receipt_with_info> f2 = batcher.follow("alice", "carol", false);
+            Thread.sleep(30);
+            assertEquals(0, node.broadcasts.size());
+            f2.get(2, TimeUnit.SECONDS);
+            assertTrue(f1.isDone());
+            assertEquals(1, node.broadcasts.size());
+            assertEquals(2, node.broadcasts.get(0).getTrx().getOperationsCount());
+
+            // memos of 100 bytes, 2 transfers fit in 300 bytes.
+            char[] memo = new char[100];
+            Arrays.fill(memo, 'x');
+            List<ListenableFuture<operation_receipt_with_info>> futures = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                futures.add(batcher.transfer("alice", "bob", i + 1, new String(memo)));
+            }
+            for (ListenableFuture<operation_receipt_with_info> f : futures) {
+                f.get(2, TimeUnit.SECONDS);
+            }
+            assertEquals(4, node.broadcasts.size());
+            assertEquals(2, node.broadcasts.get(1).getTrx().getOperationsCount());
+            assertEquals(2, node.broadcasts.get(2).getTrx().getOperationsCount());
+            assertEquals(1, node.broadcasts.get(3).getTrx().getOperationsCount());
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void failedBatch_isSplit() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            BatchingClient batcher = new BatchingClient(client(node), new BatchingClient.Options()
+                    .setMaxDelay(10, TimeUnit.SECONDS));
+            List<ListenableFuture<operation_receipt_with_info>> futures = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                futures.add(batcher.transfer("alice", "bob", i + 1, i == 2 ? "fail" : ""));
+            }
+            batcher.flush();
+            for (int i = 0; i < 5; i++) {
+                if (i == 2) {
+                    try {
+                        futures.get(i).get(2, TimeUnit.SECONDS);
+                        fail("error expected");
+                    } catch (ExecutionException e) {
+                        assertTrue(e.getCause() instanceof StatusRuntimeException);
+                    }
+                } else {
+                    assertEquals(200, futures.get(i).get(2, TimeUnit.SECONDS).getStatus());
+                }
+            }
+            // the batch, then one transaction per operation
+            assertEquals(6, node.broadcasts.size());
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void identicalOperations_areSplitIntoDistinctTransactions() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            BatchingClient batcher = new BatchingClient(client(node), new BatchingClient.Options()
+                    .setMaxDelay(10, TimeUnit.SECONDS));
+            List<ListenableFuture<operation_receipt_with_info>> futures = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                futures.add(batcher.transfer("alice", "bob", 1, ""));
+            }
+            futures.add(batcher.transfer("alice", "bob", 2, "fail"));
+            batcher.flush();
+            for (int i = 0; i < 3; i++) {
+                assertEquals(200, futures.get(i).get(2, TimeUnit.SECONDS).getStatus());
+            }
+            try {
+                futures.get(3).get(2, TimeUnit.SECONDS);
+                fail("error expected");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof StatusRuntimeException);
+            }
+            assertEquals(5, node.broadcasts.size());
+            assertEquals(3, node.accepted.size());
+        } finally {
+            node.close();
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package io.contentos.android.sdk;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.contentos.android.sdk.prototype.Operation.post_operation;
+import io.contentos.android.sdk.prototype.Operation.transfer_operation;
+import io.contentos.android.sdk.prototype.Transaction.operation;
+import io.contentos.android.sdk.prototype.Transaction.signed_block;
+import io.contentos.android.sdk.prototype.Transaction.signed_block_header;
+import io.contentos.android.sdk.prototype.Transaction.block_header;
+import io.contentos.android.sdk.prototype.Transaction.signed_transaction;
+import io.contentos.android.sdk.prototype.Transaction.transaction;
+import io.contentos.android.sdk.prototype.Transaction.transaction_wrapper;
+import io.contentos.android.sdk.prototype.Type;
+import io.contentos.android.sdk.rpc.ApiServiceGrpc;
+import io.contentos.android.sdk.rpc.AsyncRpcClient;
+import io.contentos.android.sdk.rpc.BlockStore;
+import io.contentos.android.sdk.rpc.BlockSync;
+import io.contentos.android.sdk.rpc.Grpc.TrxInfo;
+import io.contentos.android.sdk.rpc.Transaction;
+
+public class BlockStoreUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Type.account_name name(String s) {
+        return Type.account_name.newBuilder().setValue(s).build();
+    }
+
+    private static signed_transaction trx(int nonce, operation op) {
+        return signed_transaction.newBuilder()
+                .setTrx(transaction.newBuilder()
+                        .setRefBlockNum(nonce)
+                        .addOperations(op))
+                .build();
+    }
+
+    private static signed_transaction transfer(int nonce, String from, String to) {
+        return trx(nonce, operation.newBuilder()
+                .setOp2(transfer_operation.newBuilder().setFrom(name(from)).setTo(name(to)))
+                .build());
+    }
+
+    private static signed_transaction post(int nonce, String owner, long postId) {
+        return trx(nonce, operation.newBuilder()
+                .setOp6(post_operation.newBuilder().setOwner(name(owner)).setUuid(postId))
+                .build());
+    }
+
+    // block n at time 10 * n, with a transfer from alice to bob, and a post of carol in even blocks.
+    private static signed_block block(long n) {
+        signed_block.Builder b = signed_block.newBuilder()
+                .setSignedHeader(signed_block_header.newBuilder()
+                        .setHeader(block_header.newBuilder()
+                                .setTimestamp(Type.time_point_sec.newBuilder().setUtcSeconds((int) (10 * n)))))
+                .addTransactions(transaction_wrapper.newBuilder().setSigTrx(transfer((int) n, "alice", "bob")));
+        if (n % 2 == 0) {
+            b.addTransactions(transaction_wrapper.newBuilder().setSigTrx(post((int) n, "carol", 1000 + n)));
+        }
+        return b.build();
+    }
+
+    private static void checkQueries(BlockStore store) throws Exception {
+        assertEquals(1, store.firstBlock());
+        assertEquals(100, store.lastBlock());
+        assertEquals(block(42), store.getBlock(42));
+        assertNull(store.getBlock(101));
+
+        byte[] id = Transaction.idOf(transfer(42, "alice", "bob"));
+        TrxInfo info = store.getTrxInfoById(id);
+        assertEquals(42, info.getBlockHeight());
+        assertEquals(420, info.getBlockTime().getUtcSeconds());
+        assertArrayEquals(id, info.getTrxId().getHash().toByteArray());
+        assertNull(store.getTrxInfoById(Transaction.idOf(transfer(101, "alice", "bob"))));
+
+        // (200, 300] in descending order
+        List<TrxInfo> list = store.getUserTrxListByTime("bob", 200, 300, 100);
+        assertEquals(10, list.size());
+        for (int i = 0; i < list.size(); i++) {
+            assertEquals(30 - i, list.get(i).getBlockHeight());
+            assertEquals("bob", list.get(i).getTrxWrap().getSigTrx().getTrx().getOperations(0).getOp2().getTo().getValue());
+        }
+        assertEquals(3, store.getUserTrxListByTime("alice", 0, Integer.MAX_VALUE, 3).size());
+        assertEquals(100, store.getUserTrxListByTime("alice", 0, Integer.MAX_VALUE, 1000).size());
+        assertEquals(50, store.getUserTrxListByTime("carol", 0, Integer.MAX_VALUE, 1000).size());
+        assertTrue(store.getUserTrxListByTime("dave", 0, Integer.MAX_VALUE, 1000).isEmpty());
+
+        assertEquals(42, store.getPostTrxInfo(1042).getBlockHeight());
+        assertNull(store.getPostTrxInfo(1043));
+    }
+
+    @Test
+    public void indexes_serveHistoryQueries() throws Exception {
+        File dir = folder.newFolder();
+        BlockStore store = new BlockStore(dir, new BlockStore.Options().setSegmentSize(1024));
+        for (long n = 1; n <= 100; n++) {
+            store.append(n, block(n));
+        }
+        // blocks already stored are skipped
+        store.append(50, block(50));
+        checkQueries(store);
+        store.close();
+        assertTrue(dir.list().length > 1);
+
+        // indexes are rebuilt on open
+        store = new BlockStore(dir, new BlockStore.Options().setSegmentSize(1024));
+        try {
+            checkQueries(store);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void truncate_removesBlocksAndIndexes() throws Exception {
+        File dir = folder.newFolder();
+        BlockStore store = new BlockStore(dir, new BlockStore.Options().setSegmentSize(1024));
+        try {
+            for (long n = 1; n <= 100; n++) {
+                store.append(n, block(n));
+            }
+            store.truncate(61);
+            assertEquals(60, store.lastBlock());
+            assertNull(store.getBlock(61));
+            assertNull(store.getTrxInfoById(Transaction.idOf(transfer(70, "alice", "bob"))));
+            assertNull(store.getPostTrxInfo(1070));
+            assertEquals(60, store.getUserTrxListByTime("alice", 0, Integer.MAX_VALUE, 1000).size());
+            assertEquals(60, store.getUserTrxListByTime("alice", 0, Integer.MAX_VALUE, 1).get(0).getBlockHeight());
+
+            // a block replacing a stored one removes blocks after it
+            signed_block other = block(1000);
+            store.append(59, other);
+            assertEquals(59, store.lastBlock());
+            assertEquals(other, store.getBlock(59));
+            assertNull(store.getPostTrxInfo(1060));
+            assertEquals(59, store.getPostTrxInfo(2000).getBlockHeight());
+
+            try {
+                store.append(61, block(61));
+                fail();
+            } catch (IllegalArgumentException e) {
+                // gap
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void partialRecord_isDiscardedOnOpen() throws Exception {
+        File dir = folder.newFolder();
+        BlockStore store = new BlockStore(dir);
+        for (long n = 1; n <= 10; n++) {
+            store.append(n, block(n));
+        }
+        store.close();
+
+        // a crash during an append
+        File segment = new File(dir, "00000000000000000001.seg");
+        FileOutputStream out = new FileOutputStream(segment, true);
+        out.write(new byte[]{0, 0, 1, 0, 1, 2, 3});
+        out.close();
+
+        store = new BlockStore(dir);
+        try {
+            assertEquals(10, store.lastBlock());
+            assertEquals(block(10), store.getBlock(10));
+            store.append(11, block(11));
+            assertEquals(block(11), store.getBlock(11));
+        } finally {
+            store.close();
+        }
+        store = new BlockStore(dir);
+        try {
+            assertEquals(11, store.lastBlock());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void index_coversBlocksUpToLastFlush() throws Exception {
+        File dir = folder.newFolder();
+        BlockStore.Options options = new BlockStore.Options().setSegmentSize(1024);
+        BlockStore store = new BlockStore(dir, options);
+        for (long n = 1; n <= 60; n++) {
+            store.append(n, block(n));
+        }
+        store.flush();
+        assertTrue(new File(dir, "index").exists());
+        // appended after the index was saved, and left unsynced by a crash
+        for (long n = 61; n <= 100; n++) {
+            store.append(n, block(n));
+        }
+
+        BlockStore reopened = new BlockStore(dir, options);
+        try {
+            checkQueries(reopened);
+            // a valid index is kept
+            assertTrue(new File(dir, "index").exists());
+        } finally {
+            reopened.close();
+            store.close();
+        }
+    }
+
+    @Test
+    public void index_isSavedIncrementally() throws Exception {
+        File dir = folder.newFolder();
+        File index = new File(dir, "index");
+        BlockStore.Options options = new BlockStore.Options().setSegmentSize(1024);
+        BlockStore store = new BlockStore(dir, options);
+        for (long n = 1; n <= 80; n++) {
+            store.append(n, block(n));
+        }
+        store.flush();
+        long size = index.length();
+        for (long n = 81; n <= 90; n++) {
+            store.append(n, block(n));
+        }
+        store.flush();
+        // only indexes of the blocks appended are added
+        assertTrue(index.length() - size < size / 4);
+        for (long n = 91; n <= 100; n++) {
+            store.append(n, block(n));
+        }
+        store.close();
+
+        store = new BlockStore(dir, options);
+        try {
+            checkQueries(store);
+        } finally {
+            store.close();
+        }
+
+        // a section partially written by a crash is ignored, and its blocks are scanned
+        RandomAccessFile f = new RandomAccessFile(index, "rw");
+        f.setLength(f.length() - 10);
+        f.close();
+        store = new BlockStore(dir, options);
+        try {
+            assertTrue(index.exists());
+            checkQueries(store);
+            store.flush();
+        } finally {
+            store.close();
+        }
+        store = new BlockStore(dir, options);
+        try {
+            checkQueries(store);
+        } finally {
+            store.close();
+        }
+        assertTrue(index.exists());
+    }
+
+    @Test
+    public void index_isDiscardedIfStale() throws Exception {
+        File dir = folder.newFolder();
+        BlockStore.Options options = new BlockStore.Options().setSegmentSize(1024);
+        BlockStore store = new BlockStore(dir, options);
+        for (long n = 1; n <= 100; n++) {
+            store.append(n, block(n));
+        }
+        store.flush();
+        // the index covers removed blocks
+        store.truncate(61);
+        BlockStore reopened = new BlockStore(dir, options);
+        try {
+            assertEquals(60, reopened.lastBlock());
+            assertNull(reopened.getPostTrxInfo(1070));
+        } finally {
+            reopened.close();
+            store.close();
+        }
+
+        // a damaged index
+        File index = new File(dir, "index");
+        assertTrue(index.exists());
+        RandomAccessFile f = new RandomAccessFile(index, "rw");
+        f.seek(f.length() / 2);
+        int b = f.read();
+        f.seek(f.length() / 2);
+        f.write(~b);
+        f.close();
+        store = new BlockStore(dir, options);
+        try {
+            assertEquals(60, store.lastBlock());
+            assertEquals(60, store.getUserTrxListByTime("alice", 0, Integer.MAX_VALUE, 1000).size());
+            assertEquals(42, store.getPostTrxInfo(1042).getBlockHeight());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void sync_feedsStore() throws Exception {
+        FakeNode node = new FakeNode(0);
+        node.setChain(30, 20);
+        BlockStore store = new BlockStore(folder.newFolder());
+        BlockSync sync = new BlockSync(
+                new AsyncRpcClient(ApiServiceGrpc.newFutureStub(node.channel()), null, "test"),
+                store,
+                new BlockSync.Options()
+                        .setFollowReversible(true)
+                        .setPollInterval(50, TimeUnit.MILLISECONDS));
+        try {
+            sync.start(1);
+            for (int i = 0; i < 500 && store.lastBlock() != 30; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(30, store.lastBlock());
+            // let ids of reversible blocks be checked once
+            Thread.sleep(200);
+
+            node.forkFrom = 25;
+            node.fork = 1;
+            node.setChain(31, 20);
+            for (int i = 0; i < 500 && store.lastBlock() != 31; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(31, store.lastBlock());
+            for (long n = 2; n <= 31; n++) {
+                assertEquals(node.blockId(n - 1), store.getBlock(n).getSignedHeader().getHeader().getPrevious().getHash());
+            }
+        } finally {
+            sync.stop();
+            store.close();
+            node.close();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package io.contentos.android.sdk;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import io.contentos.android.sdk.prototype.Transaction.signed_block;
+import io.contentos.android.sdk.rpc.ApiServiceGrpc;
+import io.contentos.android.sdk.rpc.AsyncRpcClient;
+import io.contentos.android.sdk.rpc.BlockSync;
+
+public class BlockSyncUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // records delivered block numbers, and rollbacks as negative numbers.
+    private static class Recorder implements BlockSync.Listener {
+        final List<Long> events = new CopyOnWriteArrayList<>();
+        volatile Throwable error;
+
+        @Override
+        public void onBlock(long blockNum, signed_block block) {
+            assertEquals(blockNum, block.getSignedHeader().getHeader().getTimestamp().getUtcSeconds());
+            events.add(blockNum);
+        }
+
+        @Override
+        public void onRollback(long blockNum) {
+            events.add(-blockNum);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+        }
+    }
+
+    private static AsyncRpcClient client(FakeNode node) {
+        return new AsyncRpcClient(ApiServiceGrpc.newFutureStub(node.channel()), null, "test");
+    }
+
+    private static void waitFor(BlockSync sync, long blockNum) throws InterruptedException {
+        for (int i = 0; i < 500 && sync.lastDelivered() != blockNum; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(blockNum, sync.lastDelivered());
+    }
+
+    @Test
+    public void blocks_areDeliveredInOrder() throws Exception {
+        FakeNode node = new FakeNode(20);
+        node.jitter = true;
+        node.setChain(1000, 990);
+        final int window = 32;
+        final FakeNode n = node;
+        final int[] maxAhead = new int[1];
+        Recorder recorder = new Recorder() {
+            @Override
+            public void onBlock(long blockNum, signed_block block) {
+                super.onBlock(blockNum, block);
+                maxAhead[0] = Math.max(maxAhead[0], n.blockCalls.get() - events.size());
+            }
+        };
+        BlockSync sync = new BlockSync(client(node), recorder, new BlockSync.Options()
+                .setWindow(window)
+                .setPollInterval(50, TimeUnit.MILLISECONDS));
+        try {
+            sync.start(1);
+            waitFor(sync, 990);
+
+            Thread.sleep(100);
+            assertEquals(990, recorder.events.size());
+            for (int i = 0; i < 990; i++) {
+                assertEquals(i + 1, (long) recorder.events.get(i));
+            }
+            assertTrue(maxAhead[0] <= window);
+            assertNull(recorder.error);
+            // blocks are queried concurrently, up to the window
+            assertTrue(node.maxInFlight.get() > 1);
+            assertTrue(node.maxInFlight.get() <= window);
+        } finally {
+            sync.stop();
+            node.close();
+        }
+    }
+
+    @Test
+    public void forks_areRolledBack() throws Exception {
+        FakeNode node = new FakeNode(0);
+        node.setChain(20, 10);
+        Recorder recorder = new Recorder();
+        BlockSync sync = new BlockSync(client(node), recorder, new BlockSync.Options()
+                .setFollowReversible(true)
+                .setPollInterval(50, TimeUnit.MILLISECONDS));
+        try {
+            sync.start(1);
+            waitFor(sync, 20);
+            // let ids of reversible blocks be checked once
+            Thread.sleep(200);
+            assertEquals(20, recorder.events.size());
+
+            node.forkFrom = 15;
+            node.fork = 1;
+            for (int i = 0; i < 100 && !recorder.events.contains(-15L); i++) {
+                Thread.sleep(10);
+            }
+            waitFor(sync, 20);
+            assertEquals(Arrays.asList(-15L, 15L, 16L, 17L, 18L, 19L, 20L), recorder.events.subList(20, recorder.events.size()));
+
+            node.setChain(25, 20);
+            waitFor(sync, 25);
+            assertNull(recorder.error);
+        } finally {
+            sync.stop();
+            node.close();
+        }
+    }
+
+    @Test
+    public void forkAtLastDelivered_isRolledBack() throws Exception {
+        FakeNode node = new FakeNode(0);
+        node.setChain(20, 10);
+        Recorder recorder = new Recorder();
+        BlockSync sync = new BlockSync(client(node), recorder, new BlockSync.Options()
+                .setFollowReversible(true)
+                .setPollInterval(50, TimeUnit.MILLISECONDS));
+        try {
+            sync.start(1);
+            waitFor(sync, 20);
+
+            // the last block delivered is replaced, and the fork goes on
+            node.forkFrom = 20;
+            node.fork = 1;
+            node.setChain(21, 10);
+            waitFor(sync, 21);
+            assertEquals(Arrays.asList(-20L, 20L, 21L), recorder.events.subList(20, recorder.events.size()));
+            assertNull(recorder.error);
+        } finally {
+            sync.stop();
+            node.close();
+        }
+    }
+
+    @Test
+    public void staleFork_isNotDelivered() throws Exception {
+        FakeNode node = new FakeNode(0);
+        node.setChain(20, 10);
+        Recorder recorder = new Recorder();
+        BlockSync sync = new BlockSync(client(node), recorder, new BlockSync.Options()
+                .setFollowReversible(true)
+                .setPollInterval(50, TimeUnit.MILLISECONDS));
+        try {
+            sync.start(1);
+            waitFor(sync, 20);
+
+            // the node answers from a fork not including irreversible blocks delivered
+            node.forkFrom = 5;
+            node.fork = 1;
+            node.setChain(30, 30);
+            for (int i = 0; i < 100 && recorder.error == null; i++) {
+                Thread.sleep(10);
+            }
+            assertTrue(recorder.error instanceof IllegalStateException);
+            assertEquals(20, sync.lastDelivered());
+
+            node.forkFrom = Long.MAX_VALUE;
+            waitFor(sync, 30);
+        } finally {
+            sync.stop();
+            node.close();
+        }
+    }
+
+    @Test
+    public void irreversibleBlocks_areNotCheckedForForks() throws Exception {
+        FakeNode node = new FakeNode(0);
+        node.setChain(20, 10);
+        Recorder recorder = new Recorder();
+        BlockSync sync = new BlockSync(client(node), recorder, new BlockSync.Options()
+                .setPollInterval(50, TimeUnit.MILLISECONDS));
+        try {
+            sync.start(1);
+            waitFor(sync, 10);
+
+            node.forkFrom = 5;
+            node.fork = 1;
+            node.setChain(20, 20);
+            waitFor(sync, 20);
+            assertNull(recorder.error);
+        } finally {
+            sync.stop();
+            node.close();
+        }
+    }
+
+    @Test
+    public void checkpoint_resumesSync() throws Exception {
+        FakeNode node = new FakeNode(0);
+        node.setChain(100, 100);
+        File checkpoint = new File(folder.getRoot(), "sync");
+        BlockSync.Options options = new BlockSync.Options()
+                .setPollInterval(50, TimeUnit.MILLISECONDS)
+                .setCheckpoint(checkpoint, 10);
+        try {
+            Recorder recorder = new Recorder();
+            BlockSync sync = new BlockSync(client(node), recorder, options);
+            sync.start(1);
+            waitFor(sync, 100);
+            sync.stop();
+            assertTrue(checkpoint.exists());
+
+            node.setChain(120, 120);
+            recorder = new Recorder();
+            sync = new BlockSync(client(node), recorder, options);
+            sync.start(1);
+            waitFor(sync, 120);
+            sync.stop();
+            assertEquals(20, recorder.events.size());
+            assertEquals(101, (long) recorder.events.get(0));
+        } finally {
+            node.close();
+        }
+    }
+}
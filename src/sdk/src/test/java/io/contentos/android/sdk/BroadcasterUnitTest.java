@@ -0,0 +1,154 @@
+package io.contentos.android.sdk;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import io.contentos.android.sdk.crypto.Key;
+import io.contentos.android.sdk.encoding.WIF;
+import io.contentos.android.sdk.prototype.Transaction.signed_transaction;
+import io.contentos.android.sdk.prototype.Type;
+import io.contentos.android.sdk.rpc.ApiServiceGrpc;
+import io.contentos.android.sdk.rpc.AsyncRpcClient;
+import io.contentos.android.sdk.rpc.Broadcaster;
+import io.contentos.android.sdk.rpc.ChainStateCache;
+import io.contentos.android.sdk.rpc.Grpc.TrxInfo;
+import io.contentos.android.sdk.rpc.Transaction;
+import io.grpc.StatusRuntimeException;
+
+public class BroadcasterUnitTest {
+
+    private static AsyncRpcClient client(FakeNode node) {
+        return new AsyncRpcClient(ApiServiceGrpc.newFutureStub(node.channel()), WIF.fromPrivateKey(Key.generate()), "test");
+    }
+
+    @Test
+    public void transactions_arePipelined() throws Exception {
+        FakeNode node = new FakeNode(50);
+        try {
+            int count = 200, maxInFlight = 50;
+            Broadcaster broadcaster = new Broadcaster(client(node), new Broadcaster.Options()
+                    .setMaxInFlight(maxInFlight)
+                    .setPollInterval(100, TimeUnit.MILLISECONDS));
+
+            // the first transaction caches the chain state.
+            List<ListenableFuture<TrxInfo>> futures = new ArrayList<>();
+            futures.add(broadcaster.transfer("alice", "bob", 1, ""));
+
+            // the others are sent without waiting for replies, up to the maximum in flight.
+            node.hold();
+            for (int i = 1; i < maxInFlight; i++) {
+                futures.add(broadcaster.transfer("alice", "bob", i + 1, ""));
+            }
+            assertTrue(node.awaitInFlight(maxInFlight - 1, 10000));
+            assertEquals(maxInFlight, broadcaster.inFlight());
+            node.release();
+
+            for (int i = maxInFlight; i < count; i++) {
+                futures.add(broadcaster.transfer("alice", "bob", i + 1, ""));
+                assertTrue(broadcaster.inFlight() <= maxInFlight);
+            }
+            HashSet<String> ids = new HashSet<>();
+            for (int i = 0; i < count; i++) {
+                TrxInfo info = futures.get(i).get(10, TimeUnit.SECONDS);
+                signed_transaction trx = info.getTrxWrap().getSigTrx();
+                assertEquals(i + 1, trx.getTrx().getOperations(0).getOp2().getAmount().getValue());
+                assertArrayEquals(Transaction.idOf(trx), info.getTrxId().getHash().toByteArray());
+                ids.add(Utils.byteArrayToHex(Transaction.idOf(trx)));
+            }
+
+            assertEquals(count, ids.size());
+            assertEquals(count, node.broadcasts.size());
+            assertEquals(1, node.chainStateCalls.get());
+            assertEquals(0, broadcaster.inFlight());
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void irreversibility_isAwaited() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            Broadcaster broadcaster = new Broadcaster(client(node), new Broadcaster.Options()
+                    .setPollInterval(50, TimeUnit.MILLISECONDS)
+                    .setWaitIrreversible(true));
+            ListenableFuture<TrxInfo> f = broadcaster.transfer("alice", "bob", 1, "");
+            Thread.sleep(300);
+            assertFalse(f.isDone());
+            assertEquals(1, broadcaster.inFlight());
+
+            node.irreversible = true;
+            TrxInfo info = f.get(2, TimeUnit.SECONDS);
+            assertTrue(info.getBlkIsIrreversible());
+            // once found, only irreversibility is polled
+            assertEquals(1, node.trxInfoCalls.get());
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void forkedOutTransactions_expire() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            ChainStateCache cache = new ChainStateCache(node.channel());
+            Broadcaster broadcaster = new Broadcaster(
+                    new AsyncRpcClient(ApiServiceGrpc.newFutureStub(node.channel()), WIF.fromPrivateKey(Key.generate()), "test", cache),
+                    new Broadcaster.Options()
+                            .setPollInterval(50, TimeUnit.MILLISECONDS)
+                            .setWaitIrreversible(true));
+            ListenableFuture<TrxInfo> f = broadcaster.transfer("alice", "bob", 1, "");
+            for (int i = 0; i < 100 && node.trxInfoCalls.get() == 0; i++) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(100);
+
+            // the chain goes past expiration, the transaction is still in a reversible block.
+            node.props = node.props.toBuilder().setTime(Type.time_point_sec.newBuilder().setUtcSeconds(1000)).build();
+            cache.invalidate();
+            cache.getDynamicGlobalProps();
+            Thread.sleep(300);
+            assertFalse(f.isDone());
+            assertEquals(1, broadcaster.inFlight());
+
+            // its block is forked out.
+            node.included.clear();
+            try {
+                f.get(2, TimeUnit.SECONDS);
+                fail("expiration expected");
+            } catch (ExecutionException e) {
+                assertEquals("transaction expired", e.getCause().getMessage());
+            }
+            assertEquals(0, broadcaster.inFlight());
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void failedTransactions_areReported() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            node.receiptStatus = 500;
+            Broadcaster broadcaster = new Broadcaster(client(node), new Broadcaster.Options()
+                    .setPollInterval(50, TimeUnit.MILLISECONDS));
+            try {
+                broadcaster.transfer("alice", "bob", 1, "").get(2, TimeUnit.SECONDS);
+                fail("error expected");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof StatusRuntimeException);
+            }
+            assertEquals(0, broadcaster.inFlight());
+        } finally {
+            node.close();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package io.contentos.android.sdk;
+
+import com.google.common.base.Ticker;
+import com.google.protobuf.ByteString;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.contentos.android.sdk.crypto.Key;
+import io.contentos.android.sdk.encoding.WIF;
+import io.contentos.android.sdk.prototype.Transaction.signed_transaction;
+import io.contentos.android.sdk.prototype.Type;
+import io.contentos.android.sdk.rpc.ApiServiceGrpc;
+import io.contentos.android.sdk.rpc.ChainStateCache;
+import io.contentos.android.sdk.rpc.RpcClient;
+
+public class ChainStateCacheUnitTest {
+
+    // a clock moved by tests only.
+    private static final class FakeTicker extends Ticker {
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        void advance(long millis) {
+            nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+
+    // wait for a background refresh to bring a block.
+    private static void awaitHead(ChainStateCache cache, long blockNum) throws InterruptedException {
+        for (int i = 0; i < 10000 && cache.getDynamicGlobalProps().getHeadBlockNumber() != blockNum; i++) {
+            Thread.sleep(1);
+        }
+        assertEquals(blockNum, cache.getDynamicGlobalProps().getHeadBlockNumber());
+    }
+
+    private static Type.dynamic_properties props(long blockNum, long timeOffsetSeconds) {
+        byte[] blockId = new byte[32];
+        for (int i = 0; i < 8; i++) {
+            blockId[i] = (byte) (blockNum >>> (8 * i));
+        }
+        blockId[8] = 0x12;
+        return Type.dynamic_properties.newBuilder()
+                .setHeadBlockId(Type.sha256.newBuilder().setHash(ByteString.copyFrom(blockId)))
+                .setHeadBlockNumber(blockNum)
+                .setTime(Type.time_point_sec.newBuilder()
+                        .setUtcSeconds((int) (System.currentTimeMillis() / 1000 + timeOffsetSeconds)))
+                .build();
+    }
+
+    @Test
+    public void backToBackSends_queryChainStateOnce() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            node.props = props(5000, 0);
+            String key = WIF.fromPrivateKey(Key.generate());
+            RpcClient client = new RpcClient(ApiServiceGrpc.newBlockingStub(node.channel()), key, "test");
+            for (int i = 0; i < 10; i++) {
+                client.transfer("alice", "bob", i + 1, "");
+            }
+            assertEquals(10, node.broadcasts.size());
+            assertEquals(1, node.chainStateCalls.get());
+
+            // block 5000 is 5000 % 2048 = 904 in reference window
+            signed_transaction trx = node.broadcasts.get(9);
+            assertEquals(904, trx.getTrx().getRefBlockNum());
+            assertEquals(0x12000000, trx.getTrx().getRefBlockPrefix());
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void expiration_followsChainClock() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            // the chain's clock is 1000 seconds ahead of ours
+            node.props = props(100, 1000);
+            FakeTicker ticker = new FakeTicker();
+            ChainStateCache cache = new ChainStateCache(node.channel(), ChainStateCache.defaultTimeToLive, TimeUnit.MILLISECONDS, ticker);
+            String key = WIF.fromPrivateKey(Key.generate());
+            RpcClient client = new RpcClient(ApiServiceGrpc.newBlockingStub(node.channel()), key, "test", cache);
+            client.transfer("alice", "bob", 1, "");
+            assertEquals(1000.0, cache.clockOffsetMillis() / 1000.0, 2.0);
+
+            // the chain's clock moves on with ours
+            ticker.advance(1000);
+            client.transfer("alice", "bob", 1, "");
+            assertEquals(1, node.chainStateCalls.get());
+
+            int chainTime = node.props.getTime().getUtcSeconds();
+            assertEquals(chainTime + 30, node.broadcasts.get(0).getTrx().getExpiration().getUtcSeconds());
+            assertEquals(chainTime + 1 + 30, node.broadcasts.get(1).getTrx().getExpiration().getUtcSeconds());
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void staleState_isRefreshed() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            node.props = props(100, 0);
+            FakeTicker ticker = new FakeTicker();
+            ChainStateCache cache = new ChainStateCache(node.channel(), 400, TimeUnit.MILLISECONDS, ticker);
+            assertEquals(100, cache.getDynamicGlobalProps().getHeadBlockNumber());
+            node.props = props(101, 0);
+            assertEquals(100, cache.getDynamicGlobalProps().getHeadBlockNumber());
+            assertEquals(1, node.chainStateCalls.get());
+
+            // after half of time to live, cached state is returned while refreshing in background.
+            node.hold();
+            ticker.advance(250);
+            assertEquals(100, cache.getDynamicGlobalProps().getHeadBlockNumber());
+            assertTrue(node.awaitInFlight(1, 10000));
+            assertEquals(100, cache.getDynamicGlobalProps().getHeadBlockNumber());
+            assertEquals(2, node.chainStateCalls.get());
+            node.release();
+            awaitHead(cache, 101);
+            assertEquals(2, node.chainStateCalls.get());
+
+            // expired state is queried again.
+            node.props = props(102, 0);
+            ticker.advance(500);
+            assertEquals(102, cache.getDynamicGlobalProps().getHeadBlockNumber());
+            assertEquals(3, node.chainStateCalls.get());
+
+            cache.invalidate();
+            assertEquals(102, cache.getDynamicGlobalPropsAsync().get().getHeadBlockNumber());
+            assertEquals(4, node.chainStateCalls.get());
+        } finally {
+            node.close();
+        }
+    }
+}
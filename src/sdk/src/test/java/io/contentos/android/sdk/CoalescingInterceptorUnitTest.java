@@ -0,0 +1,95 @@
+package io.contentos.android.sdk;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.contentos.android.sdk.prototype.Type;
+import io.contentos.android.sdk.rpc.ApiServiceGrpc;
+import io.contentos.android.sdk.rpc.CoalescingInterceptor;
+import io.contentos.android.sdk.rpc.Grpc.AccountResponse;
+import io.contentos.android.sdk.rpc.Grpc.GetAccountByNameRequest;
+import io.contentos.android.sdk.rpc.RpcClient;
+
+public class CoalescingInterceptorUnitTest {
+
+    private static GetAccountByNameRequest request(String name) {
+        return GetAccountByNameRequest.newBuilder()
+                .setAccountName(Type.account_name.newBuilder().setValue(name))
+                .build();
+    }
+
+    @Test
+    public void concurrentQueries_shareOneCall() throws Exception {
+        FakeNode node = new FakeNode(200);
+        ExecutorService pool = Executors.newFixedThreadPool(10);
+        try {
+            CoalescingInterceptor coalescing = new CoalescingInterceptor();
+            final RpcClient client = new RpcClient(ApiServiceGrpc.newBlockingStub(node.channel()).withInterceptors(coalescing), "test");
+            List<Future<AccountResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                futures.add(pool.submit(new Callable<AccountResponse>() {
+                    @Override
+                    public AccountResponse call() {
+                        return client.getAccountByName("alice");
+                    }
+                }));
+            }
+            for (Future<AccountResponse> f : futures) {
+                assertEquals("alice", f.get(2, TimeUnit.SECONDS).getInfo().getAccountName().getValue());
+            }
+            assertEquals(1, node.accountCalls.get());
+            assertEquals(9, coalescing.hits());
+            assertEquals(1, coalescing.misses());
+
+            // completed calls are not reused
+            client.getAccountByName("alice");
+            assertEquals(2, node.accountCalls.get());
+        } finally {
+            pool.shutdownNow();
+            node.close();
+        }
+    }
+
+    @Test
+    public void differentQueries_areNotShared() throws Exception {
+        FakeNode node = new FakeNode(100);
+        try {
+            ApiServiceGrpc.ApiServiceFutureStub stub = ApiServiceGrpc.newFutureStub(node.channel())
+                    .withInterceptors(new CoalescingInterceptor());
+            ListenableFuture<AccountResponse> alice = stub.getAccountByName(request("alice"));
+            ListenableFuture<AccountResponse> bob = stub.getAccountByName(request("bob"));
+            assertEquals("alice", alice.get(2, TimeUnit.SECONDS).getInfo().getAccountName().getValue());
+            assertEquals("bob", bob.get(2, TimeUnit.SECONDS).getInfo().getAccountName().getValue());
+            assertEquals(2, node.accountCalls.get());
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void cancelledQuery_leavesOthersRunning() throws Exception {
+        FakeNode node = new FakeNode(100);
+        try {
+            ApiServiceGrpc.ApiServiceFutureStub stub = ApiServiceGrpc.newFutureStub(node.channel())
+                    .withInterceptors(new CoalescingInterceptor());
+            ListenableFuture<AccountResponse> first = stub.getAccountByName(request("alice"));
+            ListenableFuture<AccountResponse> second = stub.getAccountByName(request("alice"));
+            first.cancel(true);
+            assertEquals("alice", second.get(2, TimeUnit.SECONDS).getInfo().getAccountName().getValue());
+            assertTrue(first.isCancelled());
+            assertEquals(1, node.accountCalls.get());
+        } finally {
+            node.close();
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package io.contentos.android.sdk;
+
+import com.google.protobuf.ByteString;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.contentos.android.sdk.prototype.Transaction.operation;
+import io.contentos.android.sdk.prototype.Transaction.block_header;
+import io.contentos.android.sdk.prototype.Transaction.operation_receipt_with_info;
+import io.contentos.android.sdk.prototype.Transaction.signed_block;
+import io.contentos.android.sdk.prototype.Transaction.signed_block_header;
+import io.contentos.android.sdk.prototype.Transaction.signed_transaction;
+import io.contentos.android.sdk.prototype.Transaction.transaction_receipt;
+import io.contentos.android.sdk.prototype.Transaction.transaction_receipt_with_info;
+import io.contentos.android.sdk.prototype.Transaction.transaction_wrapper;
+import io.contentos.android.sdk.prototype.Type;
+import io.contentos.android.sdk.rpc.ApiServiceGrpc;
+import io.contentos.android.sdk.rpc.Grpc.*;
+import io.contentos.android.sdk.rpc.Transaction;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * An in-process chain node for unit tests.
+ * <p>It answers after a delay without holding any thread meanwhile, and counts the calls.</p>
+ */
+class FakeNode extends ApiServiceGrpc.ApiServiceImplBase {
+
+    volatile long delayMillis;
+    volatile Type.dynamic_properties props = Type.dynamic_properties.getDefaultInstance();
+
+    volatile long lastIrreversible;
+    // replies are delayed randomly up to delayMillis
+    volatile boolean jitter;
+    // blocks above don't exist
+    volatile long maxBlock = Long.MAX_VALUE;
+    // blocks from forkFrom on belong to fork number fork
+    volatile long forkFrom = Long.MAX_VALUE;
+    volatile int fork;
+
+    // accounts have balances from 1 to accountCount
+    volatile int accountCount;
+
+    volatile boolean includeTrx = true;
+    volatile boolean irreversible;
+    volatile int receiptStatus = 200;
+    // number of next queries and transactions failing as unavailable
+    final AtomicInteger unavailable = new AtomicInteger();
+    // delays of next replies, overriding delayMillis
+    final Queue<Long> nextDelays = new ConcurrentLinkedQueue<>();
+
+    final AtomicInteger accountCalls = new AtomicInteger();
+    final AtomicInteger chainStateCalls = new AtomicInteger();
+    final AtomicInteger trxInfoCalls = new AtomicInteger();
+    final AtomicInteger blockCalls = new AtomicInteger();
+    final AtomicInteger listCalls = new AtomicInteger();
+    final AtomicInteger blockListCalls = new AtomicInteger();
+    // replies scheduled but not sent yet, and the maximum of it
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+    final List<signed_transaction> broadcasts = new CopyOnWriteArrayList<>();
+    final ConcurrentHashMap<ByteString, TrxInfo> included = new ConcurrentHashMap<>();
+    final Set<ByteString> accepted = Collections.newSetFromMap(new ConcurrentHashMap<ByteString, Boolean>());
+
+    private final ConcurrentHashMap<String, ByteString> blockIds = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    // replies held until release(), null if not holding
+    private List<Runnable> held;
+    private final Server server;
+    private final ManagedChannel channel;
+
+    FakeNode(long delayMillis) throws Exception {
+        this.delayMillis = delayMillis;
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).addService(this).build().start();
+        channel = InProcessChannelBuilder.forName(name).build();
+    }
+
+    ManagedChannel channel() {
+        return channel;
+    }
+
+    void setChain(long head, long lastIrreversible) {
+        props = props.toBuilder().setHeadBlockNumber(head).build();
+        this.lastIrreversible = lastIrreversible;
+        maxBlock = head;
+    }
+
+    ByteString blockId(long blockNum) {
+        return blockId(blockNum, forkFrom, fork);
+    }
+
+    // ids are derived from headers as the chain does, without BlockSync.idOf, and cached per fork.
+    private ByteString blockId(long blockNum, long forkFrom, int fork) {
+        if (blockNum <= 0) {
+            return ByteString.copyFrom(new byte[32]);
+        }
+        String key = blockNum >= forkFrom ? fork + "@" + forkFrom + ":" + blockNum : Long.toString(blockNum);
+        ByteString id = blockIds.get(key);
+        if (id == null) {
+            byte[] hash;
+            try {
+                hash = MessageDigest.getInstance("SHA-256").digest(
+                        signedBlock(blockNum, forkFrom, fork).getSignedHeader().getHeader().toByteArray());
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+            // the first 8 bytes are the block number, little endian
+            ByteBuffer.wrap(hash).order(ByteOrder.LITTLE_ENDIAN).putLong(blockNum);
+            id = ByteString.copyFrom(hash);
+            blockIds.put(key, id);
+        }
+        return id;
+    }
+
+    // block numbers are told by time stamps, and forks by producers.
+    private signed_block signedBlock(long blockNum, long forkFrom, int fork) {
+        return signed_block.newBuilder()
+                .setSignedHeader(signed_block_header.newBuilder()
+                        .setHeader(block_header.newBuilder()
+                                .setPrevious(Type.sha256.newBuilder().setHash(blockId(blockNum - 1, forkFrom, fork)))
+                                .setTimestamp(Type.time_point_sec.newBuilder().setUtcSeconds((int) blockNum))
+                                .setBlockProducer(Type.account_name.newBuilder()
+                                        .setValue(blockNum >= forkFrom ? "fork" + fork : "producer"))))
+                .build();
+    }
+
+    void close() {
+        channel.shutdownNow();
+        server.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    // hold all replies until release() is called.
+    synchronized void hold() {
+        held = new ArrayList<>();
+    }
+
+    // send held replies, and stop holding.
+    void release() {
+        List<Runnable> replies;
+        synchronized (this) {
+            replies = held;
+            held = null;
+        }
+        for (Runnable r : replies) {
+            r.run();
+        }
+    }
+
+    // wait until a number of replies are in flight, false on timeout.
+    boolean awaitInFlight(int n, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (inFlight.get() < n) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    <T> void reply(final StreamObserver<T> observer, final T response) {
+        Long delay = nextDelays.poll();
+        if (delay == null && jitter) {
+            delay = ThreadLocalRandom.current().nextLong(delayMillis + 1);
+        }
+        final long millis = delay != null ? delay : delayMillis;
+        int n = inFlight.incrementAndGet();
+        int max;
+        while ((max = maxInFlight.get()) < n && !maxInFlight.compareAndSet(max, n)) {
+            // retry
+        }
+        Runnable send = new Runnable() {
+            @Override
+            public void run() {
+                timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        inFlight.decrementAndGet();
+                        observer.onNext(response);
+                        observer.onCompleted();
+                    }
+                }, millis, TimeUnit.MILLISECONDS);
+            }
+        };
+        synchronized (this) {
+            if (held != null) {
+                held.add(send);
+                return;
+            }
+        }
+        send.run();
+    }
+
+    private boolean failUnavailable(StreamObserver<?> observer) {
+        int n;
+        do {
+            n = unavailable.get();
+            if (n <= 0) {
+                return false;
+            }
+        } while (!unavailable.compareAndSet(n, n - 1));
+        observer.onError(Status.UNAVAILABLE.withDescription("node down").asRuntimeException());
+        return true;
+    }
+
+    @Override
+    public void getAccountByName(GetAccountByNameRequest request, StreamObserver<AccountResponse> observer) {
+        accountCalls.incrementAndGet();
+        if (failUnavailable(observer)) {
+            return;
+        }
+        if (request.getAccountName().getValue().isEmpty()) {
+            observer.onError(Status.INVALID_ARGUMENT.withDescription("empty name").asRuntimeException());
+            return;
+        }
+        reply(observer, AccountResponse.newBuilder()
+                .setInfo(AccountInfo.newBuilder().setAccountName(request.getAccountName()))
+                .build());
+    }
+
+    @Override
+    public void getChainState(NonParamsRequest request, StreamObserver<GetChainStateResponse> observer) {
+        chainStateCalls.incrementAndGet();
+        reply(observer, GetChainStateResponse.newBuilder()
+                .setState(ChainState.newBuilder().setDgpo(props).setLastIrreversibleBlockNumber(lastIrreversible))
+                .build());
+    }
+
+    @Override
+    public void getAccountListByBalance(GetAccountListByBalanceRequest request, StreamObserver<GetAccountListResponse> observer) {
+        listCalls.incrementAndGet();
+        if (failUnavailable(observer)) {
+            return;
+        }
+        // descending balances from start (inclusive, exclusive after last account) to end (exclusive)
+        long from = request.hasLastAccount() ? request.getStart().getValue() - 1 : request.getStart().getValue();
+        GetAccountListResponse.Builder b = GetAccountListResponse.newBuilder();
+        for (long v = Math.min(from, accountCount); v > request.getEnd().getValue() && b.getListCount() < request.getLimit(); v--) {
+            b.addList(AccountResponse.newBuilder().setInfo(AccountInfo.newBuilder()
+                    .setAccountName(Type.account_name.newBuilder().setValue("user" + v))
+                    .setCoin(Type.coin.newBuilder().setValue(v))));
+        }
+        reply(observer, b.build());
+    }
+
+    @Override
+    public void getSignedBlock(GetSignedBlockRequest request, StreamObserver<GetSignedBlockResponse> observer) {
+        blockCalls.incrementAndGet();
+        long num = request.getStart();
+        if (num > maxBlock) {
+            reply(observer, GetSignedBlockResponse.getDefaultInstance());
+            return;
+        }
+        reply(observer, GetSignedBlockResponse.newBuilder()
+                .setBlock(signedBlock(num, forkFrom, fork))
+                .build());
+    }
+
+    @Override
+    public void getBlockList(GetBlockListRequest request, StreamObserver<GetBlockListResponse> observer) {
+        blockListCalls.incrementAndGet();
+        GetBlockListResponse.Builder b = GetBlockListResponse.newBuilder();
+        for (long n = request.getStart(); n <= Math.min(request.getEnd(), maxBlock) && b.getBlocksCount() < request.getLimit(); n++) {
+            b.addBlocks(BlockInfo.newBuilder()
+                    .setBlockHeight(n)
+                    .setBlockId(Type.sha256.newBuilder().setHash(blockId(n))));
+        }
+        reply(observer, b.build());
+    }
+
+    @Override
+    public void broadcastTrx(BroadcastTrxRequest request, StreamObserver<BroadcastTrxResponse> observer) {
+        if (failUnavailable(observer)) {
+            return;
+        }
+        signed_transaction trx = request.getTransaction();
+        broadcasts.add(trx);
+        // transfers with memo "fail" fail the whole transaction
+        for (operation op : trx.getTrx().getOperationsList()) {
+            if (op.getOpCase() == operation.OpCase.OP2 && op.getOp2().getMemo().equals("fail")) {
+                reply(observer, BroadcastTrxResponse.newBuilder()
+                        .setInvoice(transaction_receipt_with_info.newBuilder().setStatus(500).setErrorInfo("bad transfer"))
+                        .build());
+                return;
+            }
+        }
+        // a transaction is accepted once, like the chain does
+        ByteString id = ByteString.copyFrom(Transaction.idOf(trx));
+        if (!accepted.add(id)) {
+            reply(observer, BroadcastTrxResponse.newBuilder()
+                    .setInvoice(transaction_receipt_with_info.newBuilder().setStatus(500).setErrorInfo("duplicate transaction"))
+                    .build());
+            return;
+        }
+        if (includeTrx) {
+            included.put(id, TrxInfo.newBuilder()
+                    .setTrxId(Type.sha256.newBuilder().setHash(id))
+                    .setBlockHeight(props.getHeadBlockNumber() + 1)
+                    .setTrxWrap(transaction_wrapper.newBuilder()
+                            .setSigTrx(trx)
+                            .setReceipt(transaction_receipt.newBuilder().setStatus(receiptStatus)))
+                    .build());
+        }
+        transaction_receipt_with_info.Builder invoice = transaction_receipt_with_info.newBuilder().setStatus(200);
+        for (int i = 0; i < trx.getTrx().getOperationsCount(); i++) {
+            invoice.addOpResults(operation_receipt_with_info.newBuilder().setStatus(200).setGasUsage(i));
+        }
+        reply(observer, BroadcastTrxResponse.newBuilder().setInvoice(invoice).build());
+    }
+
+    @Override
+    public void getTrxInfoById(GetTrxInfoByIdRequest request, StreamObserver<GetTrxInfoByIdResponse> observer) {
+        trxInfoCalls.incrementAndGet();
+        TrxInfo info = included.get(request.getTrxId().getHash());
+        GetTrxInfoByIdResponse.Builder b = GetTrxInfoByIdResponse.newBuilder();
+        if (info != null) {
+            b.setInfo(info.toBuilder().setBlkIsIrreversible(irreversible));
+        }
+        reply(observer, b.build());
+    }
+
+    @Override
+    public void getBlkIsIrreversibleByTxId(GetBlkIsIrreversibleByTxIdRequest request, StreamObserver<GetBlkIsIrreversibleByTxIdResponse> observer) {
+        boolean result = irreversible && included.containsKey(request.getTrxId().getHash());
+        reply(observer, GetBlkIsIrreversibleByTxIdResponse.newBuilder().setResult(result).build());
+    }
+}
@@ -5,9 +5,12 @@ import com.google.protobuf.ByteString;
 import org.junit.Test;
 
 import java.math.BigInteger;
+import java.util.HashMap;
 import java.util.HashSet;
 
 import io.contentos.android.sdk.crypto.Key;
+import io.contentos.android.sdk.crypto.PrivateKey;
+import io.contentos.android.sdk.crypto.PublicKey;
 import io.contentos.android.sdk.encoding.WIF;
 import io.contentos.android.sdk.prototype.Type;
 import static io.contentos.android.sdk.KeyUnitTestData.*;
@@ -117,4 +120,44 @@ public class KeyUnitTest {
             assertArrayEquals(pub.getData().toByteArray(), recovered.getData().toByteArray());
         }
     }
+
+    @Test
+    public void wif_Cache_isCorrect() {
+        // every round after the first one is served by the caches
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < DataItemCount; i++) {
+                String privWif = getTestDataString(i, Entry.PRIVATE_KEY_WIF);
+                String pubWif = getTestDataString(i, Entry.PUBLIC_KEY_WIF);
+                assertArrayEquals(getTestDataBytes(i, Entry.PRIVATE_KEY), WIF.toPrivateKey(privWif).getData().toByteArray());
+                assertArrayEquals(getTestDataBytes(i, Entry.PUBLIC_KEY), WIF.toPublicKey(pubWif).getData().toByteArray());
+                assertEquals(privWif, WIF.fromPrivateKey(WIF.toPrivateKey(privWif)));
+                assertEquals(pubWif, WIF.fromPublicKey(WIF.toPublicKey(pubWif)));
+            }
+            if (round == 1) {
+                WIF.clearCache();
+            }
+        }
+    }
+
+    @Test
+    public void keyValueTypes_areCorrect() {
+        HashMap<PublicKey, Integer> index = new HashMap<>();
+        for (int i = 0; i < DataItemCount; i++) {
+            PrivateKey priv = PrivateKey.fromWIF(getTestDataString(i, Entry.PRIVATE_KEY_WIF));
+            PublicKey pub = priv.publicKey();
+            assertEquals(getTestDataString(i, Entry.PUBLIC_KEY_WIF), pub.toWIF());
+            assertEquals(pub, PublicKey.fromWIF(getTestDataString(i, Entry.PUBLIC_KEY_WIF)));
+            assertEquals(priv, PrivateKey.of(WIF.toPrivateKey(priv.toWIF())));
+
+            byte[] msg = getTestDataBytes(i, Entry.MESSAGE);
+            assertTrue(pub.verify(priv.sign(msg), msg));
+            index.put(pub, i);
+        }
+        for (int i = 0; i < DataItemCount; i++) {
+            PublicKey pub = PublicKey.of(Type.public_key_type.newBuilder().setData(
+                    ByteString.copyFrom(getTestDataBytes(i, Entry.PUBLIC_KEY))
+            ).build());
+            assertEquals(Integer.valueOf(i), index.get(pub));
+        }
+    }
 }
@@ -0,0 +1,54 @@
+package io.contentos.android.sdk;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Locale;
+
+import io.contentos.android.sdk.crypto.Key;
+import io.contentos.android.sdk.encoding.WIF;
+import io.contentos.android.sdk.keystore.KeyStore;
+
+/**
+ * Time of adding, compacting, opening and reading keystores of growing sizes.
+ *
+ * <p>It's not part of unit tests, run its {@code main} method by hand.</p>
+ */
+public class KeystoreBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String password = "keystore password";
+        String[] wifs = new String[50];
+        for (int i = 0; i < wifs.length; i++) {
+            wifs[i] = WIF.fromPrivateKey(Key.generate());
+        }
+        System.out.println(String.format(Locale.US, "%8s %10s %10s %10s %10s %10s",
+                "accounts", "add ms", "save ms", "load ms", "get us", "file KB"));
+        for (int count : new int[]{100, 10000, 100000}) {
+            File file = Files.createTempDirectory("keystoreBenchDir").resolve("keystoreFile").toFile();
+            HashMap<String, String> keys = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                keys.put("user" + i, wifs[i % wifs.length]);
+            }
+            KeyStore ks = KeyStore.openOrCreate(file, password);
+            long t0 = System.nanoTime();
+            ks.addKeys(keys);
+            long t1 = System.nanoTime();
+            ks.compact();
+            long t2 = System.nanoTime();
+            ks.close();
+
+            long t3 = System.nanoTime();
+            ks = KeyStore.openOrCreate(file, password);
+            long t4 = System.nanoTime();
+            String wif = ks.getKey("user" + (count / 2));
+            long t5 = System.nanoTime();
+            if (!wifs[(count / 2) % wifs.length].equals(wif) || ks.getAccounts().size() != count) {
+                throw new AssertionError("keystore of " + count + " accounts is wrong");
+            }
+            ks.close();
+            System.out.println(String.format(Locale.US, "%8d %10.1f %10.1f %10.1f %10.1f %10d",
+                    count, (t1 - t0) / 1e6, (t2 - t1) / 1e6, (t4 - t3) / 1e6, (t5 - t4) / 1e3, file.length() / 1024));
+        }
+    }
+}
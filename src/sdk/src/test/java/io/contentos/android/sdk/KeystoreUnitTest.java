@@ -3,8 +3,32 @@ package io.contentos.android.sdk;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.SealedObject;
+import javax.crypto.spec.SecretKeySpec;
+
+import io.contentos.android.sdk.crypto.Hash;
+import io.contentos.android.sdk.crypto.Key;
+import io.contentos.android.sdk.encoding.WIF;
 import io.contentos.android.sdk.keystore.KeyStore;
 
 public class KeystoreUnitTest {
@@ -51,4 +75,560 @@ public class KeystoreUnitTest {
             fail(e.toString());
         }
     }
+
+    private static File newKeyStoreFile() throws Exception {
+        return Files.createTempDirectory("keystoreTestDir").resolve("keystoreFile").toFile();
+    }
+
+    @Test
+    public void legacyKeystore_isConverted() throws Exception {
+        String password = "keystore password";
+        File file = newKeyStoreFile();
+
+        // write a keystore file in SDK 1.0 format
+        HashMap<String, String> keys = new HashMap<>();
+        keys.put("alice", "3u4KKa4vdA1M2s2YVkjuBnVkdLVVgUkbp5ksnDtXZdQcaEoj8n");
+        keys.put("bob", "4jzj76fLAcJC7y58GzMUADGr9d7cP1Bs7BFMUY2ptgfbMY1iTA");
+        // earlier versions didn't validate keys
+        keys.put("dave", "not a key");
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(Hash.sha256(password.getBytes()), "AES"));
+        SealedObject so = new SealedObject(keys, cipher);
+        ObjectOutputStream objOut = new ObjectOutputStream(new CipherOutputStream(new FileOutputStream(file), cipher));
+        objOut.writeObject(so);
+        objOut.close();
+
+        KeyStore ks = KeyStore.openOrCreate(file, password);
+        assertEquals(3, ks.getAccounts().size());
+        assertEquals(keys.get("alice"), ks.getKey("alice"));
+        assertEquals(Collections.singletonList("dave"), ks.getInvalidLegacyAccounts());
+        assertEquals("not a key", ks.getKey("dave"));
+        assertNull(ks.getPublicKey("dave"));
+        ks.addKey("charlie", "4jwPFJaPMaLycRMzi7L3WidUx7GXzsPH9qknX2aEk68tTxhYNX");
+        ks.close();
+
+        ks = KeyStore.openOrCreate(file, password);
+        assertEquals(4, ks.getAccounts().size());
+        assertEquals(keys.get("bob"), ks.getKey("bob"));
+        assertEquals("not a key", ks.getKey("dave"));
+        assertTrue(ks.getInvalidLegacyAccounts().isEmpty());
+        ks.close();
+    }
+
+    @Test
+    public void wrongPassword_isRejected() throws Exception {
+        File file = newKeyStoreFile();
+        KeyStore ks = KeyStore.openOrCreate(file, "right password");
+        ks.addKey("alice", "3u4KKa4vdA1M2s2YVkjuBnVkdLVVgUkbp5ksnDtXZdQcaEoj8n");
+        ks.close();
+        long size = file.length();
+        try {
+            KeyStore.openOrCreate(file, "wrong password");
+            fail("wrong password should be rejected");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        assertEquals(size, file.length());
+    }
+
+    @Test
+    public void interruptedAppend_isDiscarded() throws Exception {
+        String password = "keystore password";
+        File file = newKeyStoreFile();
+        KeyStore ks = KeyStore.openOrCreate(file, password);
+        ks.addKey("alice", "3u4KKa4vdA1M2s2YVkjuBnVkdLVVgUkbp5ksnDtXZdQcaEoj8n");
+        long size = file.length();
+        ks.addKey("bob", "4jzj76fLAcJC7y58GzMUADGr9d7cP1Bs7BFMUY2ptgfbMY1iTA");
+        ks.close();
+
+        // cut the last record in the middle
+        RandomAccessFile f = new RandomAccessFile(file, "rw");
+        f.setLength(f.length() - 10);
+        f.close();
+
+        ks = KeyStore.openOrCreate(file, password);
+        assertEquals(1, ks.getAccounts().size());
+        assertEquals("3u4KKa4vdA1M2s2YVkjuBnVkdLVVgUkbp5ksnDtXZdQcaEoj8n", ks.getKey("alice"));
+        assertEquals(size, file.length());
+        ks.addKey("charlie", "4jwPFJaPMaLycRMzi7L3WidUx7GXzsPH9qknX2aEk68tTxhYNX");
+        ks.close();
+
+        ks = KeyStore.openOrCreate(file, password);
+        assertEquals(2, ks.getAccounts().size());
+        ks.close();
+    }
+
+    @Test
+    public void damagedLength_isReported() throws Exception {
+        String password = "keystore password";
+        // an invalid length, and a length running past the end of file, of a record in the middle.
+        for (int damage = 0; damage < 2; damage++) {
+            File file = newKeyStoreFile();
+            KeyStore ks = KeyStore.openOrCreate(file, password);
+            ks.addKey("alice", "3u4KKa4vdA1M2s2YVkjuBnVkdLVVgUkbp5ksnDtXZdQcaEoj8n");
+            long bob = file.length();
+            ks.addKey("bob", "4jzj76fLAcJC7y58GzMUADGr9d7cP1Bs7BFMUY2ptgfbMY1iTA");
+            ks.addKey("charlie", "4jwPFJaPMaLycRMzi7L3WidUx7GXzsPH9qknX2aEk68tTxhYNX");
+            ks.close();
+
+            RandomAccessFile f = new RandomAccessFile(file, "rw");
+            f.seek(bob);
+            if (damage == 0) {
+                f.writeByte(0x7f);
+            } else {
+                f.writeInt((int) (f.length() - bob));
+            }
+            long size = f.length();
+            f.close();
+
+            try {
+                KeyStore.openOrCreate(file, password);
+                fail("damaged keystore should be rejected");
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage().contains("keystore file damaged"));
+            }
+            assertEquals(size, file.length());
+        }
+    }
+
+    @Test
+    public void compaction_isCorrect() throws Exception {
+        String password = "keystore password";
+        File file = newKeyStoreFile();
+        KeyStore ks = KeyStore.openOrCreate(file, password);
+        for (int i = 0; i < 2000; i++) {
+            ks.addKey("user" + (i % 10), "3u4KKa4vdA1M2s2YVkjuBnVkdLVVgUkbp5ksnDtXZdQcaEoj8n");
+            if (i % 3 == 0) {
+                ks.removeKey("user" + ((i + 5) % 10));
+            }
+        }
+        ks.addKey("alice", "4jzj76fLAcJC7y58GzMUADGr9d7cP1Bs7BFMUY2ptgfbMY1iTA");
+        HashMap<String, String> expected = new HashMap<>();
+        for (String name : ks.getAccounts()) {
+            expected.put(name, ks.getKey(name));
+        }
+
+        // wait for background compaction
+        Thread.sleep(500);
+        ks.close();
+        assertTrue(file.length() < 200 * 100);
+
+        ks = KeyStore.openOrCreate(file, password);
+        assertEquals(expected.size(), ks.getAccounts().size());
+        for (String name : expected.keySet()) {
+            assertEquals(expected.get(name), ks.getKey(name));
+        }
+        ks.close();
+    }
+
+    @Test
+    public void bulkKeys_isCorrect() throws Exception {
+        String password = "keystore password";
+        File file = newKeyStoreFile();
+        KeyStore ks = KeyStore.openOrCreate(file, password);
+
+        // one flush for all keys
+        HashMap<String, String> keys = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            keys.put("user" + i, WIF.fromPrivateKey(Key.generate()));
+        }
+        long size = file.length();
+        ks.addKeys(keys);
+        assertEquals(keys, ks.getKeys());
+        assertTrue(file.length() - size < 1000 * 192);
+
+        List<String> removed = new ArrayList<>();
+        for (int i = 0; i < 1000; i += 2) {
+            removed.add("user" + i);
+            keys.remove("user" + i);
+        }
+        removed.add("nobody");
+        ks.removeKeys(removed);
+        assertEquals(keys, ks.getKeys());
+
+        String mnemonic = "differ cabbage wasp giraffe question trumpet mirror slim portion soft mountain basket record top call reopen note mule guide north vibrant other coffee coconut";
+        HashMap<String, String> mnemonics = new HashMap<>();
+        for (int i = 0; i < 4; i++) {
+            mnemonics.put("mnemonic" + i, mnemonic);
+        }
+        ks.addKeysByMnemonic(mnemonics);
+        String wif = WIF.fromPrivateKey(Key.generateFromMnemonic(mnemonic));
+        for (int i = 0; i < 4; i++) {
+            assertEquals(wif, ks.getKey("mnemonic" + i));
+            keys.put("mnemonic" + i, wif);
+        }
+        ks.close();
+
+        ks = KeyStore.openOrCreate(file, password);
+        Map<String, String> loaded = ks.getKeys();
+        assertEquals(keys, loaded);
+        ks.close();
+    }
+
+    @Test
+    public void largeKeystore_isCorrect() throws Exception {
+        String password = "keystore password";
+        File file = newKeyStoreFile();
+        String[] wifs = {
+                "3u4KKa4vdA1M2s2YVkjuBnVkdLVVgUkbp5ksnDtXZdQcaEoj8n",
+                "4jzj76fLAcJC7y58GzMUADGr9d7cP1Bs7BFMUY2ptgfbMY1iTA",
+                "4jwPFJaPMaLycRMzi7L3WidUx7GXzsPH9qknX2aEk68tTxhYNX",
+        };
+        int count = 20000;
+        HashMap<String, String> keys = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            keys.put("user" + i, wifs[i % wifs.length]);
+        }
+        KeyStore ks = KeyStore.openOrCreate(file, password);
+        ks.addKeys(keys);
+
+        // move all keys into indexed entries
+        ks.compact();
+        ks.close();
+
+        ks = KeyStore.openOrCreate(file, password);
+        assertEquals(count, ks.getAccounts().size());
+        assertEquals(wifs[1], ks.getKey("user1"));
+        assertEquals(wifs[(count - 1) % wifs.length], ks.getKey("user" + (count - 1)));
+        assertNull(ks.getKey("user" + count));
+
+        // changes on top of indexed entries
+        ks.removeKey("user1");
+        ks.addKey("user2", wifs[0]);
+        ks.addKey("alice", wifs[1]);
+        ks.close();
+
+        ks = KeyStore.openOrCreate(file, password);
+        assertEquals(count, ks.getAccounts().size());
+        assertNull(ks.getKey("user1"));
+        assertEquals(wifs[0], ks.getKey("user2"));
+        assertEquals(wifs[1], ks.getKey("alice"));
+        assertEquals(wifs[0], ks.getKey("user3"));
+        ks.close();
+    }
+
+    @Test
+    public void keyDerivation_isSalted() throws Exception {
+        String password = "keystore password";
+        File file1 = newKeyStoreFile(), file2 = newKeyStoreFile();
+        KeyStore.openOrCreate(file1, password).close();
+        KeyStore.openOrCreate(file2, password).close();
+
+        // magic, version, kdf, iterations and salt
+        byte[] header1 = Arrays.copyOf(Files.readAllBytes(file1.toPath()), 26);
+        byte[] header2 = Arrays.copyOf(Files.readAllBytes(file2.toPath()), 26);
+        assertArrayEquals(Arrays.copyOf(header1, 10), Arrays.copyOf(header2, 10));
+        assertFalse(Arrays.equals(header1, header2));
+
+        // writes use the key derived on open
+        KeyStore ks = KeyStore.openOrCreate(file1, password);
+        for (int i = 0; i < 100; i++) {
+            ks.addKey("user" + i, "3u4KKa4vdA1M2s2YVkjuBnVkdLVVgUkbp5ksnDtXZdQcaEoj8n");
+        }
+        ks.close();
+        ks = KeyStore.openOrCreate(file1, password);
+        assertEquals(100, ks.getAccounts().size());
+        ks.close();
+    }
+
+    @Test
+    public void writeBehind_isCorrect() throws Exception {
+        String password = "keystore password";
+        File file = newKeyStoreFile();
+        KeyStore ks = KeyStore.openOrCreate(file, password, new KeyStore.Options()
+                .setWriteBehind(1, TimeUnit.HOURS)
+                .setDurability(KeyStore.Durability.NO_SYNC));
+        long size = file.length();
+
+        // mutations take effect in memory, but not on disk
+        ks.addKey("alice", "3u4KKa4vdA1M2s2YVkjuBnVkdLVVgUkbp5ksnDtXZdQcaEoj8n");
+        ks.addKey("bob", "4jzj76fLAcJC7y58GzMUADGr9d7cP1Bs7BFMUY2ptgfbMY1iTA");
+        ks.removeKey("alice");
+        assertNull(ks.getKey("alice"));
+        assertEquals("4jzj76fLAcJC7y58GzMUADGr9d7cP1Bs7BFMUY2ptgfbMY1iTA", ks.getKey("bob"));
+        assertEquals(size, file.length());
+
+        // explicit flush
+        ks.flush();
+        assertTrue(file.length() > size);
+
+        // close flushes
+        ks.addKey("charlie", "4jwPFJaPMaLycRMzi7L3WidUx7GXzsPH9qknX2aEk68tTxhYNX");
+        ks.close();
+        ks = KeyStore.openOrCreate(file, password, new KeyStore.Options().setWriteBehind(10, TimeUnit.MILLISECONDS));
+        assertEquals(2, ks.getAccounts().size());
+        assertEquals("4jwPFJaPMaLycRMzi7L3WidUx7GXzsPH9qknX2aEk68tTxhYNX", ks.getKey("charlie"));
+
+        // background flush, coalescing with compactions
+        for (int i = 0; i < 1000; i++) {
+            ks.addKey("user" + (i % 50), "3u4KKa4vdA1M2s2YVkjuBnVkdLVVgUkbp5ksnDtXZdQcaEoj8n");
+        }
+        Thread.sleep(500);
+        size = file.length();
+        KeyStore ks2 = KeyStore.openOrCreate(file, password);
+        assertEquals(52, ks2.getAccounts().size());
+        ks2.close();
+        ks.close();
+        assertEquals(size, file.length());
+    }
+
+    // make writes of a keystore fail after writing half of their bytes while fail is set.
+    private static void injectWriteFailure(KeyStore ks, File file, final AtomicBoolean fail) throws Exception {
+        Field storeField = KeyStore.class.getDeclaredField("store");
+        storeField.setAccessible(true);
+        Object store = storeField.get(ks);
+        Field outputField = store.getClass().getDeclaredField("output");
+        outputField.setAccessible(true);
+        ((FileOutputStream) outputField.get(store)).close();
+        outputField.set(store, new FileOutputStream(file, true) {
+            @Override
+            public void write(byte[] b) throws IOException {
+                if (fail.get()) {
+                    super.write(b, 0, b.length / 2);
+                    throw new IOException("no space left on device");
+                }
+                super.write(b);
+            }
+        });
+    }
+
+    @Test
+    public void failedWrite_canBeRetried() throws Exception {
+        String password = "keystore password";
+        String wif = "3u4KKa4vdA1M2s2YVkjuBnVkdLVVgUkbp5ksnDtXZdQcaEoj8n";
+        AtomicBoolean fail = new AtomicBoolean();
+
+        // write-through: a failed mutation isn't applied.
+        File file = newKeyStoreFile();
+        KeyStore ks = KeyStore.openOrCreate(file, password);
+        ks.addKey("alice", wif);
+        injectWriteFailure(ks, file, fail);
+        fail.set(true);
+        try {
+            ks.addKey("bob", wif);
+            fail("failed write should be reported");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        assertNull(ks.getKey("bob"));
+        fail.set(false);
+        ks.addKey("charlie", wif);
+        ks.close();
+        ks = KeyStore.openOrCreate(file, password);
+        assertEquals(Arrays.asList("alice", "charlie"), sorted(ks.getAccounts()));
+        ks.close();
+
+        // write-behind: failed mutations stay pending, and a later flush writes them.
+        file = newKeyStoreFile();
+        ks = KeyStore.openOrCreate(file, password, new KeyStore.Options().setWriteBehind(1, TimeUnit.HOURS));
+        ks.addKey("alice", wif);
+        ks.flush();
+        injectWriteFailure(ks, file, fail);
+        fail.set(true);
+        ks.addKey("bob", wif);
+        try {
+            ks.flush();
+            fail("failed flush should be reported");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        // mutations are refused until a flush succeeds.
+        try {
+            ks.addKey("charlie", wif);
+            fail("mutation after a failed flush should be refused");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        assertEquals(wif, ks.getKey("bob"));
+        fail.set(false);
+        ks.flush();
+        ks.addKey("charlie", wif);
+        ks.close();
+        ks = KeyStore.openOrCreate(file, password);
+        assertEquals(Arrays.asList("alice", "bob", "charlie"), sorted(ks.getAccounts()));
+        ks.close();
+    }
+
+    @Test
+    public void compactions_doNotOverlap() throws Exception {
+        String password = "keystore password";
+        final String wif = "3u4KKa4vdA1M2s2YVkjuBnVkdLVVgUkbp5ksnDtXZdQcaEoj8n";
+        File file = newKeyStoreFile();
+        final KeyStore ks = KeyStore.openOrCreate(file, password);
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        // mutations cross the compaction threshold many times while compact() is called.
+        Thread mutator = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 2000; i++) {
+                        ks.addKey("user" + (i % 100), wif);
+                        if (i % 7 == 0) {
+                            ks.removeKey("user" + ((i + 50) % 100));
+                        }
+                    }
+                } catch (Throwable e) {
+                    error.set(e);
+                } finally {
+                    done.set(true);
+                }
+            }
+        });
+        mutator.start();
+        int compactions = 0;
+        while (!done.get()) {
+            ks.compact();
+            compactions++;
+        }
+        mutator.join();
+        assertNull(error.get());
+        assertTrue(compactions > 1);
+        ks.compact();
+        assertEquals(0, ks.compactionFailures());
+        HashMap<String, String> expected = new HashMap<>(ks.getKeys());
+        ks.addKey("alice", wif);
+        ks.close();
+
+        KeyStore reopened = KeyStore.openOrCreate(file, password);
+        expected.put("alice", wif);
+        assertEquals(expected, reopened.getKeys());
+        reopened.close();
+    }
+
+    @Test
+    public void failedCompaction_doesNotFailMutations() throws Exception {
+        String password = "keystore password";
+        String wif = "3u4KKa4vdA1M2s2YVkjuBnVkdLVVgUkbp5ksnDtXZdQcaEoj8n";
+        File file = newKeyStoreFile();
+        KeyStore ks = KeyStore.openOrCreate(file, password);
+        // compactions can't create their temporary file
+        File tmp = new File(file.getPath() + ".tmp");
+        assertTrue(tmp.mkdir());
+        for (int i = 0; i < 100; i++) {
+            ks.addKey("user" + i, wif);
+        }
+        for (int i = 0; i < 100 && ks.compactionFailures() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, ks.compactionFailures());
+        // mutations go on, and compactions are retried after more of them.
+        for (int i = 100; i < 300; i++) {
+            ks.addKey("user" + i, wif);
+        }
+        Thread.sleep(200);
+        long failures = ks.compactionFailures();
+        assertTrue(failures > 1 && failures <= 300 / 64);
+
+        assertTrue(tmp.delete());
+        ks.compact();
+        assertEquals(failures, ks.compactionFailures());
+        ks.close();
+        ks = KeyStore.openOrCreate(file, password);
+        assertEquals(300, ks.getAccounts().size());
+        ks.close();
+    }
+
+    private static List<String> sorted(List<String> list) {
+        List<String> copy = new ArrayList<>(list);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    @Test
+    public void concurrentReads_isCorrect() throws Exception {
+        final String wif = "3u4KKa4vdA1M2s2YVkjuBnVkdLVVgUkbp5ksnDtXZdQcaEoj8n";
+        final KeyStore ks = KeyStore.openOrCreate(newKeyStoreFile(), "keystore password",
+                new KeyStore.Options().setWriteBehind(5, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < 100; i++) {
+            ks.addKey("user" + i, wif);
+        }
+
+        // readers keep looking up keys while a writer keeps changing other keys.
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicInteger errors = new AtomicInteger();
+        final AtomicLong reads = new AtomicLong();
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread() {
+                @Override
+                public void run() {
+                    long n = 0;
+                    while (!stop.get()) {
+                        String key = ks.getKey("user" + (n % 100));
+                        String other = ks.getKey("temp" + (n % 10));
+                        if (!wif.equals(key) || (other != null && !wif.equals(other))) {
+                            errors.incrementAndGet();
+                        }
+                        n++;
+                    }
+                    reads.addAndGet(n);
+                }
+            };
+            readers[t].start();
+        }
+        for (int i = 0; i < 2000; i++) {
+            if (i % 2 == 0) {
+                ks.addKey("temp" + (i % 10), wif);
+            } else {
+                ks.removeKey("temp" + (i % 10));
+            }
+        }
+        stop.set(true);
+        for (Thread t : readers) {
+            t.join();
+        }
+        ks.close();
+        assertEquals(0, errors.get());
+        assertTrue(reads.get() > 0);
+    }
+
+    @Test
+    public void publicKeyIndex_isCorrect() throws Exception {
+        String password = "keystore password";
+        File file = newKeyStoreFile();
+        KeyStore ks = KeyStore.openOrCreate(file, password);
+        HashMap<String, String> keys = new HashMap<>();
+        for (int i = 0; i < 200; i++) {
+            keys.put("user" + i, WIF.fromPrivateKey(Key.generate()));
+        }
+        ks.addKeys(keys);
+        ks.addKey("alice", keys.get("user0"));
+        ks.removeKey("user1");
+
+        // wait for background compaction, then make changes in the log.
+        Thread.sleep(500);
+        ks.addKey("bob", keys.get("user2"));
+        ks.addKey("user3", keys.get("user4"));
+        ks.removeKey("user5");
+
+        for (int r = 0; r < 2; r++) {
+            String pub0 = WIF.fromPublicKey(Key.publicKeyOf(WIF.toPrivateKey(keys.get("user0"))));
+            assertEquals(pub0, ks.getPublicKey("user0"));
+            assertEquals(pub0, ks.getPublicKey("alice"));
+            assertTrue(Arrays.asList("user0", "alice").contains(ks.getAccountByPublicKey(pub0)));
+
+            String pub1 = WIF.fromPublicKey(Key.publicKeyOf(WIF.toPrivateKey(keys.get("user1"))));
+            assertNull(ks.getPublicKey("user1"));
+            assertNull(ks.getAccountByPublicKey(pub1));
+
+            String pub2 = WIF.fromPublicKey(Key.publicKeyOf(WIF.toPrivateKey(keys.get("user2"))));
+            assertTrue(Arrays.asList("user2", "bob").contains(ks.getAccountByPublicKey(pub2)));
+
+            String pub3 = WIF.fromPublicKey(Key.publicKeyOf(WIF.toPrivateKey(keys.get("user3"))));
+            String pub4 = WIF.fromPublicKey(Key.publicKeyOf(WIF.toPrivateKey(keys.get("user4"))));
+            assertNull(ks.getAccountByPublicKey(pub3));
+            assertEquals(pub4, ks.getPublicKey("user3"));
+            assertTrue(Arrays.asList("user3", "user4").contains(ks.getAccountByPublicKey(pub4)));
+
+            String pub5 = WIF.fromPublicKey(Key.publicKeyOf(WIF.toPrivateKey(keys.get("user5"))));
+            assertNull(ks.getAccountByPublicKey(pub5));
+            assertEquals(ks.getAccounts().size(), 200);
+
+            // public keys are persisted
+            ks.close();
+            ks = KeyStore.openOrCreate(file, password);
+        }
+        ks.close();
+    }
 }
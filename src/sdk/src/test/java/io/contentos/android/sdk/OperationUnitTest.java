@@ -0,0 +1,53 @@
+package io.contentos.android.sdk;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+import io.contentos.android.sdk.encoding.Zlib;
+import io.contentos.android.sdk.prototype.Operation.contract_deploy_operation;
+import io.contentos.android.sdk.rpc.Operation;
+
+import static org.junit.Assert.*;
+
+public class OperationUnitTest {
+
+    @Test
+    public void contractDeploy_fromFiles_isCorrect() throws Exception {
+        String abi = "{\"version\":\"cosio::abi/1.0\",\"types\":[],\"structs\":[{\"name\":\"hi\",\"base\":\"\",\"fields\":[{\"name\":\"user\",\"type\":\"string\"}]}]}";
+        byte[] code = new byte[3 << 20];
+        new Random(1).nextBytes(code);
+
+        File dir = Files.createTempDirectory("contractTestDir").toFile();
+        File abiFile = new File(dir, "hello.abi");
+        File codeFile = new File(dir, "hello.wasm");
+        FileOutputStream out = new FileOutputStream(abiFile);
+        out.write(abi.getBytes("UTF-8"));
+        out.close();
+        out = new FileOutputStream(codeFile);
+        out.write(code);
+        out.close();
+
+        Operation.OperationCreator creator = new Operation.OperationCreator();
+        contract_deploy_operation fromBytes = creator.contractDeploy("alice", "hello", abi, code, true, "url", "desc").getOp13();
+        contract_deploy_operation fromFiles = creator.contractDeploy("alice", "hello", abiFile, codeFile, true, "url", "desc").getOp13();
+        contract_deploy_operation fromStreams = creator.contractDeploy("alice", "hello",
+                new ByteArrayInputStream(abi.getBytes("UTF-8")), new ByteArrayInputStream(code),
+                true, "url", "desc").getOp13();
+
+        for (contract_deploy_operation op : new contract_deploy_operation[]{fromBytes, fromFiles, fromStreams}) {
+            assertEquals(abi, Zlib.decompressString(op.getAbi().toByteArray()));
+            assertArrayEquals(code, Zlib.decompress(op.getCode().toByteArray()));
+            assertEquals("hello", op.getContract());
+
+            // random code is incompressible and should be stored with little overhead
+            assertTrue(op.getCode().size() < code.length + code.length / 1000);
+        }
+        assertEquals(fromBytes, fromFiles);
+        assertEquals(fromBytes, fromStreams);
+    }
+}
@@ -0,0 +1,81 @@
+package io.contentos.android.sdk;
+
+import com.google.common.base.Function;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+import java.util.List;
+
+import io.contentos.android.sdk.rpc.ApiServiceGrpc;
+import io.contentos.android.sdk.rpc.Grpc.AccountResponse;
+import io.contentos.android.sdk.rpc.Grpc.GetAccountListResponse;
+import io.contentos.android.sdk.rpc.RangeScan;
+import io.contentos.android.sdk.rpc.RpcClient;
+import io.contentos.android.sdk.rpc.RpcResultPages;
+
+public class RangeScanUnitTest {
+
+    private static RangeScan<GetAccountListResponse, AccountResponse> scan(final RpcClient client, long min, long max, int partitions) {
+        return new RangeScan<>(min, max, partitions,
+                new RangeScan.Lister<GetAccountListResponse>() {
+                    @Override
+                    public RpcResultPages<GetAccountListResponse, ?, ?> list(long min, long max) {
+                        return client.getAccountListByBalance(min, max, 10);
+                    }
+                },
+                new Function<GetAccountListResponse, List<AccountResponse>>() {
+                    @Override
+                    public List<AccountResponse> apply(GetAccountListResponse resp) {
+                        return resp.getListList();
+                    }
+                });
+    }
+
+    @Test
+    public void split_coversRange() {
+        assertArrayEquals(new long[]{100, 75, 50, 25, 0}, RangeScan.split(0, 100, 4));
+        assertArrayEquals(new long[]{10, 7, 4, 1}, RangeScan.split(1, 10, 3));
+        assertArrayEquals(new long[]{3, 2, 1}, RangeScan.split(1, 3, 8));
+        assertArrayEquals(new long[]{5, 5}, RangeScan.split(5, 5, 8));
+        long[] bounds = RangeScan.split(Long.MIN_VALUE, Long.MAX_VALUE, 4);
+        assertEquals(Long.MAX_VALUE, bounds[0]);
+        assertEquals(Long.MIN_VALUE, bounds[4]);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(bounds[i] > bounds[i + 1]);
+        }
+    }
+
+    @Test
+    public void partitions_areQueriedInParallel() throws Exception {
+        FakeNode node = new FakeNode(50);
+        try {
+            node.accountCount = 200;
+            RpcClient client = new RpcClient(ApiServiceGrpc.newBlockingStub(node.channel()), "test");
+
+            // the first pages of all partitions are queried at once.
+            node.hold();
+            Iterator<AccountResponse> it = scan(client, 0, 200, 4).iterator();
+            assertTrue(node.awaitInFlight(4, 10000));
+            node.release();
+
+            long expected = 200;
+            while (it.hasNext()) {
+                assertEquals(expected--, it.next().getInfo().getCoin().getValue());
+            }
+            assertEquals(0, expected);
+            // pages of a partition are queried one after another
+            assertEquals(4, node.maxInFlight.get());
+
+            // ranges without items
+            int count = 0;
+            for (AccountResponse a : scan(client, 150, 1000, 4)) {
+                count++;
+            }
+            assertEquals(50, count);
+        } finally {
+            node.close();
+        }
+    }
+}
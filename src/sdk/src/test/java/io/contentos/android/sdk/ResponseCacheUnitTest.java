@@ -0,0 +1,193 @@
+package io.contentos.android.sdk;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import io.contentos.android.sdk.crypto.Key;
+import io.contentos.android.sdk.encoding.WIF;
+import io.contentos.android.sdk.rpc.ApiServiceGrpc;
+import io.contentos.android.sdk.rpc.ResponseCache;
+import io.contentos.android.sdk.rpc.RpcClient;
+import io.contentos.android.sdk.rpc.Transaction;
+
+public class ResponseCacheUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static RpcClient client(FakeNode node, ResponseCache cache) {
+        return new RpcClient(
+                ApiServiceGrpc.newBlockingStub(node.channel()).withInterceptors(cache),
+                WIF.fromPrivateKey(Key.generate()), "test");
+    }
+
+    private static int blockTime(RpcClient client, long blockNum) {
+        return client.getSignedBlock(blockNum).getBlock().getSignedHeader().getHeader().getTimestamp().getUtcSeconds();
+    }
+
+    @Test
+    public void irreversibleBlocks_areCached() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            node.lastIrreversible = 100;
+            ResponseCache cache = new ResponseCache();
+            RpcClient client = client(node, cache);
+
+            // the last irreversible block is unknown yet, it's queried in background.
+            assertEquals(50, blockTime(client, 50));
+            Thread.sleep(100);
+            assertEquals(1, node.chainStateCalls.get());
+            assertEquals(50, blockTime(client, 50));
+            int calls = node.blockCalls.get();
+            assertEquals(50, blockTime(client, 50));
+            assertEquals(calls, node.blockCalls.get());
+            assertTrue(cache.hits() > 0);
+
+            // reversible blocks are never cached
+            assertEquals(150, blockTime(client, 150));
+            assertEquals(150, blockTime(client, 150));
+            assertEquals(calls + 2, node.blockCalls.get());
+
+            // chain state responses update the last irreversible block
+            node.lastIrreversible = 200;
+            client.getChainState();
+            assertEquals(150, blockTime(client, 150));
+            assertEquals(150, blockTime(client, 150));
+            assertEquals(calls + 3, node.blockCalls.get());
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void irreversibleTransactions_areCached() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            ResponseCache cache = new ResponseCache();
+            RpcClient client = client(node, cache);
+            client.transfer("alice", "bob", 1, "");
+            byte[] id = Transaction.idOf(node.broadcasts.get(0));
+
+            assertFalse(client.getTrxInfoById(id).getInfo().getBlkIsIrreversible());
+            assertFalse(client.getTrxInfoById(id).getInfo().getBlkIsIrreversible());
+            assertEquals(2, node.trxInfoCalls.get());
+
+            node.irreversible = true;
+            assertTrue(client.getTrxInfoById(id).getInfo().getBlkIsIrreversible());
+            assertTrue(client.getTrxInfoById(id).getInfo().getBlkIsIrreversible());
+            assertEquals(3, node.trxInfoCalls.get());
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void incompleteBlockLists_areNotCached() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            node.lastIrreversible = 100;
+            ResponseCache cache = new ResponseCache();
+            RpcClient client = client(node, cache);
+            client.getChainState();
+
+            // a node lagging behind
+            node.maxBlock = 0;
+            assertEquals(0, client.getBlockList(1, 10, 10).getBlocksCount());
+            node.maxBlock = 5;
+            assertEquals(5, client.getBlockList(1, 10, 10).getBlocksCount());
+            assertEquals(5, client.getBlockList(1, 10, 10).getBlocksCount());
+            assertEquals(3, node.blockListCalls.get());
+
+            node.maxBlock = Long.MAX_VALUE;
+            assertEquals(10, client.getBlockList(1, 10, 10).getBlocksCount());
+            assertEquals(10, client.getBlockList(1, 10, 10).getBlocksCount());
+            assertEquals(3, client.getBlockList(1, 10, 3).getBlocksCount());
+            assertEquals(3, client.getBlockList(1, 10, 3).getBlocksCount());
+            assertEquals(5, node.blockListCalls.get());
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsed_isEvicted() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            node.lastIrreversible = 1000;
+            ResponseCache cache = new ResponseCache(1000);
+            RpcClient client = client(node, cache);
+            client.getChainState();
+            for (int i = 1; i <= 20; i++) {
+                blockTime(client, i);
+            }
+            assertEquals(20, node.blockCalls.get());
+            assertEquals(20, blockTime(client, 20));
+            assertEquals(20, node.blockCalls.get());
+            assertEquals(1, blockTime(client, 1));
+            assertEquals(21, node.blockCalls.get());
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void persistentTier_survivesRestart() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            node.lastIrreversible = 1000;
+            File dir = folder.newFolder("cache");
+            ResponseCache cache = new ResponseCache();
+            cache.openPersistentTier(dir, 1024 * 1024);
+            RpcClient client = client(node, cache);
+            client.getChainState();
+            for (int i = 1; i <= 5; i++) {
+                blockTime(client, i);
+            }
+            // files are written in background
+            for (int i = 0; i < 100 && dir.list().length < 5; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(5, dir.list().length);
+
+            ResponseCache restarted = new ResponseCache();
+            restarted.openPersistentTier(dir, 1024 * 1024);
+            client = client(node, restarted);
+            assertEquals(3, blockTime(client, 3));
+            assertEquals(5, node.blockCalls.get());
+            assertEquals(1, restarted.hits());
+            assertEquals(0, cache.writeFailures());
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void failedWrites_areCounted() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            node.lastIrreversible = 1000;
+            File dir = folder.newFolder("cache");
+            ResponseCache cache = new ResponseCache();
+            cache.openPersistentTier(dir, 1024 * 1024);
+            assertTrue(dir.delete());
+            RpcClient client = client(node, cache);
+            client.getChainState();
+            blockTime(client, 1);
+            // files are written in background
+            for (int i = 0; i < 100 && cache.writeFailures() == 0; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, cache.writeFailures());
+
+            // still cached in memory
+            assertEquals(1, blockTime(client, 1));
+            assertEquals(1, node.blockCalls.get());
+        } finally {
+            node.close();
+        }
+    }
+}
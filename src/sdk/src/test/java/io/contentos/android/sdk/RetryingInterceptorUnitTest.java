@@ -0,0 +1,167 @@
+package io.contentos.android.sdk;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import io.contentos.android.sdk.crypto.Key;
+import io.contentos.android.sdk.encoding.WIF;
+import io.contentos.android.sdk.rpc.ApiServiceGrpc;
+import io.contentos.android.sdk.rpc.BalancedChannel;
+import io.contentos.android.sdk.rpc.RetryingInterceptor;
+import io.contentos.android.sdk.rpc.RpcClient;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+
+public class RetryingInterceptorUnitTest {
+
+    private static RpcClient client(FakeNode node, RetryingInterceptor.Policy policy) {
+        return new RpcClient(
+                ApiServiceGrpc.newBlockingStub(node.channel()).withInterceptors(new RetryingInterceptor(policy)),
+                WIF.fromPrivateKey(Key.generate()), "test");
+    }
+
+    @Test
+    public void unavailableQueries_areRetried() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            RpcClient client = client(node, new RetryingInterceptor.Policy()
+                    .setHedging(false)
+                    .setBackoff(10, 50, TimeUnit.MILLISECONDS));
+            node.unavailable.set(2);
+            assertEquals("alice", client.getAccountByName("alice").getInfo().getAccountName().getValue());
+            assertEquals(3, node.accountCalls.get());
+
+            node.unavailable.set(3);
+            try {
+                client.getAccountByName("alice");
+                fail("error expected");
+            } catch (StatusRuntimeException e) {
+                assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+            }
+            assertEquals(6, node.accountCalls.get());
+
+            // other errors are final
+            try {
+                client.getAccountByName("");
+                fail("error expected");
+            } catch (StatusRuntimeException e) {
+                assertEquals(Status.Code.INVALID_ARGUMENT, e.getStatus().getCode());
+            }
+            assertEquals(7, node.accountCalls.get());
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void failedOverQueries_areNotRetried() throws Exception {
+        FakeNode a = new FakeNode(0), b = new FakeNode(0);
+        BalancedChannel channel = new BalancedChannel(Arrays.asList(a.channel(), b.channel()));
+        try {
+            RpcClient client = new RpcClient(
+                    ApiServiceGrpc.newBlockingStub(channel).withInterceptors(new RetryingInterceptor(
+                            new RetryingInterceptor.Policy()
+                                    .setHedging(false)
+                                    .setBackoff(10, 50, TimeUnit.MILLISECONDS))),
+                    WIF.fromPrivateKey(Key.generate()), "test");
+            a.unavailable.set(1);
+            b.unavailable.set(1);
+            try {
+                client.getAccountByName("alice");
+                fail("error expected");
+            } catch (StatusRuntimeException e) {
+                assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+            }
+            // one attempt per node, by the channel
+            assertEquals(1, a.accountCalls.get());
+            assertEquals(1, b.accountCalls.get());
+        } finally {
+            channel.shutdownNow();
+            a.close();
+            b.close();
+        }
+    }
+
+    @Test
+    public void slowQueries_areHedged() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            RpcClient client = client(node, new RetryingInterceptor.Policy()
+                    .setHedging(true)
+                    .setMinHedgingDelay(50, TimeUnit.MILLISECONDS));
+            node.nextDelays.add(2000L);
+            long t = System.nanoTime();
+            client.getAccountByName("alice");
+            long millis = (System.nanoTime() - t) / 1000000;
+            assertTrue(millis < 1000);
+            assertEquals(2, node.accountCalls.get());
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void queries_areHedgedOnce() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            RpcClient client = client(node, new RetryingInterceptor.Policy()
+                    .setHedging(true)
+                    .setMaxAttempts(3)
+                    .setMinHedgingDelay(20, TimeUnit.MILLISECONDS));
+            node.nextDelays.add(300L);
+            node.nextDelays.add(300L);
+            client.getAccountByName("alice");
+            assertEquals(2, node.accountCalls.get());
+
+            // not hedged by default
+            client = client(node, new RetryingInterceptor.Policy());
+            node.nextDelays.add(300L);
+            client.getAccountByName("alice");
+            assertEquals(3, node.accountCalls.get());
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void queries_haveDeadline() throws Exception {
+        FakeNode node = new FakeNode(2000);
+        try {
+            RpcClient client = client(node, new RetryingInterceptor.Policy()
+                    .setHedging(false)
+                    .setDeadline(200, TimeUnit.MILLISECONDS));
+            long t = System.nanoTime();
+            try {
+                client.getAccountByName("alice");
+                fail("error expected");
+            } catch (StatusRuntimeException e) {
+                assertEquals(Status.Code.DEADLINE_EXCEEDED, e.getStatus().getCode());
+            }
+            assertTrue((System.nanoTime() - t) / 1000000 < 1000);
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void transactions_areNotRetried() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            RpcClient client = client(node, new RetryingInterceptor.Policy());
+            node.unavailable.set(1);
+            try {
+                client.transfer("alice", "bob", 1, "");
+                fail("error expected");
+            } catch (StatusRuntimeException e) {
+                assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+            }
+            assertEquals(0, node.broadcasts.size());
+            assertEquals(0, node.unavailable.get());
+        } finally {
+            node.close();
+        }
+    }
+}
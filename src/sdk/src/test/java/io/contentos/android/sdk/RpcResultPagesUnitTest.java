@@ -0,0 +1,172 @@
+package io.contentos.android.sdk;
+
+import com.google.common.base.Function;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import io.contentos.android.sdk.rpc.ApiServiceGrpc;
+import io.contentos.android.sdk.rpc.AsyncRpcClient;
+import io.contentos.android.sdk.prototype.Type;
+import io.contentos.android.sdk.rpc.Grpc.AccountInfo;
+import io.contentos.android.sdk.rpc.Grpc.AccountResponse;
+import io.contentos.android.sdk.rpc.Grpc.GetAccountListResponse;
+import io.contentos.android.sdk.rpc.RpcClient;
+import io.contentos.android.sdk.rpc.RpcResultPages;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+
+public class RpcResultPagesUnitTest {
+
+    private static final Function<GetAccountListResponse, List<AccountResponse>> accounts = new Function<GetAccountListResponse, List<AccountResponse>>() {
+        @Override
+        public List<AccountResponse> apply(GetAccountListResponse resp) {
+            return resp.getListList();
+        }
+    };
+
+    @Test
+    public void items_coverAllPages() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            node.accountCount = 95;
+            RpcClient client = new RpcClient(ApiServiceGrpc.newBlockingStub(node.channel()), "test");
+            List<Long> balances = new ArrayList<>();
+            for (AccountResponse a : client.getAccountListByBalance(0, 1000, 10).items(accounts)) {
+                balances.add(a.getInfo().getCoin().getValue());
+            }
+            assertEquals(95, balances.size());
+            for (int i = 0; i < balances.size(); i++) {
+                assertEquals(95 - i, (long) balances.get(i));
+            }
+            // 10 pages and the empty one
+            assertEquals(11, node.listCalls.get());
+
+            // asynchronous clients too
+            AsyncRpcClient async = new AsyncRpcClient(ApiServiceGrpc.newFutureStub(node.channel()), null, "test");
+            int count = 0;
+            for (AccountResponse a : async.getAccountListByBalance(50, 1000, 7).items(accounts, 3)) {
+                assertEquals(95 - count, a.getInfo().getCoin().getValue());
+                count++;
+            }
+            assertEquals(45, count);
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void prefetch_queriesPagesAhead() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            node.accountCount = 100;
+            RpcClient client = new RpcClient(ApiServiceGrpc.newBlockingStub(node.channel()), "test");
+            Iterator<AccountResponse> it = client.getAccountListByBalance(0, 1000, 10).items(accounts, 2).iterator();
+            assertEquals(100, it.next().getInfo().getCoin().getValue());
+
+            // while the first page is consumed, the next 2 pages are queried in background.
+            for (int i = 0; i < 10000 && node.listCalls.get() < 3; i++) {
+                Thread.sleep(1);
+            }
+            assertEquals(3, node.listCalls.get());
+
+            int count = 1;
+            while (it.hasNext()) {
+                assertEquals(100 - count, it.next().getInfo().getCoin().getValue());
+                count++;
+            }
+            assertEquals(100, count);
+            // 10 pages and the empty one
+            assertEquals(11, node.listCalls.get());
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void failedPage_isThrown() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            node.accountCount = 30;
+            RpcClient client = new RpcClient(ApiServiceGrpc.newBlockingStub(node.channel()), "test");
+            node.unavailable.set(1);
+            Iterator<AccountResponse> it = client.getAccountListByBalance(0, 1000, 10).items(accounts).iterator();
+            try {
+                it.hasNext();
+                fail("error expected");
+            } catch (StatusRuntimeException e) {
+                assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+            }
+        } finally {
+            node.close();
+        }
+    }
+
+    private static long firstBalance(GetAccountListResponse page) {
+        return page.getList(0).getInfo().getCoin().getValue();
+    }
+
+    @Test
+    public void forwardOnly_keepsNoHistory() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            node.accountCount = 50;
+            RpcClient client = new RpcClient(ApiServiceGrpc.newBlockingStub(node.channel()), "test");
+            RpcResultPages<GetAccountListResponse, Type.coin, AccountInfo> pages = client.getAccountListByBalance(0, 1000, 10).forwardOnly();
+            for (int i = 0; i < 5; i++) {
+                assertEquals(50 - i * 10, firstBalance(pages.nextPage()));
+            }
+            assertNull(pages.nextPage());
+            assertEquals(4, pages.currentPage());
+            assertNull(pages.prevPage());
+            assertNull(pages.toPage(0));
+            assertEquals(6, node.listCalls.get());
+        } finally {
+            node.close();
+        }
+    }
+
+    @Test
+    public void checkpoints_rederivePages() throws Exception {
+        FakeNode node = new FakeNode(0);
+        try {
+            node.accountCount = 100;
+            RpcClient client = new RpcClient(ApiServiceGrpc.newBlockingStub(node.channel()), "test");
+            RpcResultPages<GetAccountListResponse, Type.coin, AccountInfo> pages = client.getAccountListByBalance(0, 1000, 10).keepCheckpoints(3);
+            for (int i = 0; i < 8; i++) {
+                pages.nextPage();
+            }
+            assertEquals(8, node.listCalls.get());
+
+            // page 4 is queried from checkpoint 3
+            assertEquals(60, firstBalance(pages.toPage(4)));
+            assertEquals(10, node.listCalls.get());
+            assertEquals(70, firstBalance(pages.prevPage()));
+            assertEquals(11, node.listCalls.get());
+            // the page after current one is always kept
+            assertEquals(60, firstBalance(pages.toPageAsync(4).get()));
+            assertEquals(12, node.listCalls.get());
+            // page 2 is queried from checkpoint 0
+            assertEquals(80, firstBalance(pages.toPageAsync(2).get()));
+            assertEquals(15, node.listCalls.get());
+            assertEquals(2, pages.currentPage());
+            assertEquals(70, firstBalance(pages.nextPage()));
+            assertEquals(16, node.listCalls.get());
+
+            // all pages are kept by default
+            pages = client.getAccountListByBalance(0, 1000, 10);
+            for (int i = 0; i < 5; i++) {
+                pages.nextPage();
+            }
+            int calls = node.listCalls.get();
+            assertEquals(80, firstBalance(pages.toPage(2)));
+            assertEquals(calls + 1, node.listCalls.get());
+        } finally {
+            node.close();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package io.contentos.android.sdk;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import io.contentos.android.sdk.encoding.Zlib;
+import io.contentos.android.sdk.encoding.ZlibCodec;
+
+/**
+ * Compressed size and time per call of a synthetic ABI/code corpus, at each compression level,
+ * with and without the incompressible skip path and the ABI dictionary.
+ *
+ * <p>It's not part of unit tests, run its {@code main} method by hand.</p>
+ */
+public class ZlibBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Random r = new Random(29);
+        byte[][] corpus = {
+                ZlibUnitTest.testAbi(2, false, r).getBytes("UTF-8"),
+                ZlibUnitTest.testAbi(10, true, r).getBytes("UTF-8"),
+                ZlibUnitTest.testAbi(60, true, r).getBytes("UTF-8"),
+                ZlibUnitTest.testData(200000, true),
+                ZlibUnitTest.testData(200000, false),
+        };
+        String[] names = {"abi-small", "abi-medium", "abi-large", "code-text", "code-random"};
+        byte[] dict = Zlib.abiDictionary();
+        System.out.println(String.format(Locale.US, "%-12s %8s %-10s %8s %10s", "payload", "plain", "setting", "packed", "us/op"));
+        for (int i = 0; i < corpus.length; i++) {
+            byte[] data = corpus[i];
+            for (int level : new int[]{Deflater.BEST_SPEED, Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION}) {
+                for (int mode = 0; mode < 3; mode++) {
+                    ZlibCodec codec = ZlibCodec.obtain();
+                    try {
+                        codec.setLevel(level).setSkipIncompressible(mode == 1).setDictionary(mode == 2 ? dict : null);
+                        int rounds = Math.max(3, 2000000 / (data.length + 1000));
+                        byte[] packed = codec.compress(data, 0, data.length);
+                        long start = System.nanoTime();
+                        for (int k = 0; k < rounds; k++) {
+                            packed = codec.compress(data, 0, data.length);
+                        }
+                        long micros = (System.nanoTime() - start) / 1000 / rounds;
+                        String setting = "L" + level + (mode == 1 ? "+skip" : mode == 2 ? "+dict" : "");
+                        System.out.println(String.format(Locale.US, "%-12s %8d %-10s %8d %10d", names[i], data.length, setting, packed.length, micros));
+                        if (!Arrays.equals(data, codec.decompress(packed, 0, packed.length, data.length))) {
+                            throw new AssertionError("round trip failed: " + names[i] + " " + setting);
+                        }
+                    } finally {
+                        codec.close();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package io.contentos.android.sdk;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+import io.contentos.android.sdk.encoding.Zlib;
+import io.contentos.android.sdk.encoding.ZlibCodec;
+
+import static org.junit.Assert.*;
+
+public class ZlibUnitTest {
+
+    static byte[] testData(int size, boolean compressible) {
+        byte[] data = new byte[size];
+        Random r = new Random(size);
+        if (compressible) {
+            byte[] words = "contract abi json name type inputs outputs ".getBytes();
+            for (int i = 0; i < size; i++) {
+                data[i] = words[(i + r.nextInt(3)) % words.length];
+            }
+        } else {
+            r.nextBytes(data);
+        }
+        return data;
+    }
+
+    @Test
+    public void compress_isCorrect() {
+        for (int size : new int[]{0, 1, 100, 4096, 100000, 1 << 20}) {
+            for (boolean compressible : new boolean[]{true, false}) {
+                byte[] data = testData(size, compressible);
+                byte[] compressed = Zlib.compress(data);
+                assertArrayEquals(data, Zlib.decompress(compressed));
+                assertArrayEquals(data, Zlib.decompress(compressed, size));
+                assertArrayEquals(data, Zlib.decompress(compressed, 1));
+            }
+        }
+        assertEquals("hello, contentos", Zlib.decompressString(Zlib.compressString("hello, contentos")));
+    }
+
+    @Test
+    public void streaming_isCorrect() throws Exception {
+        byte[] data = testData(300000, true);
+        ZlibCodec codec = ZlibCodec.obtain();
+        try {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            long n = codec.compress(new ByteArrayInputStream(data), compressed);
+            assertEquals(compressed.size(), n);
+            assertArrayEquals(data, Zlib.decompress(compressed.toByteArray()));
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+            direct.put(data).flip();
+            compressed.reset();
+            codec.compress(direct, compressed);
+            assertFalse(direct.hasRemaining());
+
+            ByteArrayOutputStream plain = new ByteArrayOutputStream();
+            assertEquals(data.length, codec.decompress(new ByteArrayInputStream(compressed.toByteArray()), plain));
+            assertArrayEquals(data, plain.toByteArray());
+
+            assertArrayEquals(data, Zlib.decompress(codec.compress(ByteBuffer.wrap(data))));
+        } finally {
+            codec.close();
+        }
+    }
+
+    @Test
+    public void compress_sameOutputForAllSources() throws Exception {
+        for (int size : new int[]{100, 16384, 300000}) {
+            for (boolean compressible : new boolean[]{true, false}) {
+                byte[] data = testData(size, compressible);
+                byte[][] results = new byte[3][];
+                for (int i = 0; i < results.length; i++) {
+                    ZlibCodec codec = ZlibCodec.obtain();
+                    try {
+                        codec.setLevel(Deflater.BEST_COMPRESSION).setSkipIncompressible(true);
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        if (i == 0) {
+                            codec.compress(ByteBuffer.wrap(data), out);
+                        } else if (i == 1) {
+                            ByteBuffer direct = ByteBuffer.allocateDirect(size);
+                            direct.put(data).flip();
+                            codec.compress(direct, out);
+                        } else {
+                            // a stream returning a few bytes per read
+                            codec.compress(new ByteArrayInputStream(data) {
+                                @Override
+                                public synchronized int read(byte[] b, int off, int len) {
+                                    return super.read(b, off, Math.min(len, 1000));
+                                }
+                            }, out);
+                        }
+                        results[i] = out.toByteArray();
+                    } finally {
+                        codec.close();
+                    }
+                }
+                assertArrayEquals(results[0], results[1]);
+                assertArrayEquals(results[0], results[2]);
+            }
+        }
+    }
+
+    @Test
+    public void expectedSize_isExactOrGrown() throws Exception {
+        ZlibCodec codec = ZlibCodec.obtain();
+        try {
+            for (int size : new int[]{1, 100, 65536, 300000}) {
+                byte[] data = testData(size, true);
+                byte[] compressed = codec.compress(data, 0, data.length);
+                // the end of stream is read after output is full
+                byte[] exact = codec.decompress(compressed, 0, compressed.length, size);
+                assertEquals(size, exact.length);
+                assertArrayEquals(data, exact);
+                for (int expected : new int[]{size - 1, size / 3 + 1, size + 1}) {
+                    assertArrayEquals(data, codec.decompress(compressed, 0, compressed.length, Math.max(expected, 1)));
+                }
+            }
+            try {
+                byte[] compressed = codec.compress(testData(1000, true), 0, 1000);
+                codec.decompress(compressed, 0, compressed.length - 2, 1000);
+                fail("truncated stream should be rejected");
+            } catch (DataFormatException e) {
+                // expected
+            }
+        } finally {
+            codec.close();
+        }
+    }
+
+    @Test
+    public void invalidInput_isRejected() {
+        byte[] compressed = Zlib.compress(testData(10000, false));
+        assertNull(Zlib.decompress(Arrays.copyOf(compressed, compressed.length / 2)));
+        assertNull(Zlib.decompress(testData(100, false)));
+        assertNull(Zlib.decompress(new byte[0]));
+    }
+
+    @Test
+    public void pool_isReused() {
+        ZlibCodec codec = ZlibCodec.obtain();
+        codec.close();
+        assertSame(codec, ZlibCodec.obtain());
+        codec.close();
+        try {
+            codec.compress(new byte[1], 0, 1);
+            fail("closed codec should not be usable");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        ZlibCodec.clearPool();
+    }
+
+    // a made-up but realistic contract ABI.
+    static String testAbi(int structs, boolean pretty, Random r) {
+        String[] types = {"string", "uint64", "uint32", "bool", "name", "int64"};
+        String nl = pretty ? "\n" : "";
+        String ind = pretty ? "  " : "";
+        String sep = pretty ? ": " : ":";
+        StringBuilder b = new StringBuilder();
+        b.append("{").append(nl).append(ind).append("\"version\"").append(sep).append("\"cosio::abi/1.0\",").append(nl);
+        b.append(ind).append("\"types\"").append(sep).append("[],").append(nl);
+        b.append(ind).append("\"structs\"").append(sep).append("[").append(nl);
+        for (int i = 0; i < structs; i++) {
+            b.append(ind).append(ind).append("{\"name\"").append(sep).append("\"st").append(Long.toString(r.nextLong() & 0xffff, 36))
+                    .append("\",\"base\"").append(sep).append("\"\",\"fields\"").append(sep).append("[");
+            int fields = 1 + r.nextInt(5);
+            for (int j = 0; j < fields; j++) {
+                b.append(j > 0 ? "," : "").append(nl).append(ind).append(ind).append(ind)
+                        .append("{\"name\"").append(sep).append("\"f").append(Integer.toString(r.nextInt(1000), 36))
+                        .append("\",\"type\"").append(sep).append("\"").append(types[r.nextInt(types.length)]).append("\"}");
+            }
+            b.append("]}").append(i + 1 < structs ? "," : "").append(nl);
+        }
+        b.append(ind).append("],").append(nl);
+        b.append(ind).append("\"actions\"").append(sep).append("[{\"name\"").append(sep).append("\"hi\",\"type\"").append(sep).append("\"hi\"}],").append(nl);
+        b.append(ind).append("\"tables\"").append(sep).append("[{\"name\"").append(sep).append("\"greetings\",\"type\"").append(sep)
+                .append("\"greeting\",\"primary\"").append(sep).append("\"name\",\"secondary\"").append(sep).append("[]}]").append(nl);
+        b.append("}");
+        return b.toString();
+    }
+
+    @Test
+    public void dictionary_isCorrect() throws Exception {
+        byte[] dict = Zlib.abiDictionary();
+        byte[] abi = testAbi(3, false, new Random(3)).getBytes("UTF-8");
+        byte[] withDict = Zlib.compress(abi, Deflater.BEST_COMPRESSION, dict);
+        byte[] withoutDict = Zlib.compress(abi, Deflater.BEST_COMPRESSION, null);
+        assertTrue(withDict.length < withoutDict.length);
+        assertArrayEquals(abi, Zlib.decompress(withDict, 0, dict));
+
+        // dictionary is required and must be the same one
+        assertNull(Zlib.decompress(withDict));
+        assertNull(Zlib.decompress(withDict, 0, "another dictionary".getBytes()));
+    }
+
+    @Test
+    public void skipIncompressible_isCorrect() {
+        byte[] random = testData(1 << 20, false);
+        byte[] text = testData(1 << 20, true);
+        ZlibCodec codec = ZlibCodec.obtain();
+        try {
+            codec.setLevel(Deflater.BEST_COMPRESSION).setSkipIncompressible(true);
+            byte[] stored = codec.compress(random, 0, random.length);
+            byte[] compressed = codec.compress(text, 0, text.length);
+            assertTrue(stored.length < random.length + random.length / 1000);
+            assertTrue(compressed.length < text.length / 2);
+            assertArrayEquals(random, Zlib.decompress(stored));
+            assertArrayEquals(text, Zlib.decompress(compressed));
+        } finally {
+            codec.close();
+        }
+        try {
+            ZlibCodec.obtain().setLevel(10);
+            fail("invalid level should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}